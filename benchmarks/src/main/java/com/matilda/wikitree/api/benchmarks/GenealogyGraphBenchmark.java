@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.graph.WikiTreeGenealogyGraph;
+import com.matilda.wikitree.api.synthetic.WikiTreeGenealogy;
+import com.matilda.wikitree.api.synthetic.WikiTreeGenealogyGenerator;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ How fast a {@link WikiTreeGenealogyGraph} gets loaded and walked compared to walking the wrappers themselves.
+ <ul>
+ <li>{@link #ingest()} - load everyone's {@code getPerson} profile (with relatives) into a new graph and compact it.</li>
+ <li>{@link #walkChildrenOfProfiles()} - visit everyone's children via {@link WikiTreePersonProfile#getChildren()}.</li>
+ <li>{@link #walkChildrenOfGraph()} - visit everyone's children via {@link WikiTreeGenealogyGraph#getChild(int, int)}.</li>
+ </ul>
+ The profiles are made up by a {@link WikiTreeGenealogyGenerator} from a fixed seed. Each one holds about 14KB of wrappers
+ so the population is kept small enough to fit in a default sized heap.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class GenealogyGraphBenchmark {
+
+    @Param( { "10000" } )
+    public int people;
+
+    private List<WikiTreePersonProfile> _profiles;
+
+    private WikiTreeGenealogyGraph _graph;
+
+    @Setup
+    public void setup()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeGenealogy genealogy = new WikiTreeGenealogyGenerator( people, 20170606L ).generate();
+
+        _profiles = new ArrayList<>( genealogy.size() );
+        for ( int ix = 0; ix < genealogy.size(); ix += 1 ) {
+
+            _profiles.add( new WikiTreePersonProfile( null, genealogy.toRecord( ix ), WikiTreePersonProfile.ProfileType.PRIMARY_PERSON ) );
+
+        }
+
+        _graph = new WikiTreeGenealogyGraph( genealogy.size() );
+        _graph.addAll( _profiles );
+        _graph.compact();
+
+    }
+
+    @Benchmark
+    public WikiTreeGenealogyGraph ingest() {
+
+        WikiTreeGenealogyGraph graph = new WikiTreeGenealogyGraph();
+        graph.addAll( _profiles );
+        graph.compact();
+
+        return graph;
+
+    }
+
+    @Benchmark
+    public long walkChildrenOfProfiles() {
+
+        long sum = 0L;
+        for ( WikiTreePersonProfile profile : _profiles ) {
+
+            for ( WikiTreePersonProfile child : profile.getChildren().orElseThrow( IllegalStateException::new ) ) {
+
+                sum += child.getPersonId();
+
+            }
+
+        }
+
+        return sum;
+
+    }
+
+    @Benchmark
+    public long walkChildrenOfGraph() {
+
+        long sum = 0L;
+        for ( int ix = 0; ix < _graph.size(); ix += 1 ) {
+
+            int children = _graph.getChildCount( ix );
+            for ( int nth = 0; nth < children; nth += 1 ) {
+
+                sum += _graph.getPersonId( _graph.getChild( ix, nth ) );
+
+            }
+
+        }
+
+        return sum;
+
+    }
+
+}
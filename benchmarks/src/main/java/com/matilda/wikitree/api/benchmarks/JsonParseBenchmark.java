@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ How fast response bodies get turned into {@code JSONObject}s and {@code JSONArray}s.
+ <ul>
+ <li>{@link #parseWithNewParser()} - what the code used to do for every response ({@code new JSONParser().parse( text )}).</li>
+ <li>{@link #parseWithPooledParser()} - what a non-streaming session does now (the text is parsed by a parser borrowed from
+ {@link com.matilda.wikitree.api.util.WikiTreeParserPool}).</li>
+ <li>{@link #parseStreaming()} - what a streaming session does (the body is parsed as it is read; there is never a {@code String} holding all of it).</li>
+ </ul>
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class JsonParseBenchmark {
+
+    @Param( { WikiTreeBenchmarkPayloads.GET_PERSON, WikiTreeBenchmarkPayloads.GET_ANCESTORS, WikiTreeBenchmarkPayloads.GET_RELATIVES, WikiTreeBenchmarkPayloads.GET_WATCHLIST } )
+    public String payload;
+
+    private String _text;
+
+    private byte[] _bytes;
+
+    @Setup
+    public void setup() {
+
+        _text = WikiTreeBenchmarkPayloads.getPayload( payload );
+        _bytes = _text.getBytes( StandardCharsets.UTF_8 );
+
+    }
+
+    @Benchmark
+    public Object parseWithNewParser()
+            throws ParseException {
+
+        return new JSONParser().parse( _text );
+
+    }
+
+    @Benchmark
+    public Object parseWithPooledParser()
+            throws ParseException {
+
+        return WikiTreeApiUtilities.parseJsonArray( _text );
+
+    }
+
+    @Benchmark
+    public Object parseStreaming()
+            throws IOException, ParseException {
+
+        return WikiTreeApiUtilities.parseBody( new ByteArrayInputStream( _bytes ) );
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringWriter;
+
+/**
+ How fast {@link WikiTreeApiUtilities#prettyFormatJsonThing(String, Object)} turns a parsed result back into (indented) text.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PrettyFormatBenchmark {
+
+    @Param( { WikiTreeBenchmarkPayloads.GET_PERSON, WikiTreeBenchmarkPayloads.GET_ANCESTORS, WikiTreeBenchmarkPayloads.GET_RELATIVES, WikiTreeBenchmarkPayloads.GET_WATCHLIST } )
+    public String payload;
+
+    private JSONObject _result;
+
+    @Setup
+    public void setup()
+            throws ParseException {
+
+        _result = WrapperConstructionBenchmark.parseResult( payload );
+
+    }
+
+    @Benchmark
+    public StringWriter prettyFormat() {
+
+        return WikiTreeApiUtilities.prettyFormatJsonThing( payload, _result );
+
+    }
+
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Random;
+
+/**
+ The response bodies that the benchmarks chew on.
+ <p/>The payloads are synthetic. None of them was captured from the WikiTree API server.
+ Each payload has the shape (field names, nesting, value types and typical value lengths) of what the WikiTree API server actually sends back
+ for the corresponding request. The people in them are made up from a fixed random seed so every run of every benchmark sees exactly the same bytes
+ (and nobody's real profile ends up in a benchmark).
+ <ul>
+ <li>{@link #GET_PERSON} - a {@code getPerson} request for all fields ({@code "*"}) of someone with parents, spouses, siblings and children.</li>
+ <li>{@link #GET_ANCESTORS} - a {@code getAncestors} request with a depth of 10 (887 ancestors; the further back you go the more of them are unknown).</li>
+ <li>{@link #GET_RELATIVES} - a {@code getRelatives} request for all four relative classes of 50 people.</li>
+ <li>{@link #GET_WATCHLIST} - a {@code getWatchlist} request which returned 1,000 profiles.</li>
+ </ul>
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unchecked" })
+public class WikiTreeBenchmarkPayloads {
+
+    public static final String GET_PERSON = "getPerson";
+
+    public static final String GET_ANCESTORS = "getAncestors";
+
+    public static final String GET_RELATIVES = "getRelatives";
+
+    public static final String GET_WATCHLIST = "getWatchlist";
+
+    /**
+     The WikiTree ID of the base person in the {@link #GET_ANCESTORS} payload.
+     */
+
+    public static final String ANCESTORS_BASE_PERSON = "Harrow-1";
+
+    /**
+     The chance that one of the parents of someone in the {@link #GET_ANCESTORS} payload is known.
+     */
+
+    private static final double PARENT_KNOWN_PROBABILITY = 0.9;
+
+    private static final String[] MALE_FIRST_NAMES = {
+            "William", "John", "Thomas", "James", "George", "Henry", "Charles", "Robert", "Edward", "Joseph", "Samuel", "Richard", "Alexander", "Frederick"
+    };
+
+    private static final String[] FEMALE_FIRST_NAMES = {
+            "Mary", "Elizabeth", "Sarah", "Ann", "Jane", "Margaret", "Catherine", "Susannah", "Hannah", "Eleanor", "Martha", "Frances", "Charlotte", "Isabella"
+    };
+
+    private static final String[] SURNAMES = {
+            "Harrow", "Ashby", "Whitcombe", "Pennington", "Lockhart", "Fairweather", "Thornbury", "Kendrick", "Maddox", "Ellery", "Brandon", "Quill",
+            "Selwyn", "Hartigan", "Dunmore", "Radcliffe", "Holloway", "Ingram", "Marchbank", "Tolliver"
+    };
+
+    private static final String[] PLACES = {
+            "Woodstock, Oxfordshire, England",
+            "St Pancras, London, England",
+            "Halifax, Nova Scotia, Canada",
+            "Ballarat, Victoria, Australia",
+            "Kilkenny, County Kilkenny, Ireland",
+            "Lowell, Middlesex, Massachusetts, United States",
+            "Dunedin, Otago, New Zealand",
+            "Perth, Perthshire, Scotland",
+            "Cardiff, Glamorgan, Wales",
+            "Quebec City, Quebec, Canada"
+    };
+
+    private static final String[] PAYLOADS = { GET_PERSON, GET_ANCESTORS, GET_RELATIVES, GET_WATCHLIST };
+
+    private final Random _random = new Random( 20170606L );
+
+    private final int[] _surnameCounters = new int[SURNAMES.length];
+
+    private long _nextPersonId = 1000L;
+
+    private WikiTreeBenchmarkPayloads() {
+
+        super();
+
+    }
+
+    /**
+     Get the names of all of the payloads.
+
+     @return the payload names (suitable for a JMH {@code @Param}).
+     */
+
+    @NotNull
+    public static String[] getPayloadNames() {
+
+        return PAYLOADS.clone();
+
+    }
+
+    /**
+     Get one of the payloads.
+
+     @param payloadName which payload ({@link #GET_PERSON}, {@link #GET_ANCESTORS}, {@link #GET_RELATIVES} or {@link #GET_WATCHLIST}).
+     @return the payload's JSON text (the same text every time for a given name).
+     @throws IllegalArgumentException if there is no such payload.
+     */
+
+    @NotNull
+    public static String getPayload( final @NotNull String payloadName ) {
+
+        WikiTreeBenchmarkPayloads generator = new WikiTreeBenchmarkPayloads();
+
+        JSONObject result;
+        switch ( payloadName ) {
+
+            case GET_PERSON:
+                result = generator.makeGetPersonResult();
+                break;
+
+            case GET_ANCESTORS:
+                result = generator.makeGetAncestorsResult( 10 );
+                break;
+
+            case GET_RELATIVES:
+                result = generator.makeGetRelativesResult( 50 );
+                break;
+
+            case GET_WATCHLIST:
+                result = generator.makeGetWatchlistResult( 1000 );
+                break;
+
+            default:
+                throw new IllegalArgumentException( "WikiTreeBenchmarkPayloads.getPayload:  unknown payload (got \"" + payloadName + "\")" );
+
+        }
+
+        // Every WikiTree API response is an array containing one result per request.
+
+        JSONArray response = new JSONArray();
+        response.add( result );
+
+        return response.toJSONString();
+
+    }
+
+    private JSONObject makeGetPersonResult() {
+
+        JSONObject person = makeProfile( _random.nextBoolean(), 1800 + _random.nextInt( 100 ), true );
+
+        person.put( "Parents", makeRelatives( 2, true ) );
+        person.put( "Spouses", makeRelatives( 1 + _random.nextInt( 2 ), false ) );
+        person.put( "Siblings", makeRelatives( 2 + _random.nextInt( 6 ), false ) );
+        person.put( "Children", makeRelatives( 3 + _random.nextInt( 8 ), false ) );
+
+        JSONObject result = new JSONObject();
+        result.put( "page_name", person.get( "Name" ) );
+        result.put( "status", 0 );
+        result.put( "person", person );
+
+        return result;
+
+    }
+
+    private JSONObject makeGetAncestorsResult( final int depth ) {
+
+        JSONArray ancestors = new JSONArray();
+        JSONObject basePerson = makeProfile( true, 1900, false );
+        basePerson.put( "Name", ANCESTORS_BASE_PERSON );
+        ancestors.add( basePerson );
+        addAncestors( basePerson, 1900, depth, ancestors );
+
+        JSONObject result = new JSONObject();
+        result.put( "user_name", ANCESTORS_BASE_PERSON );
+        result.put( "status", 0 );
+        result.put( "ancestors", ancestors );
+
+        return result;
+
+    }
+
+    private void addAncestors( final JSONObject person, final int birthYear, final int depth, final JSONArray ancestors ) {
+
+        if ( depth == 0 ) {
+
+            return;
+
+        }
+
+        for ( boolean male : new boolean[]{ true, false } ) {
+
+            if ( _random.nextDouble() < PARENT_KNOWN_PROBABILITY ) {
+
+                int parentBirthYear = birthYear - 20 - _random.nextInt( 20 );
+                JSONObject parent = makeProfile( male, parentBirthYear, false );
+                person.put( male ? "Father" : "Mother", parent.get( "Id" ) );
+                ancestors.add( parent );
+
+                addAncestors( parent, parentBirthYear, depth - 1, ancestors );
+
+            }
+
+        }
+
+    }
+
+    private JSONObject makeGetRelativesResult( final int people ) {
+
+        JSONArray items = new JSONArray();
+        for ( int ix = 0; ix < people; ix += 1 ) {
+
+            JSONObject person = makeProfile( _random.nextBoolean(), 1800 + _random.nextInt( 150 ), false );
+            person.put( "Parents", makeRelatives( _random.nextInt( 3 ), true ) );
+            person.put( "Spouses", makeRelatives( _random.nextInt( 3 ), false ) );
+            person.put( "Siblings", makeRelatives( _random.nextInt( 7 ), false ) );
+            person.put( "Children", makeRelatives( _random.nextInt( 9 ), false ) );
+
+            JSONObject item = new JSONObject();
+            item.put( "key", person.get( "Name" ) );
+            item.put( "user_id", person.get( "Id" ) );
+            item.put( "user_name", person.get( "Name" ) );
+            item.put( "person", person );
+            items.add( item );
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "items", items );
+        result.put( "status", "" );
+
+        return result;
+
+    }
+
+    private JSONObject makeGetWatchlistResult( final int profiles ) {
+
+        JSONArray watchlist = new JSONArray();
+        for ( int ix = 0; ix < profiles; ix += 1 ) {
+
+            watchlist.add( makeProfile( _random.nextBoolean(), 1700 + _random.nextInt( 300 ), false ) );
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "watchlist", watchlist );
+        result.put( "watchlistCount", profiles );
+        result.put( "status", 0 );
+
+        return result;
+
+    }
+
+    private JSONObject makeRelatives( final int count, final boolean parents ) {
+
+        JSONObject relatives = new JSONObject();
+        for ( int ix = 0; ix < count; ix += 1 ) {
+
+            boolean male = parents ? ix % 2 == 0 : _random.nextBoolean();
+            JSONObject relative = makeProfile( male, 1750 + _random.nextInt( 200 ), false );
+            relatives.put( String.valueOf( relative.get( "Id" ) ), relative );
+
+        }
+
+        return relatives;
+
+    }
+
+    /**
+     Make up someone's profile.
+
+     @param male      {@code true} for a man; {@code false} for a woman.
+     @param birthYear the year of their birth.
+     @param primary   {@code true} if this is the target of a {@code getPerson} request for all fields (they get a few extra fields).
+     @return the profile.
+     */
+
+    private JSONObject makeProfile( final boolean male, final int birthYear, final boolean primary ) {
+
+        int surnameIx = _random.nextInt( SURNAMES.length );
+        String surname = SURNAMES[surnameIx];
+        _surnameCounters[surnameIx] += 1;
+        String wikiTreeId = surname + "-" + _surnameCounters[surnameIx];
+        String firstName = pick( male ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES );
+        String middleName = _random.nextInt( 3 ) == 0 ? pick( male ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES ) : "";
+        String marriedName = male || _random.nextInt( 4 ) == 0 ? surname : pick( SURNAMES );
+        int deathYear = birthYear + 1 + _random.nextInt( 90 );
+
+        JSONObject profile = new JSONObject();
+        profile.put( "Id", _nextPersonId++ );
+        profile.put( "Name", wikiTreeId );
+        profile.put( "FirstName", firstName );
+        profile.put( "MiddleName", middleName );
+        profile.put( "LastNameAtBirth", surname );
+        profile.put( "LastNameCurrent", marriedName );
+        profile.put( "Nicknames", "" );
+        profile.put( "LastNameOther", "" );
+        profile.put( "RealName", firstName );
+        profile.put( "Prefix", "" );
+        profile.put( "Suffix", "" );
+        profile.put( "ShortName", firstName + " (" + surname + ") " + marriedName );
+        profile.put( "BirthNamePrivate", firstName + " " + surname );
+        profile.put( "LongNamePrivate", firstName + ( middleName.isEmpty() ? "" : " " + middleName ) + " (" + surname + ") " + marriedName );
+        profile.put( "BirthLocation", pick( PLACES ) );
+        profile.put( "DeathLocation", pick( PLACES ) );
+        profile.put( "Gender", male ? "Male" : "Female" );
+        profile.put( "BirthDate", formatDate( birthYear ) );
+        profile.put( "DeathDate", formatDate( deathYear ) );
+        profile.put( "BirthDateDecade", ( birthYear / 10 * 10 ) + "s" );
+        profile.put( "DeathDateDecade", ( deathYear / 10 * 10 ) + "s" );
+        profile.put( "Photo", _random.nextInt( 5 ) == 0 ? wikiTreeId + ".jpg" : null );
+        profile.put( "IsLiving", 0 );
+        profile.put( "Privacy", 60 );
+        profile.put( "Privacy_IsPrivate", false );
+        profile.put( "Privacy_IsPublic", false );
+        profile.put( "Privacy_IsOpen", true );
+        profile.put( "Privacy_IsAtLeastPublic", true );
+        profile.put( "Privacy_IsSemiPrivate", false );
+        profile.put( "Privacy_IsSemiPrivateBio", false );
+        profile.put( "Father", 0 );
+        profile.put( "Mother", 0 );
+        profile.put( "Manager", 1000000L + _random.nextInt( 9000000 ) );
+        profile.put( "HasChildren", _random.nextBoolean() ? 1 : 0 );
+
+        if ( primary ) {
+
+            JSONObject dataStatus = new JSONObject();
+            dataStatus.put( "BirthDate", "certain" );
+            dataStatus.put( "DeathDate", "certain" );
+            dataStatus.put( "BirthLocation", "guess" );
+            dataStatus.put( "DeathLocation", "" );
+            profile.put( "DataStatus", dataStatus );
+            profile.put( "Touched", "20170412" + String.format( "%06d", _random.nextInt( 240000 ) ) );
+            profile.put( "Created", "20110203" + String.format( "%06d", _random.nextInt( 240000 ) ) );
+
+        }
+
+        return profile;
+
+    }
+
+    private String formatDate( final int year ) {
+
+        return String.format( "%04d-%02d-%02d", year, 1 + _random.nextInt( 12 ), 1 + _random.nextInt( 28 ) );
+
+    }
+
+    private String pick( final String[] choices ) {
+
+        return choices[_random.nextInt( choices.length )];
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeBenchmarkPayloads( nextPersonId=" + _nextPersonId + " )";
+
+    }
+
+}
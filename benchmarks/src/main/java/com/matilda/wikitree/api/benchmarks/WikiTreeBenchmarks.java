@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ Run the benchmarks.
+ <p/>This is JMH's own {@code Main} with the GC profiler always turned on so that every run reports the bytes allocated per operation
+ ({@code gc.alloc.rate.norm}) next to the operations per second.
+ Any JMH command line arguments work (for example, {@code JsonParseBenchmark -p payload=getAncestors} runs just the parse benchmarks
+ for the {@code getAncestors} payload and {@code -h} lists everything else).
+ */
+
+public class WikiTreeBenchmarks {
+
+    private WikiTreeBenchmarks() {
+
+        super();
+
+    }
+
+    public static void main( final String[] args )
+            throws CommandLineOptionException, RunnerException {
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+
+        Options options = new OptionsBuilder()
+                .parent( commandLineOptions )
+                .addProfiler( GCProfiler.class )
+                .build();
+
+        new Runner( options ).run();
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.benchmarks;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import com.matilda.wikitree.api.wrappers.WikiTreeRelatives;
+import com.matilda.wikitree.api.wrappers.WikiTreeRequestType;
+import com.matilda.wikitree.api.wrappers.WikiTreeWatchlist;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ How fast the wrappers get built from already-parsed results.
+ <p/>Parsing is measured separately (see {@link JsonParseBenchmark}); each benchmark here starts from the {@code JSONObject} that
+ {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession} would have handed to {@link com.matilda.wikitree.api.wrappers.WikiTreeApiWrappersSession}.
+ None of the wrappers modify the result that they are built from so the same result is used over and over.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class WrapperConstructionBenchmark {
+
+    private JSONObject _getPersonResult;
+
+    private JSONObject _getAncestorsResult;
+
+    private WikiTreeId _ancestorsBasePerson;
+
+    private JSONObject _getRelativesResult;
+
+    private String _relativesKeys;
+
+    private JSONObject _getWatchlistResult;
+
+    @Setup
+    public void setup()
+            throws ParseException {
+
+        _getPersonResult = parseResult( WikiTreeBenchmarkPayloads.GET_PERSON );
+        _getAncestorsResult = parseResult( WikiTreeBenchmarkPayloads.GET_ANCESTORS );
+        _ancestorsBasePerson = new WikiTreeId( WikiTreeBenchmarkPayloads.ANCESTORS_BASE_PERSON );
+        _getRelativesResult = parseResult( WikiTreeBenchmarkPayloads.GET_RELATIVES );
+        _getWatchlistResult = parseResult( WikiTreeBenchmarkPayloads.GET_WATCHLIST );
+
+        StringBuilder keys = new StringBuilder();
+        for ( Object item : (JSONArray)_getRelativesResult.get( "items" ) ) {
+
+            keys.append( keys.length() == 0 ? "" : "," ).append( ( (JSONObject)item ).get( "key" ) );
+
+        }
+
+        _relativesKeys = keys.toString();
+
+    }
+
+    /**
+     Parse a payload the way a session does and return the single result in it.
+     */
+
+    static JSONObject parseResult( final @NotNull String payloadName )
+            throws ParseException {
+
+        JSONArray response = WikiTreeApiUtilities.parseJsonArray( WikiTreeBenchmarkPayloads.getPayload( payloadName ) );
+
+        return (JSONObject)response.get( 0 );
+
+    }
+
+    @Benchmark
+    public WikiTreePersonProfile personProfile()
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreePersonProfile( WikiTreeRequestType.WIKITREE_ID, _getPersonResult, WikiTreePersonProfile.ProfileType.PRIMARY_PERSON, "person" );
+
+    }
+
+    @Benchmark
+    public WikiTreeAncestors ancestors()
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeAncestors( _ancestorsBasePerson, 10, _getAncestorsResult );
+
+    }
+
+    @Benchmark
+    public WikiTreeRelatives relatives()
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeRelatives( _relativesKeys, true, true, true, true, _getRelativesResult );
+
+    }
+
+    @Benchmark
+    public WikiTreeWatchlist watchlist()
+            throws WikiTreeRequestFailedException {
+
+        return new WikiTreeWatchlist( true, false, null, null, "*", 1000, 0, null, _getWatchlistResult );
+
+    }
+
+}
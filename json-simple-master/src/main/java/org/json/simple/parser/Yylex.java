@@ -432,6 +432,13 @@ class Yylex {
     public final void yyreset( final java.io.Reader reader ) {
 
         zzReader = reader;
+        if ( zzBuffer.length > ZZ_BUFFERSIZE ) {
+
+            // Don't let one enormous token pin an enormous buffer for the rest of this lexer's life.
+
+            zzBuffer = new char[ZZ_BUFFERSIZE];
+
+        }
         zzAtBOL = true;
         zzAtEOF = false;
         zzEndRead = zzStartRead = 0;
@@ -620,8 +627,7 @@ class Yylex {
                 case 25:
                     break;
                 case 4: {
-                    sb = null;
-                    sb = new StringBuffer();
+                    sb.setLength( 0 );
                     yybegin( STRING_BEGIN );
                 }
                 case 26:
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.exceptions;
+
+import java.io.IOException;
+
+/**
+ Thrown if a request was not sent to the WikiTree API server because the server seems to be down
+ (see {@link com.matilda.wikitree.api.jsonclient.WikiTreeCircuitBreaker}).
+ */
+
+public class WikiTreeCircuitOpenException extends IOException {
+
+    private final long _retryAfterMillis;
+
+    public WikiTreeCircuitOpenException( final String why, final long retryAfterMillis ) {
+
+        super( why );
+
+        _retryAfterMillis = retryAfterMillis;
+
+    }
+
+    /**
+     Get how long it will be until the circuit breaker lets a request through to see if the server is back.
+
+     @return the time (in milliseconds) until the next probe is allowed.
+     */
+
+    public long getRetryAfterMillis() {
+
+        return _retryAfterMillis;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeCircuitOpenException:  " + getMessage();
+
+    }
+
+}
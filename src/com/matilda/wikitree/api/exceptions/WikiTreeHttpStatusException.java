@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.exceptions;
+
+import java.io.IOException;
+
+/**
+ Thrown if the WikiTree API server answered a request with an HTTP status code which says that the request didn't work
+ (anything other than a 2xx or a 3xx status code).
+ <p/>If the session has a {@link com.matilda.wikitree.api.jsonclient.WikiTreeRetryPolicy} then this is only thrown once the policy has given up.
+ */
+
+public class WikiTreeHttpStatusException extends IOException {
+
+    private final int _statusCode;
+
+    public WikiTreeHttpStatusException( final String why, final int statusCode ) {
+
+        super( why );
+
+        _statusCode = statusCode;
+
+    }
+
+    /**
+     Get the HTTP status code that the server answered with.
+
+     @return the HTTP status code.
+     */
+
+    public int getStatusCode() {
+
+        return _statusCode;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeHttpStatusException:  " + getMessage();
+
+    }
+
+}
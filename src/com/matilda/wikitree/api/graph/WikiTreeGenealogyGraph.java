@@ -0,0 +1,1300 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.graph;
+
+import com.matilda.wikitree.api.wrappers.WikiTreeAncestors;
+import com.matilda.wikitree.api.wrappers.WikiTreeId;
+import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
+import com.matilda.wikitree.api.wrappers.WikiTreeRelatives;
+import com.matilda.wikitree.api.wrappers.WikiTreeWatchlist;
+import com.matilda.wikitree.api.wrappers.WikiTreeWrapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ A compact, in-memory family tree built from whatever profiles the wrappers API hands back.
+ <p/>{@link WikiTreePersonProfile} keeps each person's relatives in {@code LinkedList}s of other profiles and {@link WikiTreeAncestors}
+ keeps {@code TreeMap}s on the side. That's fine for a few hundred people but far too heavy for a few million.
+ This class keeps only who is related to whom (plus each person's WikiTree ID, gender, dates and whether they are living):
+ <ul>
+ <li>Everyone gets a dense <em>index</em> (0 through {@link #size()}-1) the first time they are seen.
+ Person.Ids and WikiTree IDs are mapped to indices by open addressing hash tables of primitives.</li>
+ <li>Each person's father and mother are kept in {@code int[]} arrays indexed by the person's index.</li>
+ <li>Children and spouses are kept in compressed sparse row form: one {@code int[]} of offsets and one {@code int[]} of neighbours per relation
+ so {@link #getChild(int, int)} and {@link #getSpouse(int, int)} are a couple of array reads.</li>
+ </ul>
+ That works out to roughly 110 bytes per person (a few million people fit in a few hundred megabytes).
+ <p/>Profiles are added via {@link #add(WikiTreeWrapper)} (or one of the more specific {@code add} methods).
+ A relative who is only mentioned (for example, someone's {@code "Father"} is a Person.Id that hasn't been seen yet) gets an index right away;
+ their details are filled in if their profile turns up later. Adding the same person again merges what's new into what's already known.
+ The children and spouses arrays are rebuilt the first time they are needed after something has been added (see {@link #compact()}).
+ <p/>The {@code add} methods and {@link #compact()} are synchronized so several threads can load one graph.
+ The query methods are not synchronized; they must not be called while something is still being added.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeGenealogyGraph {
+
+    /**
+     The index returned when there is no such person (an unknown father, an unknown Person.Id and so on).
+     */
+
+    public static final int NOBODY = -1;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final byte MALE = 1;
+
+    private static final byte FEMALE = 2;
+
+    private static final byte LIVING = 4;
+
+    private static final byte KNOWN = 8;
+
+    private static final int[] NO_PEOPLE = new int[0];
+
+    /**
+     The children and spouses of everyone in compressed sparse row form.
+     <p/>Person {@code ix}'s children are {@code children[childOffsets[ix]]} through {@code children[childOffsets[ix+1]-1]}
+     (and the same for spouses).
+     */
+
+    private static class Adjacency {
+
+        private final int[] _childOffsets;
+
+        private final int[] _children;
+
+        private final int[] _spouseOffsets;
+
+        private final int[] _spouses;
+
+        private Adjacency( final int[] childOffsets, final int[] children, final int[] spouseOffsets, final int[] spouses ) {
+
+            super();
+
+            _childOffsets = childOffsets;
+            _children = children;
+            _spouseOffsets = spouseOffsets;
+            _spouses = spouses;
+
+        }
+
+        public String toString() {
+
+            return "Adjacency( children=" + _children.length + ", spouses=" + _spouses.length + " )";
+
+        }
+
+    }
+
+    private int _size;
+
+    private long[] _personIds;
+
+    private int[] _father;
+
+    private int[] _mother;
+
+    private int[] _birthDate;
+
+    private int[] _deathDate;
+
+    private byte[] _flags;
+
+    // Everyone's WikiTree ID, end to end in UTF-8 (a person whose WikiTree ID isn't known yet has a length of 0).
+
+    private int[] _nameStart;
+
+    private short[] _nameLength;
+
+    private byte[] _names;
+
+    private int _namesLength;
+
+    // Person.Id to index (0 marks an empty slot; Person.Ids are always positive).
+
+    private long[] _idSlotKeys;
+
+    private int[] _idSlotIndices;
+
+    // WikiTree ID to index (each slot holds an index plus one; 0 marks an empty slot).
+
+    private int[] _nameSlots;
+
+    private int _namedPeople;
+
+    // Marriages (two indices per marriage, in the order they were added; duplicates are weeded out by compact()).
+
+    private int[] _spousePairs;
+
+    private int _spousePairCount;
+
+    private volatile Adjacency _adjacency;
+
+    private long _profilesAdded;
+
+    /**
+     Create an empty graph.
+     */
+
+    public WikiTreeGenealogyGraph() {
+
+        this( DEFAULT_CAPACITY );
+
+    }
+
+    /**
+     Create an empty graph with room for a particular number of people.
+     <p/>The graph grows as needed; getting the capacity right just avoids some copying while it is being loaded.
+
+     @param expectedPeople how many people are expected.
+     @throws IllegalArgumentException if {@code expectedPeople} is negative.
+     */
+
+    public WikiTreeGenealogyGraph( final int expectedPeople ) {
+
+        super();
+
+        if ( expectedPeople < 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGraph:  expected people must not be negative (got expectedPeople=" + expectedPeople + ")"
+            );
+
+        }
+
+        int capacity = Math.max( 16, expectedPeople );
+        _personIds = new long[capacity];
+        _father = new int[capacity];
+        _mother = new int[capacity];
+        _birthDate = new int[capacity];
+        _deathDate = new int[capacity];
+        _flags = new byte[capacity];
+        _nameStart = new int[capacity];
+        _nameLength = new short[capacity];
+        _names = new byte[capacity * 12];
+
+        int slots = Integer.highestOneBit( capacity * 2 - 1 ) * 2;
+        _idSlotKeys = new long[slots];
+        _idSlotIndices = new int[slots];
+        _nameSlots = new int[slots];
+
+        _spousePairs = new int[Math.max( 16, capacity / 2 )];
+
+    }
+
+    /**
+     Add the profiles in a wrapper.
+     <ul>
+     <li>{@link WikiTreePersonProfile} - the person and, if it is the result of a {@code getPerson} request for all fields,
+     their parents, children, spouses and siblings (see {@link #add(WikiTreePersonProfile)}).</li>
+     <li>{@link WikiTreeAncestors} - everyone in it (see {@link #add(WikiTreeAncestors)}).</li>
+     <li>{@link WikiTreeRelatives} - the base people and their relatives (see {@link #add(WikiTreeRelatives)}).</li>
+     <li>{@link WikiTreeWatchlist} - every person in it (see {@link #add(WikiTreeWatchlist)}).</li>
+     </ul>
+
+     @param wrapper the wrapper.
+     @return the number of profiles that were added (including relatives' profiles).
+     @throws IllegalArgumentException if the wrapper doesn't contain person profiles (a biography or a space profile, for example).
+     */
+
+    public int add( final @NotNull WikiTreeWrapper wrapper ) {
+
+        if ( wrapper instanceof WikiTreePersonProfile ) {
+
+            return add( (WikiTreePersonProfile)wrapper );
+
+        } else if ( wrapper instanceof WikiTreeAncestors ) {
+
+            return add( (WikiTreeAncestors)wrapper );
+
+        } else if ( wrapper instanceof WikiTreeRelatives ) {
+
+            return add( (WikiTreeRelatives)wrapper );
+
+        } else if ( wrapper instanceof WikiTreeWatchlist ) {
+
+            return add( (WikiTreeWatchlist)wrapper );
+
+        } else {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGraph.add:  don't know how to get people out of a " + wrapper.getClass().getCanonicalName()
+            );
+
+        }
+
+    }
+
+    /**
+     Add someone's profile.
+     <p/>Their father and mother are taken from their profile's {@code "Father"} and {@code "Mother"} fields (a value of 0 means unknown
+     and doesn't replace what is already known). If the profile has relatives (see {@link WikiTreePersonProfile#getParents()}),
+     the relatives are added too:
+     <ul>
+     <li>a parent whose role isn't already known from the {@code "Father"} and {@code "Mother"} fields becomes the father or mother according to their gender;</li>
+     <li>a child whose own profile doesn't say who their father or mother is gets this person as their father or mother according to this person's gender;</li>
+     <li>each spouse is married to this person;</li>
+     <li>siblings are added but not linked (siblings are worked out from parents; see {@link #getSiblings(int)}).</li>
+     </ul>
+
+     @param profile the profile.
+     @return the number of profiles that were added (one plus the number of relatives).
+     */
+
+    public synchronized int add( final @NotNull WikiTreePersonProfile profile ) {
+
+        int count = 1;
+        int ix = addProfile( profile );
+        boolean male = isMale( ix );
+        boolean female = isFemale( ix );
+
+        for ( WikiTreePersonProfile parentProfile : profile.getParents().orElse( Collections.emptyList() ) ) {
+
+            int parent = addProfile( parentProfile );
+            count += 1;
+            if ( isMale( parent ) && _father[ix] == NOBODY && _mother[ix] != parent ) {
+
+                _father[ix] = parent;
+
+            } else if ( isFemale( parent ) && _mother[ix] == NOBODY && _father[ix] != parent ) {
+
+                _mother[ix] = parent;
+
+            }
+
+        }
+
+        for ( WikiTreePersonProfile childProfile : profile.getChildren().orElse( Collections.emptyList() ) ) {
+
+            int child = addProfile( childProfile );
+            count += 1;
+            if ( male && _father[child] == NOBODY ) {
+
+                _father[child] = ix;
+
+            } else if ( female && _mother[child] == NOBODY ) {
+
+                _mother[child] = ix;
+
+            }
+
+        }
+
+        for ( WikiTreePersonProfile spouseProfile : profile.getSpouses().orElse( Collections.emptyList() ) ) {
+
+            addMarriage( ix, addProfile( spouseProfile ) );
+            count += 1;
+
+        }
+
+        for ( WikiTreePersonProfile siblingProfile : profile.getSiblings().orElse( Collections.emptyList() ) ) {
+
+            addProfile( siblingProfile );
+            count += 1;
+
+        }
+
+        _adjacency = null;
+
+        return count;
+
+    }
+
+    /**
+     Add everyone in the result of a {@code getAncestors} request.
+
+     @param ancestors the result.
+     @return the number of profiles that were added.
+     */
+
+    public synchronized int add( final @NotNull WikiTreeAncestors ancestors ) {
+
+        return addAll( ancestors.getProfilesByPersonId().values() );
+
+    }
+
+    /**
+     Add the base people in the result of a {@code getRelatives} request along with their relatives.
+
+     @param relatives the result.
+     @return the number of profiles that were added.
+     */
+
+    public synchronized int add( final @NotNull WikiTreeRelatives relatives ) {
+
+        return addAll( relatives.getBasePeopleByPersonId().values() );
+
+    }
+
+    /**
+     Add everyone in the result of a {@code getWatchlist} request.
+
+     @param watchlist the result.
+     @return the number of profiles that were added.
+     */
+
+    public synchronized int add( final @NotNull WikiTreeWatchlist watchlist ) {
+
+        return addAll( watchlist.getWatchlist() );
+
+    }
+
+    /**
+     Add some profiles (see {@link #add(WikiTreePersonProfile)}).
+
+     @param profiles the profiles.
+     @return the number of profiles that were added (including relatives' profiles).
+     */
+
+    public synchronized int addAll( final @NotNull Collection<WikiTreePersonProfile> profiles ) {
+
+        int count = 0;
+        for ( WikiTreePersonProfile profile : profiles ) {
+
+            count += add( profile );
+
+        }
+
+        return count;
+
+    }
+
+    /**
+     Note that two people are married.
+     <p/>Adding the same marriage more than once is harmless.
+
+     @param personId one of them.
+     @param spouseId the other.
+     @throws IllegalArgumentException if either Person.Id isn't positive or they are the same person.
+     */
+
+    public synchronized void addMarriage( final long personId, final long spouseId ) {
+
+        if ( personId <= 0L || spouseId <= 0L || personId == spouseId ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGraph.addMarriage:  need two different positive Person.Ids (got personId=" + personId + ", spouseId=" + spouseId + ")"
+            );
+
+        }
+
+        addMarriage( getOrAddIndex( personId ), getOrAddIndex( spouseId ) );
+        _adjacency = null;
+
+    }
+
+    /**
+     Fold one profile's own fields into the graph (relatives are dealt with by {@link #add(WikiTreePersonProfile)}).
+     */
+
+    private int addProfile( final @NotNull WikiTreePersonProfile profile ) {
+
+        long personId = profile.getPersonId();
+        if ( personId <= 0L ) {
+
+            throw new IllegalArgumentException( "WikiTreeGenealogyGraph.add:  profile has no Person.Id (got " + profile.get( WikiTreePersonProfile.NAME ) + ")" );
+
+        }
+
+        int ix = getOrAddIndex( personId );
+        _profilesAdded += 1L;
+
+        Object nameObj = profile.get( WikiTreePersonProfile.NAME );
+        if ( nameObj instanceof String && _nameLength[ix] == 0 ) {
+
+            setName( ix, (String)nameObj );
+
+        }
+
+        byte flags = (byte)( _flags[ix] | KNOWN );
+        if ( profile.isGenderMale() ) {
+
+            flags = (byte)( ( flags & ~FEMALE ) | MALE );
+
+        } else if ( profile.isGenderFemale() ) {
+
+            flags = (byte)( ( flags & ~MALE ) | FEMALE );
+
+        }
+
+        Object isLivingObj = profile.get( WikiTreePersonProfile.IS_LIVING );
+        if ( isLivingObj instanceof Number ) {
+
+            flags = (byte)( ( (Number)isLivingObj ).intValue() == 1 ? flags | LIVING : flags & ~LIVING );
+
+        }
+
+        _flags[ix] = flags;
+
+        int birthDate = parseDate( profile.get( WikiTreePersonProfile.BIRTH_DATE ) );
+        if ( birthDate != 0 ) {
+
+            _birthDate[ix] = birthDate;
+
+        }
+
+        int deathDate = parseDate( profile.get( WikiTreePersonProfile.DEATH_DATE ) );
+        if ( deathDate != 0 ) {
+
+            _deathDate[ix] = deathDate;
+
+        }
+
+        long fatherId = parsePersonId( profile.get( WikiTreePersonProfile.FATHER ) );
+        if ( fatherId > 0L && fatherId != personId ) {
+
+            _father[ix] = getOrAddIndex( fatherId );
+
+        }
+
+        long motherId = parsePersonId( profile.get( WikiTreePersonProfile.MOTHER ) );
+        if ( motherId > 0L && motherId != personId ) {
+
+            _mother[ix] = getOrAddIndex( motherId );
+
+        }
+
+        _adjacency = null;
+
+        return ix;
+
+    }
+
+    private void addMarriage( final int ix, final int spouse ) {
+
+        if ( ix == spouse ) {
+
+            return;
+
+        }
+
+        if ( _spousePairCount * 2 == _spousePairs.length ) {
+
+            _spousePairs = Arrays.copyOf( _spousePairs, _spousePairs.length * 2 );
+
+        }
+
+        _spousePairs[_spousePairCount * 2] = Math.min( ix, spouse );
+        _spousePairs[_spousePairCount * 2 + 1] = Math.max( ix, spouse );
+        _spousePairCount += 1;
+
+    }
+
+    /**
+     Get someone's index, giving them one if they don't have one yet.
+     */
+
+    private int getOrAddIndex( final long personId ) {
+
+        int mask = _idSlotKeys.length - 1;
+        int slot = hash( personId ) & mask;
+        while ( _idSlotKeys[slot] != 0L ) {
+
+            if ( _idSlotKeys[slot] == personId ) {
+
+                return _idSlotIndices[slot];
+
+            }
+
+            slot = ( slot + 1 ) & mask;
+
+        }
+
+        if ( _size == _personIds.length ) {
+
+            grow();
+
+            return getOrAddIndex( personId );
+
+        }
+
+        int ix = _size++;
+        _personIds[ix] = personId;
+        _father[ix] = NOBODY;
+        _mother[ix] = NOBODY;
+        _idSlotKeys[slot] = personId;
+        _idSlotIndices[slot] = ix;
+
+        return ix;
+
+    }
+
+    private void setName( final int ix, final @NotNull String name ) {
+
+        byte[] bytes = name.getBytes( StandardCharsets.UTF_8 );
+        if ( bytes.length == 0 || bytes.length > Short.MAX_VALUE ) {
+
+            return;
+
+        }
+
+        // A WikiTree ID that already belongs to someone else stays with them.
+
+        if ( indexOf( bytes ) != NOBODY ) {
+
+            return;
+
+        }
+
+        if ( _namesLength + bytes.length > _names.length ) {
+
+            _names = Arrays.copyOf( _names, Math.max( _names.length * 2, _namesLength + bytes.length ) );
+
+        }
+
+        System.arraycopy( bytes, 0, _names, _namesLength, bytes.length );
+        _nameStart[ix] = _namesLength;
+        _nameLength[ix] = (short)bytes.length;
+        _namesLength += bytes.length;
+
+        int mask = _nameSlots.length - 1;
+        int slot = hash( bytes ) & mask;
+        while ( _nameSlots[slot] != 0 ) {
+
+            slot = ( slot + 1 ) & mask;
+
+        }
+
+        _nameSlots[slot] = ix + 1;
+        _namedPeople += 1;
+
+    }
+
+    /**
+     Make room for more people (the hash tables are kept at most half full).
+     */
+
+    private void grow() {
+
+        int capacity = _personIds.length * 2;
+        _personIds = Arrays.copyOf( _personIds, capacity );
+        _father = Arrays.copyOf( _father, capacity );
+        _mother = Arrays.copyOf( _mother, capacity );
+        _birthDate = Arrays.copyOf( _birthDate, capacity );
+        _deathDate = Arrays.copyOf( _deathDate, capacity );
+        _flags = Arrays.copyOf( _flags, capacity );
+        _nameStart = Arrays.copyOf( _nameStart, capacity );
+        _nameLength = Arrays.copyOf( _nameLength, capacity );
+
+        int slots = Integer.highestOneBit( capacity * 2 - 1 ) * 2;
+        int mask = slots - 1;
+        _idSlotKeys = new long[slots];
+        _idSlotIndices = new int[slots];
+        _nameSlots = new int[slots];
+        for ( int ix = 0; ix < _size; ix += 1 ) {
+
+            int slot = hash( _personIds[ix] ) & mask;
+            while ( _idSlotKeys[slot] != 0L ) {
+
+                slot = ( slot + 1 ) & mask;
+
+            }
+
+            _idSlotKeys[slot] = _personIds[ix];
+            _idSlotIndices[slot] = ix;
+
+            if ( _nameLength[ix] > 0 ) {
+
+                slot = hash( _names, _nameStart[ix], _nameLength[ix] ) & mask;
+                while ( _nameSlots[slot] != 0 ) {
+
+                    slot = ( slot + 1 ) & mask;
+
+                }
+
+                _nameSlots[slot] = ix + 1;
+
+            }
+
+        }
+
+    }
+
+    /**
+     Rebuild the children and spouses arrays (if anything has been added since they were last built).
+     <p/>Queries that need them call this method automatically. Calling it once loading is finished gets it over with
+     (and makes the graph safe to query from several threads at once).
+     Duplicate marriages are dropped along the way.
+     */
+
+    public synchronized void compact() {
+
+        if ( _adjacency == null ) {
+
+            _adjacency = buildAdjacency();
+
+        }
+
+    }
+
+    private Adjacency buildAdjacency() {
+
+        // Children, from everyone's father and mother. Children end up in index order (the order that they were first seen).
+
+        int[] childOffsets = new int[_size + 1];
+        for ( int ix = 0; ix < _size; ix += 1 ) {
+
+            if ( _father[ix] != NOBODY ) {
+
+                childOffsets[_father[ix] + 1] += 1;
+
+            }
+
+            if ( _mother[ix] != NOBODY ) {
+
+                childOffsets[_mother[ix] + 1] += 1;
+
+            }
+
+        }
+
+        prefixSum( childOffsets );
+        int[] children = new int[childOffsets[_size]];
+        int[] next = Arrays.copyOf( childOffsets, _size );
+        for ( int ix = 0; ix < _size; ix += 1 ) {
+
+            if ( _father[ix] != NOBODY ) {
+
+                children[next[_father[ix]]++] = ix;
+
+            }
+
+            if ( _mother[ix] != NOBODY ) {
+
+                children[next[_mother[ix]]++] = ix;
+
+            }
+
+        }
+
+        // Spouses. Sort the marriages (each packed into a long) to get rid of duplicates, then keep just the unique ones.
+
+        long[] pairs = new long[_spousePairCount];
+        for ( int px = 0; px < _spousePairCount; px += 1 ) {
+
+            pairs[px] = ( (long)_spousePairs[px * 2] << 32 ) | _spousePairs[px * 2 + 1];
+
+        }
+
+        Arrays.sort( pairs );
+        int unique = 0;
+        for ( int px = 0; px < pairs.length; px += 1 ) {
+
+            if ( px == 0 || pairs[px] != pairs[px - 1] ) {
+
+                _spousePairs[unique * 2] = (int)( pairs[px] >>> 32 );
+                _spousePairs[unique * 2 + 1] = (int)pairs[px];
+                unique += 1;
+
+            }
+
+        }
+
+        _spousePairCount = unique;
+
+        int[] spouseOffsets = new int[_size + 1];
+        for ( int px = 0; px < _spousePairCount * 2; px += 1 ) {
+
+            spouseOffsets[_spousePairs[px] + 1] += 1;
+
+        }
+
+        prefixSum( spouseOffsets );
+        int[] spouses = new int[spouseOffsets[_size]];
+        next = Arrays.copyOf( spouseOffsets, _size );
+        for ( int px = 0; px < _spousePairCount; px += 1 ) {
+
+            int a = _spousePairs[px * 2];
+            int b = _spousePairs[px * 2 + 1];
+            spouses[next[a]++] = b;
+            spouses[next[b]++] = a;
+
+        }
+
+        return new Adjacency( childOffsets, children, spouseOffsets, spouses );
+
+    }
+
+    private Adjacency getAdjacency() {
+
+        Adjacency adjacency = _adjacency;
+        if ( adjacency == null ) {
+
+            compact();
+            adjacency = _adjacency;
+
+        }
+
+        return adjacency;
+
+    }
+
+    /**
+     Get the number of people in this graph (including people who have only been mentioned; see {@link #isKnown(int)}).
+     */
+
+    public int size() {
+
+        return _size;
+
+    }
+
+    /**
+     Get the number of profiles that have been added (a person whose profile was added more than once is counted each time).
+     */
+
+    public long getProfilesAdded() {
+
+        return _profilesAdded;
+
+    }
+
+    /**
+     Get the number of distinct marriages in this graph.
+     */
+
+    public int getMarriageCount() {
+
+        getAdjacency();
+
+        return _spousePairCount;
+
+    }
+
+    /**
+     Get someone's index.
+
+     @param personId their Person.Id.
+     @return their index or {@link #NOBODY} if they aren't in this graph.
+     */
+
+    public int indexOf( final long personId ) {
+
+        if ( personId <= 0L ) {
+
+            return NOBODY;
+
+        }
+
+        int mask = _idSlotKeys.length - 1;
+        int slot = hash( personId ) & mask;
+        while ( _idSlotKeys[slot] != 0L ) {
+
+            if ( _idSlotKeys[slot] == personId ) {
+
+                return _idSlotIndices[slot];
+
+            }
+
+            slot = ( slot + 1 ) & mask;
+
+        }
+
+        return NOBODY;
+
+    }
+
+    /**
+     Get someone's index.
+
+     @param wikiTreeId their WikiTree ID.
+     @return their index or {@link #NOBODY} if nobody in this graph is known to have that WikiTree ID.
+     */
+
+    public int indexOf( final @NotNull WikiTreeId wikiTreeId ) {
+
+        return indexOf( wikiTreeId.getValueString().getBytes( StandardCharsets.UTF_8 ) );
+
+    }
+
+    private int indexOf( final byte[] name ) {
+
+        int mask = _nameSlots.length - 1;
+        int slot = hash( name ) & mask;
+        while ( _nameSlots[slot] != 0 ) {
+
+            int ix = _nameSlots[slot] - 1;
+            if ( _nameLength[ix] == name.length && nameEquals( ix, name ) ) {
+
+                return ix;
+
+            }
+
+            slot = ( slot + 1 ) & mask;
+
+        }
+
+        return NOBODY;
+
+    }
+
+    private boolean nameEquals( final int ix, final byte[] name ) {
+
+        int start = _nameStart[ix];
+        for ( int bx = 0; bx < name.length; bx += 1 ) {
+
+            if ( _names[start + bx] != name[bx] ) {
+
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     Get someone's Person.Id.
+
+     @param ix their index.
+     @return their Person.Id.
+     */
+
+    public long getPersonId( final int ix ) {
+
+        return _personIds[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's WikiTree ID.
+
+     @param ix their index.
+     @return their WikiTree ID or {@code null} if they have only been mentioned (nobody has added a profile for them).
+     */
+
+    @Nullable
+    public String getWikiTreeId( final int ix ) {
+
+        checkIndex( ix );
+
+        return _nameLength[ix] == 0 ? null : new String( _names, _nameStart[ix], _nameLength[ix], StandardCharsets.UTF_8 );
+
+    }
+
+    /**
+     Determine if a profile for someone has been added.
+
+     @param ix their index.
+     @return {@code true} if a profile for them has been added (as a person or as someone's relative);
+     {@code false} if they have only been mentioned (as someone's father or mother, for example).
+     */
+
+    public boolean isKnown( final int ix ) {
+
+        return ( _flags[checkIndex( ix )] & KNOWN ) != 0;
+
+    }
+
+    /**
+     Determine if someone is male.
+
+     @param ix their index.
+     @return {@code true} if they are known to be male.
+     */
+
+    public boolean isMale( final int ix ) {
+
+        return ( _flags[checkIndex( ix )] & MALE ) != 0;
+
+    }
+
+    /**
+     Determine if someone is female.
+
+     @param ix their index.
+     @return {@code true} if they are known to be female.
+     */
+
+    public boolean isFemale( final int ix ) {
+
+        return ( _flags[checkIndex( ix )] & FEMALE ) != 0;
+
+    }
+
+    /**
+     Determine if someone is living.
+
+     @param ix their index.
+     @return {@code true} if their profile says that they are living.
+     */
+
+    public boolean isLiving( final int ix ) {
+
+        return ( _flags[checkIndex( ix )] & LIVING ) != 0;
+
+    }
+
+    /**
+     Get someone's birth date.
+
+     @param ix their index.
+     @return their birth date as a {@code yyyymmdd} integer (for example, {@code 18741130}; unknown parts are 0) or 0 if it is unknown.
+     */
+
+    public int getBirthDate( final int ix ) {
+
+        return _birthDate[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's death date.
+
+     @param ix their index.
+     @return their death date as a {@code yyyymmdd} integer (unknown parts are 0) or 0 if it is unknown.
+     */
+
+    public int getDeathDate( final int ix ) {
+
+        return _deathDate[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's father.
+
+     @param ix their index.
+     @return their father's index or {@link #NOBODY} if their father is unknown.
+     */
+
+    public int getFather( final int ix ) {
+
+        return _father[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's mother.
+
+     @param ix their index.
+     @return their mother's index or {@link #NOBODY} if their mother is unknown.
+     */
+
+    public int getMother( final int ix ) {
+
+        return _mother[checkIndex( ix )];
+
+    }
+
+    /**
+     Get the number of children someone has.
+
+     @param ix their index.
+     @return how many of their children are in this graph.
+     */
+
+    public int getChildCount( final int ix ) {
+
+        Adjacency adjacency = getAdjacency();
+
+        return adjacency._childOffsets[checkIndex( ix ) + 1] - adjacency._childOffsets[ix];
+
+    }
+
+    /**
+     Get one of someone's children.
+
+     @param ix their index.
+     @param nth which child (0 through {@link #getChildCount(int)}-1; children are in the order that they were first seen).
+     @return the child's index.
+     @throws IndexOutOfBoundsException if there is no such child.
+     */
+
+    public int getChild( final int ix, final int nth ) {
+
+        Adjacency adjacency = getAdjacency();
+        int offset = adjacency._childOffsets[checkIndex( ix )];
+        if ( nth < 0 || offset + nth >= adjacency._childOffsets[ix + 1] ) {
+
+            throw new IndexOutOfBoundsException(
+                    "WikiTreeGenealogyGraph.getChild:  no such child (got ix=" + ix + ", nth=" + nth + ", children=" + getChildCount( ix ) + ")"
+            );
+
+        }
+
+        return adjacency._children[offset + nth];
+
+    }
+
+    /**
+     Get someone's children.
+
+     @param ix their index.
+     @return a new array containing their children's indices (in the order that they were first seen).
+     */
+
+    @NotNull
+    public int[] getChildren( final int ix ) {
+
+        Adjacency adjacency = getAdjacency();
+
+        return Arrays.copyOfRange( adjacency._children, adjacency._childOffsets[checkIndex( ix )], adjacency._childOffsets[ix + 1] );
+
+    }
+
+    /**
+     Get the number of spouses someone has.
+
+     @param ix their index.
+     @return how many of their spouses are in this graph.
+     */
+
+    public int getSpouseCount( final int ix ) {
+
+        Adjacency adjacency = getAdjacency();
+
+        return adjacency._spouseOffsets[checkIndex( ix ) + 1] - adjacency._spouseOffsets[ix];
+
+    }
+
+    /**
+     Get one of someone's spouses.
+
+     @param ix  their index.
+     @param nth which spouse (0 through {@link #getSpouseCount(int)}-1; spouses are in index order).
+     @return the spouse's index.
+     @throws IndexOutOfBoundsException if there is no such spouse.
+     */
+
+    public int getSpouse( final int ix, final int nth ) {
+
+        Adjacency adjacency = getAdjacency();
+        int offset = adjacency._spouseOffsets[checkIndex( ix )];
+        if ( nth < 0 || offset + nth >= adjacency._spouseOffsets[ix + 1] ) {
+
+            throw new IndexOutOfBoundsException(
+                    "WikiTreeGenealogyGraph.getSpouse:  no such spouse (got ix=" + ix + ", nth=" + nth + ", spouses=" + getSpouseCount( ix ) + ")"
+            );
+
+        }
+
+        return adjacency._spouses[offset + nth];
+
+    }
+
+    /**
+     Get someone's spouses.
+
+     @param ix their index.
+     @return a new array containing their spouses' indices (in index order).
+     */
+
+    @NotNull
+    public int[] getSpouses( final int ix ) {
+
+        Adjacency adjacency = getAdjacency();
+
+        return Arrays.copyOfRange( adjacency._spouses, adjacency._spouseOffsets[checkIndex( ix )], adjacency._spouseOffsets[ix + 1] );
+
+    }
+
+    /**
+     Get someone's siblings.
+
+     @param ix their index.
+     @return a new array containing the indices of everyone who shares a known parent with them (half-siblings included) in index order.
+     */
+
+    @NotNull
+    public int[] getSiblings( final int ix ) {
+
+        int father = getFather( ix );
+        int mother = _mother[ix];
+        int[] fromFather = father == NOBODY ? NO_PEOPLE : getChildren( father );
+        int[] fromMother = mother == NOBODY ? NO_PEOPLE : getChildren( mother );
+
+        // Both lists are in index order so merge them.
+
+        int[] rval = new int[fromFather.length + fromMother.length];
+        int count = 0;
+        int fx = 0;
+        int mx = 0;
+        while ( fx < fromFather.length || mx < fromMother.length ) {
+
+            int sibling;
+            if ( mx >= fromMother.length || ( fx < fromFather.length && fromFather[fx] <= fromMother[mx] ) ) {
+
+                sibling = fromFather[fx++];
+                if ( mx < fromMother.length && fromMother[mx] == sibling ) {
+
+                    mx += 1;
+
+                }
+
+            } else {
+
+                sibling = fromMother[mx++];
+
+            }
+
+            if ( sibling != ix ) {
+
+                rval[count++] = sibling;
+
+            }
+
+        }
+
+        return Arrays.copyOf( rval, count );
+
+    }
+
+    /**
+     Estimate how much memory this graph is using.
+
+     @return the approximate number of bytes used by this graph's arrays.
+     */
+
+    public long getMemoryUsage() {
+
+        long bytes = _personIds.length * 8L + ( _father.length + _mother.length + _birthDate.length + _deathDate.length + _nameStart.length ) * 4L +
+                     _flags.length + _nameLength.length * 2L + _names.length +
+                     _idSlotKeys.length * 8L + _idSlotIndices.length * 4L + _nameSlots.length * 4L + _spousePairs.length * 4L;
+
+        Adjacency adjacency = _adjacency;
+        if ( adjacency != null ) {
+
+            bytes += ( adjacency._childOffsets.length + adjacency._children.length + adjacency._spouseOffsets.length + adjacency._spouses.length ) * 4L;
+
+        }
+
+        return bytes;
+
+    }
+
+    private int checkIndex( final int ix ) {
+
+        if ( ix < 0 || ix >= _size ) {
+
+            throw new IndexOutOfBoundsException( "WikiTreeGenealogyGraph:  no such person (got ix=" + ix + ", size=" + _size + ")" );
+
+        }
+
+        return ix;
+
+    }
+
+    private static void prefixSum( final int[] counts ) {
+
+        for ( int ix = 1; ix < counts.length; ix += 1 ) {
+
+            counts[ix] += counts[ix - 1];
+
+        }
+
+    }
+
+    private static int hash( final long personId ) {
+
+        long h = personId * 0x9E3779B97F4A7C15L;
+
+        return (int)( h ^ ( h >>> 32 ) );
+
+    }
+
+    private static int hash( final byte[] bytes ) {
+
+        return hash( bytes, 0, bytes.length );
+
+    }
+
+    private static int hash( final byte[] bytes, final int start, final int length ) {
+
+        int h = 0;
+        for ( int bx = start; bx < start + length; bx += 1 ) {
+
+            h = 31 * h + bytes[bx];
+
+        }
+
+        return hash( (long)h );
+
+    }
+
+    /**
+     Turn a WikiTree date ({@code "yyyy-mm-dd"}, with zeros for unknown parts) into a {@code yyyymmdd} integer.
+
+     @return the date or 0 if it isn't in that form.
+     */
+
+    private static int parseDate( @Nullable final Object dateObj ) {
+
+        if ( !( dateObj instanceof String ) ) {
+
+            return 0;
+
+        }
+
+        String date = (String)dateObj;
+        if ( date.length() != 10 || date.charAt( 4 ) != '-' || date.charAt( 7 ) != '-' ) {
+
+            return 0;
+
+        }
+
+        int rval = 0;
+        for ( int cx = 0; cx < 10; cx += 1 ) {
+
+            if ( cx != 4 && cx != 7 ) {
+
+                char c = date.charAt( cx );
+                if ( c < '0' || c > '9' ) {
+
+                    return 0;
+
+                }
+
+                rval = rval * 10 + ( c - '0' );
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    private static long parsePersonId( @Nullable final Object personIdObj ) {
+
+        if ( personIdObj instanceof Number ) {
+
+            return ( (Number)personIdObj ).longValue();
+
+        } else if ( personIdObj instanceof String ) {
+
+            try {
+
+                return Long.parseLong( (String)personIdObj );
+
+            } catch ( NumberFormatException e ) {
+
+                return 0L;
+
+            }
+
+        }
+
+        return 0L;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeGenealogyGraph( people=" + _size + ", named=" + _namedPeople + ", spousePairs=" + _spousePairCount +
+               ", profilesAdded=" + _profilesAdded + " )";
+
+    }
+
+}
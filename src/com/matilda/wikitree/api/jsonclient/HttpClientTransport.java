@@ -0,0 +1,573 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ A {@link WikiTreeApiTransport} which uses {@code java.net.http.HttpClient}.
+ <p/>By default, the client asks for HTTP/2. If the server agrees then all of the requests in flight to that server share a single
+ connection (each request is a separate stream on the connection). If the server only speaks HTTP/1.1 then the client quietly falls back
+ to a pool of keep-alive connections.
+ <p/>{@link HttpRequest.Builder#timeout(Duration)} only limits how long the client waits for the response's headers. This transport gives the body
+ the same amount of time again (measured from when the headers arrive) and then abandons the exchange with an {@link HttpTimeoutException}
+ (a server which sends its headers and then stalls would otherwise tie up the caller forever).
+ <p/>The number of requests in flight to any one host is limited by a {@link WikiTreeConnectionPool} just like it is for
+ {@link HttpUrlConnectionTransport} (multiplexing makes each request cheap for us but not for the server). A request which has to wait for its turn
+ does so without tying up a thread if it was sent via {@link #getAsync(URL, Map)}. A request holds onto its slot in the pool until the body of its
+ response has been closed (or, for {@link #getAsync(URL, Map)}, until the body has arrived).
+ <p/>One {@link HttpClient} (and therefore one instance of this class) can and should be shared by every session in the JVM.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class HttpClientTransport implements WikiTreeApiTransport {
+
+    private static ScheduledThreadPoolExecutor s_deadlineTimer;
+
+    private final HttpClient _httpClient;
+
+    private final Duration _requestTimeout;
+
+    private final WikiTreeConnectionPool _connectionPool;
+
+    /**
+     Create a transport with its own HTTP/2 capable {@link HttpClient} which follows redirects the same way that
+     {@link java.net.HttpURLConnection} does, which uses the default timeouts and which uses a new {@link WikiTreeConnectionPool}
+     with the default number of connections per host.
+     */
+
+    public HttpClientTransport() {
+
+        this( new WikiTreeConnectionPool() );
+
+    }
+
+    /**
+     Create a transport with its own HTTP/2 capable {@link HttpClient} (see {@link #HttpClientTransport()}) which uses a specified {@link WikiTreeConnectionPool}.
+     <p/>Sharing one pool between several transports limits their combined load on the server.
+
+     @param connectionPool the pool which limits the number of requests in flight to each host.
+     */
+
+    public HttpClientTransport( final @NotNull WikiTreeConnectionPool connectionPool ) {
+
+        this(
+                HttpClient.newBuilder()
+                          .version( HttpClient.Version.HTTP_2 )
+                          .followRedirects( HttpClient.Redirect.NORMAL )
+                          .connectTimeout( Duration.ofMillis( DEFAULT_CONNECT_TIMEOUT_MILLIS ) )
+                          .build(),
+                Duration.ofMillis( DEFAULT_READ_TIMEOUT_MILLIS ),
+                connectionPool
+        );
+
+    }
+
+    /**
+     Create a transport which uses a specified {@link HttpClient} and waits up to {@link #DEFAULT_READ_TIMEOUT_MILLIS} milliseconds for each response.
+     <p/>The client's connect timeout (if any) is whatever it was built with.
+
+     @param httpClient the client to use.
+     */
+
+    public HttpClientTransport( final @NotNull HttpClient httpClient ) {
+
+        this( httpClient, Duration.ofMillis( DEFAULT_READ_TIMEOUT_MILLIS ) );
+
+    }
+
+    /**
+     Create a transport which uses a specified {@link HttpClient}, a specified response timeout
+     and a new {@link WikiTreeConnectionPool} with the default number of connections per host.
+
+     @param httpClient     the client to use.
+     @param requestTimeout how long to wait for the server to start responding to each request and then how long to wait for the rest of the response
+                           ({@code null} means forever).
+     */
+
+    public HttpClientTransport( final @NotNull HttpClient httpClient, @Nullable final Duration requestTimeout ) {
+
+        this( httpClient, requestTimeout, new WikiTreeConnectionPool() );
+
+    }
+
+    /**
+     Create a transport which uses a specified {@link HttpClient}, a specified response timeout and a specified {@link WikiTreeConnectionPool}.
+
+     @param httpClient     the client to use.
+     @param requestTimeout how long to wait for the server to start responding to each request and then how long to wait for the rest of the response
+                           ({@code null} means forever).
+     @param connectionPool the pool which limits the number of requests in flight to each host.
+     */
+
+    public HttpClientTransport(
+            final @NotNull HttpClient httpClient,
+            @Nullable final Duration requestTimeout,
+            final @NotNull WikiTreeConnectionPool connectionPool
+    ) {
+
+        super();
+
+        _httpClient = httpClient;
+        _requestTimeout = requestTimeout;
+        _connectionPool = connectionPool;
+
+    }
+
+    /**
+     Get the {@link HttpClient} used by this transport.
+
+     @return the {@link HttpClient} used by this transport.
+     */
+
+    @NotNull
+    public HttpClient getHttpClient() {
+
+        return _httpClient;
+
+    }
+
+    /**
+     Get how long this transport waits for the server to start responding to each request (and then for the body of the response).
+
+     @return the request timeout or {@code null} if this transport waits forever.
+     */
+
+    @Nullable
+    public Duration getRequestTimeout() {
+
+        return _requestTimeout;
+
+    }
+
+    /**
+     Get the pool which limits the number of requests in flight to each host.
+
+     @return the pool which limits the number of requests in flight to each host.
+     */
+
+    @NotNull
+    public WikiTreeConnectionPool getConnectionPool() {
+
+        return _connectionPool;
+
+    }
+
+    @Override
+    @NotNull
+    public WikiTreeApiResponse get( final @NotNull URL url, final @NotNull Map<String, String> requestHeaders )
+            throws IOException {
+
+        HttpRequest request = buildRequest( url, requestHeaders );
+
+        _connectionPool.acquire( url );
+
+        boolean handedOff = false;
+        try {
+
+            HttpResponse<InputStream> response = _httpClient.send( request, HttpResponse.BodyHandlers.ofInputStream() );
+
+            InputStream body = new ReleasingInputStream( response.body(), url );
+            handedOff = true;
+
+            return new WikiTreeApiResponse(
+                    url,
+                    response.statusCode(),
+                    response.headers().map(),
+                    _requestTimeout == null ? body : new DeadlineInputStream( body, url, _requestTimeout ),
+                    response.headers().firstValueAsLong( "Content-Length" ).orElse( -1L )
+            );
+
+        } catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( "HttpClientTransport.get:  interrupted while waiting for a response from " + url.getHost() );
+
+        } finally {
+
+            if ( !handedOff ) {
+
+                _connectionPool.release( url );
+
+            }
+
+        }
+
+    }
+
+    /**
+     {@inheritDoc}
+     <p/>This transport never ties up a thread while waiting for the server. The body is collected into a byte array as it arrives
+     so that the response can be parsed without any further waiting.
+     */
+
+    @Override
+    @NotNull
+    public CompletableFuture<WikiTreeApiResponse> getAsync( final @NotNull URL url, final @NotNull Map<String, String> requestHeaders ) {
+
+        HttpRequest request;
+        try {
+
+            request = buildRequest( url, requestHeaders );
+
+        } catch ( MalformedURLException e ) {
+
+            return CompletableFuture.failedFuture( e );
+
+        }
+
+        // Wait for our turn without tying up a thread. Cancelling our result while we're waiting gives up our place in line.
+
+        CompletableFuture<WikiTreeApiResponse> result = new CompletableFuture<>();
+        CompletableFuture<Void> permit = _connectionPool.acquireAsync( url );
+        result.whenComplete(
+                ( response, e ) -> {
+
+                    if ( result.isCancelled() ) {
+
+                        permit.cancel( false );
+
+                    }
+
+                }
+        );
+        permit.thenRun(
+                () -> {
+
+                    if ( result.isDone() ) {
+
+                        _connectionPool.release( url );
+
+                    } else {
+
+                        sendAsync( url, request, result );
+
+                    }
+
+                }
+        );
+
+        return result;
+
+    }
+
+    private void sendAsync( final @NotNull URL url, final @NotNull HttpRequest request, final @NotNull CompletableFuture<WikiTreeApiResponse> result ) {
+
+        // The body handler is called once the headers have arrived which is when the body's deadline starts.
+        // Cancelling the exchange (because the deadline passed or because the caller cancelled the result) abandons the request.
+
+        ScheduledFuture<?>[] deadline = new ScheduledFuture<?>[1];
+        CompletableFuture<HttpResponse<byte[]>> exchange = _httpClient.sendAsync(
+                request,
+                responseInfo -> {
+
+                    if ( _requestTimeout != null ) {
+
+                        deadline[0] = getDeadlineTimer().schedule(
+                                () -> result.completeExceptionally( makeBodyTimeoutException( url, _requestTimeout ) ),
+                                _requestTimeout.toNanos(),
+                                TimeUnit.NANOSECONDS
+                        );
+
+                    }
+
+                    return HttpResponse.BodySubscribers.ofByteArray();
+
+                }
+        );
+
+        exchange.whenComplete(
+                ( response, e ) -> {
+
+                    _connectionPool.release( url );
+
+                    if ( deadline[0] != null ) {
+
+                        deadline[0].cancel( false );
+
+                    }
+
+                    if ( e != null ) {
+
+                        result.completeExceptionally( e instanceof CompletionException && e.getCause() != null ? e.getCause() : e );
+
+                    } else {
+
+                        result.complete(
+                                new WikiTreeApiResponse(
+                                        url,
+                                        response.statusCode(),
+                                        response.headers().map(),
+                                        new ByteArrayInputStream( response.body() ),
+                                        response.body().length
+                                )
+                        );
+
+                    }
+
+                }
+        );
+
+        result.whenComplete(
+                ( response, e ) -> {
+
+                    if ( e != null ) {
+
+                        exchange.cancel( true );
+
+                    }
+
+                }
+        );
+
+    }
+
+    /**
+     Build the {@link HttpRequest} for a GET of a specified URL.
+
+     @param url            the URL.
+     @param requestHeaders the headers to include in the request.
+     @return the request.
+     @throws MalformedURLException if the URL cannot be converted into a {@link java.net.URI}.
+     */
+
+    @NotNull
+    protected HttpRequest buildRequest( final @NotNull URL url, final @NotNull Map<String, String> requestHeaders )
+            throws MalformedURLException {
+
+        HttpRequest.Builder builder;
+        try {
+
+            builder = HttpRequest.newBuilder( url.toURI() ).GET();
+
+        } catch ( URISyntaxException e ) {
+
+            MalformedURLException e2 = new MalformedURLException( "HttpClientTransport.buildRequest:  unable to convert \"" + url + "\" into a URI" );
+            e2.initCause( e );
+
+            throw e2;
+
+        }
+
+        for ( Map.Entry<String, String> header : requestHeaders.entrySet() ) {
+
+            builder.header( header.getKey(), header.getValue() );
+
+        }
+
+        if ( _requestTimeout != null ) {
+
+            builder.timeout( _requestTimeout );
+
+        }
+
+        return builder.build();
+
+    }
+
+    @NotNull
+    private static HttpTimeoutException makeBodyTimeoutException( final @NotNull URL url, final @NotNull Duration requestTimeout ) {
+
+        return new HttpTimeoutException(
+                "HttpClientTransport:  body of response from " + url.getHost() + " did not arrive within " + requestTimeout.toMillis() + "ms of its headers"
+        );
+
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getDeadlineTimer() {
+
+        if ( s_deadlineTimer == null ) {
+
+            s_deadlineTimer = new ScheduledThreadPoolExecutor(
+                    1,
+                    runnable -> {
+
+                        Thread thread = new Thread( runnable, "HttpClientTransport deadlines" );
+                        thread.setDaemon( true );
+
+                        return thread;
+
+                    }
+            );
+            s_deadlineTimer.setRemoveOnCancelPolicy( true );
+
+        }
+
+        return s_deadlineTimer;
+
+    }
+
+    /**
+     An input stream which hands our slot in the connection pool back when it is closed.
+     */
+
+    private class ReleasingInputStream extends FilterInputStream {
+
+        private final URL _url;
+
+        private final AtomicBoolean _released = new AtomicBoolean( false );
+
+        private ReleasingInputStream( final @NotNull InputStream in, final @NotNull URL url ) {
+
+            super( in );
+
+            _url = url;
+
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+
+            try {
+
+                super.close();
+
+            } finally {
+
+                if ( _released.compareAndSet( false, true ) ) {
+
+                    _connectionPool.release( _url );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     An input stream which gives up on the body of a response if it hasn't all been read (and closed) by a deadline.
+     <p/>Closing the stream that {@code HttpClient} hands us wakes up a thread which is blocked reading it and cancels the exchange.
+     */
+
+    private static class DeadlineInputStream extends FilterInputStream {
+
+        private final URL _url;
+
+        private final Duration _requestTimeout;
+
+        private final ScheduledFuture<?> _deadline;
+
+        private volatile boolean _timedOut = false;
+
+        private DeadlineInputStream( final @NotNull InputStream in, final @NotNull URL url, final @NotNull Duration requestTimeout ) {
+
+            super( in );
+
+            _url = url;
+            _requestTimeout = requestTimeout;
+            _deadline = getDeadlineTimer().schedule( this::expire, requestTimeout.toNanos(), TimeUnit.NANOSECONDS );
+
+        }
+
+        private void expire() {
+
+            _timedOut = true;
+
+            try {
+
+                in.close();
+
+            } catch ( IOException e ) {
+
+                // We're abandoning the body anyway.
+
+            }
+
+        }
+
+        private int check( final int rval )
+                throws HttpTimeoutException {
+
+            if ( _timedOut ) {
+
+                throw makeBodyTimeoutException( _url, _requestTimeout );
+
+            }
+
+            return rval;
+
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+
+            try {
+
+                return check( super.read() );
+
+            } catch ( IOException e ) {
+
+                check( 0 );
+
+                throw e;
+
+            }
+
+        }
+
+        @Override
+        public int read( final @NotNull byte[] b, final int off, final int len )
+                throws IOException {
+
+            try {
+
+                return check( super.read( b, off, len ) );
+
+            } catch ( IOException e ) {
+
+                check( 0 );
+
+                throw e;
+
+            }
+
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+
+            _deadline.cancel( false );
+
+            super.close();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "HttpClientTransport( version=" + _httpClient.version() + ", requestTimeout=" + _requestTimeout + ", " + _connectionPool + " )";
+
+    }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ A {@link WikiTreeApiTransport} which uses {@link HttpURLConnection}.
+ <p/>This is the transport that this package used before {@link HttpClientTransport} came along. It only speaks HTTP/1.1 so each
+ request in flight ties up its own socket. The number of requests in flight to any one host is limited by a {@link WikiTreeConnectionPool}.
+ A request holds onto its slot in the pool until the body of its response has been closed.
+ <p/>{@link HttpURLConnection} is inherently blocking so {@link #getAsync(URL, Map)} simply runs {@link #get(URL, Map)} on a (shared) background thread.
+ Use an {@link HttpClientTransport} if you need lots of requests in flight without lots of threads.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class HttpUrlConnectionTransport implements WikiTreeApiTransport {
+
+    private static ExecutorService s_asyncExecutor;
+
+    private final WikiTreeConnectionPool _connectionPool;
+
+    private final int _connectTimeoutMillis;
+
+    private final int _readTimeoutMillis;
+
+    /**
+     Create a transport which uses a new {@link WikiTreeConnectionPool} with the default number of connections per host.
+     */
+
+    public HttpUrlConnectionTransport() {
+
+        this( new WikiTreeConnectionPool() );
+
+    }
+
+    /**
+     Create a transport which uses a specified {@link WikiTreeConnectionPool}.
+     <p/>Sharing one pool between several transports limits their combined load on the server.
+
+     @param connectionPool the pool of connections that this transport is to use.
+     */
+
+    public HttpUrlConnectionTransport( final @NotNull WikiTreeConnectionPool connectionPool ) {
+
+        this( connectionPool, (int)DEFAULT_CONNECT_TIMEOUT_MILLIS, (int)DEFAULT_READ_TIMEOUT_MILLIS );
+
+    }
+
+    /**
+     Create a transport which uses a specified {@link WikiTreeConnectionPool} and specified timeouts.
+
+     @param connectionPool       the pool of connections that this transport is to use.
+     @param connectTimeoutMillis how long (in milliseconds) to wait for a connection to be established ({@code 0} means forever).
+     @param readTimeoutMillis    how long (in milliseconds) to wait for data from the server ({@code 0} means forever).
+     @throws IllegalArgumentException if either timeout is negative.
+     */
+
+    public HttpUrlConnectionTransport( final @NotNull WikiTreeConnectionPool connectionPool, final int connectTimeoutMillis, final int readTimeoutMillis ) {
+
+        super();
+
+        if ( connectTimeoutMillis < 0 || readTimeoutMillis < 0 ) {
+
+            throw new IllegalArgumentException(
+                    "HttpUrlConnectionTransport:  timeouts must not be negative " +
+                    "(got connectTimeoutMillis=" + connectTimeoutMillis + ", readTimeoutMillis=" + readTimeoutMillis + ")"
+            );
+
+        }
+
+        _connectionPool = connectionPool;
+        _connectTimeoutMillis = connectTimeoutMillis;
+        _readTimeoutMillis = readTimeoutMillis;
+
+    }
+
+    /**
+     Get the pool of persistent connections used by this transport.
+
+     @return the pool of persistent connections used by this transport.
+     */
+
+    @NotNull
+    public WikiTreeConnectionPool getConnectionPool() {
+
+        return _connectionPool;
+
+    }
+
+    /**
+     Get how long this transport waits for a connection to be established.
+
+     @return the connect timeout (in milliseconds; {@code 0} means forever).
+     */
+
+    public int getConnectTimeoutMillis() {
+
+        return _connectTimeoutMillis;
+
+    }
+
+    /**
+     Get how long this transport waits for data from the server.
+
+     @return the read timeout (in milliseconds; {@code 0} means forever).
+     */
+
+    public int getReadTimeoutMillis() {
+
+        return _readTimeoutMillis;
+
+    }
+
+    @Override
+    @NotNull
+    public WikiTreeApiResponse get( final @NotNull URL url, final @NotNull Map<String, String> requestHeaders )
+            throws IOException {
+
+        _connectionPool.acquire( url );
+
+        boolean handedOff = false;
+        try {
+
+            HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+            connection.setDoOutput( false );
+            connection.setDoInput( true );
+            connection.setConnectTimeout( _connectTimeoutMillis );
+            connection.setReadTimeout( _readTimeoutMillis );
+            for ( Map.Entry<String, String> header : requestHeaders.entrySet() ) {
+
+                connection.addRequestProperty( header.getKey(), header.getValue() );
+
+            }
+
+            connection.setRequestMethod( "GET" );
+
+            WikiTreeConnectEvent.connect( connection );
+
+            int statusCode = connection.getResponseCode();
+            InputStream rawBody = statusCode / 100 == 2 || statusCode / 100 == 3
+                    ?
+                    connection.getInputStream()
+                    :
+                    connection.getErrorStream();
+
+            WikiTreeApiResponse response = new WikiTreeApiResponse(
+                    url,
+                    statusCode,
+                    connection.getHeaderFields(),
+                    rawBody == null ? null : new ReleasingInputStream( rawBody, url ),
+                    connection.getContentLengthLong()
+            );
+
+            handedOff = rawBody != null;
+
+            return response;
+
+        } finally {
+
+            if ( !handedOff ) {
+
+                _connectionPool.release( url );
+
+            }
+
+        }
+
+    }
+
+    /**
+     {@inheritDoc}
+     <p/>Cancelling the returned future doesn't interrupt a request which is already in flight ({@link HttpURLConnection} can't be interrupted)
+     but the response is closed as soon as it arrives (which gives its slot in the connection pool back).
+     */
+
+    @Override
+    @NotNull
+    public CompletableFuture<WikiTreeApiResponse> getAsync( final @NotNull URL url, final @NotNull Map<String, String> requestHeaders ) {
+
+        CompletableFuture<WikiTreeApiResponse> result = new CompletableFuture<>();
+        getAsyncExecutor().execute(
+                () -> {
+
+                    if ( result.isDone() ) {
+
+                        // Cancelled before we got started.
+
+                        return;
+
+                    }
+
+                    try {
+
+                        WikiTreeApiResponse response = get( url, requestHeaders );
+                        if ( !result.complete( response ) ) {
+
+                            response.close();
+
+                        }
+
+                    } catch ( IOException | RuntimeException e ) {
+
+                        result.completeExceptionally( e );
+
+                    }
+
+                }
+        );
+
+        return result;
+
+    }
+
+    private static synchronized ExecutorService getAsyncExecutor() {
+
+        if ( s_asyncExecutor == null ) {
+
+            s_asyncExecutor = Executors.newCachedThreadPool(
+                    runnable -> {
+
+                        Thread thread = new Thread( runnable, "HttpUrlConnectionTransport async" );
+                        thread.setDaemon( true );
+
+                        return thread;
+
+                    }
+            );
+
+        }
+
+        return s_asyncExecutor;
+
+    }
+
+    /**
+     An input stream which hands our slot in the connection pool back when it is closed.
+     */
+
+    private class ReleasingInputStream extends FilterInputStream {
+
+        private final URL _url;
+
+        private final AtomicBoolean _released = new AtomicBoolean( false );
+
+        private ReleasingInputStream( final @NotNull InputStream in, final @NotNull URL url ) {
+
+            super( in );
+
+            _url = url;
+
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+
+            try {
+
+                super.close();
+
+            } finally {
+
+                if ( _released.compareAndSet( false, true ) ) {
+
+                    _connectionPool.release( _url );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "HttpUrlConnectionTransport( " + _connectionPool + ", connectTimeoutMillis=" + _connectTimeoutMillis + ", readTimeoutMillis=" + _readTimeoutMillis + " )";
+
+    }
+
+}
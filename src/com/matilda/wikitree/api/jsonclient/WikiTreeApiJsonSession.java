@@ -6,20 +6,41 @@ package com.matilda.wikitree.api.jsonclient;
 
 import com.matilda.wikitree.api.WikiTreeApiClient;
 import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.exceptions.WikiTreeHttpStatusException;
 import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
 import com.matilda.wikitree.api.wrappers.WikiTreeId;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.ParseException;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  A purely(?) JSON-based Java implementation of the WikiTree API.
@@ -40,23 +61,60 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     public static final String DEFAULT_BASE_SERVER_URL_STRING = "https://apps.wikitree.com/api.php";
 
-    private static int _miniServerPort;
+    private String _baseServerUrlString;
 
-    private static String _miniServerUrlString;
+    private static WikiTreeApiTransport s_defaultTransport;
 
-    private String _baseServerUrlString;
+    private final WikiTreeApiTransport _transport;
+
+    private volatile boolean _streamingResponses = false;
+
+    private volatile WikiTreeResponseCache _responseCache = null;
+
+    private volatile WikiTreeRequestThrottle _requestThrottle = null;
+
+    private volatile WikiTreeRetryPolicy _retryPolicy = null;
+
+    private volatile WikiTreeHedgingPolicy _hedgingPolicy = null;
+
+    private volatile WikiTreeCircuitBreaker _circuitBreaker = null;
+
+    private volatile WikiTreeRequestMetrics _requestMetrics = null;
+
+    private volatile boolean _coalescingRequests = false;
+
+    /**
+     The requests which are currently in flight (only used when coalescing requests), keyed by {@link #getCoalescingKey(JSONObject, AuthState)}.
+     */
+
+    private final ConcurrentMap<String, CompletableFuture<Optional<JSONObject>>> _inFlightRequests = new ConcurrentHashMap<>();
+
+    private final AtomicLong _coalescedRequests = new AtomicLong( 0L );
+
+    /*
+     The authentication state is read by every request (potentially from many threads at once) but only changed by {@link #login(String, String)}.
+     It lives in one immutable {@link AuthState} which is replaced (never updated) by a single volatile write.
+     A request grabs it exactly once and builds its headers, its response cache key and its coalescing key from what it grabbed
+     so that a concurrent login can't leave it with one user's cookies and another user's cache key.
+     Login attempts are serialized by {@link #_loginLock}.
+     */
+
+    private final Object _loginLock = new Object();
 
-    private Vector<String> _loginCookies;
+    private volatile AuthState _authState = AuthState.ANONYMOUS;
 
-    private String _authenticatedUserEmailAddress;
+    /*
+     The login cookies sent back by the server in response to the login attempt which is underway (guarded by {@link #_loginLock}).
+     They only get published (in an {@link AuthState}) once {@link #analyzeLoginResult(String, JSONObject)} has figured out who they belong to.
+     */
 
-    private String _authenticatedWikiTreeId;
+    private List<String> _pendingLoginCookies;
 
-    private String _loginResultStatus;
+    private volatile String _loginResultStatus;
 
     private static boolean s_showUrls = false;
 
-    private JSONObject _lastLoginResult;
+    private volatile JSONObject _lastLoginResult;
 
     /**
      Create a reusable anonymous WikiTree API client instance which sends its requests to the production WikiTree API server.
@@ -88,13 +146,342 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     /**
      Create a reusable anonymous WikiTree API client instance which sends its requests to a specified WikiTree API server.
 
-     @param baseServerUrlString the URL of the specified WikiTree API server.
+     @param baseServerUrlString the URL of the specified WikiTree API server
+     (for example, the {@link com.matilda.wikitree.api.miniserver.WikiTreeMiniServer#getUrlString()} of a local stand-in server).
      <p/>See {@link #WikiTreeApiJsonSession()} for more information about anonymous vs authenticated WikiTree API client instances.
      */
 
     public WikiTreeApiJsonSession( final String baseServerUrlString ) {
 
+        this( baseServerUrlString, getDefaultTransport() );
+
+    }
+
+    /**
+     Create a reusable anonymous WikiTree API client instance which sends its requests to a specified WikiTree API server
+     via {@link java.net.HttpURLConnection} using a specified pool of persistent connections.
+     <p/>The number of requests actually in flight to the WikiTree API server at any moment
+     is limited by the connection pool's {@link WikiTreeConnectionPool#getMaxConnectionsPerHost()} value (other requests wait their turn).
+     Sharing one {@link WikiTreeConnectionPool} between several sessions limits their combined load on the server.
+
+     @param baseServerUrlString the URL of the specified WikiTree API server ({@code null} means {@link #DEFAULT_BASE_SERVER_URL_STRING}).
+     @param connectionPool      the pool of connections that this instance is to use.
+     <p/>See {@link #WikiTreeApiJsonSession()} for more information about anonymous vs authenticated WikiTree API client instances.
+     */
+
+    public WikiTreeApiJsonSession( final String baseServerUrlString, final @NotNull WikiTreeConnectionPool connectionPool ) {
+
+        this( baseServerUrlString, new HttpUrlConnectionTransport( connectionPool ) );
+
+    }
+
+    /**
+     Create a reusable anonymous WikiTree API client instance which sends its requests to a specified WikiTree API server
+     using a specified transport.
+     <p/>Instances of this class are thread-safe. Any number of threads may issue requests via the same instance
+     (authenticated or not) at the same time.
+     See {@link WikiTreeApiTransport} for the transports that come with this package.
+
+     @param baseServerUrlString the URL of the specified WikiTree API server ({@code null} means {@link #DEFAULT_BASE_SERVER_URL_STRING}).
+     @param transport           the transport that this instance is to use to send its requests.
+     <p/>See {@link #WikiTreeApiJsonSession()} for more information about anonymous vs authenticated WikiTree API client instances.
+     */
+
+    public WikiTreeApiJsonSession( final String baseServerUrlString, final @NotNull WikiTreeApiTransport transport ) {
+
         _baseServerUrlString = baseServerUrlString == null ? DEFAULT_BASE_SERVER_URL_STRING : baseServerUrlString;
+        _transport = transport;
+
+    }
+
+    /**
+     Get the transport that sessions use if nobody says otherwise.
+     <p/>This is a single {@link HttpClientTransport} shared by every such session in this JVM or,
+     if {@code java.net.http} is not available in this JVM, a single {@link HttpUrlConnectionTransport}.
+     Either way, the transport's {@link WikiTreeConnectionPool} allows at most {@link WikiTreeConnectionPool#DEFAULT_MAX_CONNECTIONS_PER_HOST}
+     requests in flight to each host across all of those sessions. Sessions which need more should be given a transport with a bigger pool.
+
+     @return the default transport.
+     */
+
+    @NotNull
+    public static synchronized WikiTreeApiTransport getDefaultTransport() {
+
+        if ( s_defaultTransport == null ) {
+
+            try {
+
+                s_defaultTransport = new HttpClientTransport();
+
+            } catch ( LinkageError e ) {
+
+                s_defaultTransport = new HttpUrlConnectionTransport();
+
+            }
+
+        }
+
+        return s_defaultTransport;
+
+    }
+
+    /**
+     Get the transport used by this instance.
+
+     @return the transport used by this instance.
+     */
+
+    @NotNull
+    public WikiTreeApiTransport getTransport() {
+
+        return _transport;
+
+    }
+
+    /**
+     Specify whether responses from the WikiTree API server should be parsed as they arrive.
+     <p/>Normally, each response is read into a {@link String} which is then parsed. In streaming mode, the JSON parser reads directly
+     from the transport's response stream so a large response (for example, a 2MB {@code getWatchlist} result) never exists as one big string.
+     The results are the same either way. See {@link WikiTreeApiUtilities#readResponse(WikiTreeApiResponse, boolean, boolean)} for more information.
+
+     @param streamingResponses {@code true} if responses should be parsed as they arrive; {@code false} otherwise.
+     */
+
+    public void setStreamingResponses( final boolean streamingResponses ) {
+
+        _streamingResponses = streamingResponses;
+
+    }
+
+    /**
+     Determine if responses from the WikiTree API server are parsed as they arrive.
+     <p/>See {@link #setStreamingResponses(boolean)} for more information.
+
+     @return {@code true} if responses are parsed as they arrive; {@code false} otherwise.
+     */
+
+    public boolean isStreamingResponses() {
+
+        return _streamingResponses;
+
+    }
+
+    /**
+     Specify the persistent cache which this session is to use for the responses sent back by the WikiTree API server.
+     <p/>There is no cache by default. A session with a cache checks it before sending a request to the WikiTree API server
+     and saves the body of every successful response in it (login requests excepted).
+     A cache can be shared by any number of sessions (see {@link WikiTreeResponseCache} for why that's safe even if the sessions are logged in as different users).
+     <p/>A response which has to be saved is read in its entirety before it is parsed (even in streaming mode).
+
+     @param responseCache the cache or {@code null} if this session should not use a cache.
+     */
+
+    public void setResponseCache( @Nullable final WikiTreeResponseCache responseCache ) {
+
+        _responseCache = responseCache;
+
+    }
+
+    /**
+     Get the persistent cache which this session is using for the responses sent back by the WikiTree API server.
+     <p/>See {@link #setResponseCache(WikiTreeResponseCache)} for more information.
+
+     @return the cache or {@code null} if this session is not using a cache.
+     */
+
+    @Nullable
+    public WikiTreeResponseCache getResponseCache() {
+
+        return _responseCache;
+
+    }
+
+    /**
+     Specify the throttle which limits the rate and concurrency of the requests that this session sends to the WikiTree API server.
+     <p/>There is no throttle by default. A throttle can be shared by any number of sessions
+     (see {@link WikiTreeRequestThrottle} for more information).
+     <p/>Requests answered by the response cache (see {@link #setResponseCache(WikiTreeResponseCache)}) don't count against the throttle.
+
+     @param requestThrottle the throttle or {@code null} if this session's requests should not be throttled.
+     */
+
+    public void setRequestThrottle( @Nullable final WikiTreeRequestThrottle requestThrottle ) {
+
+        _requestThrottle = requestThrottle;
+
+    }
+
+    /**
+     Get the throttle which limits the rate and concurrency of the requests that this session sends to the WikiTree API server.
+     <p/>See {@link #setRequestThrottle(WikiTreeRequestThrottle)} for more information.
+
+     @return the throttle or {@code null} if this session's requests are not throttled.
+     */
+
+    @Nullable
+    public WikiTreeRequestThrottle getRequestThrottle() {
+
+        return _requestThrottle;
+
+    }
+
+    /**
+     Specify the policy which decides whether failed requests should be tried again.
+     <p/>There is no policy by default (a request which fails is not tried again).
+     A policy can be shared by any number of sessions (see {@link WikiTreeRetryPolicy} for more information).
+     Login requests are never tried again.
+
+     @param retryPolicy the policy or {@code null} if failed requests should not be tried again.
+     */
+
+    public void setRetryPolicy( @Nullable final WikiTreeRetryPolicy retryPolicy ) {
+
+        _retryPolicy = retryPolicy;
+
+    }
+
+    /**
+     Get the policy which decides whether failed requests should be tried again.
+     <p/>See {@link #setRetryPolicy(WikiTreeRetryPolicy)} for more information.
+
+     @return the policy or {@code null} if failed requests are not tried again.
+     */
+
+    @Nullable
+    public WikiTreeRetryPolicy getRetryPolicy() {
+
+        return _retryPolicy;
+
+    }
+
+    /**
+     Specify the policy which decides when slow {@code getPerson} and {@code getProfile} requests should be hedged (sent a second time).
+     <p/>There is no policy by default (requests are never hedged).
+     A policy can be shared by any number of sessions (see {@link WikiTreeHedgingPolicy} for more information).
+     <p/>Hedged requests are sent via the transport's {@link WikiTreeApiTransport#getAsync(URL, Map)} method even if the caller is waiting for the answer.
+
+     @param hedgingPolicy the policy or {@code null} if requests should not be hedged.
+     */
+
+    public void setHedgingPolicy( @Nullable final WikiTreeHedgingPolicy hedgingPolicy ) {
+
+        _hedgingPolicy = hedgingPolicy;
+
+    }
+
+    /**
+     Get the policy which decides when slow {@code getPerson} and {@code getProfile} requests should be hedged.
+     <p/>See {@link #setHedgingPolicy(WikiTreeHedgingPolicy)} for more information.
+
+     @return the policy or {@code null} if requests are not hedged.
+     */
+
+    @Nullable
+    public WikiTreeHedgingPolicy getHedgingPolicy() {
+
+        return _hedgingPolicy;
+
+    }
+
+    /**
+     Specify the circuit breaker which stops requests from being sent while the WikiTree API server seems to be down.
+     <p/>There is no circuit breaker by default. A circuit breaker can be shared by any number of sessions (see {@link WikiTreeCircuitBreaker} for more information).
+     <p/>A request which isn't sent because the circuit breaker is open fails with a
+     {@link com.matilda.wikitree.api.exceptions.WikiTreeCircuitOpenException} (which is never retried).
+     Requests which are served from the response cache (see {@link #setResponseCache(WikiTreeResponseCache)}) never check with the circuit breaker.
+
+     @param circuitBreaker the circuit breaker or {@code null} if requests should always be sent.
+     */
+
+    public void setCircuitBreaker( @Nullable final WikiTreeCircuitBreaker circuitBreaker ) {
+
+        _circuitBreaker = circuitBreaker;
+
+    }
+
+    /**
+     Get the circuit breaker which stops requests from being sent while the WikiTree API server seems to be down.
+     <p/>See {@link #setCircuitBreaker(WikiTreeCircuitBreaker)} for more information.
+
+     @return the circuit breaker or {@code null} if requests are always sent.
+     */
+
+    @Nullable
+    public WikiTreeCircuitBreaker getCircuitBreaker() {
+
+        return _circuitBreaker;
+
+    }
+
+    /**
+     Specify where the latency and throughput of this session's requests should be recorded.
+     <p/>Nothing is recorded by default. A metrics instance can be shared by any number of sessions (see {@link WikiTreeRequestMetrics} for more information).
+
+     @param requestMetrics the metrics or {@code null} if requests should not be measured.
+     */
+
+    public void setRequestMetrics( @Nullable final WikiTreeRequestMetrics requestMetrics ) {
+
+        _requestMetrics = requestMetrics;
+
+    }
+
+    /**
+     Get where the latency and throughput of this session's requests are recorded.
+     <p/>See {@link #setRequestMetrics(WikiTreeRequestMetrics)} for more information.
+
+     @return the metrics or {@code null} if requests are not measured.
+     */
+
+    @Nullable
+    public WikiTreeRequestMetrics getRequestMetrics() {
+
+        return _requestMetrics;
+
+    }
+
+    /**
+     Specify whether identical requests which are in flight at the same time should share one trip to the WikiTree API server.
+     <p/>This is off by default. When it is on, a request which arrives while an identical request (same parameters, same logged-in user)
+     is waiting for its response does not go to the WikiTree API server. It waits for the response to the earlier request instead.
+     For example, fifty threads asking for the relatives of the same person at the same time result in one {@code getRelatives} request
+     and one parsed response which all fifty threads get.
+     <p/>Since the callers share the parsed response, they must not modify it (the wrappers in {@code com.matilda.wikitree.api.wrappers} don't).
+     If the shared request fails then every caller waiting for it gets the same exception.
+     <p/>Only requests whose results are returned as JSON objects are coalesced (login requests and requests
+     whose responses are handed to a {@link ContentHandler} as they are parsed always go to the WikiTree API server).
+
+     @param coalescingRequests {@code true} if identical in-flight requests should be coalesced; {@code false} otherwise.
+     */
+
+    public void setCoalescingRequests( final boolean coalescingRequests ) {
+
+        _coalescingRequests = coalescingRequests;
+
+    }
+
+    /**
+     Determine if identical requests which are in flight at the same time share one trip to the WikiTree API server.
+     <p/>See {@link #setCoalescingRequests(boolean)} for more information.
+
+     @return {@code true} if identical in-flight requests are coalesced; {@code false} otherwise.
+     */
+
+    public boolean isCoalescingRequests() {
+
+        return _coalescingRequests;
+
+    }
+
+    /**
+     Get the number of requests which did not go to the WikiTree API server because an identical request was already in flight.
+
+     @return the number of coalesced requests.
+     */
+
+    public long getCoalescedRequests() {
+
+        return _coalescedRequests.get();
 
     }
 
@@ -156,7 +543,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public boolean isAuthenticated() {
 
-        return _loginCookies != null;
+        return _authState.isAuthenticated();
 
     }
 
@@ -170,7 +557,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public String getAuthenticatedUserEmailAddress() {
 
-        return _authenticatedUserEmailAddress;
+        return _authState._emailAddress;
 
     }
 
@@ -184,12 +571,40 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     @Override
     public String getAuthenticatedWikiTreeId() {
 
-        return _authenticatedWikiTreeId;
+        return _authState._wikiTreeId;
+
+    }
+
+    /**
+     Get a string which identifies what this session is allowed to see.
+     <p/>The string consists of the WikiTree API server's URL followed (if this session is authenticated) by the WikiTree ID and the email address
+     of the user for whom it is authenticated. Unlike calling {@link #getAuthenticatedWikiTreeId()} and {@link #getAuthenticatedUserEmailAddress()}
+     one after the other, all of them are guaranteed to come from the same login even if another thread is logging in at the time.
+
+     @return the visibility scope of this session.
+     */
+
+    @NotNull
+    public String getVisibilityScope() {
+
+        AuthState authState = _authState;
+        if ( authState.isAuthenticated() ) {
+
+            return _baseServerUrlString + "\n" + authState._wikiTreeId + "\n" + authState._emailAddress;
+
+        } else {
+
+            return _baseServerUrlString;
+
+        }
 
     }
 
     /**
      Login to the WikiTree API server.
+     <p/>Login attempts via the same instance are serialized.
+     Requests issued by other threads while a login attempt is underway are sent with whatever login cookies
+     this instance had when they started.
      <p/>See {@link WikiTreeApiClient#login(String, String)} for more info.
      */
 
@@ -198,6 +613,32 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     public boolean login( final @NotNull String emailAddress, final @NotNull String password )
             throws IOException, ParseException {
 
+        synchronized ( _loginLock ) {
+
+            return loginWhileLocked( emailAddress, password );
+
+        }
+
+    }
+
+    private boolean loginWhileLocked( final @NotNull String emailAddress, final @NotNull String password )
+            throws IOException, ParseException {
+
+        try {
+
+            return attemptLogin( emailAddress, password );
+
+        } finally {
+
+            _pendingLoginCookies = null;
+
+        }
+
+    }
+
+    private boolean attemptLogin( final @NotNull String emailAddress, final @NotNull String password )
+            throws IOException, ParseException {
+
         JSONObject requestParams = new JSONObject();
         requestParams.put( "action", "login" );
         requestParams.put( "email", emailAddress );
@@ -207,7 +648,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         // Make the login attempt.
         // Note that we don't need to do anything with the result of this call since it will have been
-        // preserved in {@code _lastLoginRequest} by {@link #requestViaHttpGet(JSONObject)}
+        // preserved in {@code _lastLoginRequest} by {@link #requestViaHttpGet(JSONObject, AuthState)}
         // when it intercepts and processes the login attempt that this call to {@code makeRequest} is making.
 
         makeRequest( requestParams );
@@ -220,11 +661,9 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         // Paranoia rules supreme!
 
-        if ( !worked || _loginCookies == null ) {
+        if ( !worked || !_authState.isAuthenticated() ) {
 
-            _authenticatedWikiTreeId = null;
-            _authenticatedUserEmailAddress = null;
-            _loginCookies = null;
+            _authState = AuthState.ANONYMOUS;
 
         }
 
@@ -235,7 +674,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 	references to these login cookies. This check must be done just before this method returns. Consequently, we do it here.
 	 */
 
-        return _loginCookies != null;
+        return _authState.isAuthenticated();
 
     }
 
@@ -254,8 +693,9 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
     /**
      Analyze the result of a login attempt.
-     <p/>This method also erases any authentication information left by a previous successful login attempt and records
-     equivalent authentication information if this login attempt is deemed to have worked.
+     <p/>Any authentication information left by a previous successful login attempt is already gone by the time this method is called
+     (see {@link #requestViaHttpGet(JSONObject, AuthState)}). This method publishes the new authentication information
+     if this login attempt is deemed to have worked.
 
      @param emailAddress the email address used to identify the WikiTree user requesting the login.
      @param resultObject the value returned by the login request to the WikiTree API server.
@@ -266,8 +706,9 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         // Start off by assuming that the login attempt failed.
 
-        _authenticatedWikiTreeId = null;
-        _authenticatedUserEmailAddress = null;
+        String authenticatedWikiTreeId = null;
+        String authenticatedUserEmailAddress = null;
+        List<String> loginCookies = _pendingLoginCookies;
         _loginResultStatus = null;
 
         // Did we back the auxiliary information that we should have gotten back from a login attempt?
@@ -280,7 +721,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
             // If we did get login cookies back then the screw up is in the logic on our end or we don't understand the protocol
             // (which also means that the screwup is in the logic on our end).
 
-            if ( _loginCookies != null ) {
+            if ( loginCookies != null ) {
 
                 throw new ReallyBadNewsError( "WikiTreeApiJsonSession.login:  did not get a result object even though we got login cookies" );
 
@@ -313,8 +754,8 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
                         Object wikiTreeIdObj = actualResult.get( "username" );
                         if ( wikiTreeIdObj instanceof String ) {
 
-                            _authenticatedWikiTreeId = (String)wikiTreeIdObj;
-                            _authenticatedUserEmailAddress = emailAddress;
+                            authenticatedWikiTreeId = (String)wikiTreeIdObj;
+                            authenticatedUserEmailAddress = emailAddress;
 
                         } else if ( wikiTreeIdObj == null ) {
 
@@ -370,9 +811,9 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
         // If the login failed then all three must be null.
         // Let's make sure that that is what happened.
 
-        boolean wtiNull = _authenticatedWikiTreeId == null;
-        boolean aueaNull = _authenticatedUserEmailAddress == null;
-        boolean lcNull = _loginCookies == null;
+        boolean wtiNull = authenticatedWikiTreeId == null;
+        boolean aueaNull = authenticatedUserEmailAddress == null;
+        boolean lcNull = loginCookies == null;
 
         // Are some but not all of them null?
 
@@ -382,14 +823,13 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
             // This may seem a bit brutal but the alternative is to end up with an authenticated session
             // which we don't know who it is authenticated for.
 
-            Vector<String> loginCookies = _loginCookies;
-            _loginCookies = null;
+            _pendingLoginCookies = null;
 
             throw new ReallyBadNewsError( "JSonWikiTreeApiClient.login:  supposedly " +
                                           ( lcNull ? "failed" : "successful" ) + " login request " +
                                           "did not yield " + ( lcNull ? "null" : "non-null" ) + " values for all of " +
-                                          "authenticated WikiTree ID (got " + _authenticatedWikiTreeId + "), " +
-                                          "authenticated User Email Address (got " + _authenticatedUserEmailAddress + "), and " +
+                                          "authenticated WikiTree ID (got " + authenticatedWikiTreeId + "), " +
+                                          "authenticated User Email Address (got " + authenticatedUserEmailAddress + "), and " +
                                           "login cookies (got " +
                                           (
                                                   loginCookies == null
@@ -402,7 +842,15 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         }
 
-        return _loginCookies != null;
+        // Publish all three at once.
+
+        if ( loginCookies != null ) {
+
+            _authState = new AuthState( loginCookies, authenticatedWikiTreeId, authenticatedUserEmailAddress );
+
+        }
+
+        return loginCookies != null;
 
     }
 
@@ -488,30 +936,89 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     public Optional<JSONObject> getPerson( final String key, final String fields )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getPerson" );
-        requestParams.put( "key", key ); // interpretIdParameter( "getPerson", key ) );
-        requestParams.put( "fields", fields );
-        requestParams.put( "format", "json" );
-
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        Optional<JSONObject> optResultObject = makeRequest( getPersonRequest( key, fields ) );
 
         return optResultObject;
 
     }
 
-    public static Object interpretIdParameter( final String who, final @NotNull String key ) {
+    /**
+     Request information about a specified person without waiting for the answer.
+     <p/>See {@link #getPerson(String, String)} for more information.
 
-        if ( key.isEmpty() ) {
+     @param key    the specified person's WikiTree ID.
+     @param fields a comma separated list of the fields that you want returned ({@code "*"} gets you all of them).
+     @return a future which yields what {@link #getPerson(WikiTreeId, String)} would have returned.
+     If the request fails then the future completes exceptionally with a {@link java.util.concurrent.CompletionException}
+     whose cause is the {@link IOException} or {@link ParseException} that {@code getPerson} would have thrown.
+     */
 
-            throw new IllegalArgumentException( who + ":  key must not be an empty string" );
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getPersonAsync( final @NotNull WikiTreeId key, final String fields ) {
 
-        } else {
+        return getPersonAsync( key.getValueString(), fields );
 
-            try {
+    }
 
-                @SuppressWarnings("UnnecessaryLocalVariable")
-                long personId = Long.parseLong( key );
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getPersonAsync( final long personId, final String fields ) {
+
+        return getPersonAsync( "" + personId, fields );
+
+    }
+
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getPersonAsync( final String key, final String fields ) {
+
+        return makeRequestAsync( getPersonRequest( key, fields ) );
+
+    }
+
+    /**
+     Request information about a specified person and hand the response to a {@link ContentHandler} as it is parsed.
+     <p/>See {@link #getPerson(String, String)} for more information.
+
+     @param key            the specified person's WikiTree ID or Person.Id.
+     @param fields         a comma separated list of the fields that you want returned ({@code "*"} gets you all of them).
+     @param contentHandler the handler which is to receive the parser's events.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request,
+     the request fails or the handler throws an IOException.
+     @throws ParseException if the response is not valid JSON or the handler throws a ParseException.
+     */
+
+    public void getPerson( final String key, final String fields, final @NotNull ContentHandler contentHandler )
+            throws IOException, ParseException {
+
+        makeRequest( getPersonRequest( key, fields ), contentHandler );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static JSONObject getPersonRequest( final String key, final String fields ) {
+
+        JSONObject requestParams = new JSONObject();
+        requestParams.put( "action", "getPerson" );
+        requestParams.put( "key", key ); // interpretIdParameter( "getPerson", key ) );
+        requestParams.put( "fields", fields );
+        requestParams.put( "format", "json" );
+
+        return requestParams;
+
+    }
+
+    public static Object interpretIdParameter( final String who, final @NotNull String key ) {
+
+        if ( key.isEmpty() ) {
+
+            throw new IllegalArgumentException( who + ":  key must not be an empty string" );
+
+        } else {
+
+            try {
+
+                @SuppressWarnings("UnnecessaryLocalVariable")
+                long personId = Long.parseLong( key );
 
                 return personId;
 
@@ -686,6 +1193,114 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     )
             throws IOException, ParseException {
 
+        Optional<JSONObject> optResultObject = makeRequest(
+                getWatchlistRequest( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order )
+        );
+        return optResultObject;
+
+    }
+
+    /**
+     Request the profiles which are on the logged-in user's watchlist without waiting for the answer.
+     <p/>See {@link #getWatchlist(Boolean, Boolean, Boolean, Boolean, String, Integer, Integer, String)} for more information.
+
+     @return a future which yields what {@code getWatchlist} would have returned.
+     If the request fails then the future completes exceptionally with a {@link java.util.concurrent.CompletionException}
+     whose cause is the {@link IOException} or {@link ParseException} that {@code getWatchlist} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getWatchlistAsync(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order
+    ) {
+
+        return makeRequestAsync( getWatchlistRequest( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order ) );
+
+    }
+
+    /**
+     Request the profiles which are on the logged-in user's watchlist and hand the response to a {@link ContentHandler} as it is parsed.
+     <p/>See {@link #getWatchlist(Boolean, Boolean, Boolean, Boolean, String, Integer, Integer, String)} for more information.
+     No {@link JSONObject} or {@link org.json.simple.JSONArray} is built for the response; what the handler does with the parser's events is up to it.
+     This is the way to deal with a very large watchlist without needing the memory to hold all of it at once.
+
+     @param contentHandler the handler which is to receive the parser's events.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request,
+     the request fails or the handler throws an IOException.
+     @throws ParseException if the response is not valid JSON or the handler throws a ParseException.
+     */
+
+    public void getWatchlist(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order,
+            final @NotNull ContentHandler contentHandler
+    )
+            throws IOException, ParseException {
+
+        makeRequest(
+                getWatchlistRequest( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order ),
+                contentHandler
+        );
+
+    }
+
+    /**
+     Request the profiles which are on the logged-in user's watchlist and hand them to a {@link WikiTreeProfileVisitor}, one field at a time, as the response is parsed.
+     <p/>See {@link #getWatchlist(Boolean, Boolean, Boolean, Boolean, String, Integer, Integer, String)} for more information.
+     The {@code "watchlistCount"} arrives via {@link WikiTreeProfileVisitor#topLevelValue(String, Object)}.
+
+     @param visitor the visitor which is to receive the profiles.
+     @return the number of profiles that the visitor was given.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request or the request fails.
+     @throws ParseException if the response is not valid JSON.
+     */
+
+    public int streamWatchlist(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order,
+            final @NotNull WikiTreeProfileVisitor visitor
+    )
+            throws IOException, ParseException {
+
+        WikiTreeProfileEventHandler handler = new WikiTreeProfileEventHandler( "watchlist", visitor );
+        getWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, handler );
+
+        return handler.getProfileCount();
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static JSONObject getWatchlistRequest(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order
+    ) {
+
         JSONObject requestParams = new JSONObject();
         requestParams.put( "action", "getWatchlist" );
 
@@ -739,8 +1354,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         requestParams.put( "format", "json" );
 
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
-        return optResultObject;
+        return requestParams;
 
     }
 
@@ -762,19 +1376,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     public Optional<JSONObject> getAncestors( final @NotNull WikiTreeId key, @Nullable final Integer depth )
             throws IOException, ParseException {
 
-        JSONObject requestParams = new JSONObject();
-        requestParams.put( "action", "getAncestors" );
-        requestParams.put( "key", key.getValueString() );
-
-        if ( depth != null ) {
-
-            requestParams.put( "depth", depth.intValue() );
-
-        }
-
-        requestParams.put( "format", "json" );
-
-        @SuppressWarnings("UnnecessaryLocalVariable") Optional<JSONObject> optResultObject = makeRequest( requestParams );
+        @SuppressWarnings("UnnecessaryLocalVariable") Optional<JSONObject> optResultObject = makeRequest( getAncestorsRequest( key.getValueString(), depth ) );
         return optResultObject;
 
     }
@@ -797,9 +1399,102 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     public Optional<JSONObject> getAncestors( final long key, @Nullable final Integer depth )
             throws IOException, ParseException {
 
+        Optional<JSONObject> optResultObject = makeRequest( getAncestorsRequest( Long.toString( key ), depth ) );
+        return optResultObject;
+
+    }
+
+    /**
+     Request the ancestors of a specified person without waiting for the answer.
+     <p/>See {@link #getAncestors(WikiTreeId, Integer)} for more information.
+
+     @param key   the specified person's WikiTree ID.
+     @param depth how many generations back to retrieve. if {@code null} then a depth of 5 is used. Valid values are 1-10.
+     @return a future which yields what {@code getAncestors} would have returned.
+     If the request fails then the future completes exceptionally with a {@link java.util.concurrent.CompletionException}
+     whose cause is the {@link IOException} or {@link ParseException} that {@code getAncestors} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getAncestorsAsync( final @NotNull WikiTreeId key, @Nullable final Integer depth ) {
+
+        return makeRequestAsync( getAncestorsRequest( key.getValueString(), depth ) );
+
+    }
+
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getAncestorsAsync( final long key, @Nullable final Integer depth ) {
+
+        return makeRequestAsync( getAncestorsRequest( Long.toString( key ), depth ) );
+
+    }
+
+    /**
+     Request the ancestors of a specified person and hand the response to a {@link ContentHandler} as it is parsed.
+     <p/>See {@link #getAncestors(WikiTreeId, Integer)} for more information.
+
+     @param key            the specified person's WikiTree ID.
+     @param depth          how many generations back to retrieve. if {@code null} then a depth of 5 is used. Valid values are 1-10.
+     @param contentHandler the handler which is to receive the parser's events.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request,
+     the request fails or the handler throws an IOException.
+     @throws ParseException if the response is not valid JSON or the handler throws a ParseException.
+     */
+
+    public void getAncestors( final @NotNull WikiTreeId key, @Nullable final Integer depth, final @NotNull ContentHandler contentHandler )
+            throws IOException, ParseException {
+
+        makeRequest( getAncestorsRequest( key.getValueString(), depth ), contentHandler );
+
+    }
+
+    public void getAncestors( final long key, @Nullable final Integer depth, final @NotNull ContentHandler contentHandler )
+            throws IOException, ParseException {
+
+        makeRequest( getAncestorsRequest( Long.toString( key ), depth ), contentHandler );
+
+    }
+
+    /**
+     Request the ancestors of a specified person and hand them to a {@link WikiTreeProfileVisitor}, one field at a time, as the response is parsed.
+     <p/>See {@link #getAncestors(WikiTreeId, Integer)} for more information.
+     Each ancestor's {@code "Parents"} field (if requested) arrives as a small {@link JSONObject}.
+
+     @param key     the specified person's WikiTree ID.
+     @param depth   how many generations back to retrieve. if {@code null} then a depth of 5 is used. Valid values are 1-10.
+     @param visitor the visitor which is to receive the ancestors.
+     @return the number of profiles that the visitor was given.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request or the request fails.
+     @throws ParseException if the response is not valid JSON.
+     */
+
+    public int streamAncestors( final @NotNull WikiTreeId key, @Nullable final Integer depth, final @NotNull WikiTreeProfileVisitor visitor )
+            throws IOException, ParseException {
+
+        WikiTreeProfileEventHandler handler = new WikiTreeProfileEventHandler( "ancestors", visitor );
+        getAncestors( key, depth, handler );
+
+        return handler.getProfileCount();
+
+    }
+
+    public int streamAncestors( final long key, @Nullable final Integer depth, final @NotNull WikiTreeProfileVisitor visitor )
+            throws IOException, ParseException {
+
+        WikiTreeProfileEventHandler handler = new WikiTreeProfileEventHandler( "ancestors", visitor );
+        getAncestors( key, depth, handler );
+
+        return handler.getProfileCount();
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static JSONObject getAncestorsRequest( final @NotNull String key, @Nullable final Integer depth ) {
+
         JSONObject requestParams = new JSONObject();
         requestParams.put( "action", "getAncestors" );
-        requestParams.put( "key", Long.toString( key ) );
+        requestParams.put( "key", key );
 
         if ( depth != null ) {
 
@@ -809,8 +1504,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
 
         requestParams.put( "format", "json" );
 
-        Optional<JSONObject> optResultObject = makeRequest( requestParams );
-        return optResultObject;
+        return requestParams;
 
     }
 
@@ -844,6 +1538,69 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     )
             throws IOException, ParseException {
 
+        @SuppressWarnings("UnnecessaryLocalVariable") Optional<JSONObject> optResultObject =
+                makeRequest( getRelativesRequest( keys, getParents, getChildren, getSpouses, getSiblings ) );
+
+        return optResultObject;
+
+    }
+
+    /**
+     Request the immediate relatives of one or more people without waiting for the answer.
+     <p/>See {@link #getRelatives(String, boolean, boolean, boolean, boolean)} for more information.
+
+     @return a future which yields what {@code getRelatives} would have returned.
+     If the request fails then the future completes exceptionally with a {@link java.util.concurrent.CompletionException}
+     whose cause is the {@link IOException} or {@link ParseException} that {@code getRelatives} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<Optional<JSONObject>> getRelativesAsync(
+            final String keys,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    ) {
+
+        return makeRequestAsync( getRelativesRequest( keys, getParents, getChildren, getSpouses, getSiblings ) );
+
+    }
+
+    /**
+     Request the immediate relatives of one or more people and hand the response to a {@link ContentHandler} as it is parsed.
+     <p/>See {@link #getRelatives(String, boolean, boolean, boolean, boolean)} for more information.
+
+     @param contentHandler the handler which is to receive the parser's events.
+     @throws IOException    if an IOException is thrown by the networking facilities used to send and receive the request,
+     the request fails or the handler throws an IOException.
+     @throws ParseException if the response is not valid JSON or the handler throws a ParseException.
+     */
+
+    public void getRelatives(
+            final String keys,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings,
+            final @NotNull ContentHandler contentHandler
+    )
+            throws IOException, ParseException {
+
+        makeRequest( getRelativesRequest( keys, getParents, getChildren, getSpouses, getSiblings ), contentHandler );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static JSONObject getRelativesRequest(
+            final String keys,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    ) {
+
         JSONObject requestParams = new JSONObject();
         requestParams.put( "action", "getRelatives" );
         requestParams.put( "keys", keys );
@@ -853,9 +1610,7 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
         requestParams.put( "getSiblings", getSiblings ? 1 : 0 );
         requestParams.put( "format", "json" );
 
-        @SuppressWarnings("UnnecessaryLocalVariable") Optional<JSONObject> optResultObject = makeRequest( requestParams );
-
-        return optResultObject;
+        return requestParams;
 
     }
 
@@ -863,138 +1618,1507 @@ public class WikiTreeApiJsonSession implements WikiTreeApiClient {
     private Optional<JSONObject> makeRequest( final JSONObject requestObject )
             throws IOException, ParseException {
 
-        long startTime = System.currentTimeMillis();
-        Optional<JSONObject> rval = requestViaHttpGet( requestObject );
-        long endTime = System.currentTimeMillis();
+        AuthState authState = _authState;
 
-        return rval;
+        if ( !_coalescingRequests || "login".equals( requestObject.get( "action" ) ) ) {
 
-    }
+            return requestViaHttpGet( requestObject, authState );
 
-    @NotNull
-    private synchronized Optional<JSONObject> requestViaHttpGet( final JSONObject requestObject )
-            throws IOException, ParseException {
+        }
 
-        String who = "requestViaHttpGet";
+        String coalescingKey = getCoalescingKey( requestObject, authState );
+        CompletableFuture<Optional<JSONObject>> flight = new CompletableFuture<>();
+        CompletableFuture<Optional<JSONObject>> existingFlight = _inFlightRequests.putIfAbsent( coalescingKey, flight );
+        if ( existingFlight != null ) {
 
-        String what = "formatting request URL";
+            _coalescedRequests.incrementAndGet();
 
-        StringBuffer requestSb = new StringBuffer( _baseServerUrlString );
-        WikiTreeApiUtilities.formatRequestAsUrlQueryParameters( who, requestObject, requestSb );
+            return awaitFlight( existingFlight );
 
-        String actualUrlString = requestSb.toString();
+        }
 
         try {
 
-            if ( s_showUrls ) {
+            Optional<JSONObject> rval = requestViaHttpGet( requestObject, authState );
+            flight.complete( rval );
 
-                if ( actualUrlString.contains( "action=login" ) ) {
+            return rval;
 
-                    System.out.println( "not showing URL for login request (protects the password)" );
+        } catch ( IOException | ParseException | RuntimeException | Error e ) {
 
-                } else {
+            flight.completeExceptionally( e );
 
-                    System.out.println( "URL will be " + actualUrlString );
+            throw e;
 
-                }
+        } finally {
 
-            }
+            _inFlightRequests.remove( coalescingKey, flight );
 
-            URL actualUrl = new URL( actualUrlString );
+        }
 
-            what = "initializing connection";
+    }
 
-            URLConnection urlConnection = actualUrl.openConnection();
-            HttpURLConnection connection = (HttpURLConnection)urlConnection;
-            connection.setDoOutput( false );
-            connection.setDoInput( true );
-            connection.setRequestProperty( "Accept", "application/json" );
-            if ( !"login".equals( requestObject.get( "action" ) ) && _loginCookies != null ) {
+    /**
+     Build the key which identifies identical requests.
+     <p/>The key is the request's URL query string (as built by {@link WikiTreeApiUtilities#formatRequestAsUrlQueryParameters(String, JSONObject, StringBuffer)})
+     followed by the WikiTree ID of the authenticated user (if any) since what the server sends back depends on who is asking.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state that the request is to be sent with.
+     @return the key.
+     @throws UnsupportedEncodingException if the parameters cannot be URL-encoded (this should never happen).
+     */
 
-                StringBuilder sb = new StringBuilder();
-                String semiColon = "";
-                for ( String cookie : _loginCookies ) {
+    @NotNull
+    private static String getCoalescingKey( final JSONObject requestObject, final @NotNull AuthState authState )
+            throws UnsupportedEncodingException {
 
-                    sb.append( semiColon ).append( cookie.split( ";", 2 )[0] );
-                    semiColon = "; ";
+        StringBuffer keySb = new StringBuffer();
+        WikiTreeApiUtilities.formatRequestAsUrlQueryParameters( "getCoalescingKey", requestObject, keySb );
+        keySb.append( '\n' ).append( authState.isAuthenticated() ? authState._wikiTreeId : "" );
 
-                }
+        return keySb.toString();
 
-                connection.addRequestProperty( "Cookie", sb.toString() );
+    }
 
-            }
+    /**
+     Wait for a request which some other caller sent to the WikiTree API server.
 
-            connection.setRequestMethod( "GET" );
+     @param flight the future which yields the result of the other caller's request.
+     @return what the other caller's request returned.
+     @throws IOException    if the other caller's request threw one or this thread is interrupted while waiting.
+     @throws ParseException if the other caller's request threw one.
+     */
 
-            what = "getting response";
+    @NotNull
+    private static Optional<JSONObject> awaitFlight( final @NotNull CompletableFuture<Optional<JSONObject>> flight )
+            throws IOException, ParseException {
 
-            Object rval = WikiTreeApiUtilities.readResponse( connection, true );
+        try {
 
-            if ( "login".equals( requestObject.get( "action" ) ) ) {
+            return flight.get();
 
-                what = "It's a login attempt";
+        } catch ( InterruptedException e ) {
 
-                // Throw away the old cookies regardless of whether or not the login request worked.
+            Thread.currentThread().interrupt();
 
-                _loginCookies = null;
-                _authenticatedUserEmailAddress = null;
-                _authenticatedWikiTreeId = null;
+            InterruptedIOException ioe = new InterruptedIOException( "WikiTreeApiJsonSession:  interrupted waiting for a coalesced request" );
+            ioe.initCause( e );
 
-                _lastLoginResult = (JSONObject)rval;
-                if ( _lastLoginResult == null ) {
+            throw ioe;
 
-                    System.err.println( "got null response from login attempt for " + requestObject.get( "email" ) );
+        } catch ( ExecutionException e ) {
 
-                } else {
+            Throwable cause = e.getCause();
+            while ( cause instanceof CompletionException && cause.getCause() != null ) {
 
-                    JSONObject loginObject = (JSONObject)_lastLoginResult.get( "login" );
-                    if ( loginObject == null ) {
+                cause = cause.getCause();
 
-                        System.err.println( "got response from login attempt for " +
-                                            requestObject.get( "email" ) +
-                                            " which doesn't contain a \"login\" response object" );
+            }
 
-                    } else {
+            if ( cause instanceof IOException ) {
 
-                        String resultString = (String)loginObject.get( "result" );
-                        if ( "Success".equals( resultString ) ) {
+                throw (IOException)cause;
 
-                            Collection<String> cookies = connection.getHeaderFields().get( "Set-Cookie" );
-                            if ( cookies != null ) {
+            } else if ( cause instanceof ParseException ) {
 
-                                _loginCookies = new Vector<>( cookies );
+                throw (ParseException)cause;
 
-                            }
+            } else if ( cause instanceof RuntimeException ) {
 
-                        }
+                throw (RuntimeException)cause;
 
-                    }
+            } else if ( cause instanceof Error ) {
 
-                }
+                throw (Error)cause;
 
             }
 
-            if ( rval == null ) {
+            throw new IOException( "WikiTreeApiJsonSession:  coalesced request failed", cause );
 
-                return Optional.empty();
+        }
 
-            } else if ( rval instanceof JSONObject ) {
+    }
+
+    /**
+     Send a request without waiting for the answer.
+     <p/>Login requests are not allowed here (they must go through {@link #login(String, String)}).
+
+     @param requestObject the request's parameters.
+     @return a future which yields what {@link #makeRequest(JSONObject)} would have returned or
+     completes exceptionally with a {@link CompletionException} whose cause is the {@link IOException} or {@link ParseException}
+     that {@code makeRequest} would have thrown.
+     */
+
+    @NotNull
+    private CompletableFuture<Optional<JSONObject>> makeRequestAsync( final JSONObject requestObject ) {
+
+        if ( "login".equals( requestObject.get( "action" ) ) ) {
+
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.makeRequestAsync:  login requests must be made synchronously" );
+
+        }
+
+        AuthState authState = _authState;
+
+        if ( !_coalescingRequests ) {
+
+            return requestViaHttpGetAsync( requestObject, authState );
+
+        }
+
+        String coalescingKey;
+        try {
+
+            coalescingKey = getCoalescingKey( requestObject, authState );
+
+        } catch ( IOException e ) {
+
+            return CompletableFuture.failedFuture( e );
+
+        }
+
+        CompletableFuture<Optional<JSONObject>> flight = new CompletableFuture<>();
+        CompletableFuture<Optional<JSONObject>> existingFlight = _inFlightRequests.putIfAbsent( coalescingKey, flight );
+        if ( existingFlight != null ) {
+
+            _coalescedRequests.incrementAndGet();
+
+            // Each caller gets its own copy so that nobody can complete (or cancel) the shared future out from under the others.
+
+            return existingFlight.copy();
+
+        }
+
+        requestViaHttpGetAsync( requestObject, authState ).whenComplete(
+                ( rval, e ) -> {
+
+                    _inFlightRequests.remove( coalescingKey, flight );
+
+                    if ( e == null ) {
+
+                        flight.complete( rval );
+
+                    } else {
+
+                        flight.completeExceptionally( e );
+
+                    }
+
+                }
+        );
+
+        return flight.copy();
+
+    }
+
+    @NotNull
+    private CompletableFuture<Optional<JSONObject>> requestViaHttpGetAsync( final JSONObject requestObject, final @NotNull AuthState authState ) {
+
+        String who = "requestViaHttpGetAsync";
+
+        URL actualUrl;
+        try {
+
+            actualUrl = new URL( formatRequestUrl( who, requestObject ) );
+
+        } catch ( IOException e ) {
+
+            return CompletableFuture.failedFuture( e );
+
+        }
+
+        WikiTreeRequestMetrics.Measurement measurement = startMeasurement( requestObject );
+        WikiTreeRequestEvent event = WikiTreeRequestEvent.start( requestObject );
+
+        CompletableFuture<Optional<JSONObject>> rval = sendRequestAsync( requestObject, authState, actualUrl )
+                         .thenApply(
+                                 response -> {
+
+                                     try ( WikiTreeApiResponse r = measureResponse( measurement, event, response ) ) {
+
+                                         return toOptionalJsonObject( WikiTreeApiUtilities.readResponse( r, true, _streamingResponses ) );
+
+                                     } catch ( IOException | ParseException e ) {
+
+                                         throw new CompletionException( e );
+
+                                     }
+
+                                 }
+                         );
+
+        if ( measurement != null || event != null ) {
+
+            rval.whenComplete( ( result, e ) -> finishMeasurement( measurement, event, e == null ) );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Send a request and hand the response to a {@link ContentHandler} as it is parsed.
+     <p/>Login requests are not allowed here (they must go through {@link #login(String, String)}).
+
+     @param requestObject  the request's parameters.
+     @param contentHandler the handler which is to receive the parser's events.
+     @throws IOException    if something goes wrong sending the request or reading the response or if the request fails.
+     @throws ParseException if the response is not valid JSON.
+     */
+
+    private void makeRequest( final JSONObject requestObject, final @NotNull ContentHandler contentHandler )
+            throws IOException, ParseException {
+
+        if ( "login".equals( requestObject.get( "action" ) ) ) {
+
+            throw new IllegalArgumentException( "WikiTreeApiJsonSession.makeRequest:  login requests cannot be streamed" );
+
+        }
+
+        URL actualUrl = new URL( formatRequestUrl( "makeRequest", requestObject ) );
+        AuthState authState = _authState;
+
+        WikiTreeRequestMetrics.Measurement measurement = startMeasurement( requestObject );
+        WikiTreeRequestEvent event = WikiTreeRequestEvent.start( requestObject );
+        boolean completedNormally = false;
+        try ( WikiTreeApiResponse response = measureResponse( measurement, event, sendRequest( requestObject, authState, actualUrl ) ) ) {
+
+            InputStream body = response.getBody();
+
+            if ( !response.isSuccessful() ) {
+
+                if ( body != null ) {
+
+                    WikiTreeApiUtilities.drainBody( body );
+
+                }
+
+                throw new WikiTreeHttpStatusException(
+                        "WikiTreeApiJsonSession.makeRequest:  " + requestObject.get( "action" ) + " request failed (got statusCode=" + response.getStatusCode() + ")",
+                        response.getStatusCode()
+                );
+
+            }
+
+            if ( body != null ) {
+
+                WikiTreeApiUtilities.parseBody( body, contentHandler );
+
+            }
+
+            completedNormally = true;
+
+        } finally {
+
+            finishMeasurement( measurement, event, completedNormally );
+
+        }
+
+    }
+
+    @NotNull
+    private Optional<JSONObject> requestViaHttpGet( final JSONObject requestObject, final @NotNull AuthState authState )
+            throws IOException, ParseException {
+
+        URL actualUrl = new URL( formatRequestUrl( "requestViaHttpGet", requestObject ) );
+
+        Object rval;
+        List<String> setCookies;
+        WikiTreeRequestMetrics.Measurement measurement = startMeasurement( requestObject );
+        WikiTreeRequestEvent event = WikiTreeRequestEvent.start( requestObject );
+        boolean completedNormally = false;
+        try ( WikiTreeApiResponse response = measureResponse( measurement, event, sendRequest( requestObject, authState, actualUrl ) ) ) {
+
+            rval = WikiTreeApiUtilities.readResponse( response, true, _streamingResponses );
+            setCookies = response.getHeaders( "Set-Cookie" );
+            completedNormally = true;
+
+        } finally {
+
+            finishMeasurement( measurement, event, completedNormally );
+
+        }
+
+        if ( "login".equals( requestObject.get( "action" ) ) ) {
+
+            // Throw away the old credentials regardless of whether or not the login request worked.
+
+            _authState = AuthState.ANONYMOUS;
+            _pendingLoginCookies = null;
+
+            _lastLoginResult = (JSONObject)rval;
+            if ( _lastLoginResult == null ) {
+
+                System.err.println( "got null response from login attempt for " + requestObject.get( "email" ) );
+
+            } else {
+
+                JSONObject loginObject = (JSONObject)_lastLoginResult.get( "login" );
+                if ( loginObject == null ) {
+
+                    System.err.println( "got response from login attempt for " +
+                                        requestObject.get( "email" ) +
+                                        " which doesn't contain a \"login\" response object" );
+
+                } else {
+
+                    String resultString = (String)loginObject.get( "result" );
+                    if ( "Success".equals( resultString ) ) {
+
+                        if ( !setCookies.isEmpty() ) {
+
+                            _pendingLoginCookies = Collections.unmodifiableList( new ArrayList<>( setCookies ) );
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return toOptionalJsonObject( rval );
+
+    }
+
+    @Nullable
+    private WikiTreeRequestMetrics.Measurement startMeasurement( final JSONObject requestObject ) {
+
+        WikiTreeRequestMetrics requestMetrics = _requestMetrics;
+
+        return requestMetrics == null ? null : requestMetrics.startRequest( requestObject.get( "action" ) );
+
+    }
+
+    @NotNull
+    private static WikiTreeApiResponse measureResponse(
+            @Nullable final WikiTreeRequestMetrics.Measurement measurement,
+            @Nullable final WikiTreeRequestEvent event,
+            final @NotNull WikiTreeApiResponse response
+    ) {
+
+        WikiTreeApiResponse rval = measurement == null ? response : measurement.responded( response );
+
+        return event == null ? rval : event.responded( rval );
+
+    }
+
+    private static void finishMeasurement(
+            @Nullable final WikiTreeRequestMetrics.Measurement measurement,
+            @Nullable final WikiTreeRequestEvent event,
+            final boolean completedNormally
+    ) {
+
+        if ( measurement != null ) {
+
+            measurement.finish( completedNormally );
+
+        }
+
+        if ( event != null ) {
+
+            event.finish();
+
+        }
+
+    }
+
+    /**
+     Send a request to this instance's server unless the response cache (if any) already has a fresh response to it.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return the response.
+     @throws IOException if something goes wrong sending the request or reading or saving the response.
+     */
+
+    @NotNull
+    private WikiTreeApiResponse sendRequest( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl )
+            throws IOException {
+
+        WikiTreeResponseCache responseCache = _responseCache;
+        String cacheKey = getResponseCacheKey( responseCache, requestObject, authState );
+        if ( cacheKey == null ) {
+
+            return transportGet( requestObject, authState, actualUrl );
+
+        }
+
+        WikiTreeApiResponse cachedResponse = responseCache.getResponse( actualUrl, cacheKey );
+        if ( cachedResponse != null ) {
+
+            return cachedResponse;
+
+        }
+
+        return responseCache.putResponse( cacheKey, transportGet( requestObject, authState, actualUrl ) );
+
+    }
+
+    /**
+     Send a request to this instance's server without waiting for the answer unless the response cache (if any) already has a fresh response to it.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return a future which yields the response or completes exceptionally if something goes wrong.
+     */
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> sendRequestAsync( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl ) {
+
+        WikiTreeResponseCache responseCache = _responseCache;
+        String cacheKey = getResponseCacheKey( responseCache, requestObject, authState );
+        if ( cacheKey == null ) {
+
+            return transportGetAsync( requestObject, authState, actualUrl );
+
+        }
+
+        try {
+
+            WikiTreeApiResponse cachedResponse = responseCache.getResponse( actualUrl, cacheKey );
+            if ( cachedResponse != null ) {
+
+                return CompletableFuture.completedFuture( cachedResponse );
+
+            }
+
+        } catch ( IOException e ) {
+
+            return CompletableFuture.failedFuture( e );
+
+        }
+
+        return transportGetAsync( requestObject, authState, actualUrl )
+                         .thenApply(
+                                 response -> {
+
+                                     try {
+
+                                         return responseCache.putResponse( cacheKey, response );
+
+                                     } catch ( IOException e ) {
+
+                                         throw new CompletionException( e );
+
+                                     }
+
+                                 }
+                         );
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport, trying again if the retry policy (if any) says so.
+     <p/>If there is a retry policy then the body of a successful response is read (into memory) before this method returns so that a response
+     which fails part way through its body is tried again too (this includes a body which ends before its {@code Content-Length} says it should).
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return the response (the last one if the request was tried more than once).
+     @throws IOException if something goes wrong sending the request or reading the body of its response (on the last try)
+     or this thread is interrupted while waiting to try again.
+     */
+
+    @NotNull
+    private WikiTreeApiResponse transportGet( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl )
+            throws IOException {
+
+        WikiTreeRetryPolicy retryPolicy = _retryPolicy;
+        if ( retryPolicy == null || "login".equals( requestObject.get( "action" ) ) ) {
+
+            return transportGetHedged( requestObject, authState, actualUrl );
+
+        }
+
+        retryPolicy.recordRequest();
+
+        for ( int attempt = 1; ; attempt += 1 ) {
+
+            long backoffMillis;
+            try {
+
+                WikiTreeApiResponse response = transportGetHedged( requestObject, authState, actualUrl );
+                if ( response.isSuccessful() ) {
+
+                    return readBodyNow( response );
+
+                } else if ( !retryPolicy.shouldRetry( attempt, response.getStatusCode() ) ) {
+
+                    return response;
+
+                }
+
+                backoffMillis = retryPolicy.getBackoffMillis( attempt, response.getFirstHeader( "Retry-After" ) );
+                discardResponse( response );
+
+            } catch ( IOException e ) {
+
+                if ( !retryPolicy.shouldRetry( attempt, e ) ) {
+
+                    throw e;
+
+                }
+
+                backoffMillis = retryPolicy.getBackoffMillis( attempt, null );
+
+            }
+
+            try {
+
+                Thread.sleep( backoffMillis );
+
+            } catch ( InterruptedException e ) {
+
+                Thread.currentThread().interrupt();
+
+                InterruptedIOException ioe = new InterruptedIOException( "WikiTreeApiJsonSession:  interrupted waiting to try a request again" );
+                ioe.initCause( e );
+
+                throw ioe;
+
+            }
+
+        }
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport without waiting for the answer,
+     trying again if the retry policy (if any) says so.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return a future which yields the response (the last one if the request was tried more than once) or completes exceptionally if something goes wrong.
+     */
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> transportGetAsync( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl ) {
+
+        WikiTreeRetryPolicy retryPolicy = _retryPolicy;
+        if ( retryPolicy == null || "login".equals( requestObject.get( "action" ) ) ) {
+
+            return transportGetHedgedAsync( requestObject, authState, actualUrl );
+
+        }
+
+        retryPolicy.recordRequest();
+
+        return retryAsync( requestObject, authState, actualUrl, retryPolicy, 1 );
+
+    }
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> retryAsync(
+            final JSONObject requestObject,
+            final @NotNull AuthState authState,
+            final @NotNull URL actualUrl,
+            final @NotNull WikiTreeRetryPolicy retryPolicy,
+            final int attempt
+    ) {
+
+        return transportGetHedgedAsync( requestObject, authState, actualUrl )
+                .handle(
+                        ( response, e ) -> {
+
+                            Throwable failure = e;
+                            if ( e == null ) {
+
+                                if ( response.isSuccessful() ) {
+
+                                    try {
+
+                                        return CompletableFuture.completedFuture( readBodyNow( response ) );
+
+                                    } catch ( IOException e2 ) {
+
+                                        failure = e2;
+
+                                    }
+
+                                } else if ( !retryPolicy.shouldRetry( attempt, response.getStatusCode() ) ) {
+
+                                    return CompletableFuture.completedFuture( response );
+
+                                } else {
+
+                                    long backoffMillis = retryPolicy.getBackoffMillis( attempt, response.getFirstHeader( "Retry-After" ) );
+                                    try {
+
+                                        discardResponse( response );
+
+                                    } catch ( IOException e2 ) {
+
+                                        // We're not going to use this response anyway.
+
+                                    }
+
+                                    return retryAsyncLater( requestObject, authState, actualUrl, retryPolicy, attempt, backoffMillis );
+
+                                }
+
+                            }
+
+                            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                            if ( !( cause instanceof IOException ) || !retryPolicy.shouldRetry( attempt, (IOException)cause ) ) {
+
+                                return CompletableFuture.<WikiTreeApiResponse>failedFuture( failure );
+
+                            }
+
+                            return retryAsyncLater( requestObject, authState, actualUrl, retryPolicy, attempt, retryPolicy.getBackoffMillis( attempt, null ) );
+
+                        }
+                )
+                .thenCompose( Function.identity() );
+
+    }
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> retryAsyncLater(
+            final JSONObject requestObject,
+            final @NotNull AuthState authState,
+            final @NotNull URL actualUrl,
+            final @NotNull WikiTreeRetryPolicy retryPolicy,
+            final int attempt,
+            final long backoffMillis
+    ) {
+
+        return CompletableFuture.runAsync( () -> { }, CompletableFuture.delayedExecutor( backoffMillis, TimeUnit.MILLISECONDS ) )
+                                .thenCompose( ignored -> retryAsync( requestObject, authState, actualUrl, retryPolicy, attempt + 1 ) );
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport, hedging it if the hedging policy (if any) says so.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return the first response to arrive.
+     @throws IOException if something goes wrong sending the request (and its hedge, if there was one) or this thread is interrupted while waiting.
+     */
+
+    @NotNull
+    private WikiTreeApiResponse transportGetHedged( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl )
+            throws IOException {
+
+        WikiTreeHedgingPolicy hedgingPolicy = _hedgingPolicy;
+        if ( hedgingPolicy == null || !hedgingPolicy.isHedgeable( requestObject.get( "action" ) ) ) {
+
+            return transportGetOnce( requestObject, authState, actualUrl );
+
+        }
+
+        CompletableFuture<WikiTreeApiResponse> hedged = hedge( requestObject, authState, actualUrl, hedgingPolicy );
+        try {
+
+            return hedged.get();
+
+        } catch ( InterruptedException e ) {
+
+            // Nobody is going to read the response so stop the attempts and close whatever wins the race anyway.
+
+            hedged.cancel( true );
+            hedged.thenAccept( WikiTreeApiJsonSession::closeQuietly );
+
+            Thread.currentThread().interrupt();
+
+            InterruptedIOException ioe = new InterruptedIOException( "WikiTreeApiJsonSession:  interrupted waiting for a hedged request" );
+            ioe.initCause( e );
+
+            throw ioe;
+
+        } catch ( ExecutionException e ) {
+
+            Throwable cause = e.getCause();
+            while ( cause instanceof CompletionException && cause.getCause() != null ) {
+
+                cause = cause.getCause();
+
+            }
+
+            if ( cause instanceof IOException ) {
+
+                throw (IOException)cause;
+
+            } else if ( cause instanceof RuntimeException ) {
+
+                throw (RuntimeException)cause;
+
+            } else if ( cause instanceof Error ) {
+
+                throw (Error)cause;
+
+            }
+
+            throw new IOException( "WikiTreeApiJsonSession:  hedged request failed", cause );
+
+        }
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport without waiting for the answer,
+     hedging it if the hedging policy (if any) says so.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return a future which yields the first response to arrive or completes exceptionally if something goes wrong.
+     */
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> transportGetHedgedAsync( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl ) {
+
+        WikiTreeHedgingPolicy hedgingPolicy = _hedgingPolicy;
+        if ( hedgingPolicy == null || !hedgingPolicy.isHedgeable( requestObject.get( "action" ) ) ) {
+
+            return transportGetOnceAsync( requestObject, authState, actualUrl );
+
+        }
+
+        return hedge( requestObject, authState, actualUrl, hedgingPolicy );
+
+    }
+
+    /**
+     Send a request and, if it hasn't been answered within the hedging policy's delay (and the policy's budget allows it), send it again.
+     <p/>The first successful response to arrive wins and the other attempt is cancelled (which gives back its throttle slot and its connection).
+     If the other attempt's response arrives anyway then it is closed without being read.
+     An unsuccessful response (a 5xx, for example) never wins. The request only fails if every attempt fails in which case the last
+     unsuccessful response (or failure) is the one reported.
+
+     @return a future which yields the first successful response to arrive.
+     */
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> hedge(
+            final JSONObject requestObject,
+            final @NotNull AuthState authState,
+            final @NotNull URL actualUrl,
+            final @NotNull WikiTreeHedgingPolicy hedgingPolicy
+    ) {
+
+        long hedgeDelayNanos = hedgingPolicy.recordRequest();
+
+        HedgedRequest hedged = new HedgedRequest( hedgingPolicy );
+        hedged.send( requestObject, authState, actualUrl, false );
+
+        if ( hedgeDelayNanos >= 0L ) {
+
+            CompletableFuture.delayedExecutor( hedgeDelayNanos, TimeUnit.NANOSECONDS ).execute(
+                    () -> {
+
+                        if ( hedged._result.isDone() ) {
+
+                            return;
+
+                        }
+
+                        // Count the hedge before asking for it. Otherwise, a primary which fails while we're asking would
+                        // think that it was the only attempt and fail the request.
+
+                        hedged._attempts.incrementAndGet();
+                        if ( hedgingPolicy.tryHedge() ) {
+
+                            hedged.send( requestObject, authState, actualUrl, true );
+
+                        } else if ( hedged._attempts.decrementAndGet() <= hedged._failures.get() ) {
+
+                            hedged.finish();
+
+                        }
+
+                    }
+            );
+
+        }
+
+        return hedged._result;
+
+    }
+
+    /**
+     The attempts to answer one hedged request.
+     */
+
+    private class HedgedRequest {
+
+        private final WikiTreeHedgingPolicy _hedgingPolicy;
+
+        private final CompletableFuture<WikiTreeApiResponse> _result = new CompletableFuture<>();
+
+        private final AtomicInteger _attempts = new AtomicInteger( 1 );
+
+        private final AtomicInteger _failures = new AtomicInteger( 0 );
+
+        /**
+         The last unsuccessful response or the last exception (whichever happened last).
+         */
+
+        private final AtomicReference<Object> _lastFailure = new AtomicReference<>();
+
+        private final List<CompletableFuture<WikiTreeApiResponse>> _inFlight = new CopyOnWriteArrayList<>();
+
+        private HedgedRequest( final @NotNull WikiTreeHedgingPolicy hedgingPolicy ) {
+
+            super();
+
+            _hedgingPolicy = hedgingPolicy;
+
+            // Cancel whichever attempt didn't win and close any unsuccessful response that we were holding onto in case nothing better came along.
+
+            _result.whenComplete(
+                    ( response, e ) -> {
+
+                        _inFlight.forEach( attempt -> attempt.cancel( true ) );
+                        discardLastFailure();
+
+                    }
+            );
+
+        }
+
+        private void send( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl, final boolean isHedge ) {
+
+            long startNanos = System.nanoTime();
+
+            CompletableFuture<WikiTreeApiResponse> attempt = transportGetOnceAsync( requestObject, authState, actualUrl );
+            _inFlight.add( attempt );
+            if ( _result.isDone() ) {
+
+                attempt.cancel( true );
+
+            }
+
+            attempt.whenComplete(
+                    ( response, e ) -> {
+
+                        if ( e == null && response.isSuccessful() ) {
+
+                            _hedgingPolicy.recordLatency( System.nanoTime() - startNanos );
+
+                            if ( _result.complete( response ) ) {
+
+                                if ( isHedge ) {
+
+                                    _hedgingPolicy.recordHedgeWin();
+
+                                }
+
+                            } else {
+
+                                // Too late. Abandon it.
+
+                                closeQuietly( response );
+
+                            }
+
+                            return;
+
+                        }
+
+                        if ( e != null && isCancellation( e ) ) {
+
+                            // We cancelled it because the other attempt won.
+
+                            return;
+
+                        }
+
+                        Object previousFailure = _lastFailure.getAndSet( e == null ? response : e );
+                        if ( previousFailure instanceof WikiTreeApiResponse ) {
+
+                            closeQuietly( (WikiTreeApiResponse)previousFailure );
+
+                        }
+
+                        if ( _result.isDone() ) {
+
+                            discardLastFailure();
+
+                        } else if ( _failures.incrementAndGet() >= _attempts.get() ) {
+
+                            finish();
+
+                        }
+
+                    }
+            );
+
+        }
+
+        /**
+         Every attempt has failed. Report the last failure.
+         */
+
+        private void finish() {
+
+            Object lastFailure = _lastFailure.getAndSet( null );
+            if ( lastFailure instanceof WikiTreeApiResponse ) {
+
+                if ( !_result.complete( (WikiTreeApiResponse)lastFailure ) ) {
+
+                    closeQuietly( (WikiTreeApiResponse)lastFailure );
+
+                }
+
+            } else if ( lastFailure != null ) {
+
+                _result.completeExceptionally( (Throwable)lastFailure );
+
+            }
+
+        }
+
+        private void discardLastFailure() {
+
+            Object lastFailure = _lastFailure.getAndSet( null );
+            if ( lastFailure instanceof WikiTreeApiResponse ) {
+
+                closeQuietly( (WikiTreeApiResponse)lastFailure );
+
+            }
+
+        }
+
+        public String toString() {
+
+            return "HedgedRequest( attempts=" + _attempts + ", failures=" + _failures + ", done=" + _result.isDone() + " )";
+
+        }
+
+    }
+
+    private static boolean isCancellation( final @NotNull Throwable e ) {
+
+        return e instanceof CancellationException || e instanceof CompletionException && e.getCause() instanceof CancellationException;
+
+    }
+
+    /**
+     Close a response that nobody wants.
+
+     @param response the response.
+     */
+
+    private static void closeQuietly( final @NotNull WikiTreeApiResponse response ) {
+
+        try {
+
+            response.close();
+
+        } catch ( IOException e ) {
+
+            // Nobody wants this response anyway.
+
+        }
+
+    }
+
+    /**
+     Read the body of a response into memory (and close the original).
+
+     @param response the response.
+     @return a response with the same status code and headers whose body is already in memory.
+     @throws IOException if something goes wrong reading the body or the body ends before its {@code Content-Length} says it should.
+     */
+
+    @NotNull
+    private static WikiTreeApiResponse readBodyNow( final @NotNull WikiTreeApiResponse response )
+            throws IOException {
+
+        InputStream body = response.getBody();
+        if ( body == null ) {
+
+            return response;
+
+        }
+
+        byte[] bodyBytes;
+        try ( WikiTreeApiResponse r = response ) {
+
+            bodyBytes = WikiTreeApiUtilities.readBodyBytes( body, r.getContentLength() );
+
+        }
+
+        if ( response.getContentLength() >= 0L && bodyBytes.length < response.getContentLength() ) {
+
+            throw new EOFException(
+                    "WikiTreeApiJsonSession:  body of response from " + response.getUrl().getHost() + " ended early " +
+                    "(got " + bodyBytes.length + " of " + response.getContentLength() + " bytes)"
+            );
+
+        }
 
-                return Optional.of( (JSONObject)rval );
+        return response.withBody( new ByteArrayInputStream( bodyBytes ) );
 
-            } else {
+    }
+
+    /**
+     Read whatever is left of a response that we don't want and close it (this lets the transport reuse the connection).
+
+     @param response the response.
+     @throws IOException if something goes wrong reading the response.
+     */
+
+    private static void discardResponse( final @NotNull WikiTreeApiResponse response )
+            throws IOException {
+
+        try ( WikiTreeApiResponse r = response ) {
+
+            InputStream body = r.getBody();
+            if ( body != null ) {
+
+                WikiTreeApiUtilities.drainBody( body );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport once (as soon as the request throttle, if any, allows it).
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return the response.
+     @throws IOException if something goes wrong sending the request.
+     */
+
+    @NotNull
+    private WikiTreeApiResponse transportGetOnce( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl )
+            throws IOException {
+
+        WikiTreeCircuitBreaker circuitBreaker = _circuitBreaker;
+        if ( circuitBreaker == null ) {
+
+            return transportGetThrottled( requestObject, authState, actualUrl );
+
+        }
+
+        // Don't tell the breaker how things went until the body has been read (the server can still let us down while it is sending the body).
+
+        circuitBreaker.acquire();
+        WikiTreeApiResponse response = null;
+        try {
+
+            response = transportGetThrottled( requestObject, authState, actualUrl );
+
+        } finally {
+
+            if ( response == null ) {
 
-                throw new ReallyBadNewsError( "requestViaJsonGet:  expected a JSONObject, got this instead:  " + rval );
+                circuitBreaker.release( false );
 
             }
 
+        }
+
+        return circuitBreaker.releaseWhenRead( response );
+
+    }
+
+    private WikiTreeApiResponse transportGetThrottled( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl )
+            throws IOException {
+
+        WikiTreeRequestThrottle requestThrottle = _requestThrottle;
+        if ( requestThrottle == null ) {
+
+            return _transport.get( actualUrl, getRequestHeaders( requestObject, authState ) );
+
+        }
+
+        long acquiredAtNanos = requestThrottle.acquire();
+        int statusCode = -1;
+        try {
+
+            WikiTreeApiResponse response = _transport.get( actualUrl, getRequestHeaders( requestObject, authState ) );
+            statusCode = response.getStatusCode();
+
+            return response;
+
+        } finally {
+
+            requestThrottle.release( acquiredAtNanos, statusCode );
+
+        }
+
+    }
+
+    /**
+     Send a request to this instance's server via this instance's transport once without waiting for the answer
+     (as soon as the request throttle, if any, allows it).
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @param actualUrl     the URL which asks this instance's server to perform the request.
+     @return a future which yields the response or completes exceptionally if something goes wrong.
+     */
+
+    @NotNull
+    private CompletableFuture<WikiTreeApiResponse> transportGetOnceAsync( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl ) {
+
+        WikiTreeCircuitBreaker circuitBreaker = _circuitBreaker;
+        if ( circuitBreaker == null ) {
+
+            return transportGetThrottledAsync( requestObject, authState, actualUrl );
+
+        }
+
+        try {
+
+            circuitBreaker.acquire();
+
+        } catch ( IOException e ) {
+
+            return CompletableFuture.failedFuture( e );
+
+        }
+
+        CompletableFuture<WikiTreeApiResponse> request;
+        try {
+
+            request = transportGetThrottledAsync( requestObject, authState, actualUrl );
+
         } catch ( RuntimeException e ) {
 
-            System.err.println( "unable to issue GET with \"" + requestSb + "\" (doing " + what + "):  " + what );
+            request = CompletableFuture.failedFuture( e );
 
-            e.printStackTrace();
+        }
 
-            throw e;
+        // Our result is completed by hand (rather than being a stage which depends on the request) so that the breaker always hears
+        // about the request even if our result gets cancelled. Cancelling our result cancels the request.
+
+        CompletableFuture<WikiTreeApiResponse> result = new CompletableFuture<>();
+        CompletableFuture<WikiTreeApiResponse> finalRequest = request;
+        request.whenComplete(
+                ( response, e ) -> {
+
+                    if ( e != null ) {
+
+                        if ( isCancellation( e ) ) {
+
+                            circuitBreaker.abandon();
+
+                        } else {
+
+                            circuitBreaker.release( false );
+
+                        }
+
+                        result.completeExceptionally( e );
+
+                    } else {
+
+                        WikiTreeApiResponse breakerResponse = circuitBreaker.releaseWhenRead( response );
+                        if ( !result.complete( breakerResponse ) ) {
+
+                            closeQuietly( breakerResponse );
+
+                        }
+
+                    }
+
+                }
+        );
+        result.whenComplete( cancelWith( result, finalRequest ) );
+
+        return result;
+
+    }
+
+    private CompletableFuture<WikiTreeApiResponse> transportGetThrottledAsync( final JSONObject requestObject, final @NotNull AuthState authState, final @NotNull URL actualUrl ) {
+
+        WikiTreeRequestThrottle requestThrottle = _requestThrottle;
+        if ( requestThrottle == null ) {
+
+            return _transport.getAsync( actualUrl, getRequestHeaders( requestObject, authState ) );
+
+        }
+
+        // Like transportGetOnceAsync, our result is completed by hand so that the throttle always gets its slot back
+        // (even if our result is cancelled while we're waiting for the throttle or for the server).
+
+        CompletableFuture<WikiTreeApiResponse> result = new CompletableFuture<>();
+        CompletableFuture<Long> permit = requestThrottle.acquireAsync();
+        permit.whenComplete(
+                ( acquiredAtNanos, acquireFailure ) -> {
+
+                    if ( acquireFailure != null ) {
+
+                        result.completeExceptionally( acquireFailure );
+
+                        return;
+
+                    }
+
+                    if ( result.isDone() ) {
+
+                        requestThrottle.abandon();
+
+                        return;
+
+                    }
+
+                    CompletableFuture<WikiTreeApiResponse> request;
+                    try {
+
+                        request = _transport.getAsync( actualUrl, getRequestHeaders( requestObject, authState ) );
+
+                    } catch ( RuntimeException e ) {
+
+                        request = CompletableFuture.failedFuture( e );
+
+                    }
+
+                    request.whenComplete(
+                            ( response, e ) -> {
+
+                                if ( e != null ) {
+
+                                    if ( isCancellation( e ) ) {
+
+                                        requestThrottle.abandon();
+
+                                    } else {
+
+                                        requestThrottle.release( acquiredAtNanos, -1 );
+
+                                    }
+
+                                    result.completeExceptionally( e );
+
+                                } else {
+
+                                    requestThrottle.release( acquiredAtNanos, response.getStatusCode() );
+                                    if ( !result.complete( response ) ) {
+
+                                        closeQuietly( response );
+
+                                    }
+
+                                }
+
+                            }
+                    );
+                    result.whenComplete( cancelWith( result, request ) );
+
+                }
+        );
+
+        // Give up our place in the throttle's line if our result is cancelled while we're waiting.
+
+        result.whenComplete( cancelWith( result, permit ) );
+
+        return result;
+
+    }
+
+    /**
+     Make something which cancels a request if a future which depends on it is cancelled.
+
+     @param result  the future which depends on the request.
+     @param request the request.
+     @return an action to be run when {@code result} completes.
+     */
+
+    @NotNull
+    private static BiConsumer<WikiTreeApiResponse, Throwable> cancelWith(
+            final @NotNull CompletableFuture<WikiTreeApiResponse> result,
+            final @NotNull CompletableFuture<?> request
+    ) {
+
+        return ( response, e ) -> {
+
+            if ( result.isCancelled() ) {
+
+                request.cancel( true );
+
+            }
+
+        };
+
+    }
+
+    /**
+     Get the key under which the response to a request is saved in a response cache.
+
+     @param responseCache the response cache.
+     @param requestObject the request's parameters.
+     @param authState     the authentication state that the request is to be sent with.
+     @return the key or {@code null} if there is no response cache or the request is a login request.
+     */
+
+    @Nullable
+    private String getResponseCacheKey(
+            @Nullable final WikiTreeResponseCache responseCache,
+            final JSONObject requestObject,
+            final @NotNull AuthState authState
+    ) {
+
+        if ( responseCache == null || "login".equals( requestObject.get( "action" ) ) ) {
+
+            return null;
+
+        }
+
+        return WikiTreeResponseCache.getKey( _baseServerUrlString, authState._wikiTreeId, requestObject );
+
+    }
+
+    /**
+     Format a request as the URL which asks this instance's server to perform it.
+
+     @param who           who is asking (used in error messages).
+     @param requestObject the request's parameters.
+     @return the URL (as a string).
+     @throws UnsupportedEncodingException if the parameters cannot be URL-encoded (this should never happen).
+     */
+
+    @NotNull
+    private String formatRequestUrl( final String who, final JSONObject requestObject )
+            throws UnsupportedEncodingException {
+
+        StringBuffer requestSb = new StringBuffer( _baseServerUrlString );
+        WikiTreeApiUtilities.formatRequestAsUrlQueryParameters( who, requestObject, requestSb );
+
+        String actualUrlString = requestSb.toString();
+
+        if ( s_showUrls ) {
+
+            if ( actualUrlString.contains( "action=login" ) ) {
+
+                System.out.println( "not showing URL for login request (protects the password)" );
+
+            } else {
+
+                System.out.println( "URL will be " + actualUrlString );
+
+            }
+
+        }
+
+        return actualUrlString;
+
+    }
+
+    /**
+     Get the HTTP headers which must accompany a request.
+
+     @param requestObject the request's parameters.
+     @param authState     the authentication state to send the request with.
+     @return the headers (including the login cookies if the request is being sent as an authenticated user and this is not a login request).
+     */
+
+    @NotNull
+    private static Map<String, String> getRequestHeaders( final JSONObject requestObject, final @NotNull AuthState authState ) {
+
+        Map<String, String> requestHeaders = new LinkedHashMap<>();
+        requestHeaders.put( "Accept", "application/json" );
+
+        if ( !"login".equals( requestObject.get( "action" ) ) && authState.isAuthenticated() ) {
+
+            requestHeaders.put( "Cookie", authState._cookieHeader );
+
+        }
+
+        return requestHeaders;
+
+    }
+
+    /**
+     Who an instance is logged in as (if anyone).
+     <p/>Instances are immutable. The login cookies, WikiTree ID and email address in one instance always belong to the same login.
+     */
+
+    private static final class AuthState {
+
+        private static final AuthState ANONYMOUS = new AuthState( null, null, null );
+
+        private final List<String> _loginCookies;
+
+        private final String _wikiTreeId;
+
+        private final String _emailAddress;
+
+        /**
+         The value of the {@code Cookie} header which carries the login cookies (built once rather than for every request).
+         */
+
+        private final String _cookieHeader;
+
+        private AuthState( @Nullable final List<String> loginCookies, @Nullable final String wikiTreeId, @Nullable final String emailAddress ) {
+
+            super();
+
+            _loginCookies = loginCookies;
+            _wikiTreeId = wikiTreeId;
+            _emailAddress = emailAddress;
+
+            if ( loginCookies == null ) {
+
+                _cookieHeader = null;
+
+            } else {
+
+                StringBuilder sb = new StringBuilder();
+                String semiColon = "";
+                for ( String cookie : loginCookies ) {
+
+                    sb.append( semiColon ).append( cookie.split( ";", 2 )[0] );
+                    semiColon = "; ";
+
+                }
+
+                _cookieHeader = sb.toString();
+
+            }
+
+        }
+
+        private boolean isAuthenticated() {
+
+            return _loginCookies != null;
+
+        }
+
+        public String toString() {
+
+            return "AuthState( " +
+                   "wikiTreeId=" + _wikiTreeId + ", " +
+                   "loginCookies=" + ( _loginCookies == null ? "null" : _loginCookies.size() + " cookie" + ( _loginCookies.size() == 1 ? "" : "s" ) ) +
+                   " )";
+
+        }
+
+    }
+
+    @NotNull
+    private static Optional<JSONObject> toOptionalJsonObject( @Nullable final Object rval ) {
+
+        if ( rval == null ) {
+
+            return Optional.empty();
+
+        } else if ( rval instanceof JSONObject ) {
+
+            return Optional.of( (JSONObject)rval );
+
+        } else {
+
+            throw new ReallyBadNewsError( "requestViaJsonGet:  expected a JSONObject, got this instead:  " + rval );
 
         }
 
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ The response to a request sent to a WikiTree API server by a {@link WikiTreeApiTransport}.
+ <p/>The body of the response is delivered as an {@link InputStream} which <b><u>must</u></b> be closed when the caller is done with it
+ (closing this response closes the body). Transports that manage persistent connections typically only reuse the underlying connection once
+ the body has been read right to the end and closed.
+ <p/>Header names are case-insensitive (servers are not all that consistent about how they capitalize things like {@code "Set-Cookie"}).
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unused" })
+public class WikiTreeApiResponse implements Closeable {
+
+    private final URL _url;
+
+    private final int _statusCode;
+
+    private final SortedMap<String, List<String>> _headers = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+
+    private final InputStream _body;
+
+    private final long _contentLength;
+
+    /**
+     Create a response.
+
+     @param url           the URL that the request was sent to.
+     @param statusCode    the HTTP status code returned by the server.
+     @param headers       the response's headers (entries with a {@code null} key, like the status line that {@link java.net.HttpURLConnection} likes to include, are ignored).
+     @param body          the body of the response ({@code null} if there isn't one).
+     @param contentLength the length of the body according to the server or {@code -1} if the server didn't say.
+     */
+
+    public WikiTreeApiResponse(
+            final @NotNull URL url,
+            final int statusCode,
+            final @NotNull Map<String, List<String>> headers,
+            @Nullable final InputStream body,
+            final long contentLength
+    ) {
+        super();
+
+        _url = url;
+        _statusCode = statusCode;
+
+        for ( Map.Entry<String, List<String>> entry : headers.entrySet() ) {
+
+            if ( entry.getKey() != null && entry.getValue() != null ) {
+
+                _headers.put( entry.getKey(), Collections.unmodifiableList( entry.getValue() ) );
+
+            }
+
+        }
+
+        _body = body;
+        _contentLength = contentLength;
+
+    }
+
+    /**
+     Get the URL that the request was sent to.
+
+     @return the URL that the request was sent to.
+     */
+
+    @NotNull
+    public URL getUrl() {
+
+        return _url;
+
+    }
+
+    /**
+     Get the HTTP status code returned by the server.
+
+     @return the HTTP status code returned by the server.
+     */
+
+    public int getStatusCode() {
+
+        return _statusCode;
+
+    }
+
+    /**
+     Determine if the server considered the request to have worked.
+     <p/>Both 2xx and 3xx status codes are considered to have worked (this is the same rule that this package has always used).
+
+     @return {@code true} if the status code is a 2xx or a 3xx value; {@code false} otherwise.
+     */
+
+    public boolean isSuccessful() {
+
+        return _statusCode / 100 == 2 || _statusCode / 100 == 3;
+
+    }
+
+    /**
+     Get all the values of a specified header.
+
+     @param name the name of the header (case-insensitive).
+     @return an unmodifiable list of the header's values (empty if the response did not include the header).
+     */
+
+    @NotNull
+    public List<String> getHeaders( final @NotNull String name ) {
+
+        List<String> values = _headers.get( name );
+
+        return values == null ? Collections.emptyList() : values;
+
+    }
+
+    /**
+     Get the first value of a specified header.
+
+     @param name the name of the header (case-insensitive).
+     @return the header's first value or {@code null} if the response did not include the header.
+     */
+
+    @Nullable
+    public String getFirstHeader( final @NotNull String name ) {
+
+        List<String> values = getHeaders( name );
+
+        return values.isEmpty() ? null : values.get( 0 );
+
+    }
+
+    /**
+     Get the length of the body according to the server.
+
+     @return the length of the body in bytes or {@code -1} if the server didn't say.
+     */
+
+    public long getContentLength() {
+
+        return _contentLength;
+
+    }
+
+    /**
+     Get the body of the response.
+
+     @return the body of the response or {@code null} if there isn't one.
+     */
+
+    @Nullable
+    public InputStream getBody() {
+
+        return _body;
+
+    }
+
+    /**
+     Create a copy of this response with a different body.
+     <p/>This is useful for wrapping the body in something which watches it being read.
+     Closing the copy closes the new body (it is up to the new body to close this response's body if that is what should happen).
+
+     @param body the copy's body ({@code null} if it shouldn't have one).
+     @return a response with the same URL, status code, headers and content length as this one but with the specified body.
+     */
+
+    @NotNull
+    public WikiTreeApiResponse withBody( @Nullable final InputStream body ) {
+
+        return new WikiTreeApiResponse( _url, _statusCode, _headers, body, _contentLength );
+
+    }
+
+    /**
+     Close the body of this response.
+     <p/>This method may safely be called more than once.
+     */
+
+    @Override
+    public void close()
+            throws IOException {
+
+        if ( _body != null ) {
+
+            _body.close();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeApiResponse( statusCode=" + _statusCode + ", contentLength=" + _contentLength + " )";
+
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ Describe something which is able to send HTTP GET requests to a WikiTree API server.
+ <p/>A {@link WikiTreeApiJsonSession} formats each request as a URL and then hands it to its transport.
+ Two implementations are provided:
+ <ul>
+ <li>{@link HttpClientTransport} uses {@code java.net.http.HttpClient} which speaks HTTP/2 (if the server does) and multiplexes
+ concurrent requests over a handful of sockets. This is what you get if you don't ask for something else.</li>
+ <li>{@link HttpUrlConnectionTransport} uses the venerable {@link java.net.HttpURLConnection} (HTTP/1.1 with keep-alive).</li>
+ </ul>
+ <p/>Both of them limit the number of concurrent requests to each host with a {@link WikiTreeConnectionPool}.
+ <p/>Both of them give up on a server which doesn't accept a connection within {@link #DEFAULT_CONNECT_TIMEOUT_MILLIS} milliseconds
+ or doesn't respond within {@link #DEFAULT_READ_TIMEOUT_MILLIS} milliseconds unless they are told otherwise
+ (a dead server would otherwise tie up every thread which sends it a request for as long as the operating system lets a socket hang).
+ <p/>Implementations <b><u>must</u></b> be thread-safe.
+ */
+
+public interface WikiTreeApiTransport {
+
+    /**
+     How long the transports that come with this package wait for a connection to the server to be established (unless told otherwise).
+     */
+
+    long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000L;
+
+    /**
+     How long the transports that come with this package wait for the server to respond once the request has been sent (unless told otherwise).
+     */
+
+    long DEFAULT_READ_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     Send a GET request.
+
+     @param url            the URL to send the request to (the query parameters have already been encoded into it).
+     @param requestHeaders the headers to include in the request.
+     @return the server's response. The caller <b><u>must</u></b> close it.
+     @throws IOException if something goes wrong sending the request or receiving the start of the response.
+     */
+
+    @NotNull
+    WikiTreeApiResponse get( @NotNull URL url, @NotNull Map<String, String> requestHeaders )
+            throws IOException;
+
+    /**
+     Send a GET request without waiting for the response.
+     <p/>The returned future completes once the response is available. If something goes wrong then it completes exceptionally
+     with the {@link IOException} that {@link #get(URL, Map)} would have thrown (possibly wrapped in a {@link java.util.concurrent.CompletionException}).
+
+     @param url            the URL to send the request to (the query parameters have already been encoded into it).
+     @param requestHeaders the headers to include in the request.
+     @return a future which yields the server's response. The caller <b><u>must</u></b> close the response.
+     */
+
+    @NotNull
+    CompletableFuture<WikiTreeApiResponse> getAsync( @NotNull URL url, @NotNull Map<String, String> requestHeaders );
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeCircuitOpenException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Stop sending requests to a WikiTree API server which seems to be down.
+ <p/>A {@link WikiTreeApiJsonSession} which has been given a circuit breaker via {@link WikiTreeApiJsonSession#setCircuitBreaker(WikiTreeCircuitBreaker)}
+ checks with the breaker before it sends each request and tells the breaker how the request went.
+ A request fails if it ends in an {@link java.io.IOException} (a refused connection, a timeout, etc.), if the server answers with a 5xx status code
+ or if something goes wrong while the body of the response is being read. The session doesn't report how a request went until the body has been closed.
+ <p/>The breaker has three states:
+ <ul>
+ <li>{@link State#CLOSED} - requests are sent as usual.
+ After {@link #getFailureThreshold()} consecutive failures, the breaker opens.</li>
+ <li>{@link State#OPEN} - requests fail immediately with a {@link WikiTreeCircuitOpenException} instead of being sent
+ (so a dead server can't tie up thousands of threads waiting for timeouts).
+ After {@link #getOpenMillis()} milliseconds, the breaker becomes half-open.</li>
+ <li>{@link State#HALF_OPEN} - one request at a time (a probe) is sent to see if the server is back.
+ Other requests fail immediately. If the probe succeeds then the breaker closes. If it fails then the breaker opens again.</li>
+ </ul>
+ <p/>A breaker can be shared by any number of sessions (which is the point if they are all talking to the same server).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeCircuitBreaker {
+
+    /**
+     The number of consecutive failures which opens a breaker created via {@link #WikiTreeCircuitBreaker()}.
+     */
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     How long a breaker created via {@link #WikiTreeCircuitBreaker()} stays open before it lets a probe through.
+     */
+
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis( 30L );
+
+    /**
+     The states that a breaker can be in.
+     */
+
+    public enum State {
+
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+
+    }
+
+    private final int _failureThreshold;
+
+    private final long _openMillis;
+
+    // Guarded by this.
+
+    private State _state = State.CLOSED;
+
+    private int _consecutiveFailures = 0;
+
+    private long _openedAtNanos = 0L;
+
+    private boolean _probeInFlight = false;
+
+    private final AtomicLong _rejectedRequests = new AtomicLong( 0L );
+
+    private final AtomicLong _trips = new AtomicLong( 0L );
+
+    /**
+     Create a breaker with the default settings.
+     */
+
+    public WikiTreeCircuitBreaker() {
+
+        this( DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS );
+
+    }
+
+    /**
+     Create a breaker.
+
+     @param failureThreshold the number of consecutive failures which opens the breaker.
+     @param openMillis       how long (in milliseconds) the breaker stays open before it lets a probe through.
+     @throws IllegalArgumentException if {@code failureThreshold} is not positive or {@code openMillis} is negative.
+     */
+
+    public WikiTreeCircuitBreaker( final int failureThreshold, final long openMillis ) {
+
+        super();
+
+        if ( failureThreshold < 1 || openMillis < 0L ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeCircuitBreaker:  invalid settings (got failureThreshold=" + failureThreshold + ", openMillis=" + openMillis + ")"
+            );
+
+        }
+
+        _failureThreshold = failureThreshold;
+        _openMillis = openMillis;
+
+    }
+
+    /**
+     Get permission to send a request.
+     <p/>Every successful call <b><u>must</u></b> be matched by a call to {@link #release(boolean)} or {@link #abandon()}.
+
+     @throws WikiTreeCircuitOpenException if the request must not be sent.
+     */
+
+    public synchronized void acquire()
+            throws WikiTreeCircuitOpenException {
+
+        if ( _state == State.OPEN ) {
+
+            long openForMillis = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - _openedAtNanos );
+            if ( openForMillis < _openMillis ) {
+
+                _rejectedRequests.incrementAndGet();
+
+                throw new WikiTreeCircuitOpenException(
+                        "WikiTreeCircuitBreaker:  circuit is open after " + _consecutiveFailures + " consecutive failures",
+                        _openMillis - openForMillis
+                );
+
+            }
+
+            _state = State.HALF_OPEN;
+
+        }
+
+        if ( _state == State.HALF_OPEN ) {
+
+            if ( _probeInFlight ) {
+
+                _rejectedRequests.incrementAndGet();
+
+                throw new WikiTreeCircuitOpenException( "WikiTreeCircuitBreaker:  circuit is half-open and a probe is already in flight", 0L );
+
+            }
+
+            _probeInFlight = true;
+
+        }
+
+    }
+
+    /**
+     Report how a request went.
+
+     @param success {@code true} if the server answered with a status code below 500; {@code false} if the request failed.
+     */
+
+    public synchronized void release( final boolean success ) {
+
+        if ( success ) {
+
+            _consecutiveFailures = 0;
+            _state = State.CLOSED;
+            _probeInFlight = false;
+
+            return;
+
+        }
+
+        _consecutiveFailures += 1;
+
+        if ( _state == State.HALF_OPEN || _state == State.CLOSED && _consecutiveFailures >= _failureThreshold ) {
+
+            _state = State.OPEN;
+            _openedAtNanos = System.nanoTime();
+            _probeInFlight = false;
+            _trips.incrementAndGet();
+
+        }
+
+    }
+
+    /**
+     Report that a request was cancelled before we found out how it went (a hedged request which lost the race, for example).
+     <p/>This says nothing about the server. It just lets another probe through if the cancelled request was the probe.
+     */
+
+    public synchronized void abandon() {
+
+        if ( _state == State.HALF_OPEN ) {
+
+            _probeInFlight = false;
+
+        }
+
+    }
+
+    /**
+     Report how a request went once the body of its response has been read.
+     <p/>A response with a 5xx status code (or without a body) is reported right away. Otherwise, the request is reported as a success
+     when the returned response's body is closed unless reading the body ended in an {@link IOException} or the body turned out to be shorter
+     than the server's {@code Content-Length} header promised ({@link java.net.HttpURLConnection} quietly reports the end of a body that the server
+     hung up in the middle of).
+
+     @param response the response.
+     @return the response with its body wrapped so that closing it reports to this breaker.
+     */
+
+    @NotNull
+    WikiTreeApiResponse releaseWhenRead( final @NotNull WikiTreeApiResponse response ) {
+
+        InputStream body = response.getBody();
+        if ( response.getStatusCode() >= 500 || body == null ) {
+
+            release( response.getStatusCode() < 500 );
+
+            return response;
+
+        }
+
+        return response.withBody( new ReleasingInputStream( body, response.getContentLength() ) );
+
+    }
+
+    /**
+     Get the breaker's current state.
+     <p/>An open breaker whose time is up is reported as {@link State#OPEN} until a request actually checks with it.
+
+     @return the breaker's current state.
+     */
+
+    @NotNull
+    public synchronized State getState() {
+
+        return _state;
+
+    }
+
+    /**
+     Get the number of consecutive failures which opens the breaker.
+
+     @return the failure threshold.
+     */
+
+    public int getFailureThreshold() {
+
+        return _failureThreshold;
+
+    }
+
+    /**
+     Get how long the breaker stays open before it lets a probe through.
+
+     @return how long (in milliseconds) the breaker stays open.
+     */
+
+    public long getOpenMillis() {
+
+        return _openMillis;
+
+    }
+
+    /**
+     Get the number of requests which failed immediately because the breaker was open (or half-open with a probe in flight).
+
+     @return the number of rejected requests.
+     */
+
+    public long getRejectedRequests() {
+
+        return _rejectedRequests.get();
+
+    }
+
+    /**
+     Get the number of times that the breaker has opened.
+
+     @return the number of trips.
+     */
+
+    public long getTrips() {
+
+        return _trips.get();
+
+    }
+
+    /**
+     An input stream which reports to the breaker when it is closed.
+     */
+
+    private class ReleasingInputStream extends FilterInputStream {
+
+        private final long _contentLength;
+
+        private final AtomicBoolean _released = new AtomicBoolean( false );
+
+        private long _bytes = 0L;
+
+        private volatile boolean _failed = false;
+
+        private ReleasingInputStream( final @NotNull InputStream in, final long contentLength ) {
+
+            super( in );
+
+            _contentLength = contentLength;
+
+        }
+
+        private long count( final long count ) {
+
+            if ( count > 0L ) {
+
+                _bytes += count;
+
+            } else if ( count < 0L && _contentLength >= 0L && _bytes < _contentLength ) {
+
+                _failed = true;
+
+            }
+
+            return count;
+
+        }
+
+        @Override
+        public int read()
+                throws IOException {
+
+            try {
+
+                int ch = super.read();
+                count( ch < 0 ? -1L : 1L );
+
+                return ch;
+
+            } catch ( IOException e ) {
+
+                _failed = true;
+
+                throw e;
+
+            }
+
+        }
+
+        @Override
+        public int read( final @NotNull byte[] b, final int off, final int len )
+                throws IOException {
+
+            try {
+
+                return (int)count( super.read( b, off, len ) );
+
+            } catch ( IOException e ) {
+
+                _failed = true;
+
+                throw e;
+
+            }
+
+        }
+
+        @Override
+        public long skip( final long n )
+                throws IOException {
+
+            try {
+
+                return count( super.skip( n ) );
+
+            } catch ( IOException e ) {
+
+                _failed = true;
+
+                throw e;
+
+            }
+
+        }
+
+        @Override
+        public void close()
+                throws IOException {
+
+            try {
+
+                super.close();
+
+            } finally {
+
+                if ( _released.compareAndSet( false, true ) ) {
+
+                    release( !_failed );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeCircuitBreaker( " +
+               "state=" + getState() + ", " +
+               "trips=" + getTrips() + ", " +
+               "rejected=" + getRejectedRequests() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ A Java Flight Recorder event describing the connect phase of a request sent by an {@link HttpUrlConnectionTransport}.
+ <p/>A request which reuses a kept-alive connection connects almost instantly. One which needs a new connection (DNS lookup, TCP and TLS handshakes)
+ shows up as a noticeably longer event. The event happens on the same thread as, and inside, the {@link WikiTreeRequestEvent} for the request.
+ */
+
+@Name( "com.matilda.wikitree.Connect" )
+@Label( "WikiTree API Connect" )
+@Category( { "WikiTree", "API" } )
+@Description( "Connecting to the WikiTree API server (nearly instant if a kept-alive connection was reused)" )
+class WikiTreeConnectEvent extends Event {
+
+    @Label( "Host" )
+    String host;
+
+    @Label( "Port" )
+    int port;
+
+    private WikiTreeConnectEvent() {
+
+        super();
+
+    }
+
+    /**
+     Connect a connection, recording an event if the event is enabled.
+
+     @param connection the connection.
+     @throws IOException if the connection cannot be established.
+     */
+
+    static void connect( final @NotNull HttpURLConnection connection )
+            throws IOException {
+
+        WikiTreeConnectEvent event = new WikiTreeConnectEvent();
+        event.begin();
+
+        connection.connect();
+
+        event.end();
+        if ( event.shouldCommit() ) {
+
+            event.host = connection.getURL().getHost();
+            event.port = connection.getURL().getPort() < 0 ? connection.getURL().getDefaultPort() : connection.getURL().getPort();
+            event.commit();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeConnectEvent( host=" + host + ", port=" + port + " )";
+
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ Manage the persistent (keep-alive) connections used to talk to WikiTree API servers.
+ <p/>The JDK's {@link java.net.HttpURLConnection} implementation already parks idle keep-alive connections in a JVM-wide cache
+ provided that each response is read right to the end and then closed (which {@link com.matilda.wikitree.api.util.WikiTreeApiUtilities#readResponse(java.net.HttpURLConnection, boolean)}
+ takes care of). What it does not do is put any limit on how many connections to a given host are in use at the same time.
+ An instance of this class provides that limit: at most {@link #getMaxConnectionsPerHost()} requests may be in flight to any one host at once and
+ any additional requests wait (in the order in which they arrived) until one of the in-use connections is handed back.
+ <p/>{@link HttpClientTransport} uses a pool in the same way even though several of its requests may share one HTTP/2 connection
+ (it is the number of requests in flight that the server cares about). Its requests wait for their turn via {@link #acquireAsync(URL)}
+ so that they don't tie up a thread while they wait.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeConnectionPool {
+
+    /**
+     The maximum number of connections per host used if nobody says otherwise.
+     <p/>Please be gentle. The WikiTree API server is most definitely a 'limited resource'.
+     */
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    private final int _maxConnectionsPerHost;
+
+    private final ConcurrentMap<String, HostPermits> _permitsByHost = new ConcurrentHashMap<>();
+
+    /**
+     Create a pool which allows up to {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST} connections per host.
+     */
+
+    public WikiTreeConnectionPool() {
+
+        this( DEFAULT_MAX_CONNECTIONS_PER_HOST );
+
+    }
+
+    /**
+     Create a pool which allows up to a specified number of connections per host.
+     <p/>The JDK's keep-alive cache hangs onto at most {@code http.maxConnections} (default 5) idle connections per host.
+     If {@code maxConnectionsPerHost} is larger than that then the extra connections get closed instead of being reused.
+     This constructor leaves that JVM-wide system property alone. If you need a larger value then set it yourself (for example, via
+     {@code -Dhttp.maxConnections=16} on the command line) before the first HTTP connection is made within this JVM
+     (the JDK only looks at the property once).
+
+     @param maxConnectionsPerHost the maximum number of connections to any one host which may be in use at the same time.
+     @throws IllegalArgumentException if {@code maxConnectionsPerHost} is less than 1.
+     */
+
+    public WikiTreeConnectionPool( final int maxConnectionsPerHost ) {
+
+        super();
+
+        if ( maxConnectionsPerHost < 1 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeConnectionPool:  maxConnectionsPerHost must be at least 1 (got " + maxConnectionsPerHost + ")"
+            );
+
+        }
+
+        _maxConnectionsPerHost = maxConnectionsPerHost;
+
+    }
+
+    /**
+     Get the maximum number of connections to any one host which may be in use at the same time.
+
+     @return the maximum number of connections to any one host which may be in use at the same time.
+     */
+
+    public int getMaxConnectionsPerHost() {
+
+        return _maxConnectionsPerHost;
+
+    }
+
+    /**
+     Wait for a connection to the specified URL's host to become available.
+     <p/>Every successful call to this method <b><u>must</u></b> be matched by exactly one call to {@link #release(URL)}
+     (use a {@code try}/{@code finally} block).
+
+     @param url the URL about to be connected to.
+     @throws InterruptedIOException if this thread is interrupted while waiting.
+     */
+
+    public void acquire( final @NotNull URL url )
+            throws InterruptedIOException {
+
+        CompletableFuture<Void> permit = getPermits( url ).acquire();
+        try {
+
+            permit.get();
+
+        } catch ( InterruptedException e ) {
+
+            // If the permit arrived anyway then hand it back.
+
+            if ( !permit.cancel( false ) ) {
+
+                release( url );
+
+            }
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( "WikiTreeConnectionPool.acquire:  interrupted while waiting for a connection to " + url.getHost() );
+
+        } catch ( ExecutionException e ) {
+
+            throw new IllegalStateException( "WikiTreeConnectionPool.acquire:  permits are never completed exceptionally", e );
+
+        }
+
+    }
+
+    /**
+     Wait for a connection to the specified URL's host to become available without tying up the current thread.
+     <p/>Once the returned future completes, the caller <b><u>must</u></b> call {@link #release(URL)} exactly once.
+     Cancelling the future before it completes gives up its place in line (no call to {@link #release(URL)} is needed in that case).
+
+     @param url the URL about to be connected to.
+     @return a future which completes when the connection is available.
+     */
+
+    @NotNull
+    public CompletableFuture<Void> acquireAsync( final @NotNull URL url ) {
+
+        return getPermits( url ).acquire();
+
+    }
+
+    /**
+     Hand back a connection obtained via {@link #acquire(URL)}.
+
+     @param url the URL that was connected to.
+     */
+
+    public void release( final @NotNull URL url ) {
+
+        getPermits( url ).release();
+
+    }
+
+    /**
+     Get the number of connections to the specified URL's host which are currently available.
+
+     @param url the URL of interest.
+     @return the number of additional requests to the URL's host which could be started right now without waiting.
+     */
+
+    public int getAvailableConnections( final @NotNull URL url ) {
+
+        return getPermits( url ).getAvailable();
+
+    }
+
+    private HostPermits getPermits( final @NotNull URL url ) {
+
+        String hostKey = url.getProtocol() + "://" + url.getHost() + ":" + ( url.getPort() == -1 ? url.getDefaultPort() : url.getPort() );
+
+        return _permitsByHost.computeIfAbsent( hostKey, k -> new HostPermits( _maxConnectionsPerHost ) );
+
+    }
+
+    /**
+     The connections to one host.
+     <p/>A released connection goes straight to whoever has been waiting longest (a waiter which has given up is skipped).
+     */
+
+    private static class HostPermits {
+
+        // Guarded by this.
+
+        private int _available;
+
+        private final Deque<CompletableFuture<Void>> _waiters = new ArrayDeque<>();
+
+        private HostPermits( final int available ) {
+
+            super();
+
+            _available = available;
+
+        }
+
+        @NotNull
+        private synchronized CompletableFuture<Void> acquire() {
+
+            if ( _available > 0 ) {
+
+                _available -= 1;
+
+                return CompletableFuture.completedFuture( null );
+
+            }
+
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            _waiters.addLast( waiter );
+
+            return waiter;
+
+        }
+
+        private void release() {
+
+            while ( true ) {
+
+                CompletableFuture<Void> waiter;
+                synchronized ( this ) {
+
+                    waiter = _waiters.pollFirst();
+                    if ( waiter == null ) {
+
+                        _available += 1;
+
+                        return;
+
+                    }
+
+                }
+
+                // Complete the waiter outside of our lock (whatever it was waiting to do happens right now in this thread).
+
+                if ( waiter.complete( null ) ) {
+
+                    return;
+
+                }
+
+            }
+
+        }
+
+        private synchronized int getAvailable() {
+
+            return _available;
+
+        }
+
+        public String toString() {
+
+            return "HostPermits( available=" + getAvailable() + " )";
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeConnectionPool( maxConnectionsPerHost=" + _maxConnectionsPerHost + ", hosts=" + _permitsByHost.keySet() + " )";
+
+    }
+
+}
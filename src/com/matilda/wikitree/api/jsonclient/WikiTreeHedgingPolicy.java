@@ -0,0 +1,309 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Decide when a slow request to the WikiTree API server is worth sending a second time.
+ <p/>Most {@code getPerson} and {@code getProfile} requests are answered quickly but every now and then one of them takes much longer than usual.
+ These stragglers end up dominating the tail of the latency distribution. A {@link WikiTreeApiJsonSession} which has been given a policy
+ via {@link WikiTreeApiJsonSession#setHedgingPolicy(WikiTreeHedgingPolicy)} sends a second, identical, request (a hedge) if the first one hasn't
+ been answered within the {@link #getPercentile()} percentile of recently observed latencies. Whichever successful response arrives first is used
+ and the other request is cancelled (if its response arrives anyway, it is closed without being read). An unsuccessful response (a 5xx, for example)
+ never wins and isn't counted as a latency sample.
+ <p/>No hedges are sent until {@link #getMinSamples()} latencies have been observed (we need to know what slow means first).
+ <p/>Hedges are limited by a budget. Every hedgeable request adds {@link #getBudgetRatio()} of a hedge to the budget and every hedge uses up one.
+ The budget never holds more than {@link #getBudgetReserve()} hedges (which is also what it starts with).
+ This means that hedging adds at most about {@code budgetRatio} to the load on the server (a 95th percentile trigger
+ would add about five percent on its own; the budget keeps it that way when the server slows down across the board).
+ <p/>A policy can be shared by any number of sessions (they then share the latency history and the budget).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeHedgingPolicy {
+
+    /**
+     The latency percentile used by {@link #WikiTreeHedgingPolicy()}.
+     */
+
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     The number of latencies that a policy created via {@link #WikiTreeHedgingPolicy()} needs to see before it sends any hedges.
+     */
+
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+
+    /**
+     The fraction of a hedge that each request adds to the budget of a policy created via {@link #WikiTreeHedgingPolicy()}.
+     */
+
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+
+    /**
+     The most hedges held in the budget of a policy created via {@link #WikiTreeHedgingPolicy()}.
+     */
+
+    public static final int DEFAULT_BUDGET_RESERVE = 5;
+
+    /**
+     The number of recent latencies that the percentile is computed from.
+     */
+
+    private static final int SAMPLE_WINDOW = 512;
+
+    /**
+     How many new latencies are observed between recomputations of the percentile.
+     */
+
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private final double _percentile;
+
+    private final int _minSamples;
+
+    private final double _budgetRatio;
+
+    private final int _budgetReserve;
+
+    // Guarded by this.
+
+    private final long[] _samples = new long[SAMPLE_WINDOW];
+
+    private long _sampleCount = 0L;
+
+    private long _hedgeDelayNanos = -1L;
+
+    private double _budget;
+
+    private final AtomicLong _hedges = new AtomicLong( 0L );
+
+    private final AtomicLong _hedgeWins = new AtomicLong( 0L );
+
+    /**
+     Create a policy with the default settings.
+     */
+
+    public WikiTreeHedgingPolicy() {
+
+        this( DEFAULT_PERCENTILE, DEFAULT_MIN_SAMPLES, DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_RESERVE );
+
+    }
+
+    /**
+     Create a policy.
+
+     @param percentile    the percentile of recent latencies after which a hedge is sent (for example, {@code 0.95}).
+     @param minSamples    the number of latencies which must be observed before any hedges are sent.
+     @param budgetRatio   the fraction of a hedge that each hedgeable request adds to the budget.
+     @param budgetReserve the most hedges that the budget can hold (and how many it starts with).
+     @throws IllegalArgumentException if any of the values don't make sense.
+     */
+
+    public WikiTreeHedgingPolicy( final double percentile, final int minSamples, final double budgetRatio, final int budgetReserve ) {
+
+        super();
+
+        if ( !( percentile > 0.0 && percentile < 1.0 ) || minSamples < 1 || !( budgetRatio >= 0.0 ) || budgetReserve < 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeHedgingPolicy:  invalid settings (got " +
+                    "percentile=" + percentile + ", " +
+                    "minSamples=" + minSamples + ", " +
+                    "budgetRatio=" + budgetRatio + ", " +
+                    "budgetReserve=" + budgetReserve + ")"
+            );
+
+        }
+
+        _percentile = percentile;
+        _minSamples = minSamples;
+        _budgetRatio = budgetRatio;
+        _budgetReserve = budgetReserve;
+
+        _budget = budgetReserve;
+
+    }
+
+    /**
+     Determine if a request is one that this policy would consider hedging.
+
+     @param action the request's {@code action} parameter.
+     @return {@code true} if the action is {@code getPerson} or {@code getProfile}; {@code false} otherwise.
+     */
+
+    public boolean isHedgeable( final Object action ) {
+
+        return "getPerson".equals( action ) || "getProfile".equals( action );
+
+    }
+
+    /**
+     Note that a hedgeable request is about to be sent for the first time (this adds to the hedge budget).
+
+     @return how long (in nanoseconds) to wait for a response before sending a hedge or {@code -1} if no hedge should be sent.
+     */
+
+    public synchronized long recordRequest() {
+
+        _budget = Math.min( _budgetReserve, _budget + _budgetRatio );
+
+        return _hedgeDelayNanos;
+
+    }
+
+    /**
+     Note how long it took for the server to respond to a request (or to a hedge).
+
+     @param latencyNanos the time (in nanoseconds) between sending the request and getting the response.
+     */
+
+    public synchronized void recordLatency( final long latencyNanos ) {
+
+        _samples[(int)( _sampleCount % SAMPLE_WINDOW )] = latencyNanos;
+        _sampleCount += 1L;
+
+        if ( _sampleCount >= _minSamples && ( _hedgeDelayNanos < 0L || _sampleCount % RECOMPUTE_INTERVAL == 0L ) ) {
+
+            int count = (int)Math.min( _sampleCount, SAMPLE_WINDOW );
+            long[] sorted = Arrays.copyOf( _samples, count );
+            Arrays.sort( sorted );
+            _hedgeDelayNanos = sorted[Math.min( count - 1, (int)( _percentile * count ) )];
+
+        }
+
+    }
+
+    /**
+     Decide whether a hedge should be sent for a request which hasn't been answered yet.
+     <p/>A {@code true} answer uses up one hedge from the budget.
+
+     @return {@code true} if a hedge should be sent; {@code false} otherwise.
+     */
+
+    public synchronized boolean tryHedge() {
+
+        if ( _budget >= 1.0 ) {
+
+            _budget -= 1.0;
+            _hedges.incrementAndGet();
+
+            return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     Note that a hedge was answered before the request that it was hedging.
+     */
+
+    public void recordHedgeWin() {
+
+        _hedgeWins.incrementAndGet();
+
+    }
+
+    /**
+     Get the current hedge delay.
+
+     @return how long (in nanoseconds) a request currently waits before it is hedged or {@code -1} if not enough latencies have been observed yet.
+     */
+
+    public synchronized long getHedgeDelayNanos() {
+
+        return _hedgeDelayNanos;
+
+    }
+
+    /**
+     Get the latency percentile after which a hedge is sent.
+
+     @return the percentile (between {@code 0} and {@code 1}).
+     */
+
+    public double getPercentile() {
+
+        return _percentile;
+
+    }
+
+    /**
+     Get the number of latencies which must be observed before any hedges are sent.
+
+     @return the minimum number of samples.
+     */
+
+    public int getMinSamples() {
+
+        return _minSamples;
+
+    }
+
+    /**
+     Get the fraction of a hedge that each hedgeable request adds to the budget.
+
+     @return the budget ratio.
+     */
+
+    public double getBudgetRatio() {
+
+        return _budgetRatio;
+
+    }
+
+    /**
+     Get the most hedges that the budget can hold.
+
+     @return the budget reserve.
+     */
+
+    public int getBudgetReserve() {
+
+        return _budgetReserve;
+
+    }
+
+    /**
+     Get the number of hedges sent.
+
+     @return the number of hedges.
+     */
+
+    public long getHedges() {
+
+        return _hedges.get();
+
+    }
+
+    /**
+     Get the number of hedges which were answered before the requests that they were hedging.
+
+     @return the number of winning hedges.
+     */
+
+    public long getHedgeWins() {
+
+        return _hedgeWins.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeHedgingPolicy( " +
+               "percentile=" + _percentile + ", " +
+               "hedgeDelayNanos=" + getHedgeDelayNanos() + ", " +
+               "hedges=" + getHedges() + ", " +
+               "hedgeWins=" + getHedgeWins() +
+               " )";
+
+    }
+
+}
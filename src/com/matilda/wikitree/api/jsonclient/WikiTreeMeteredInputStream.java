@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ An input stream which counts the bytes read through it and the time spent waiting for them.
+ <p/>Used to wrap response bodies (see {@link WikiTreeApiResponse#withBody(InputStream)}) so that the time spent reading a response
+ can be told apart from the time spent parsing it. Instances are not thread-safe (neither is reading a response body from more than one thread).
+ */
+
+class WikiTreeMeteredInputStream extends FilterInputStream {
+
+    private long _bytes = 0L;
+
+    private long _readNanos = 0L;
+
+    WikiTreeMeteredInputStream( final @NotNull InputStream in ) {
+
+        super( in );
+
+    }
+
+    @Override
+    public int read()
+            throws IOException {
+
+        long startNanos = System.nanoTime();
+        int ch = super.read();
+        _readNanos += System.nanoTime() - startNanos;
+
+        if ( ch >= 0 ) {
+
+            _bytes += 1L;
+
+        }
+
+        return ch;
+
+    }
+
+    @Override
+    public int read( final @NotNull byte[] b, final int off, final int len )
+            throws IOException {
+
+        long startNanos = System.nanoTime();
+        int count = super.read( b, off, len );
+        _readNanos += System.nanoTime() - startNanos;
+
+        if ( count > 0 ) {
+
+            _bytes += count;
+
+        }
+
+        return count;
+
+    }
+
+    @Override
+    public long skip( final long n )
+            throws IOException {
+
+        long startNanos = System.nanoTime();
+        long count = super.skip( n );
+        _readNanos += System.nanoTime() - startNanos;
+        _bytes += count;
+
+        return count;
+
+    }
+
+    /**
+     Get the number of bytes read (or skipped) so far.
+
+     @return the number of bytes.
+     */
+
+    long getBytes() {
+
+        return _bytes;
+
+    }
+
+    /**
+     Get the time spent so far waiting for bytes to arrive.
+
+     @return the time in nanoseconds.
+     */
+
+    long getReadNanos() {
+
+        return _readNanos;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeMeteredInputStream( bytes=" + _bytes + ", readNanos=" + _readNanos + " )";
+
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+
+import java.util.LinkedList;
+
+/**
+ A {@link ContentHandler} which turns the parser's events into calls to a {@link WikiTreeProfileVisitor}.
+ <p/>WikiTree API responses which carry lots of profiles all look more or less like this:
+ <blockquote><pre>
+ [ { "watchlist": [ { ...profile... }, { ...profile... }, ... ], "watchlistCount": 10000 } ]
+ </pre></blockquote>
+ An instance of this class is told the name of the entry holding the array of profiles ({@code "watchlist"} in the above example).
+ Each object in that array is reported to the visitor as a profile. Simple values outside of that array are reported as top-level values.
+ Anything else that is a JSON object or array (a profile's {@code "Parents"} field, for example) is assembled into a
+ {@link JSONObject} or {@link JSONArray} and reported as the value of the field or top-level value that it belongs to.
+ <p/>Instances of this class may be reused but only by one parse at a time.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unchecked" })
+public class WikiTreeProfileEventHandler implements ContentHandler {
+
+    private final String _profilesKey;
+
+    private final WikiTreeProfileVisitor _visitor;
+
+    /*
+     Structural state.
+     _depth is the number of JSON containers which are currently open.
+     _profilesArrayDepth and _profileDepth are the values that _depth had once the profiles array or the current profile was opened (-1 if not open).
+     */
+
+    private int _depth;
+
+    private boolean _rootIsArray;
+
+    private int _profilesArrayDepth;
+
+    private int _profileDepth;
+
+    private int _profileCount;
+
+    private final LinkedList<String> _keys = new LinkedList<>();
+
+    // The containers being assembled for a value which is not a profile (empty if we aren't assembling anything).
+
+    private final LinkedList<Object> _values = new LinkedList<>();
+
+    /**
+     Create a handler.
+
+     @param profilesKey the name of the entry holding the array of profiles (for example, {@code "watchlist"} or {@code "ancestors"}).
+     @param visitor     the visitor to report to.
+     */
+
+    public WikiTreeProfileEventHandler( final @NotNull String profilesKey, final @NotNull WikiTreeProfileVisitor visitor ) {
+
+        super();
+
+        _profilesKey = profilesKey;
+        _visitor = visitor;
+
+        reset();
+
+    }
+
+    private void reset() {
+
+        _depth = 0;
+        _rootIsArray = false;
+        _profilesArrayDepth = -1;
+        _profileDepth = -1;
+        _profileCount = 0;
+        _keys.clear();
+        _values.clear();
+
+    }
+
+    /**
+     Get the number of profiles reported so far.
+
+     @return the number of profiles reported so far.
+     */
+
+    public int getProfileCount() {
+
+        return _profileCount;
+
+    }
+
+    @Override
+    public void startJSON() {
+
+        reset();
+
+    }
+
+    @Override
+    public void endJSON() {
+
+    }
+
+    @Override
+    public boolean startObject() {
+
+        if ( !_values.isEmpty() ) {
+
+            _depth += 1;
+
+            return startValue( new JSONObject() );
+
+        } else if ( _profilesArrayDepth == _depth && _profileDepth == -1 ) {
+
+            _depth += 1;
+            _profileDepth = _depth;
+
+            int index = _profileCount;
+            _profileCount += 1;
+
+            return _visitor.startProfile( index );
+
+        } else if ( isStructural() ) {
+
+            _depth += 1;
+
+            return true;
+
+        } else {
+
+            _depth += 1;
+
+            return startValue( new JSONObject() );
+
+        }
+
+    }
+
+    @Override
+    public boolean endObject() {
+
+        if ( !_values.isEmpty() ) {
+
+            _depth -= 1;
+
+            return endValue();
+
+        } else if ( _depth == _profileDepth ) {
+
+            _depth -= 1;
+            _profileDepth = -1;
+
+            return _visitor.endProfile();
+
+        } else {
+
+            _depth -= 1;
+
+            return true;
+
+        }
+
+    }
+
+    @Override
+    public boolean startObjectEntry( final String key ) {
+
+        _keys.addFirst( key );
+
+        return true;
+
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+
+        _keys.removeFirst();
+
+        return true;
+
+    }
+
+    @Override
+    public boolean startArray() {
+
+        if ( !_values.isEmpty() ) {
+
+            _depth += 1;
+
+            return startValue( new JSONArray() );
+
+        } else if ( _depth == 0 ) {
+
+            _depth += 1;
+            _rootIsArray = true;
+
+            return true;
+
+        } else if ( _profileDepth == -1 && _profilesArrayDepth == -1 && _profilesKey.equals( _keys.peekFirst() ) ) {
+
+            _depth += 1;
+            _profilesArrayDepth = _depth;
+
+            return true;
+
+        } else {
+
+            _depth += 1;
+
+            return startValue( new JSONArray() );
+
+        }
+
+    }
+
+    @Override
+    public boolean endArray() {
+
+        if ( !_values.isEmpty() ) {
+
+            _depth -= 1;
+
+            return endValue();
+
+        } else if ( _depth == _profilesArrayDepth ) {
+
+            _depth -= 1;
+            _profilesArrayDepth = -1;
+
+            return true;
+
+        } else {
+
+            _depth -= 1;
+
+            return true;
+
+        }
+
+    }
+
+    @Override
+    public boolean primitive( final Object value ) {
+
+        if ( !_values.isEmpty() ) {
+
+            addToCurrentValue( value );
+
+            return true;
+
+        } else {
+
+            return deliver( value );
+
+        }
+
+    }
+
+    /**
+     Determine if a container being opened right now is part of the response's skeleton
+     (the outermost object or the object inside the outermost array) rather than a value.
+     */
+
+    private boolean isStructural() {
+
+        return _profileDepth == -1 && ( _depth == 0 || ( _depth == 1 && _rootIsArray ) );
+
+    }
+
+    private boolean startValue( final @NotNull Object container ) {
+
+        if ( !_values.isEmpty() ) {
+
+            addToCurrentValue( container );
+
+        }
+
+        _values.addFirst( container );
+
+        return true;
+
+    }
+
+    private boolean endValue() {
+
+        Object container = _values.removeFirst();
+
+        return !_values.isEmpty() || deliver( container );
+
+    }
+
+    private void addToCurrentValue( @Nullable final Object value ) {
+
+        Object current = _values.getFirst();
+        if ( current instanceof JSONArray ) {
+
+            ( (JSONArray)current ).add( value );
+
+        } else {
+
+            ( (JSONObject)current ).put( _keys.peekFirst(), value );
+
+        }
+
+    }
+
+    private boolean deliver( @Nullable final Object value ) {
+
+        String key = _keys.peekFirst();
+
+        if ( _profileDepth != -1 ) {
+
+            return key == null || _visitor.field( key, value );
+
+        } else if ( _profilesArrayDepth != -1 && _depth == _profilesArrayDepth ) {
+
+            // Something other than an object in the profiles array. Not a profile so we ignore it.
+
+            return true;
+
+        } else {
+
+            return key == null || _visitor.topLevelValue( key, value );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeProfileEventHandler( profilesKey=\"" + _profilesKey + "\", profileCount=" + _profileCount + " )";
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ Receive the profiles in a response one field at a time while the response is still arriving.
+ <p/>An instance of this interface is passed to methods like {@link WikiTreeApiJsonSession#streamWatchlist(Boolean, Boolean, Boolean, Boolean, String, Integer, Integer, String, WikiTreeProfileVisitor)}
+ and {@link WikiTreeApiJsonSession#streamAncestors(com.matilda.wikitree.api.wrappers.WikiTreeId, Integer, WikiTreeProfileVisitor)}.
+ For each profile in the response, the visitor sees a call to {@link #startProfile(int)}, a call to {@link #field(String, Object)} for each of the profile's fields,
+ and then a call to {@link #endProfile()}. No {@code JSONObject} is ever built for the profile itself.
+ <p/>Fields with simple values (strings, numbers, booleans and nulls) are delivered as is.
+ Fields whose values are themselves JSON objects or arrays (for example, the {@code "Parents"} field of an ancestor) are delivered as a (small)
+ {@link org.json.simple.JSONObject} or {@link org.json.simple.JSONArray}.
+ <p/>Every method returns {@code true} to keep going or {@code false} to stop processing the response right away.
+ */
+
+public interface WikiTreeProfileVisitor {
+
+    /**
+     Start of a profile.
+
+     @param index the profile's position in the response (the first profile is at index 0).
+     @return {@code true} to keep going; {@code false} to stop.
+     */
+
+    boolean startProfile( int index );
+
+    /**
+     One of the current profile's fields.
+
+     @param name  the name of the field.
+     @param value the field's value.
+     @return {@code true} to keep going; {@code false} to stop.
+     */
+
+    boolean field( @NotNull String name, @Nullable Object value );
+
+    /**
+     End of the current profile.
+
+     @return {@code true} to keep going; {@code false} to stop.
+     */
+
+    boolean endProfile();
+
+    /**
+     A value in the response which is not part of any profile (for example, the {@code "watchlistCount"} in a {@code getWatchlist} response or the
+     {@code "status"} of a failed request).
+     <p/>The default implementation ignores these values.
+
+     @param name  the name of the value.
+     @param value the value.
+     @return {@code true} to keep going; {@code false} to stop.
+     */
+
+    default boolean topLevelValue( @NotNull String name, @Nullable Object value ) {
+
+        return true;
+
+    }
+
+}
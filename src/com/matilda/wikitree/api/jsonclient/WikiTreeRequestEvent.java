@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.io.InputStream;
+
+/**
+ A Java Flight Recorder event describing one round trip to the WikiTree API server.
+ <p/>The event's duration covers everything from sending the request to having the parsed result (or, for requests whose responses
+ are handed to a {@link org.json.simple.parser.ContentHandler}, to the handler having seen the last of it).
+ It is split into the time until the response arrived, the time spent waiting for the body while reading it and the time spent parsing.
+ Since the event is committed on the thread which made the request (for synchronous requests),
+ stack samples taken during the request can be matched up with it.
+ <p/>When the event is not enabled in the current recording (or there is no recording), {@link #start(JSONObject)} returns {@code null}
+ and the request is not touched at all.
+ */
+
+@Name( "com.matilda.wikitree.ApiRequest" )
+@Label( "WikiTree API Request" )
+@Category( { "WikiTree", "API" } )
+@Description( "A round trip to the WikiTree API server including reading and parsing the response" )
+class WikiTreeRequestEvent extends Event {
+
+    @Label( "Action" )
+    String action;
+
+    @Label( "Key" )
+    @Description( "The WikiTree ID or Person.Id (or comma-separated list of them) that the request is about" )
+    String key;
+
+    @Label( "Status Code" )
+    @Description( "The HTTP status code of the response (-1 if there wasn't one)" )
+    int statusCode = -1;
+
+    @Label( "Bytes Received" )
+    @DataAmount
+    long bytesReceived;
+
+    @Label( "Time To First Byte" )
+    @Timespan
+    long timeToFirstByte;
+
+    @Label( "Read Time" )
+    @Description( "Time spent waiting for the body of the response to arrive while reading it" )
+    @Timespan
+    long readTime;
+
+    @Label( "Parse Time" )
+    @Timespan
+    long parseTime;
+
+    // Transient fields are not recorded.
+
+    private transient long _startNanos;
+
+    private transient long _respondedNanos;
+
+    private transient boolean _responded = false;
+
+    private transient WikiTreeMeteredInputStream _body = null;
+
+    private WikiTreeRequestEvent() {
+
+        super();
+
+    }
+
+    /**
+     Start an event for a request.
+
+     @param requestObject the request's parameters.
+     @return the event or {@code null} if the event is not enabled.
+     */
+
+    @Nullable
+    static WikiTreeRequestEvent start( final JSONObject requestObject ) {
+
+        WikiTreeRequestEvent event = new WikiTreeRequestEvent();
+        if ( !event.isEnabled() ) {
+
+            return null;
+
+        }
+
+        event.action = String.valueOf( requestObject.get( "action" ) );
+        Object key = requestObject.containsKey( "key" ) ? requestObject.get( "key" ) : requestObject.get( "keys" );
+        event.key = key == null ? null : key.toString();
+
+        event._startNanos = System.nanoTime();
+        event.begin();
+
+        return event;
+
+    }
+
+    /**
+     Note that the server's response has arrived.
+
+     @param response the response.
+     @return a copy of the response whose body keeps track of how many bytes are read and how long reading them takes.
+     */
+
+    @NotNull
+    WikiTreeApiResponse responded( final @NotNull WikiTreeApiResponse response ) {
+
+        _respondedNanos = System.nanoTime();
+        _responded = true;
+        statusCode = response.getStatusCode();
+
+        InputStream body = response.getBody();
+        if ( body == null ) {
+
+            return response;
+
+        }
+
+        _body = new WikiTreeMeteredInputStream( body );
+
+        return response.withBody( _body );
+
+    }
+
+    /**
+     Note that the request is done and commit the event (if it passes the recording's threshold).
+     */
+
+    void finish() {
+
+        end();
+
+        if ( shouldCommit() ) {
+
+            long endNanos = System.nanoTime();
+            long respondedNanos = _responded ? _respondedNanos : endNanos;
+            long readNanos = _body == null ? 0L : _body.getReadNanos();
+
+            bytesReceived = _body == null ? 0L : _body.getBytes();
+            timeToFirstByte = respondedNanos - _startNanos;
+            readTime = readNanos;
+            parseTime = Math.max( 0L, endNanos - respondedNanos - readNanos );
+
+            commit();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeRequestEvent( action=" + action + ", key=" + key + ", statusCode=" + statusCode + " )";
+
+    }
+
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.util.WikiTreeLatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Latency and throughput metrics for the requests sent by one or more {@link WikiTreeApiJsonSession}s.
+ <p/>A session which has been given a metrics instance via {@link WikiTreeApiJsonSession#setRequestMetrics(WikiTreeRequestMetrics)}
+ measures every request that it sends (including ones answered from its response cache but not ones which were coalesced into
+ an identical request that was already in flight). Requests are grouped by their {@code action} parameter
+ ({@code getPerson}, {@code getProfile}, {@code getAncestors}, {@code getRelatives}, {@code getWatchlist}, {@code getBio}, {@code login}, etc.).
+ For each action, this class counts the requests, the failed requests (an exception or a non-2xx/3xx status code) and the response body bytes received,
+ keeps track of how much time was spent waiting on the network versus parsing responses, and keeps a histogram of request latencies
+ (see {@link WikiTreeLatencyHistogram}).
+ <p/>Network time is the time until the server's response arrives plus the time spent waiting for the body to arrive while it is read.
+ Parse time is everything else between the response arriving and the parsed result being ready. This split is accurate
+ whether or not the session is streaming responses (see {@link WikiTreeApiJsonSession#setStreamingResponses(boolean)}).
+ <p/>The metrics can be pulled via {@link #getSnapshot()} or published via JMX by {@link #registerMBean(String)}.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeRequestMetrics implements WikiTreeRequestMetricsMXBean {
+
+    /**
+     The JMX domain that {@link #registerMBean(String)} registers instances in.
+     */
+
+    public static final String JMX_DOMAIN = "com.matilda.wikitree.api";
+
+    private final ConcurrentMap<String, ActionMetrics> _actions = new ConcurrentHashMap<>();
+
+    private volatile ObjectName _objectName = null;
+
+    /**
+     An immutable snapshot of the metrics for one action.
+     <p/>Times are in milliseconds.
+     */
+
+    public static class ActionSnapshot {
+
+        private final String _action;
+
+        private final long _requests;
+
+        private final long _errors;
+
+        private final long _bytesReceived;
+
+        private final double _networkMillis;
+
+        private final double _parseMillis;
+
+        private final double _meanLatencyMillis;
+
+        private final double _p50LatencyMillis;
+
+        private final double _p90LatencyMillis;
+
+        private final double _p99LatencyMillis;
+
+        private final double _p999LatencyMillis;
+
+        private final double _maxLatencyMillis;
+
+        private ActionSnapshot( final @NotNull String action, final @NotNull ActionMetrics metrics ) {
+
+            super();
+
+            _action = action;
+            _requests = metrics._latencyMicros.getCount();
+            _errors = metrics._errors.get();
+            _bytesReceived = metrics._bytesReceived.get();
+            _networkMillis = metrics._networkNanos.get() / 1e6;
+            _parseMillis = metrics._parseNanos.get() / 1e6;
+            _meanLatencyMillis = metrics._latencyMicros.getMean() / 1e3;
+            _p50LatencyMillis = metrics._latencyMicros.getValueAtPercentile( 0.5 ) / 1e3;
+            _p90LatencyMillis = metrics._latencyMicros.getValueAtPercentile( 0.9 ) / 1e3;
+            _p99LatencyMillis = metrics._latencyMicros.getValueAtPercentile( 0.99 ) / 1e3;
+            _p999LatencyMillis = metrics._latencyMicros.getValueAtPercentile( 0.999 ) / 1e3;
+            _maxLatencyMillis = metrics._latencyMicros.getMax() / 1e3;
+
+        }
+
+        /**
+         Get the action that this snapshot describes.
+
+         @return the action (for example, {@code "getPerson"}).
+         */
+
+        public String getAction() {
+
+            return _action;
+
+        }
+
+        /**
+         Get the number of requests.
+
+         @return the number of requests.
+         */
+
+        public long getRequests() {
+
+            return _requests;
+
+        }
+
+        /**
+         Get the number of failed requests.
+
+         @return the number of requests which ended in an exception or a non-2xx/3xx status code.
+         */
+
+        public long getErrors() {
+
+            return _errors;
+
+        }
+
+        /**
+         Get the number of response body bytes received.
+
+         @return the number of bytes received.
+         */
+
+        public long getBytesReceived() {
+
+            return _bytesReceived;
+
+        }
+
+        /**
+         Get the total time spent waiting on the network.
+
+         @return the network time in milliseconds.
+         */
+
+        public double getNetworkMillis() {
+
+            return _networkMillis;
+
+        }
+
+        /**
+         Get the total time spent parsing responses.
+
+         @return the parse time in milliseconds.
+         */
+
+        public double getParseMillis() {
+
+            return _parseMillis;
+
+        }
+
+        /**
+         Get the mean request latency.
+
+         @return the mean latency in milliseconds.
+         */
+
+        public double getMeanLatencyMillis() {
+
+            return _meanLatencyMillis;
+
+        }
+
+        /**
+         Get the median request latency.
+
+         @return the 50th percentile latency in milliseconds (to within about three percent).
+         */
+
+        public double getP50LatencyMillis() {
+
+            return _p50LatencyMillis;
+
+        }
+
+        /**
+         Get the 90th percentile request latency.
+
+         @return the 90th percentile latency in milliseconds (to within about three percent).
+         */
+
+        public double getP90LatencyMillis() {
+
+            return _p90LatencyMillis;
+
+        }
+
+        /**
+         Get the 99th percentile request latency.
+
+         @return the 99th percentile latency in milliseconds (to within about three percent).
+         */
+
+        public double getP99LatencyMillis() {
+
+            return _p99LatencyMillis;
+
+        }
+
+        /**
+         Get the 99.9th percentile request latency.
+
+         @return the 99.9th percentile latency in milliseconds (to within about three percent).
+         */
+
+        public double getP999LatencyMillis() {
+
+            return _p999LatencyMillis;
+
+        }
+
+        /**
+         Get the longest request latency.
+
+         @return the longest latency in milliseconds.
+         */
+
+        public double getMaxLatencyMillis() {
+
+            return _maxLatencyMillis;
+
+        }
+
+        public String toString() {
+
+            return "ActionSnapshot( " +
+                   "action=" + _action + ", " +
+                   "requests=" + _requests + ", " +
+                   "errors=" + _errors + ", " +
+                   "bytes=" + _bytesReceived + ", " +
+                   String.format(
+                           "networkMs=%.1f, parseMs=%.1f, p50=%.2fms, p99=%.2fms, max=%.2fms",
+                           _networkMillis, _parseMillis, _p50LatencyMillis, _p99LatencyMillis, _maxLatencyMillis
+                   ) +
+                   " )";
+
+        }
+
+    }
+
+    /**
+     The measurement of one request (see {@link #startRequest(Object)}).
+     <p/>A measurement is only ever used by the thread (or the chain of completion stages) which is making the request.
+     */
+
+    public static class Measurement {
+
+        private final ActionMetrics _metrics;
+
+        private final long _startNanos;
+
+        private long _respondedNanos;
+
+        private boolean _responded = false;
+
+        private boolean _successfulStatus = false;
+
+        private WikiTreeMeteredInputStream _body = null;
+
+        private Measurement( final @NotNull ActionMetrics metrics ) {
+
+            super();
+
+            _metrics = metrics;
+            _startNanos = System.nanoTime();
+
+        }
+
+        /**
+         Note that the server's response has arrived.
+
+         @param response the response.
+         @return a copy of the response whose body keeps track of how many bytes are read and how long reading them takes.
+         The caller must use (and close) the copy instead of the original response.
+         */
+
+        @NotNull
+        public WikiTreeApiResponse responded( final @NotNull WikiTreeApiResponse response ) {
+
+            _respondedNanos = System.nanoTime();
+            _responded = true;
+            _successfulStatus = response.isSuccessful();
+
+            InputStream body = response.getBody();
+            if ( body == null ) {
+
+                return response;
+
+            }
+
+            _body = new WikiTreeMeteredInputStream( body );
+
+            return response.withBody( _body );
+
+        }
+
+        /**
+         Note that the request is done.
+         <p/>The request counts as failed unless it completed normally and the response's status code was a 2xx or 3xx value.
+
+         @param completedNormally {@code true} if the request completed normally; {@code false} if it ended in an exception.
+         */
+
+        public void finish( final boolean completedNormally ) {
+
+            long endNanos = System.nanoTime();
+            long respondedNanos = _responded ? _respondedNanos : endNanos;
+            long readNanos = _body == null ? 0L : _body.getReadNanos();
+            long bytes = _body == null ? 0L : _body.getBytes();
+
+            long networkNanos = respondedNanos - _startNanos + readNanos;
+            long parseNanos = Math.max( 0L, endNanos - respondedNanos - readNanos );
+
+            _metrics.record( endNanos - _startNanos, networkNanos, parseNanos, bytes, completedNormally && _responded && _successfulStatus );
+
+        }
+
+    }
+
+    /**
+     Create an empty metrics instance.
+     */
+
+    public WikiTreeRequestMetrics() {
+
+        super();
+
+    }
+
+    /**
+     Start measuring a request.
+
+     @param action the request's {@code action} parameter ({@code null} is grouped under {@code "unknown"}).
+     @return the measurement (call {@link Measurement#responded(WikiTreeApiResponse)} when the response arrives
+     and {@link Measurement#finish(boolean)} when the request is done).
+     */
+
+    @NotNull
+    public Measurement startRequest( @Nullable final Object action ) {
+
+        String actionName = action == null ? "unknown" : action.toString();
+
+        return new Measurement( _actions.computeIfAbsent( actionName, k -> new ActionMetrics() ) );
+
+    }
+
+    /**
+     Get a snapshot of the metrics for one action.
+
+     @param action the action (for example, {@code "getPerson"}).
+     @return the snapshot or {@code null} if no requests for the action have been measured.
+     */
+
+    @Nullable
+    public ActionSnapshot getSnapshot( final @NotNull String action ) {
+
+        ActionMetrics metrics = _actions.get( action );
+
+        return metrics == null ? null : new ActionSnapshot( action, metrics );
+
+    }
+
+    /**
+     Get a snapshot of the metrics for each action which has been measured.
+
+     @return the snapshots keyed by action.
+     */
+
+    @NotNull
+    public SortedMap<String, ActionSnapshot> getSnapshot() {
+
+        SortedMap<String, ActionSnapshot> rval = new TreeMap<>();
+        for ( String action : _actions.keySet() ) {
+
+            ActionSnapshot snapshot = getSnapshot( action );
+            if ( snapshot != null ) {
+
+                rval.put( action, snapshot );
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    @Override
+    public ActionSnapshot[] getActionSnapshots() {
+
+        return getSnapshot().values().toArray( new ActionSnapshot[0] );
+
+    }
+
+    @Override
+    public long getTotalRequests() {
+
+        long total = 0L;
+        for ( ActionMetrics metrics : _actions.values() ) {
+
+            total += metrics._latencyMicros.getCount();
+
+        }
+
+        return total;
+
+    }
+
+    @Override
+    public long getTotalErrors() {
+
+        long total = 0L;
+        for ( ActionMetrics metrics : _actions.values() ) {
+
+            total += metrics._errors.get();
+
+        }
+
+        return total;
+
+    }
+
+    @Override
+    public long getTotalBytesReceived() {
+
+        long total = 0L;
+        for ( ActionMetrics metrics : _actions.values() ) {
+
+            total += metrics._bytesReceived.get();
+
+        }
+
+        return total;
+
+    }
+
+    @Override
+    public void reset() {
+
+        _actions.clear();
+
+    }
+
+    /**
+     Publish these metrics via the platform MBean server.
+     <p/>The MBean's name is {@code com.matilda.wikitree.api:type=WikiTreeRequestMetrics,name=}<i>name</i>.
+
+     @param name what to call these metrics (for example, the name of the application or of the server being talked to).
+     @return the MBean's name.
+     @throws JMException if the MBean cannot be registered (for example, because one with the same name is already registered).
+     */
+
+    @NotNull
+    public synchronized ObjectName registerMBean( final @NotNull String name )
+            throws JMException {
+
+        if ( _objectName != null ) {
+
+            throw new IllegalStateException( "WikiTreeRequestMetrics.registerMBean:  already registered as " + _objectName );
+
+        }
+
+        ObjectName objectName = new ObjectName( JMX_DOMAIN + ":type=WikiTreeRequestMetrics,name=" + ObjectName.quote( name ) );
+        ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+        _objectName = objectName;
+
+        return objectName;
+
+    }
+
+    /**
+     Stop publishing these metrics via the platform MBean server.
+     <p/>Does nothing if they are not currently published.
+
+     @throws JMException if the MBean cannot be unregistered.
+     */
+
+    public synchronized void unregisterMBean()
+            throws JMException {
+
+        if ( _objectName != null ) {
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if ( server.isRegistered( _objectName ) ) {
+
+                server.unregisterMBean( _objectName );
+
+            }
+
+            _objectName = null;
+
+        }
+
+    }
+
+    private static class ActionMetrics {
+
+        private final WikiTreeLatencyHistogram _latencyMicros = new WikiTreeLatencyHistogram();
+
+        private final AtomicLong _errors = new AtomicLong( 0L );
+
+        private final AtomicLong _bytesReceived = new AtomicLong( 0L );
+
+        private final AtomicLong _networkNanos = new AtomicLong( 0L );
+
+        private final AtomicLong _parseNanos = new AtomicLong( 0L );
+
+        private void record( final long latencyNanos, final long networkNanos, final long parseNanos, final long bytes, final boolean successful ) {
+
+            if ( !successful ) {
+
+                _errors.incrementAndGet();
+
+            }
+
+            _bytesReceived.addAndGet( bytes );
+            _networkNanos.addAndGet( networkNanos );
+            _parseNanos.addAndGet( parseNanos );
+            _latencyMicros.record( TimeUnit.NANOSECONDS.toMicros( latencyNanos ) );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeRequestMetrics( " +
+               "requests=" + getTotalRequests() + ", " +
+               "errors=" + getTotalErrors() + ", " +
+               "bytes=" + getTotalBytesReceived() +
+               " )";
+
+    }
+
+}
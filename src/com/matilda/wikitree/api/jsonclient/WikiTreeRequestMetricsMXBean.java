@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+/**
+ The JMX view of a {@link WikiTreeRequestMetrics} instance (see {@link WikiTreeRequestMetrics#registerMBean(String)}).
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unused" })
+public interface WikiTreeRequestMetricsMXBean {
+
+    /**
+     Get the number of requests measured across all actions.
+
+     @return the number of requests.
+     */
+
+    long getTotalRequests();
+
+    /**
+     Get the number of requests which failed across all actions.
+
+     @return the number of failed requests.
+     */
+
+    long getTotalErrors();
+
+    /**
+     Get the number of response body bytes received across all actions.
+
+     @return the number of bytes received.
+     */
+
+    long getTotalBytesReceived();
+
+    /**
+     Get a snapshot of the metrics for each action which has been measured (in order by action name).
+
+     @return the snapshots.
+     */
+
+    WikiTreeRequestMetrics.ActionSnapshot[] getActionSnapshots();
+
+    /**
+     Forget everything measured so far.
+     */
+
+    void reset();
+
+}
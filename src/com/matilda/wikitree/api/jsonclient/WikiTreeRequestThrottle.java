@@ -0,0 +1,579 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Keep the requests sent to the WikiTree API server within what the server is willing to put up with.
+ <p/>A {@link WikiTreeApiJsonSession} which has been given a throttle via {@link WikiTreeApiJsonSession#setRequestThrottle(WikiTreeRequestThrottle)}
+ asks the throttle for permission before it sends each request and tells the throttle how things went once the server has responded.
+ The throttle applies two limits:
+ <ul>
+ <li>A token bucket limits the rate at which requests are sent to {@link #getPermitsPerSecond()} on average
+ (with bursts of up to {@link #getBurstSize()} requests after a quiet spell).</li>
+ <li>An adaptive limit on the number of requests in flight at once.
+ While the limit is what is holding requests back, it grows by about one each time a limit's worth of requests succeeds (additive increase)
+ and is cut in half (multiplicative decrease) when the server pushes back.
+ The server is considered to be pushing back when it answers with a 429 (Too Many Requests) or a 5xx status code,
+ when the request fails outright, or when a response takes more than {@link #getLatencyTolerance()} times as long as the fastest recent response.
+ The limit never goes below {@link #getMinConcurrency()} or above {@link #getMaxConcurrency()} and
+ it is cut at most once per smoothed round trip time (a burst of failures from requests which were all sent at the same time only counts once).</li>
+ </ul>
+ A request counts as in flight from the time it is sent until the server's response (not including the response's body) arrives.
+ <p/>Requests which wait via {@link #acquireAsync()} don't tie up a thread while they wait and can be cancelled while waiting.
+ <p/>A throttle can be shared by any number of sessions (which is the point if they are all talking to the same server).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeRequestThrottle {
+
+    /**
+     The average request rate allowed by {@link #WikiTreeRequestThrottle()}.
+     */
+
+    public static final double DEFAULT_PERMITS_PER_SECOND = 10.0;
+
+    /**
+     The longest burst allowed by {@link #WikiTreeRequestThrottle()}.
+     */
+
+    public static final int DEFAULT_BURST_SIZE = 10;
+
+    /**
+     The concurrency limit that a throttle created via {@link #WikiTreeRequestThrottle()} starts with.
+     */
+
+    public static final int DEFAULT_INITIAL_CONCURRENCY = 4;
+
+    /**
+     The largest concurrency limit allowed by {@link #WikiTreeRequestThrottle()}.
+     */
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 32;
+
+    /**
+     How much slower than the fastest recent response a response can be before a throttle considers the server to be congested.
+     */
+
+    public static final double DEFAULT_LATENCY_TOLERANCE = 3.0;
+
+    /**
+     How long the fastest response seen is remembered before it is forgotten (the server's idea of fast can change).
+     */
+
+    private static final long MIN_LATENCY_WINDOW_NANOS = TimeUnit.SECONDS.toNanos( 60L );
+
+    private final double _permitsPerSecond;
+
+    private final int _burstSize;
+
+    private final int _minConcurrency;
+
+    private final int _maxConcurrency;
+
+    private final double _latencyTolerance;
+
+    // Token bucket state (guarded by _bucketLock).
+
+    private final Object _bucketLock = new Object();
+
+    private double _tokens;
+
+    private long _lastRefillNanos;
+
+    // Concurrency limit state (guarded by this).
+
+    private double _concurrencyLimit;
+
+    private int _inFlight = 0;
+
+    /**
+     The requests waiting (via {@link #acquireAsync()}) for a concurrency slot, oldest first.
+     */
+
+    private final Deque<CompletableFuture<Long>> _waiters = new ArrayDeque<>();
+
+    private long _minLatencyNanos = Long.MAX_VALUE;
+
+    private long _minLatencySetAtNanos = 0L;
+
+    private long _smoothedLatencyNanos = 0L;
+
+    private long _lastDecreaseNanos = 0L;
+
+    private boolean _decreasedYet = false;
+
+    private final AtomicLong _throttledRequests = new AtomicLong( 0L );
+
+    private final AtomicLong _congestionSignals = new AtomicLong( 0L );
+
+    /**
+     Create a throttle with the default limits.
+     */
+
+    public WikiTreeRequestThrottle() {
+
+        this( DEFAULT_PERMITS_PER_SECOND, DEFAULT_BURST_SIZE, 1, DEFAULT_INITIAL_CONCURRENCY, DEFAULT_MAX_CONCURRENCY, DEFAULT_LATENCY_TOLERANCE );
+
+    }
+
+    /**
+     Create a throttle.
+
+     @param permitsPerSecond   the average number of requests per second allowed.
+     @param burstSize          the most requests which can be sent back to back after a quiet spell.
+     @param minConcurrency     the smallest that the concurrency limit can get.
+     @param initialConcurrency the concurrency limit to start with.
+     @param maxConcurrency     the largest that the concurrency limit can get.
+     @param latencyTolerance   how many times slower than the fastest recent response a response can be before it signals congestion.
+     @throws IllegalArgumentException if any of the values don't make sense.
+     */
+
+    public WikiTreeRequestThrottle(
+            final double permitsPerSecond,
+            final int burstSize,
+            final int minConcurrency,
+            final int initialConcurrency,
+            final int maxConcurrency,
+            final double latencyTolerance
+    ) {
+
+        super();
+
+        if (
+                !( permitsPerSecond > 0.0 ) || burstSize < 1 ||
+                minConcurrency < 1 || initialConcurrency < minConcurrency || maxConcurrency < initialConcurrency ||
+                !( latencyTolerance > 1.0 )
+        ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeRequestThrottle:  invalid limits (got " +
+                    "permitsPerSecond=" + permitsPerSecond + ", " +
+                    "burstSize=" + burstSize + ", " +
+                    "minConcurrency=" + minConcurrency + ", " +
+                    "initialConcurrency=" + initialConcurrency + ", " +
+                    "maxConcurrency=" + maxConcurrency + ", " +
+                    "latencyTolerance=" + latencyTolerance + ")"
+            );
+
+        }
+
+        _permitsPerSecond = permitsPerSecond;
+        _burstSize = burstSize;
+        _minConcurrency = minConcurrency;
+        _maxConcurrency = maxConcurrency;
+        _latencyTolerance = latencyTolerance;
+
+        _tokens = burstSize;
+        _lastRefillNanos = System.nanoTime();
+        _concurrencyLimit = initialConcurrency;
+
+    }
+
+    /**
+     Wait until a request can be sent.
+     <p/>Every successful call <b><u>must</u></b> be matched by a call to {@link #release(long, int)} or {@link #abandon()}.
+
+     @return the time (according to {@link System#nanoTime()}) at which permission was granted. Pass it to {@link #release(long, int)}.
+     @throws InterruptedIOException if the current thread is interrupted while waiting.
+     */
+
+    public long acquire()
+            throws InterruptedIOException {
+
+        try {
+
+            // Take a token first. Otherwise, we could hog a concurrency slot while waiting for the rate limit.
+
+            long waitNanos = reserveToken();
+            if ( waitNanos > 0L ) {
+
+                _throttledRequests.incrementAndGet();
+                TimeUnit.NANOSECONDS.sleep( waitNanos );
+
+            }
+
+            synchronized ( this ) {
+
+                while ( _inFlight >= (int)_concurrencyLimit ) {
+
+                    wait();
+
+                }
+
+                _inFlight += 1;
+
+            }
+
+            return System.nanoTime();
+
+        } catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt();
+
+            InterruptedIOException ioe = new InterruptedIOException( "WikiTreeRequestThrottle:  interrupted waiting for permission to send a request" );
+            ioe.initCause( e );
+
+            throw ioe;
+
+        }
+
+    }
+
+    /**
+     Wait until a request can be sent without tying up the current thread.
+     <p/>Every successful completion <b><u>must</u></b> be matched by a call to {@link #release(long, int)} or {@link #abandon()}.
+     <p/>Cancelling the returned future gives up the request's place in line (but not the rate limit token that it has already taken).
+     No thread waits on the caller's behalf. The wait for a token is scheduled via {@link CompletableFuture#delayedExecutor(long, TimeUnit)}
+     and the wait for a concurrency slot is a place in a queue which {@link #release(long, int)} and {@link #abandon()} hand slots to.
+
+     @return a future which yields what {@link #acquire()} would have returned.
+     */
+
+    @NotNull
+    public CompletableFuture<Long> acquireAsync() {
+
+        CompletableFuture<Long> waiter = new CompletableFuture<>();
+
+        long waitNanos = reserveToken();
+        if ( waitNanos > 0L ) {
+
+            _throttledRequests.incrementAndGet();
+            CompletableFuture.delayedExecutor( waitNanos, TimeUnit.NANOSECONDS ).execute( () -> enqueue( waiter ) );
+
+        } else {
+
+            enqueue( waiter );
+
+        }
+
+        return waiter;
+
+    }
+
+    /**
+     Put a request which has its token in line for a concurrency slot.
+
+     @param waiter the future which is to be completed when the request gets its slot.
+     */
+
+    private void enqueue( final @NotNull CompletableFuture<Long> waiter ) {
+
+        // Don't bother if it was cancelled while waiting for its token.
+
+        if ( waiter.isDone() ) {
+
+            return;
+
+        }
+
+        synchronized ( this ) {
+
+            _waiters.addLast( waiter );
+
+        }
+
+        grantSlots();
+
+    }
+
+    /**
+     Hand any free concurrency slots to the requests waiting in line for them.
+     */
+
+    private void grantSlots() {
+
+        while ( true ) {
+
+            CompletableFuture<Long> waiter;
+            synchronized ( this ) {
+
+                if ( _inFlight >= (int)_concurrencyLimit ) {
+
+                    return;
+
+                }
+
+                waiter = _waiters.pollFirst();
+                if ( waiter == null ) {
+
+                    return;
+
+                }
+
+                _inFlight += 1;
+
+            }
+
+            // Complete the waiter outside of our lock (whatever it was waiting to do happens right now in this thread).
+            // If it was cancelled then give its slot back and try the next one.
+
+            if ( !waiter.complete( System.nanoTime() ) ) {
+
+                synchronized ( this ) {
+
+                    _inFlight -= 1;
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     Report how a request went.
+
+     @param acquiredAtNanos what {@link #acquire()} returned.
+     @param statusCode      the HTTP status code that the server responded with or {@code -1} if the request failed without a response.
+     */
+
+    public void release( final long acquiredAtNanos, final int statusCode ) {
+
+        long now = System.nanoTime();
+        long latencyNanos = now - acquiredAtNanos;
+
+        synchronized ( this ) {
+
+            // Only grow the limit if it is actually what's holding us back (otherwise it grows without bound while the rate limit is in charge).
+
+            boolean saturated = _inFlight >= (int)_concurrencyLimit;
+            _inFlight -= 1;
+
+            boolean congested;
+            if ( statusCode == 429 || statusCode / 100 == 5 || statusCode < 0 ) {
+
+                congested = true;
+
+            } else {
+
+                if ( latencyNanos < _minLatencyNanos || now - _minLatencySetAtNanos > MIN_LATENCY_WINDOW_NANOS ) {
+
+                    _minLatencyNanos = latencyNanos;
+                    _minLatencySetAtNanos = now;
+
+                }
+
+                congested = latencyNanos > _minLatencyNanos * _latencyTolerance;
+
+            }
+
+            _smoothedLatencyNanos = _smoothedLatencyNanos == 0L ? latencyNanos : ( 7L * _smoothedLatencyNanos + latencyNanos ) / 8L;
+
+            if ( congested ) {
+
+                _congestionSignals.incrementAndGet();
+
+                // Requests sent before the last cut took effect don't get to cut the limit again.
+
+                if ( !_decreasedYet || now - _lastDecreaseNanos > _smoothedLatencyNanos ) {
+
+                    _concurrencyLimit = Math.max( _minConcurrency, _concurrencyLimit / 2.0 );
+                    _lastDecreaseNanos = now;
+                    _decreasedYet = true;
+
+                }
+
+            } else if ( saturated ) {
+
+                _concurrencyLimit = Math.min( _maxConcurrency, _concurrencyLimit + 1.0 / _concurrencyLimit );
+
+            }
+
+            notifyAll();
+
+        }
+
+        grantSlots();
+
+    }
+
+    /**
+     Report that a request was cancelled before the server responded (a hedged request which lost the race, for example).
+     <p/>The request's concurrency slot is given back but, since we never found out how long the server would have taken,
+     the concurrency limit is left alone.
+     */
+
+    public void abandon() {
+
+        synchronized ( this ) {
+
+            _inFlight -= 1;
+
+            notifyAll();
+
+        }
+
+        grantSlots();
+
+    }
+
+    /**
+     Take a token from the bucket (possibly one which won't be there until some time in the future).
+
+     @return how long to wait (in nanoseconds) until the token is really there.
+     */
+
+    private long reserveToken() {
+
+        synchronized ( _bucketLock ) {
+
+            long now = System.nanoTime();
+            _tokens = Math.min( _burstSize, _tokens + ( now - _lastRefillNanos ) * _permitsPerSecond / 1e9 );
+            _lastRefillNanos = now;
+
+            _tokens -= 1.0;
+
+            return _tokens >= 0.0 ? 0L : (long)( -_tokens * 1e9 / _permitsPerSecond );
+
+        }
+
+    }
+
+    /**
+     Get the current limit on the number of requests in flight at once.
+
+     @return the current concurrency limit.
+     */
+
+    public synchronized int getConcurrencyLimit() {
+
+        return (int)_concurrencyLimit;
+
+    }
+
+    /**
+     Get the number of requests which are in flight right now.
+
+     @return the number of requests in flight.
+     */
+
+    public synchronized int getInFlight() {
+
+        return _inFlight;
+
+    }
+
+    /**
+     Get the number of requests which are waiting in line (via {@link #acquireAsync()}) for a concurrency slot.
+     <p/>Requests which were cancelled while waiting are counted until their turn comes up.
+
+     @return the number of requests waiting for a concurrency slot.
+     */
+
+    public synchronized int getWaiting() {
+
+        return _waiters.size();
+
+    }
+
+    /**
+     Get the number of requests which had to wait for the rate limit.
+
+     @return the number of throttled requests.
+     */
+
+    public long getThrottledRequests() {
+
+        return _throttledRequests.get();
+
+    }
+
+    /**
+     Get the number of responses (or failures) which indicated that the server was congested.
+
+     @return the number of congestion signals.
+     */
+
+    public long getCongestionSignals() {
+
+        return _congestionSignals.get();
+
+    }
+
+    /**
+     Get the average number of requests per second allowed by this throttle.
+
+     @return the average number of requests per second allowed.
+     */
+
+    public double getPermitsPerSecond() {
+
+        return _permitsPerSecond;
+
+    }
+
+    /**
+     Get the most requests which can be sent back to back after a quiet spell.
+
+     @return the burst size.
+     */
+
+    public int getBurstSize() {
+
+        return _burstSize;
+
+    }
+
+    /**
+     Get the smallest that the concurrency limit can get.
+
+     @return the smallest concurrency limit.
+     */
+
+    public int getMinConcurrency() {
+
+        return _minConcurrency;
+
+    }
+
+    /**
+     Get the largest that the concurrency limit can get.
+
+     @return the largest concurrency limit.
+     */
+
+    public int getMaxConcurrency() {
+
+        return _maxConcurrency;
+
+    }
+
+    /**
+     Get how many times slower than the fastest recent response a response can be before it signals congestion.
+
+     @return the latency tolerance.
+     */
+
+    public double getLatencyTolerance() {
+
+        return _latencyTolerance;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeRequestThrottle( " +
+               "permitsPerSecond=" + _permitsPerSecond + ", " +
+               "concurrencyLimit=" + getConcurrencyLimit() + ", " +
+               "inFlight=" + getInFlight() + ", " +
+               "waiting=" + getWaiting() + ", " +
+               "throttled=" + getThrottledRequests() + ", " +
+               "congestionSignals=" + getCongestionSignals() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,1103 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A persistent cache of the raw responses sent back by the WikiTree API server.
+ <p/>A {@link WikiTreeApiJsonSession} which has been given a cache via {@link WikiTreeApiJsonSession#setResponseCache(WikiTreeResponseCache)}
+ checks the cache before sending a request to the WikiTree API server and saves the body of every successful response in the cache.
+ The cache lives in a directory on disk so a job which is restarted (or run again the next night) finds the responses
+ that it fetched last time and doesn't have to go back to the network for them.
+ <p/>The directory contains two files:
+ <ul>
+ <li>{@value #SEGMENT_FILE_NAME} - an append-only file of records. Each record holds a request's key, when it was saved and the response's body.</li>
+ <li>{@value #INDEX_FILE_NAME} - an open-addressing hash table which maps the hash of each key to where its most recent record lives in the segment file.
+ The index is memory-mapped so looking up a key costs a few memory accesses and one read of the segment file.</li>
+ </ul>
+ <p/>A request's key is made up of the WikiTree API server's URL, the WikiTree ID of the authenticated user (if any) and the request's parameters
+ sorted by name (the order in which a request's parameters happen to be specified doesn't matter).
+ Responses fetched by a logged-in session are therefore only ever found by sessions logged in as the same user.
+ Note that this means that the cache directory may contain profiles which only that user is allowed to see.
+ Login requests are never cached.
+ <p/>Each record is fresh for {@link #getTimeToLiveMillis()} milliseconds after it was saved.
+ A stale record is ignored, the request is sent to the WikiTree API server and the new response replaces the old record.
+ Replaced records stay in the segment file until {@link #compact()} is called.
+ <p/>Records are not forced to disk as they are written (call {@link #flush()} or {@link #close()} to do that).
+ If the JVM dies without doing either, any records which did not make it into the index are dropped when the cache is next opened.
+ An index which is missing, damaged or doesn't belong with the segment file (because the JVM died part way through {@link #compact()}
+ or because the index reached the disk before the records that it refers to did) is rebuilt by reading the segment file.
+ <p/>A cache directory must not be used by more than one instance of this class (in this JVM or any other) at a time.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeResponseCache implements Closeable {
+
+    /**
+     The name of the file which holds the cached responses.
+     */
+
+    public static final String SEGMENT_FILE_NAME = "responses.seg";
+
+    /**
+     The name of the file which holds the index.
+     */
+
+    public static final String INDEX_FILE_NAME = "responses.idx";
+
+    /**
+     How long records stay fresh in a cache created via {@link #WikiTreeResponseCache(Path)}.
+     */
+
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.HOURS.toMillis( 24L );
+
+    /**
+     The number of slots in a brand new index (the index doubles in size whenever it gets three quarters full).
+     */
+
+    public static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    private static final int SEGMENT_MAGIC = 0x57545253;     // "WTRS"
+
+    private static final int INDEX_MAGIC = 0x57545249;       // "WTRI"
+
+    private static final int FORMAT_VERSION = 2;
+
+    /*
+     The segment header is:
+     magic (int), version (int), segment id (long).
+     Each incarnation of the segment file (a new one is created by compact()) gets a new random segment id.
+     */
+
+    private static final int SEGMENT_HEADER_LENGTH = 16;
+
+    /*
+     The index header is:
+     magic (int), version (int), capacity (int), count (int), committed segment length (long), segment id (long).
+     Each slot is:
+     key hash (long), record offset in the segment file (long, 0 means the slot is empty).
+     The index only describes the segment file whose segment id matches the one in its header.
+     */
+
+    private static final int INDEX_HEADER_LENGTH = 32;
+
+    private static final int INDEX_CAPACITY_OFFSET = 8;
+
+    private static final int INDEX_COUNT_OFFSET = 12;
+
+    private static final int INDEX_COMMITTED_LENGTH_OFFSET = 16;
+
+    private static final int INDEX_SEGMENT_ID_OFFSET = 24;
+
+    private static final int SLOT_LENGTH = 16;
+
+    /*
+     Each record is:
+     key length (int), saved at (long, milliseconds since the epoch), body length (int), key bytes (UTF-8), body bytes.
+     */
+
+    private static final int RECORD_HEADER_LENGTH = 16;
+
+    private final Path _directory;
+
+    private final long _timeToLiveMillis;
+
+    private FileChannel _segment;
+
+    private FileChannel _indexChannel;
+
+    private MappedByteBuffer _index;
+
+    private int _capacity;
+
+    private int _count;
+
+    private long _segmentLength;
+
+    private long _segmentId;
+
+    private boolean _closed = false;
+
+    private final AtomicLong _hits = new AtomicLong( 0L );
+
+    private final AtomicLong _misses = new AtomicLong( 0L );
+
+    private final AtomicLong _expirations = new AtomicLong( 0L );
+
+    private final AtomicLong _stores = new AtomicLong( 0L );
+
+    /**
+     Open (or create) a cache whose records stay fresh for {@link #DEFAULT_TIME_TO_LIVE_MILLIS} milliseconds.
+
+     @param directory the directory which holds (or is to hold) the cache's files.
+     @throws IOException if the cache cannot be opened.
+     */
+
+    public WikiTreeResponseCache( final @NotNull Path directory )
+            throws IOException {
+
+        this( directory, DEFAULT_TIME_TO_LIVE_MILLIS );
+
+    }
+
+    /**
+     Open (or create) a cache.
+
+     @param directory        the directory which holds (or is to hold) the cache's files.
+     @param timeToLiveMillis how long (in milliseconds) records stay fresh after they are saved.
+     @throws IllegalArgumentException if {@code timeToLiveMillis} is not positive.
+     @throws IOException              if the cache cannot be opened or its files are not cache files.
+     */
+
+    public WikiTreeResponseCache( final @NotNull Path directory, final long timeToLiveMillis )
+            throws IOException {
+
+        super();
+
+        if ( timeToLiveMillis <= 0L ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeResponseCache:  time to live must be positive (got timeToLiveMillis=" + timeToLiveMillis + ")"
+            );
+
+        }
+
+        _directory = directory;
+        _timeToLiveMillis = timeToLiveMillis;
+
+        Files.createDirectories( directory );
+
+        open();
+
+    }
+
+    private void open()
+            throws IOException {
+
+        Path segmentPath = _directory.resolve( SEGMENT_FILE_NAME );
+        Path indexPath = _directory.resolve( INDEX_FILE_NAME );
+
+        _segment = FileChannel.open( segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+        _indexChannel = FileChannel.open( indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+        if ( _segment.size() < SEGMENT_HEADER_LENGTH ) {
+
+            // Brand new (or half-created) cache. Start from scratch.
+
+            _segmentId = ThreadLocalRandom.current().nextLong();
+            _segment.truncate( 0L );
+            writeSegmentHeader( _segment, _segmentId );
+
+            _indexChannel.truncate( 0L );
+            mapIndex( INITIAL_INDEX_CAPACITY );
+            _count = 0;
+            _segmentLength = SEGMENT_HEADER_LENGTH;
+            writeIndexHeader();
+
+            return;
+
+        }
+
+        ByteBuffer header = ByteBuffer.allocate( SEGMENT_HEADER_LENGTH );
+        readFully( _segment, header, 0L );
+        header.flip();
+        if ( header.getInt() != SEGMENT_MAGIC || header.getInt() != FORMAT_VERSION ) {
+
+            throw new IOException( "WikiTreeResponseCache:  " + segmentPath + " is not a response cache segment file" );
+
+        }
+
+        _segmentId = header.getLong();
+
+        if ( _indexChannel.size() >= INDEX_HEADER_LENGTH ) {
+
+            ByteBuffer indexHeader = ByteBuffer.allocate( INDEX_HEADER_LENGTH );
+            readFully( _indexChannel, indexHeader, 0L );
+            indexHeader.flip();
+            if ( indexHeader.getInt() != INDEX_MAGIC || indexHeader.getInt() != FORMAT_VERSION ) {
+
+                throw new IOException( "WikiTreeResponseCache:  " + indexPath + " is not a response cache index file" );
+
+            }
+
+            int capacity = indexHeader.getInt();
+            int count = indexHeader.getInt();
+            long committedLength = indexHeader.getLong();
+            long segmentId = indexHeader.getLong();
+
+            if ( segmentId == _segmentId &&
+                 capacity > 0 && Integer.bitCount( capacity ) == 1 && count >= 0 && count < capacity &&
+                 (long)INDEX_HEADER_LENGTH + (long)capacity * SLOT_LENGTH <= _indexChannel.size() &&
+                 committedLength >= SEGMENT_HEADER_LENGTH && committedLength <= _segment.size() ) {
+
+                mapIndex( capacity );
+                _count = count;
+                _segmentLength = committedLength;
+
+                // Drop anything which was appended after the index was last updated (the JVM must have died before the index caught up).
+
+                _segment.truncate( _segmentLength );
+
+                return;
+
+            }
+
+        }
+
+        // The index is missing, damaged or describes some other incarnation of the segment file. The segment file is the truth.
+
+        rebuildIndexFromSegment();
+
+    }
+
+    /**
+     Build a brand new index for the records in the segment file.
+     <p/>The segment file is read from the start up to the first record which is incomplete (or was never written at all)
+     and is then truncated there. A later record for a key replaces an earlier one.
+     */
+
+    private void rebuildIndexFromSegment()
+            throws IOException {
+
+        _indexChannel.truncate( 0L );
+        mapIndex( INITIAL_INDEX_CAPACITY );
+        _count = 0;
+        _segmentLength = SEGMENT_HEADER_LENGTH;
+        writeIndexHeader();
+
+        long fileLength = _segment.size();
+        ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_LENGTH );
+        for ( long offset = SEGMENT_HEADER_LENGTH; offset + RECORD_HEADER_LENGTH <= fileLength; offset = _segmentLength ) {
+
+            header.clear();
+            readFully( _segment, header, offset );
+            header.flip();
+            int keyLength = header.getInt();
+            header.getLong();
+            int bodyLength = header.getInt();
+
+            // Every key has something in it so a record with an empty key is a hole that the JVM never got around to filling in.
+
+            long recordLength = RECORD_HEADER_LENGTH + (long)keyLength + (long)bodyLength;
+            if ( keyLength <= 0 || bodyLength < 0 || offset + recordLength > fileLength ) {
+
+                break;
+
+            }
+
+            ByteBuffer keyBytes = ByteBuffer.allocate( keyLength );
+            readFully( _segment, keyBytes, offset + RECORD_HEADER_LENGTH );
+
+            _segmentLength = offset + recordLength;
+            insert( keyBytes.array(), hash( keyBytes.array() ), offset );
+
+        }
+
+        _segment.truncate( _segmentLength );
+        _index.putLong( INDEX_COMMITTED_LENGTH_OFFSET, _segmentLength );
+
+    }
+
+    /**
+     Get the response to a request if the cache has a fresh one.
+
+     @param url the URL that the request would have been sent to (the returned response claims to have come from here).
+     @param key the request's key (see {@link #getKey(String, String, Map)}).
+     @return a successful response whose body is the saved body or {@code null} if the cache has no fresh response to the request.
+     @throws IOException if something goes wrong reading the cache.
+     */
+
+    @Nullable
+    public WikiTreeApiResponse getResponse( final @NotNull URL url, final @NotNull String key )
+            throws IOException {
+
+        byte[] body = get( key );
+        if ( body == null ) {
+
+            return null;
+
+        }
+
+        return new WikiTreeApiResponse( url, 200, Collections.emptyMap(), new ByteArrayInputStream( body ), body.length );
+
+    }
+
+    /**
+     Save the body of a response.
+     <p/>Unsuccessful responses and responses without a body are not saved.
+     A response which is saved is read right to the end and closed.
+
+     @param key      the request's key (see {@link #getKey(String, String, Map)}).
+     @param response the response.
+     @return the response if it was not saved or an equivalent response whose body is the saved body if it was.
+     @throws IOException if something goes wrong reading the response or writing the cache.
+     */
+
+    @NotNull
+    public WikiTreeApiResponse putResponse( final @NotNull String key, final @NotNull WikiTreeApiResponse response )
+            throws IOException {
+
+        InputStream body = response.getBody();
+        if ( !response.isSuccessful() || body == null ) {
+
+            return response;
+
+        }
+
+        byte[] bodyBytes;
+        try ( WikiTreeApiResponse r = response ) {
+
+            bodyBytes = WikiTreeApiUtilities.readBodyBytes( body, r.getContentLength() );
+
+        }
+
+        put( key, bodyBytes );
+
+        return new WikiTreeApiResponse(
+                response.getUrl(),
+                response.getStatusCode(),
+                Collections.emptyMap(),
+                new ByteArrayInputStream( bodyBytes ),
+                bodyBytes.length
+        );
+
+    }
+
+    /**
+     Build the key under which the response to a request is saved.
+
+     @param baseServerUrlString   the URL of the WikiTree API server that the request is sent to.
+     @param authenticatedWikiTreeId the WikiTree ID of the user that the requesting session is logged in as or {@code null} if it isn't logged in.
+     @param parameters            the request's parameters.
+     @return the key.
+     */
+
+    @NotNull
+    public static String getKey(
+            final @NotNull String baseServerUrlString,
+            @Nullable final String authenticatedWikiTreeId,
+            final @NotNull Map<?, ?> parameters
+    ) {
+
+        TreeMap<String, String> sortedParameters = new TreeMap<>();
+        for ( Map.Entry<?, ?> entry : parameters.entrySet() ) {
+
+            if ( entry.getValue() != null ) {
+
+                sortedParameters.put( String.valueOf( entry.getKey() ), String.valueOf( entry.getValue() ) );
+
+            }
+
+        }
+
+        StringBuilder sb = new StringBuilder( baseServerUrlString );
+        sb.append( '\n' ).append( authenticatedWikiTreeId == null ? "" : authenticatedWikiTreeId );
+        for ( Map.Entry<String, String> entry : sortedParameters.entrySet() ) {
+
+            sb.append( '\n' ).append( entry.getKey() ).append( '=' ).append( entry.getValue() );
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     Get the saved body for a key if it is still fresh.
+
+     @param key the key.
+     @return the saved body or {@code null} if there isn't one or it is stale.
+     @throws IOException if something goes wrong reading the cache.
+     */
+
+    @Nullable
+    public synchronized byte[] get( final @NotNull String key )
+            throws IOException {
+
+        checkOpen();
+
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        int slot = findSlot( keyBytes, hash( keyBytes ) );
+        long offset = slot < 0 ? 0L : getSlotOffset( slot );
+        if ( offset == 0L ) {
+
+            _misses.incrementAndGet();
+
+            return null;
+
+        }
+
+        ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_LENGTH );
+        readFully( _segment, header, offset );
+        header.flip();
+        int keyLength = header.getInt();
+        long savedAt = header.getLong();
+        int bodyLength = header.getInt();
+
+        if ( System.currentTimeMillis() - savedAt >= _timeToLiveMillis ) {
+
+            _expirations.incrementAndGet();
+            _misses.incrementAndGet();
+
+            return null;
+
+        }
+
+        if ( offset + RECORD_HEADER_LENGTH + keyLength + bodyLength > _segmentLength ) {
+
+            _misses.incrementAndGet();
+
+            return null;
+
+        }
+
+        ByteBuffer body = ByteBuffer.allocate( bodyLength );
+        readFully( _segment, body, offset + RECORD_HEADER_LENGTH + keyLength );
+
+        _hits.incrementAndGet();
+
+        return body.array();
+
+    }
+
+    /**
+     Save a body under a key (replacing whatever was saved under the key before).
+
+     @param key  the key.
+     @param body the body.
+     @throws IOException if something goes wrong writing the cache.
+     */
+
+    public synchronized void put( final @NotNull String key, final @NotNull byte[] body )
+            throws IOException {
+
+        checkOpen();
+
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        long offset = appendRecord( keyBytes, System.currentTimeMillis(), body );
+
+        insert( keyBytes, hash( keyBytes ), offset );
+        _index.putLong( INDEX_COMMITTED_LENGTH_OFFSET, _segmentLength );
+
+        _stores.incrementAndGet();
+
+    }
+
+    /**
+     Rewrite the segment file so that it only contains the most recent record for each key.
+     <p/>Stale records are kept (they are still useful to the next session which runs with a longer time to live).
+     Use {@link #clear()} to throw everything away.
+     <p/>The new segment file and the new index are written alongside the old ones and then renamed into place (the segment file first).
+     If something goes wrong before the new segment file is in place then the cache carries on with the old files.
+
+     @throws IOException if something goes wrong rewriting the cache.
+     */
+
+    public synchronized void compact()
+            throws IOException {
+
+        checkOpen();
+
+        Path segmentPath = _directory.resolve( SEGMENT_FILE_NAME );
+        Path indexPath = _directory.resolve( INDEX_FILE_NAME );
+        Path compactedSegmentPath = _directory.resolve( SEGMENT_FILE_NAME + ".compacting" );
+        Path compactedIndexPath = _directory.resolve( INDEX_FILE_NAME + ".compacting" );
+
+        long compactedSegmentId = ThreadLocalRandom.current().nextLong();
+        long[] hashes = new long[_count];
+        long[] offsets = new long[_count];
+        long compactedLength = SEGMENT_HEADER_LENGTH;
+
+        try ( FileChannel compacted = FileChannel.open(
+                compactedSegmentPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+        ) ) {
+
+            writeSegmentHeader( compacted, compactedSegmentId );
+
+            int ix = 0;
+            for ( int slot = 0; slot < _capacity; slot += 1 ) {
+
+                long offset = getSlotOffset( slot );
+                if ( offset == 0L ) {
+
+                    continue;
+
+                }
+
+                ByteBuffer header = ByteBuffer.allocate( RECORD_HEADER_LENGTH );
+                readFully( _segment, header, offset );
+                header.flip();
+                int recordLength = RECORD_HEADER_LENGTH + header.getInt();
+                header.getLong();
+                recordLength += header.getInt();
+
+                ByteBuffer record = ByteBuffer.allocate( recordLength );
+                readFully( _segment, record, offset );
+                record.flip();
+                writeFully( compacted, record, compactedLength );
+
+                hashes[ix] = getSlotHash( slot );
+                offsets[ix] = compactedLength;
+                ix += 1;
+                compactedLength += recordLength;
+
+            }
+
+            compacted.force( true );
+
+        }
+
+        // The new index goes into a file of its own and only replaces the old one after the new segment file has replaced the old one.
+        // If we die in between then the old index doesn't match the new segment file's segment id and open() rebuilds it.
+
+        FileChannel oldIndexChannel = _indexChannel;
+        MappedByteBuffer oldIndex = _index;
+        int oldCapacity = _capacity;
+        int oldCount = _count;
+        long oldSegmentLength = _segmentLength;
+        long oldSegmentId = _segmentId;
+
+        FileChannel compactedIndexChannel = null;
+        boolean segmentReplaced = false;
+        try {
+
+            compactedIndexChannel = FileChannel.open(
+                    compactedIndexPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE
+            );
+            _indexChannel = compactedIndexChannel;
+            mapIndex( oldCapacity );
+            _segmentLength = compactedLength;
+            _segmentId = compactedSegmentId;
+            rebuildIndex( oldCapacity, hashes, offsets );
+            _index.force();
+
+            _segment.close();
+            try {
+
+                Files.move( compactedSegmentPath, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+                segmentReplaced = true;
+
+            } finally {
+
+                // Either way, carry on with whichever segment file is now in place.
+
+                _segment = FileChannel.open( segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+            }
+
+        } finally {
+
+            if ( !segmentReplaced ) {
+
+                // Back to the old segment file and its index.
+
+                if ( compactedIndexChannel != null ) {
+
+                    closeQuietly( compactedIndexChannel );
+
+                }
+
+                _indexChannel = oldIndexChannel;
+                _index = oldIndex;
+                _capacity = oldCapacity;
+                _count = oldCount;
+                _segmentLength = oldSegmentLength;
+                _segmentId = oldSegmentId;
+                Files.deleteIfExists( compactedSegmentPath );
+                Files.deleteIfExists( compactedIndexPath );
+
+            }
+
+        }
+
+        // We're using the new index from here on (even if it can't be renamed, in which case the next open() rebuilds the index).
+
+        closeQuietly( oldIndexChannel );
+        Files.move( compactedIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+    }
+
+    /**
+     Throw away every saved response.
+
+     @throws IOException if something goes wrong rewriting the cache.
+     */
+
+    public synchronized void clear()
+            throws IOException {
+
+        checkOpen();
+
+        _segmentLength = SEGMENT_HEADER_LENGTH;
+        _segment.truncate( _segmentLength );
+        rebuildIndex( INITIAL_INDEX_CAPACITY, new long[0], new long[0] );
+
+    }
+
+    /**
+     Force everything which has been saved so far out to disk.
+
+     @throws IOException if something goes wrong writing the cache.
+     */
+
+    public synchronized void flush()
+            throws IOException {
+
+        checkOpen();
+
+        // The segment goes first so that the index never refers to records which aren't on disk.
+
+        _segment.force( false );
+        _index.force();
+
+    }
+
+    /**
+     Flush and close the cache.
+     <p/>The cache cannot be used once it has been closed. Closing a closed cache does nothing.
+
+     @throws IOException if something goes wrong writing the cache.
+     */
+
+    @Override
+    public synchronized void close()
+            throws IOException {
+
+        if ( _closed ) {
+
+            return;
+
+        }
+
+        try {
+
+            flush();
+
+        } finally {
+
+            _closed = true;
+            _index = null;
+            try {
+
+                _segment.close();
+
+            } finally {
+
+                _indexChannel.close();
+
+            }
+
+        }
+
+    }
+
+    /**
+     Get the number of keys which have a saved response (fresh or stale).
+
+     @return the number of keys which have a saved response.
+     */
+
+    public synchronized int size() {
+
+        return _count;
+
+    }
+
+    /**
+     Get the length of the segment file (including any records which have been replaced since the last {@link #compact()}).
+
+     @return the length of the segment file in bytes.
+     */
+
+    public synchronized long getSegmentLength() {
+
+        return _segmentLength;
+
+    }
+
+    /**
+     Get the directory which holds this cache's files.
+
+     @return the directory which holds this cache's files.
+     */
+
+    @NotNull
+    public Path getDirectory() {
+
+        return _directory;
+
+    }
+
+    /**
+     Get how long records stay fresh after they are saved.
+
+     @return how long (in milliseconds) records stay fresh after they are saved.
+     */
+
+    public long getTimeToLiveMillis() {
+
+        return _timeToLiveMillis;
+
+    }
+
+    /**
+     Get the number of lookups which found a fresh response.
+
+     @return the number of hits.
+     */
+
+    public long getHits() {
+
+        return _hits.get();
+
+    }
+
+    /**
+     Get the number of lookups which did not find a fresh response (including those which found a stale one).
+
+     @return the number of misses.
+     */
+
+    public long getMisses() {
+
+        return _misses.get();
+
+    }
+
+    /**
+     Get the number of lookups which found a stale response.
+
+     @return the number of expirations.
+     */
+
+    public long getExpirations() {
+
+        return _expirations.get();
+
+    }
+
+    /**
+     Get the number of responses which have been saved.
+
+     @return the number of saved responses.
+     */
+
+    public long getStores() {
+
+        return _stores.get();
+
+    }
+
+    private void checkOpen()
+            throws IOException {
+
+        if ( _closed ) {
+
+            throw new IOException( "WikiTreeResponseCache:  cache in " + _directory + " has been closed" );
+
+        }
+
+    }
+
+    private static void writeSegmentHeader( final @NotNull FileChannel channel, final long segmentId )
+            throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate( SEGMENT_HEADER_LENGTH );
+        header.putInt( SEGMENT_MAGIC ).putInt( FORMAT_VERSION ).putLong( segmentId ).flip();
+        writeFully( channel, header, 0L );
+
+    }
+
+    private static void closeQuietly( final @NotNull Closeable closeable ) {
+
+        try {
+
+            closeable.close();
+
+        } catch ( IOException e ) {
+
+            // Nothing useful to be done about it.
+
+        }
+
+    }
+
+    private long appendRecord( final @NotNull byte[] keyBytes, final long savedAt, final @NotNull byte[] body )
+            throws IOException {
+
+        long offset = _segmentLength;
+
+        ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_LENGTH + keyBytes.length + body.length );
+        record.putInt( keyBytes.length ).putLong( savedAt ).putInt( body.length ).put( keyBytes ).put( body ).flip();
+        writeFully( _segment, record, offset );
+
+        _segmentLength += record.capacity();
+
+        return offset;
+
+    }
+
+    /**
+     Find the slot which holds a key or, if the key isn't in the index, the empty slot where it belongs.
+
+     @return the slot.
+     */
+
+    private int findSlot( final @NotNull byte[] keyBytes, final long hash )
+            throws IOException {
+
+        int mask = _capacity - 1;
+        for ( int slot = (int)( hash ^ ( hash >>> 32 ) ) & mask; ; slot = ( slot + 1 ) & mask ) {
+
+            long offset = getSlotOffset( slot );
+            if ( offset == 0L || getSlotHash( slot ) == hash && keyMatches( keyBytes, offset ) ) {
+
+                return slot;
+
+            }
+
+        }
+
+    }
+
+    private boolean keyMatches( final @NotNull byte[] keyBytes, final long offset )
+            throws IOException {
+
+        // An index which was written out more recently than the segment file could refer to records which aren't there.
+
+        if ( offset + RECORD_HEADER_LENGTH + keyBytes.length > _segmentLength ) {
+
+            return false;
+
+        }
+
+        ByteBuffer header = ByteBuffer.allocate( 4 );
+        readFully( _segment, header, offset );
+        if ( header.getInt( 0 ) != keyBytes.length ) {
+
+            return false;
+
+        }
+
+        ByteBuffer savedKey = ByteBuffer.allocate( keyBytes.length );
+        readFully( _segment, savedKey, offset + RECORD_HEADER_LENGTH );
+
+        return Arrays.equals( savedKey.array(), keyBytes );
+
+    }
+
+    private void insert( final @NotNull byte[] keyBytes, final long hash, final long offset )
+            throws IOException {
+
+        int slot = findSlot( keyBytes, hash );
+        if ( getSlotOffset( slot ) == 0L ) {
+
+            _count += 1;
+            _index.putInt( INDEX_COUNT_OFFSET, _count );
+
+        }
+
+        setSlot( slot, hash, offset );
+
+        if ( _count * 4L >= _capacity * 3L ) {
+
+            grow();
+
+        }
+
+    }
+
+    private void grow()
+            throws IOException {
+
+        long[] hashes = new long[_count];
+        long[] offsets = new long[_count];
+        int ix = 0;
+        for ( int slot = 0; slot < _capacity; slot += 1 ) {
+
+            long offset = getSlotOffset( slot );
+            if ( offset != 0L ) {
+
+                hashes[ix] = getSlotHash( slot );
+                offsets[ix] = offset;
+                ix += 1;
+
+            }
+
+        }
+
+        rebuildIndex( _capacity * 2, hashes, offsets );
+
+    }
+
+    /**
+     Replace the contents of the index.
+     <p/>The keys are already known to be distinct so entries are placed by hash alone (no need to read the segment file).
+     */
+
+    private void rebuildIndex( final int capacity, final @NotNull long[] hashes, final @NotNull long[] offsets )
+            throws IOException {
+
+        if ( capacity != _capacity ) {
+
+            mapIndex( capacity );
+
+        }
+
+        for ( int slot = 0; slot < _capacity; slot += 1 ) {
+
+            setSlot( slot, 0L, 0L );
+
+        }
+
+        int mask = _capacity - 1;
+        for ( int ix = 0; ix < hashes.length; ix += 1 ) {
+
+            long hash = hashes[ix];
+            int slot = (int)( hash ^ ( hash >>> 32 ) ) & mask;
+            while ( getSlotOffset( slot ) != 0L ) {
+
+                slot = ( slot + 1 ) & mask;
+
+            }
+
+            setSlot( slot, hash, offsets[ix] );
+
+        }
+
+        _count = hashes.length;
+        writeIndexHeader();
+
+    }
+
+    private void mapIndex( final int capacity )
+            throws IOException {
+
+        _capacity = capacity;
+        _index = _indexChannel.map( FileChannel.MapMode.READ_WRITE, 0L, INDEX_HEADER_LENGTH + (long)capacity * SLOT_LENGTH );
+
+    }
+
+    private void writeIndexHeader() {
+
+        _index.putInt( 0, INDEX_MAGIC );
+        _index.putInt( 4, FORMAT_VERSION );
+        _index.putInt( INDEX_CAPACITY_OFFSET, _capacity );
+        _index.putInt( INDEX_COUNT_OFFSET, _count );
+        _index.putLong( INDEX_COMMITTED_LENGTH_OFFSET, _segmentLength );
+        _index.putLong( INDEX_SEGMENT_ID_OFFSET, _segmentId );
+
+    }
+
+    private long getSlotHash( final int slot ) {
+
+        return _index.getLong( INDEX_HEADER_LENGTH + slot * SLOT_LENGTH );
+
+    }
+
+    private long getSlotOffset( final int slot ) {
+
+        return _index.getLong( INDEX_HEADER_LENGTH + slot * SLOT_LENGTH + 8 );
+
+    }
+
+    private void setSlot( final int slot, final long hash, final long offset ) {
+
+        _index.putLong( INDEX_HEADER_LENGTH + slot * SLOT_LENGTH, hash );
+        _index.putLong( INDEX_HEADER_LENGTH + slot * SLOT_LENGTH + 8, offset );
+
+    }
+
+    /**
+     64-bit FNV-1a.
+     <p/>Package-private so that the tests can find keys which land in the same slot.
+     */
+
+    static long hash( final @NotNull byte[] bytes ) {
+
+        long hash = 0xcbf29ce484222325L;
+        for ( byte b : bytes ) {
+
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+
+        }
+
+        return hash;
+
+    }
+
+    private static void readFully( final @NotNull FileChannel channel, final @NotNull ByteBuffer buffer, final long position )
+            throws IOException {
+
+        long where = position;
+        while ( buffer.hasRemaining() ) {
+
+            int count = channel.read( buffer, where );
+            if ( count < 0 ) {
+
+                throw new EOFException( "WikiTreeResponseCache:  unexpected end of file at " + where );
+
+            }
+
+            where += count;
+
+        }
+
+    }
+
+    private static void writeFully( final @NotNull FileChannel channel, final @NotNull ByteBuffer buffer, final long position )
+            throws IOException {
+
+        long where = position;
+        while ( buffer.hasRemaining() ) {
+
+            where += channel.write( buffer, where );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeResponseCache( " +
+               "directory=" + _directory + ", " +
+               "hits=" + getHits() + ", " +
+               "misses=" + getMisses() + ", " +
+               "expirations=" + getExpirations() + ", " +
+               "stores=" + getStores() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeCircuitOpenException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Decide whether, and when, a failed request to the WikiTree API server should be tried again.
+ <p/>A {@link WikiTreeApiJsonSession} which has been given a policy via {@link WikiTreeApiJsonSession#setRetryPolicy(WikiTreeRetryPolicy)}
+ sends a request again if the first try fails for what looks like a transient reason. That means that the request failed with an {@link IOException}
+ (other than an {@link InterruptedIOException} which isn't a {@link SocketTimeoutException}
+ or a {@link WikiTreeCircuitOpenException}) or that the server answered with one of
+ 429 (Too Many Requests), 500 (Internal Server Error), 502 (Bad Gateway), 503 (Service Unavailable) or 504 (Gateway Timeout).
+ Every request that the WikiTree API supports is a GET which doesn't change anything on the server
+ so trying one again is harmless. The exception is the login request, which is never retried.
+ <p/>A request is tried at most {@link #getMaxAttempts()} times. The wait before each retry is chosen at random
+ between zero and an exponentially growing ceiling ({@link #getInitialBackoffMillis()}, twice that, four times that, and so on up to
+ {@link #getMaxBackoffMillis()}). The randomness ("full jitter") keeps a crowd of clients which failed at the same time
+ from all coming back at the same time. If the server says how long to wait (via a {@code Retry-After} header giving a number of seconds)
+ then the wait is at least that long (but never longer than {@link #getMaxBackoffMillis()}).
+ <p/>Retries are also limited by a budget. Every request adds {@link #getBudgetRatio()} of a retry to the budget
+ and every retry uses up one. The budget never holds more than {@link #getBudgetReserve()} retries (which is also what it starts with).
+ Over the long run, this means that retries never add more than about {@code budgetRatio} to the load on the server.
+ When the server is really down, failures stop being retried as soon as the reserve runs out instead of tripling the load on a server that is already in trouble.
+ <p/>A policy can be shared by any number of sessions (they then share the budget).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeRetryPolicy {
+
+    /**
+     The most tries per request allowed by {@link #WikiTreeRetryPolicy()}.
+     */
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     The ceiling on the wait before the first retry used by {@link #WikiTreeRetryPolicy()}.
+     */
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200L;
+
+    /**
+     The ceiling on the wait before any retry used by {@link #WikiTreeRetryPolicy()}.
+     */
+
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis( 10L );
+
+    /**
+     The fraction of a retry that each request adds to the budget of a policy created via {@link #WikiTreeRetryPolicy()}.
+     */
+
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+
+    /**
+     The most retries held in the budget of a policy created via {@link #WikiTreeRetryPolicy()}.
+     */
+
+    public static final int DEFAULT_BUDGET_RESERVE = 10;
+
+    private final int _maxAttempts;
+
+    private final long _initialBackoffMillis;
+
+    private final long _maxBackoffMillis;
+
+    private final double _budgetRatio;
+
+    private final int _budgetReserve;
+
+    private double _budget;
+
+    private final AtomicLong _retries = new AtomicLong( 0L );
+
+    private final AtomicLong _budgetExhaustions = new AtomicLong( 0L );
+
+    /**
+     Create a policy with the default settings.
+     */
+
+    public WikiTreeRetryPolicy() {
+
+        this( DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_RESERVE );
+
+    }
+
+    /**
+     Create a policy.
+
+     @param maxAttempts          the most times that a request is tried (including the first try).
+     @param initialBackoffMillis the ceiling on the wait (in milliseconds) before the first retry.
+     @param maxBackoffMillis     the ceiling on the wait (in milliseconds) before any retry.
+     @param budgetRatio          the fraction of a retry that each request adds to the budget.
+     @param budgetReserve        the most retries that the budget can hold (and how many it starts with).
+     @throws IllegalArgumentException if any of the values don't make sense.
+     */
+
+    public WikiTreeRetryPolicy(
+            final int maxAttempts,
+            final long initialBackoffMillis,
+            final long maxBackoffMillis,
+            final double budgetRatio,
+            final int budgetReserve
+    ) {
+
+        super();
+
+        if (
+                maxAttempts < 1 || initialBackoffMillis < 0L || maxBackoffMillis < initialBackoffMillis ||
+                !( budgetRatio >= 0.0 ) || budgetReserve < 0
+        ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeRetryPolicy:  invalid settings (got " +
+                    "maxAttempts=" + maxAttempts + ", " +
+                    "initialBackoffMillis=" + initialBackoffMillis + ", " +
+                    "maxBackoffMillis=" + maxBackoffMillis + ", " +
+                    "budgetRatio=" + budgetRatio + ", " +
+                    "budgetReserve=" + budgetReserve + ")"
+            );
+
+        }
+
+        _maxAttempts = maxAttempts;
+        _initialBackoffMillis = initialBackoffMillis;
+        _maxBackoffMillis = maxBackoffMillis;
+        _budgetRatio = budgetRatio;
+        _budgetReserve = budgetReserve;
+
+        _budget = budgetReserve;
+
+    }
+
+    /**
+     Note that a request is about to be sent for the first time (this adds to the retry budget).
+     */
+
+    public synchronized void recordRequest() {
+
+        _budget = Math.min( _budgetReserve, _budget + _budgetRatio );
+
+    }
+
+    /**
+     Decide whether a request which got an unsuccessful response should be tried again.
+     <p/>A {@code true} answer uses up one retry from the budget.
+
+     @param attempt    which try just failed (the first try is try {@code 1}).
+     @param statusCode the HTTP status code that the server answered with.
+     @return {@code true} if the request should be tried again; {@code false} otherwise.
+     */
+
+    public boolean shouldRetry( final int attempt, final int statusCode ) {
+
+        return isRetryable( statusCode ) && attempt < _maxAttempts && withdraw();
+
+    }
+
+    /**
+     Decide whether a request which failed with an exception should be tried again.
+     <p/>A {@code true} answer uses up one retry from the budget.
+
+     @param attempt which try just failed (the first try is try {@code 1}).
+     @param e       the exception.
+     @return {@code true} if the request should be tried again; {@code false} otherwise.
+     */
+
+    public boolean shouldRetry( final int attempt, final @NotNull IOException e ) {
+
+        // A SocketTimeoutException is an InterruptedIOException but it means that the server is slow (not that somebody wants us to stop).
+        // An open circuit breaker is going to say no again (and the whole point is to stop hammering the server).
+
+        boolean interrupted = e instanceof InterruptedIOException && !( e instanceof SocketTimeoutException );
+
+        return !interrupted && !( e instanceof WikiTreeCircuitOpenException ) && attempt < _maxAttempts && withdraw();
+
+    }
+
+    /**
+     Determine if an HTTP status code indicates a failure which might go away if the request is tried again.
+
+     @param statusCode the HTTP status code.
+     @return {@code true} if the status code is 429, 500, 502, 503 or 504; {@code false} otherwise.
+     */
+
+    public static boolean isRetryable( final int statusCode ) {
+
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+
+    }
+
+    /**
+     Choose how long to wait before trying a request again.
+
+     @param attempt    which try just failed (the first try is try {@code 1}).
+     @param retryAfter the value of the server's {@code Retry-After} header ({@code null} if there wasn't one).
+     Only the delay-in-seconds form of the header is understood (an HTTP date is ignored).
+     @return how long to wait (in milliseconds).
+     */
+
+    public long getBackoffMillis( final int attempt, @Nullable final String retryAfter ) {
+
+        long ceiling = _initialBackoffMillis;
+        for ( int ix = 1; ix < attempt && ceiling < _maxBackoffMillis; ix += 1 ) {
+
+            ceiling *= 2L;
+
+        }
+
+        ceiling = Math.min( ceiling, _maxBackoffMillis );
+
+        long backoff = ceiling == 0L ? 0L : ThreadLocalRandom.current().nextLong( ceiling + 1L );
+
+        if ( retryAfter != null ) {
+
+            try {
+
+                long retryAfterMillis = TimeUnit.SECONDS.toMillis( Long.parseLong( retryAfter.trim() ) );
+                backoff = Math.max( backoff, Math.min( retryAfterMillis, _maxBackoffMillis ) );
+
+            } catch ( NumberFormatException e ) {
+
+                // Must be an HTTP date. We'll stick with what we've got.
+
+            }
+
+        }
+
+        return backoff;
+
+    }
+
+    private synchronized boolean withdraw() {
+
+        if ( _budget >= 1.0 ) {
+
+            _budget -= 1.0;
+            _retries.incrementAndGet();
+
+            return true;
+
+        }
+
+        _budgetExhaustions.incrementAndGet();
+
+        return false;
+
+    }
+
+    /**
+     Get the most times that a request is tried (including the first try).
+
+     @return the most tries per request.
+     */
+
+    public int getMaxAttempts() {
+
+        return _maxAttempts;
+
+    }
+
+    /**
+     Get the ceiling on the wait before the first retry.
+
+     @return the initial backoff ceiling (in milliseconds).
+     */
+
+    public long getInitialBackoffMillis() {
+
+        return _initialBackoffMillis;
+
+    }
+
+    /**
+     Get the ceiling on the wait before any retry.
+
+     @return the maximum backoff (in milliseconds).
+     */
+
+    public long getMaxBackoffMillis() {
+
+        return _maxBackoffMillis;
+
+    }
+
+    /**
+     Get the fraction of a retry that each request adds to the budget.
+
+     @return the budget ratio.
+     */
+
+    public double getBudgetRatio() {
+
+        return _budgetRatio;
+
+    }
+
+    /**
+     Get the most retries that the budget can hold.
+
+     @return the budget reserve.
+     */
+
+    public int getBudgetReserve() {
+
+        return _budgetReserve;
+
+    }
+
+    /**
+     Get the number of retries that this policy has allowed.
+
+     @return the number of retries.
+     */
+
+    public long getRetries() {
+
+        return _retries.get();
+
+    }
+
+    /**
+     Get the number of retries which would have been allowed if the budget hadn't run out.
+
+     @return the number of times that the budget ran out.
+     */
+
+    public long getBudgetExhaustions() {
+
+        return _budgetExhaustions.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeRetryPolicy( " +
+               "maxAttempts=" + _maxAttempts + ", " +
+               "retries=" + getRetries() + ", " +
+               "budgetExhaustions=" + getBudgetExhaustions() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,1467 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.miniserver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A stand-in for the WikiTree API server that runs inside your JVM.
+ <p/>The server answers the same {@code api.php} requests that the real server does
+ ({@code getPerson}, {@code getProfile}, {@code getBio}, {@code getAncestors}, {@code getRelatives}, {@code getWatchlist} and {@code login})
+ with responses of the same shape, using the people in a {@link WikiTreeMiniServerDataset}.
+ Point a session at it via {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession#WikiTreeApiJsonSession(String)}:
+ <blockquote>
+ <pre>
+ WikiTreeMiniServer server = new WikiTreeMiniServer( WikiTreeMiniServerDataset.createSynthetic( 100000, 42L ) );
+ server.start();
+ WikiTreeApiJsonSession session = new WikiTreeApiJsonSession( server.getUrlString() );
+ </pre>
+ </blockquote>
+ <p/>The server can be told to misbehave in the ways that a busy server on the far side of the internet does:
+ <ul>
+ <li>{@link #setLatency(long, long)} delays every response by a random amount.</li>
+ <li>{@link #setSlowResponses(double, long)} makes an occasional response much slower than the rest (a long tail).</li>
+ <li>{@link #setErrors(double, int, long)} fails some requests with a given status code (for example, 503 or 429) and an optional {@code Retry-After} header.</li>
+ <li>{@link #setTruncatedResponses(double)} cuts some responses off half way through their body.</li>
+ </ul>
+ Misbehaviour can be changed while the server is running (each request sees whatever the settings were when it arrived).
+ This makes it possible to load-test the throttle, retries, hedging, circuit breaker and metrics of a session without bothering the real server
+ (or needing a network).
+ <p/>The server only listens on the loopback interface. Each request is handled on one of a fixed number of threads
+ (a delayed response ties up its thread for the length of the delay).
+ <p/>Logins only work for accounts added via {@link #addAccount(String, String, long, Collection)}.
+ A successful login gets a session cookie which unlocks the account's watchlist and the private parts of living people's profiles.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unchecked" })
+public class WikiTreeMiniServer implements AutoCloseable {
+
+    /**
+     The path that the server answers requests on.
+     */
+
+    public static final String API_PATH = "/api.php";
+
+    /**
+     The number of request handling threads used by {@link #WikiTreeMiniServer(WikiTreeMiniServerDataset)}.
+     */
+
+    public static final int DEFAULT_THREADS = 32;
+
+    /**
+     How deep a {@code getAncestors} request goes if it doesn't say (the real server's default).
+     */
+
+    public static final int DEFAULT_ANCESTORS_DEPTH = 5;
+
+    /**
+     How deep a {@code getAncestors} request is allowed to go (the real server's limit).
+     */
+
+    public static final int MAX_ANCESTORS_DEPTH = 10;
+
+    /**
+     How many profiles a {@code getWatchlist} request gets if it doesn't say.
+     */
+
+    public static final int DEFAULT_WATCHLIST_LIMIT = 100;
+
+    private static final String SESSION_COOKIE_NAME = "wikidb_wtb__session";
+
+    private static final String[] RELATIVES_FIELDS = { "Parents", "Children", "Spouses", "Siblings" };
+
+    /**
+     The fields that people who aren't logged in don't get to see in living people's profiles.
+     */
+
+    private static final Set<String> PRIVATE_FIELDS = new HashSet<>(
+            Arrays.asList(
+                    "MiddleName", "Nicknames", "BirthNamePrivate", "LongNamePrivate", "BirthDate", "DeathDate", "BirthLocation", "DeathLocation", "Photo"
+            )
+    );
+
+    static {
+
+        // The JDK's HTTP server sends a response's headers and body in separate writes.
+        // With Nagle's algorithm on, the body then sits waiting for the client's delayed ACK and every response takes an extra 40ms or so
+        // (which rather defeats the purpose of a server for measuring latency). The server only reads this property the first time one
+        // is created so it has to be set before then (it can be overridden on the command line).
+
+        if ( System.getProperty( "sun.net.httpserver.nodelay" ) == null ) {
+
+            System.setProperty( "sun.net.httpserver.nodelay", "true" );
+
+        }
+
+    }
+
+    /**
+     Someone who can log in.
+     */
+
+    private static class Account {
+
+        private final String _emailAddress;
+
+        private final String _password;
+
+        private final long _personId;
+
+        private final List<Long> _watchlist;
+
+        private Account( final @NotNull String emailAddress, final @NotNull String password, final long personId, final @NotNull Collection<Long> watchlist ) {
+
+            super();
+
+            _emailAddress = emailAddress;
+            _password = password;
+            _personId = personId;
+            _watchlist = Collections.unmodifiableList( new ArrayList<>( watchlist ) );
+
+        }
+
+        public String toString() {
+
+            return "Account( emailAddress=" + _emailAddress + ", personId=" + _personId + ", watchlist=" + _watchlist.size() + " profiles )";
+
+        }
+
+    }
+
+    private final WikiTreeMiniServerDataset _dataset;
+
+    private final int _threads;
+
+    private final Map<String, Account> _accounts = new ConcurrentHashMap<>();
+
+    private final Map<String, Account> _loggedIn = new ConcurrentHashMap<>();
+
+    private final SecureRandom _tokenGenerator = new SecureRandom();
+
+    private HttpServer _server;
+
+    private ExecutorService _executor;
+
+    private volatile long _minLatencyMillis = 0L;
+
+    private volatile long _maxLatencyMillis = 0L;
+
+    private volatile double _slowResponseProbability = 0.0;
+
+    private volatile long _slowResponseMillis = 0L;
+
+    private volatile double _errorProbability = 0.0;
+
+    private volatile int _errorStatusCode = 503;
+
+    private volatile long _retryAfterSeconds = -1L;
+
+    private volatile double _truncatedResponseProbability = 0.0;
+
+    private final AtomicLong _requests = new AtomicLong();
+
+    private final AtomicLong _injectedErrors = new AtomicLong();
+
+    private final AtomicLong _truncatedResponses = new AtomicLong();
+
+    private final AtomicInteger _inFlight = new AtomicInteger();
+
+    private final AtomicInteger _maxInFlight = new AtomicInteger();
+
+    /**
+     Create a server which uses {@link #DEFAULT_THREADS} threads to handle requests.
+     <p/>The server doesn't listen for requests until it is started.
+
+     @param dataset the people that the server knows about.
+     */
+
+    public WikiTreeMiniServer( final @NotNull WikiTreeMiniServerDataset dataset ) {
+
+        this( dataset, DEFAULT_THREADS );
+
+    }
+
+    /**
+     Create a server which uses a specified number of threads to handle requests.
+     <p/>The server doesn't listen for requests until it is started.
+
+     @param dataset the people that the server knows about.
+     @param threads how many requests the server can work on at once. Make this at least as large as the number of requests that will be in flight at once
+     if you are injecting latency (otherwise requests queue up waiting for a thread and the latency that a client sees goes up).
+     @throws IllegalArgumentException if {@code threads} is less than 1.
+     */
+
+    public WikiTreeMiniServer( final @NotNull WikiTreeMiniServerDataset dataset, final int threads ) {
+
+        super();
+
+        if ( threads < 1 ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServer:  threads must be at least 1 (got threads=" + threads + ")" );
+
+        }
+
+        _dataset = dataset;
+        _threads = threads;
+
+    }
+
+    /**
+     Start listening on a port chosen by the operating system.
+     <p/>Use {@link #getUrlString()} to find out where.
+
+     @throws IOException          if the server's socket cannot be created.
+     @throws IllegalStateException if the server has already been started.
+     */
+
+    public void start()
+            throws IOException {
+
+        start( 0 );
+
+    }
+
+    /**
+     Start listening on a specified port.
+
+     @param port the port ({@code 0} means let the operating system choose one).
+     @throws IOException          if the server's socket cannot be created (for example, if the port is in use).
+     @throws IllegalStateException if the server has already been started.
+     */
+
+    public synchronized void start( final int port )
+            throws IOException {
+
+        if ( _server != null ) {
+
+            throw new IllegalStateException( "WikiTreeMiniServer.start:  already started (listening on port " + getPort() + ")" );
+
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        _executor = Executors.newFixedThreadPool(
+                _threads,
+                runnable -> {
+
+                    Thread thread = new Thread( runnable, "WikiTreeMiniServer-" + threadNumber.incrementAndGet() );
+                    thread.setDaemon( true );
+
+                    return thread;
+
+                }
+        );
+
+        _server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+        _server.createContext( API_PATH, this::handle );
+        _server.setExecutor( _executor );
+        _server.start();
+
+    }
+
+    /**
+     Stop listening and forget everyone who is logged in.
+     <p/>Requests that are being worked on are given a second to finish. Stopping a server which isn't running does nothing.
+     A stopped server can be started again.
+     */
+
+    public synchronized void stop() {
+
+        if ( _server != null ) {
+
+            _server.stop( 1 );
+            _executor.shutdownNow();
+            _server = null;
+            _executor = null;
+            _loggedIn.clear();
+
+        }
+
+    }
+
+    /**
+     Same as {@link #stop()}.
+     */
+
+    @Override
+    public void close() {
+
+        stop();
+
+    }
+
+    /**
+     Get the port that this server is listening on.
+
+     @return the port.
+     @throws IllegalStateException if the server is not running.
+     */
+
+    public synchronized int getPort() {
+
+        if ( _server == null ) {
+
+            throw new IllegalStateException( "WikiTreeMiniServer.getPort:  server is not running" );
+
+        }
+
+        return _server.getAddress().getPort();
+
+    }
+
+    /**
+     Get the URL to give to {@link com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession#WikiTreeApiJsonSession(String)}.
+
+     @return the URL of this server's {@code api.php} (for example, {@code "http://127.0.0.1:54321/api.php"}).
+     @throws IllegalStateException if the server is not running.
+     */
+
+    @NotNull
+    public String getUrlString() {
+
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort() + API_PATH;
+
+    }
+
+    /**
+     Get the people that this server knows about.
+     */
+
+    @NotNull
+    public WikiTreeMiniServerDataset getDataset() {
+
+        return _dataset;
+
+    }
+
+    /**
+     Add an account that someone can log in to.
+
+     @param emailAddress the email address to log in with.
+     @param password     the password to log in with.
+     @param personId     the Person.Id of the account's owner (their WikiTree ID is what a successful login reports).
+     @param watchlist    the Person.Ids of the profiles on the account's watchlist.
+     @throws IllegalArgumentException if there is no such person in this server's dataset.
+     */
+
+    public void addAccount( final @NotNull String emailAddress, final @NotNull String password, final long personId, final @NotNull Collection<Long> watchlist ) {
+
+        if ( _dataset.getProfile( personId ) == null ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServer.addAccount:  no such person (got personId=" + personId + ")" );
+
+        }
+
+        _accounts.put( emailAddress, new Account( emailAddress, password, personId, watchlist ) );
+
+    }
+
+    /**
+     Delay every response by a random amount.
+
+     @param minMillis the shortest delay in milliseconds.
+     @param maxMillis the longest delay in milliseconds ({@code 0} for both means no delay, which is the default).
+     @throws IllegalArgumentException if {@code minMillis} is negative or larger than {@code maxMillis}.
+     */
+
+    public void setLatency( final long minMillis, final long maxMillis ) {
+
+        if ( minMillis < 0L || minMillis > maxMillis ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeMiniServer.setLatency:  need 0 <= minMillis <= maxMillis (got minMillis=" + minMillis + ", maxMillis=" + maxMillis + ")"
+            );
+
+        }
+
+        _minLatencyMillis = minMillis;
+        _maxLatencyMillis = maxMillis;
+
+    }
+
+    public long getMinLatencyMillis() {
+
+        return _minLatencyMillis;
+
+    }
+
+    public long getMaxLatencyMillis() {
+
+        return _maxLatencyMillis;
+
+    }
+
+    /**
+     Make some responses much slower than the rest.
+
+     @param probability the chance that a response is slow ({@code 0.0} means never, which is the default).
+     @param millis      how much longer than usual a slow response takes.
+     @throws IllegalArgumentException if {@code probability} isn't between 0 and 1 or {@code millis} is negative.
+     */
+
+    public void setSlowResponses( final double probability, final long millis ) {
+
+        checkProbability( "setSlowResponses", probability );
+        if ( millis < 0L ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServer.setSlowResponses:  millis must not be negative (got millis=" + millis + ")" );
+
+        }
+
+        _slowResponseProbability = probability;
+        _slowResponseMillis = millis;
+
+    }
+
+    public double getSlowResponseProbability() {
+
+        return _slowResponseProbability;
+
+    }
+
+    public long getSlowResponseMillis() {
+
+        return _slowResponseMillis;
+
+    }
+
+    /**
+     Fail some requests.
+     <p/>A failed request still gets delayed by {@link #setLatency(long, long)} (a struggling server doesn't fail instantly).
+
+     @param probability       the chance that a request fails ({@code 0.0} means never, which is the default; {@code 1.0} is an outage).
+     @param statusCode        the status code of a failed request (for example, 503 or 429).
+     @param retryAfterSeconds the value of the {@code Retry-After} header sent with a failed request (negative means don't send one).
+     @throws IllegalArgumentException if {@code probability} isn't between 0 and 1 or {@code statusCode} isn't an HTTP error status code.
+     */
+
+    public void setErrors( final double probability, final int statusCode, final long retryAfterSeconds ) {
+
+        checkProbability( "setErrors", probability );
+        if ( statusCode < 400 || statusCode > 599 ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServer.setErrors:  statusCode must be in [400,599] (got statusCode=" + statusCode + ")" );
+
+        }
+
+        _errorProbability = probability;
+        _errorStatusCode = statusCode;
+        _retryAfterSeconds = retryAfterSeconds;
+
+    }
+
+    public double getErrorProbability() {
+
+        return _errorProbability;
+
+    }
+
+    public int getErrorStatusCode() {
+
+        return _errorStatusCode;
+
+    }
+
+    public long getRetryAfterSeconds() {
+
+        return _retryAfterSeconds;
+
+    }
+
+    /**
+     Cut some responses off half way through their body.
+     <p/>The server promises the whole body, sends half of it and then closes the connection.
+     Depending on how the client reads the body, it sees either an {@link IOException} or a parse error.
+
+     @param probability the chance that a response is cut off ({@code 0.0} means never, which is the default).
+     @throws IllegalArgumentException if {@code probability} isn't between 0 and 1.
+     */
+
+    public void setTruncatedResponses( final double probability ) {
+
+        checkProbability( "setTruncatedResponses", probability );
+
+        _truncatedResponseProbability = probability;
+
+    }
+
+    public double getTruncatedResponseProbability() {
+
+        return _truncatedResponseProbability;
+
+    }
+
+    private static void checkProbability( final String who, final double probability ) {
+
+        if ( !( probability >= 0.0 && probability <= 1.0 ) ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServer." + who + ":  probability must be in [0,1] (got probability=" + probability + ")" );
+
+        }
+
+    }
+
+    /**
+     Get the number of requests that have arrived since this server was created (or its statistics were last reset).
+     */
+
+    public long getRequests() {
+
+        return _requests.get();
+
+    }
+
+    /**
+     Get the number of requests that were failed on purpose (see {@link #setErrors(double, int, long)}).
+     */
+
+    public long getInjectedErrors() {
+
+        return _injectedErrors.get();
+
+    }
+
+    /**
+     Get the number of responses that were cut off on purpose (see {@link #setTruncatedResponses(double)}).
+     */
+
+    public long getTruncatedResponses() {
+
+        return _truncatedResponses.get();
+
+    }
+
+    /**
+     Get the number of requests being worked on right now.
+     */
+
+    public int getInFlight() {
+
+        return _inFlight.get();
+
+    }
+
+    /**
+     Get the largest number of requests that have been worked on at once (a good way to check that a throttle is doing its job).
+     */
+
+    public int getMaxInFlight() {
+
+        return _maxInFlight.get();
+
+    }
+
+    /**
+     Reset the request counts (the number of requests in flight is not affected).
+     */
+
+    public void resetStatistics() {
+
+        _requests.set( 0L );
+        _injectedErrors.set( 0L );
+        _truncatedResponses.set( 0L );
+        _maxInFlight.set( _inFlight.get() );
+
+    }
+
+    private void handle( final HttpExchange exchange )
+            throws IOException {
+
+        _requests.incrementAndGet();
+        int inFlight = _inFlight.incrementAndGet();
+        _maxInFlight.accumulateAndGet( inFlight, Math::max );
+        boolean truncated = false;
+
+        try {
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            long delayMillis = _minLatencyMillis;
+            long maxLatencyMillis = _maxLatencyMillis;
+            if ( maxLatencyMillis > delayMillis ) {
+
+                delayMillis += random.nextLong( maxLatencyMillis - delayMillis + 1L );
+
+            }
+
+            if ( random.nextDouble() < _slowResponseProbability ) {
+
+                delayMillis += _slowResponseMillis;
+
+            }
+
+            if ( delayMillis > 0L ) {
+
+                Thread.sleep( delayMillis );
+
+            }
+
+            if ( random.nextDouble() < _errorProbability ) {
+
+                _injectedErrors.incrementAndGet();
+
+                long retryAfterSeconds = _retryAfterSeconds;
+                if ( retryAfterSeconds >= 0L ) {
+
+                    exchange.getResponseHeaders().set( "Retry-After", Long.toString( retryAfterSeconds ) );
+
+                }
+
+                sendText( exchange, _errorStatusCode, "WikiTreeMiniServer:  injected failure" );
+
+                return;
+
+            }
+
+            Map<String, String> params = getParameters( exchange );
+            Account account = getAccount( exchange );
+            Object result = dispatch( exchange, params, account );
+            byte[] body = JSONValue.toJSONString( result ).getBytes( StandardCharsets.UTF_8 );
+
+            exchange.getResponseHeaders().set( "Content-Type", "application/json; charset=utf-8" );
+            if ( random.nextDouble() < _truncatedResponseProbability ) {
+
+                // Promise the whole body and send half of it.
+                // Throwing an exception out of the handler (without closing the exchange) is the only way to get the
+                // JDK's HTTP server to hang up on the client (it keeps the connection open otherwise).
+
+                _truncatedResponses.incrementAndGet();
+                exchange.sendResponseHeaders( 200, body.length );
+                OutputStream out = exchange.getResponseBody();
+                out.write( body, 0, body.length / 2 );
+                out.flush();
+                truncated = true;
+
+                throw new IOException( "WikiTreeMiniServer:  response truncated on purpose" );
+
+            }
+
+            exchange.sendResponseHeaders( 200, body.length );
+            try ( OutputStream out = exchange.getResponseBody() ) {
+
+                out.write( body );
+
+            }
+
+        } catch ( InterruptedException e ) {
+
+            // The server is being stopped.
+
+            Thread.currentThread().interrupt();
+
+        } catch ( RuntimeException e ) {
+
+            System.err.println( "WikiTreeMiniServer:  request " + exchange.getRequestURI().getRawQuery() + " failed" );
+            e.printStackTrace();
+
+            sendText( exchange, 500, "WikiTreeMiniServer:  " + e );
+
+        } finally {
+
+            _inFlight.decrementAndGet();
+            if ( !truncated ) {
+
+                exchange.close();
+
+            }
+
+        }
+
+    }
+
+    private static void sendText( final HttpExchange exchange, final int statusCode, final String text )
+            throws IOException {
+
+        byte[] body = text.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", "text/plain; charset=utf-8" );
+        exchange.sendResponseHeaders( statusCode, body.length );
+        try ( OutputStream out = exchange.getResponseBody() ) {
+
+            out.write( body );
+
+        }
+
+    }
+
+    /**
+     Get a request's parameters from its query string and (if it's a POST) its body.
+     */
+
+    @NotNull
+    private static Map<String, String> getParameters( final HttpExchange exchange )
+            throws IOException {
+
+        Map<String, String> params = new HashMap<>();
+        parseParameters( exchange.getRequestURI().getRawQuery(), params );
+
+        if ( "POST".equalsIgnoreCase( exchange.getRequestMethod() ) ) {
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try ( InputStream in = exchange.getRequestBody() ) {
+
+                byte[] buffer = new byte[4096];
+                int len;
+                while ( ( len = in.read( buffer ) ) > 0 ) {
+
+                    body.write( buffer, 0, len );
+
+                }
+
+            }
+
+            parseParameters( body.toString( "UTF-8" ), params );
+
+        }
+
+        return params;
+
+    }
+
+    private static void parseParameters( @Nullable final String encoded, final Map<String, String> params )
+            throws IOException {
+
+        if ( encoded == null || encoded.isEmpty() ) {
+
+            return;
+
+        }
+
+        for ( String param : encoded.split( "&" ) ) {
+
+            int equals = param.indexOf( '=' );
+            String name = URLDecoder.decode( equals < 0 ? param : param.substring( 0, equals ), "UTF-8" );
+            String value = equals < 0 ? "" : URLDecoder.decode( param.substring( equals + 1 ), "UTF-8" );
+            params.put( name, value );
+
+        }
+
+    }
+
+    /**
+     Figure out who (if anyone) is logged in on the session that sent a request.
+     */
+
+    @Nullable
+    private Account getAccount( final HttpExchange exchange ) {
+
+        List<String> cookieHeaders = exchange.getRequestHeaders().get( "Cookie" );
+        if ( cookieHeaders != null ) {
+
+            for ( String cookieHeader : cookieHeaders ) {
+
+                for ( String cookie : cookieHeader.split( ";" ) ) {
+
+                    String[] nameAndValue = cookie.trim().split( "=", 2 );
+                    if ( nameAndValue.length == 2 && SESSION_COOKIE_NAME.equals( nameAndValue[0] ) ) {
+
+                        Account account = _loggedIn.get( nameAndValue[1] );
+                        if ( account != null ) {
+
+                            return account;
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    @NotNull
+    private Object dispatch( final HttpExchange exchange, final Map<String, String> params, @Nullable final Account account ) {
+
+        String action = params.get( "action" );
+        if ( action == null ) {
+
+            return makeStatus( "No action specified" );
+
+        }
+
+        switch ( action ) {
+
+            case "login":
+                return login( exchange, params );
+
+            case "getPerson":
+                return getPerson( params, account );
+
+            case "getProfile":
+                return getProfile( params, account );
+
+            case "getBio":
+                return getBio( params, account );
+
+            case "getAncestors":
+                return getAncestors( params, account );
+
+            case "getRelatives":
+                return getRelatives( params, account );
+
+            case "getWatchlist":
+                return getWatchlist( params, account );
+
+            default:
+                return makeStatus( "Illegal action: " + action );
+
+        }
+
+    }
+
+    @NotNull
+    private Object login( final HttpExchange exchange, final Map<String, String> params ) {
+
+        JSONObject login = new JSONObject();
+
+        Account account = _accounts.get( String.valueOf( params.get( "email" ) ) );
+        if ( account == null ) {
+
+            login.put( "result", "NotExists" );
+
+        } else if ( !account._password.equals( params.get( "password" ) ) ) {
+
+            login.put( "result", "WrongPass" );
+
+        } else {
+
+            byte[] tokenBytes = new byte[16];
+            _tokenGenerator.nextBytes( tokenBytes );
+            StringBuilder token = new StringBuilder();
+            for ( byte b : tokenBytes ) {
+
+                token.append( String.format( "%02x", b ) );
+
+            }
+
+            _loggedIn.put( token.toString(), account );
+
+            String wikiTreeId = (String)_dataset.getProfile( account._personId ).get( "Name" );
+            exchange.getResponseHeaders().add( "Set-Cookie", SESSION_COOKIE_NAME + "=" + token + "; path=/; HttpOnly" );
+            exchange.getResponseHeaders().add( "Set-Cookie", "wikidb_wtb_UserID=" + account._personId + "; path=/" );
+            exchange.getResponseHeaders().add( "Set-Cookie", "wikidb_wtb_UserName=" + wikiTreeId + "; path=/" );
+
+            login.put( "result", "Success" );
+            login.put( "userid", account._personId );
+            login.put( "username", wikiTreeId );
+
+        }
+
+        // Unlike everything else, the response to a login request is not wrapped in an array.
+
+        JSONObject result = new JSONObject();
+        result.put( "login", login );
+
+        return result;
+
+    }
+
+    @NotNull
+    private Object getPerson( final Map<String, String> params, @Nullable final Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = key == null ? null : _dataset.lookup( key );
+        if ( personId == null ) {
+
+            return makeKeyStatus( key, "Illegal WikiTree ID" );
+
+        }
+
+        Set<String> fields = parseFields( params.get( "fields" ) );
+        JSONObject person = makeProfile( personId, fields, account );
+        addRelatives( person, personId, fields, account, true, true, true, true );
+
+        JSONObject result = makeKeyResult( key );
+        result.put( "status", 0 );
+        result.put( "person", person );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private Object getProfile( final Map<String, String> params, @Nullable final Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = key == null ? null : _dataset.lookup( key );
+        if ( personId == null ) {
+
+            return makeKeyStatus( key, "Illegal WikiTree ID" );
+
+        }
+
+        JSONObject profile = makeProfile( personId, parseFields( params.get( "fields" ) ), account );
+        profile.put( "IsPerson", 1 );
+
+        JSONObject result = new JSONObject();
+        result.put( "page_name", _dataset.getProfile( personId ).get( "Name" ) );
+        result.put( "status", 0 );
+        result.put( "profile", profile );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private Object getBio( final Map<String, String> params, @Nullable final Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = key == null ? null : _dataset.lookup( key );
+        if ( personId == null ) {
+
+            return makeKeyStatus( key, "Illegal WikiTree ID" );
+
+        }
+
+        String bio = _dataset.getBio( personId );
+        if ( bio == null ) {
+
+            JSONObject profile = makeProfile( personId, null, account );
+            bio = "== Biography ==\n" +
+                  profile.get( "FirstName" ) + " " + profile.get( "LastNameAtBirth" ) +
+                  ( profile.containsKey( "BirthDate" ) ? " was born " + profile.get( "BirthDate" ) + " in " + profile.get( "BirthLocation" ) + "." : "." ) +
+                  "\n\n== Sources ==\n<references />\n";
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "page_name", _dataset.getProfile( personId ).get( "Name" ) );
+        result.put( "user_id", personId );
+        result.put( "status", 0 );
+        result.put( "bio", bio );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private Object getAncestors( final Map<String, String> params, @Nullable final Account account ) {
+
+        String key = params.get( "key" );
+        Long personId = key == null ? null : _dataset.lookup( key );
+        if ( personId == null ) {
+
+            return makeKeyStatus( key, "Illegal WikiTree ID" );
+
+        }
+
+        int depth = Math.max( 1, Math.min( MAX_ANCESTORS_DEPTH, parseInt( params.get( "depth" ), DEFAULT_ANCESTORS_DEPTH ) ) );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+
+        // Breadth first, generation by generation. A depth of N yields the person plus N - 1 generations of ancestors (so depth 2 is
+        // the person and their parents), the same as WikiTreeAncestorsCache. Someone who shows up more than once (pedigree collapse)
+        // is only listed once.
+
+        JSONArray ancestors = new JSONArray();
+        Set<Long> seen = new HashSet<>();
+        seen.add( personId );
+        ancestors.add( makeProfile( personId, fields, account ) );
+        List<Long> generation = Collections.singletonList( personId );
+        for ( int level = 0; level < depth - 1 && !generation.isEmpty(); level += 1 ) {
+
+            List<Long> nextGeneration = new ArrayList<>();
+            for ( long childId : generation ) {
+
+                for ( long parentId : _dataset.getParentIds( childId ) ) {
+
+                    if ( seen.add( parentId ) ) {
+
+                        ancestors.add( makeProfile( parentId, fields, account ) );
+                        nextGeneration.add( parentId );
+
+                    }
+
+                }
+
+            }
+
+            generation = nextGeneration;
+
+        }
+
+        JSONObject result = makeKeyResult( key );
+        result.put( "status", 0 );
+        result.put( "ancestors", ancestors );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private Object getRelatives( final Map<String, String> params, @Nullable final Account account ) {
+
+        String keys = params.get( "keys" );
+        if ( keys == null ) {
+
+            return makeStatus( "No keys specified" );
+
+        }
+
+        boolean getParents = "1".equals( params.get( "getParents" ) );
+        boolean getChildren = "1".equals( params.get( "getChildren" ) );
+        boolean getSpouses = "1".equals( params.get( "getSpouses" ) );
+        boolean getSiblings = "1".equals( params.get( "getSiblings" ) );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+
+        JSONArray items = new JSONArray();
+        for ( String key : new LinkedHashSet<>( Arrays.asList( keys.split( "," ) ) ) ) {
+
+            Long personId = _dataset.lookup( key.trim() );
+            if ( personId == null ) {
+
+                continue;
+
+            }
+
+            JSONObject person = makeProfile( personId, fields, account );
+            addRelatives( person, personId, null, account, getParents, getChildren, getSpouses, getSiblings );
+
+            JSONObject item = new JSONObject();
+            item.put( "key", key.trim() );
+            item.put( "user_id", personId );
+            item.put( "user_name", person.get( "Name" ) );
+            item.put( "person", person );
+            items.add( item );
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "items", items );
+        result.put( "status", "" );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private Object getWatchlist( final Map<String, String> params, @Nullable final Account account ) {
+
+        if ( account == null ) {
+
+            return makeStatus( "Permission denied (not logged in)" );
+
+        }
+
+        boolean getPerson = !"0".equals( params.get( "getPerson" ) );
+        boolean onlyLiving = "1".equals( params.get( "onlyLiving" ) );
+        boolean excludeLiving = "1".equals( params.get( "excludeLiving" ) );
+        int limit = Math.max( 0, parseInt( params.get( "limit" ), DEFAULT_WATCHLIST_LIMIT ) );
+        int offset = Math.max( 0, parseInt( params.get( "offset" ), 0 ) );
+        Set<String> fields = parseFields( params.get( "fields" ) );
+
+        List<JSONObject> matches = new ArrayList<>();
+        if ( getPerson ) {
+
+            for ( long personId : account._watchlist ) {
+
+                JSONObject profile = _dataset.getProfile( personId );
+                if ( profile != null ) {
+
+                    boolean living = Integer.valueOf( 1 ).equals( toInteger( profile.get( "IsLiving" ) ) );
+                    if ( !( onlyLiving && !living ) && !( excludeLiving && living ) ) {
+
+                        matches.add( profile );
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        matches.sort( getWatchlistOrder( params.get( "order" ) ) );
+
+        JSONArray watchlist = new JSONArray();
+        for ( int ix = offset; ix < matches.size() && ix < offset + limit; ix += 1 ) {
+
+            long personId = ( (Number)matches.get( ix ).get( "Id" ) ).longValue();
+            watchlist.add( makeProfile( personId, fields, account ) );
+
+        }
+
+        JSONObject result = new JSONObject();
+        result.put( "watchlist", watchlist );
+        result.put( "watchlistCount", matches.size() );
+        result.put( "status", 0 );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private static Comparator<JSONObject> getWatchlistOrder( @Nullable final String order ) {
+
+        Comparator<JSONObject> byId = Comparator.comparingLong( profile -> ( (Number)profile.get( "Id" ) ).longValue() );
+        String field;
+        if ( order == null ) {
+
+            return byId;
+
+        }
+
+        switch ( order ) {
+
+            case "user_name":
+                field = "Name";
+                break;
+
+            case "user_last_name_current":
+                field = "LastNameCurrent";
+                break;
+
+            case "user_birth_date":
+                field = "BirthDate";
+                break;
+
+            case "user_death_date":
+                field = "DeathDate";
+                break;
+
+            default:
+                return byId;
+
+        }
+
+        return Comparator.comparing( ( JSONObject profile ) -> String.valueOf( profile.get( field ) ) ).thenComparing( byId );
+
+    }
+
+    /**
+     Add someone's relatives to their profile the way that the real server does
+     (each class of relatives is an object mapping the relatives' Person.Ids to their profiles).
+
+     @param fields the fields requested ({@code null} means all of them). A class of relatives is only added if its name is one of the fields.
+     */
+
+    private void addRelatives(
+            final JSONObject person,
+            final long personId,
+            @Nullable final Set<String> fields,
+            @Nullable final Account account,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    ) {
+
+        boolean[] wanted = { getParents, getChildren, getSpouses, getSiblings };
+        for ( int ix = 0; ix < RELATIVES_FIELDS.length; ix += 1 ) {
+
+            String relatives = RELATIVES_FIELDS[ix];
+            if ( !wanted[ix] || ( fields != null && !fields.contains( relatives ) ) ) {
+
+                continue;
+
+            }
+
+            JSONObject relativeProfiles = new JSONObject();
+            switch ( relatives ) {
+
+                case "Parents":
+                    for ( long relativeId : _dataset.getParentIds( personId ) ) {
+
+                        relativeProfiles.put( Long.toString( relativeId ), makeProfile( relativeId, fields, account ) );
+
+                    }
+
+                    break;
+
+                case "Children":
+                    for ( long relativeId : _dataset.getChildIds( personId ) ) {
+
+                        relativeProfiles.put( Long.toString( relativeId ), makeProfile( relativeId, fields, account ) );
+
+                    }
+
+                    break;
+
+                case "Spouses":
+                    for ( WikiTreeMiniServerDataset.Marriage marriage : _dataset.getMarriages( personId ) ) {
+
+                        JSONObject spouse = makeProfile( marriage.getSpouseId(), fields, account );
+                        spouse.put( "marriage_date", marriage.getDate() == null ? "0000-00-00" : marriage.getDate() );
+                        spouse.put( "marriage_location", marriage.getLocation() == null ? "" : marriage.getLocation() );
+                        relativeProfiles.put( Long.toString( marriage.getSpouseId() ), spouse );
+
+                    }
+
+                    break;
+
+                default:
+                    for ( long relativeId : _dataset.getSiblingIds( personId ) ) {
+
+                        relativeProfiles.put( Long.toString( relativeId ), makeProfile( relativeId, fields, account ) );
+
+                    }
+
+                    break;
+
+            }
+
+            person.put( relatives, relativeProfiles );
+
+        }
+
+    }
+
+    /**
+     Make a copy of someone's profile containing the requested fields.
+     <p/>The {@code "Id"}, {@code "Name"} and {@code "IsLiving"} fields are always included.
+     If nobody is logged in, the private fields of a living person with a private profile are left out.
+     */
+
+    @NotNull
+    private JSONObject makeProfile( final long personId, @Nullable final Set<String> fields, @Nullable final Account account ) {
+
+        JSONObject profile = _dataset.getProfile( personId );
+        boolean hidePrivateFields = account == null && Boolean.TRUE.equals( profile.get( "Privacy_IsPrivate" ) );
+
+        JSONObject rval = new JSONObject();
+        for ( Object entryObj : profile.entrySet() ) {
+
+            Map.Entry<String, Object> entry = (Map.Entry<String, Object>)entryObj;
+            String field = entry.getKey();
+            if ( hidePrivateFields && PRIVATE_FIELDS.contains( field ) ) {
+
+                continue;
+
+            }
+
+            if ( fields == null || fields.contains( field ) || "Id".equals( field ) || "Name".equals( field ) || "IsLiving".equals( field ) ) {
+
+                rval.put( field, entry.getValue() );
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Parse a {@code fields} parameter.
+
+     @return the requested fields or {@code null} if all of them were requested.
+     */
+
+    @Nullable
+    private static Set<String> parseFields( @Nullable final String fields ) {
+
+        if ( fields == null || fields.trim().isEmpty() || "*".equals( fields.trim() ) ) {
+
+            return null;
+
+        }
+
+        Set<String> rval = new HashSet<>();
+        for ( String field : fields.split( "," ) ) {
+
+            rval.add( field.trim() );
+
+        }
+
+        return rval.contains( "*" ) ? null : rval;
+
+    }
+
+    private static int parseInt( @Nullable final String value, final int defaultValue ) {
+
+        if ( value == null ) {
+
+            return defaultValue;
+
+        }
+
+        try {
+
+            return Integer.parseInt( value.trim() );
+
+        } catch ( NumberFormatException e ) {
+
+            return defaultValue;
+
+        }
+
+    }
+
+    @Nullable
+    private static Integer toInteger( @Nullable final Object value ) {
+
+        return value instanceof Number ? ( (Number)value ).intValue() : null;
+
+    }
+
+    /**
+     Start the result of a request about someone. The real server says who the request was about in a {@code "user_name"} field
+     if the key was a WikiTree ID or a {@code "user_id"} field if it was a Person.Id.
+     */
+
+    @NotNull
+    private static JSONObject makeKeyResult( @Nullable final String key ) {
+
+        JSONObject result = new JSONObject();
+        if ( key != null ) {
+
+            if ( parseInt( key, -1 ) >= 0 ) {
+
+                result.put( "user_id", Long.valueOf( key.trim() ) );
+
+            } else {
+
+                result.put( "user_name", key );
+
+            }
+
+        }
+
+        return result;
+
+    }
+
+    @NotNull
+    private static Object makeKeyStatus( @Nullable final String key, final @NotNull String status ) {
+
+        JSONObject result = makeKeyResult( key );
+        result.put( "status", status );
+
+        return wrap( result );
+
+    }
+
+    @NotNull
+    private static Object makeStatus( final @NotNull String status ) {
+
+        JSONObject result = new JSONObject();
+        result.put( "status", status );
+
+        return wrap( result );
+
+    }
+
+    /**
+     Every response except the one to a login request is an array containing one result per request.
+     */
+
+    @NotNull
+    private static JSONArray wrap( final @NotNull JSONObject result ) {
+
+        JSONArray rval = new JSONArray();
+        rval.add( result );
+
+        return rval;
+
+    }
+
+    /**
+     Run a server until the JVM is killed.
+     <p/>The arguments are the port to listen on (default {@code 0}, which means let the operating system choose),
+     the number of people in the made up dataset (default 100,000) and the seed used to make them up (default 42).
+     Instead of the number of people, the second argument can be the name of a file to load the dataset from
+     (see {@link WikiTreeMiniServerDataset#load(java.nio.file.Path)}).
+     The server has one account ({@code "test@example.com"} with the password {@code "password"}) whose watchlist is the first 1,000 people.
+
+     @param args the port, the number of people (or a file name) and the seed (all optional).
+     @throws IOException    if the server's socket cannot be created or the file cannot be read.
+     @throws ParseException if the file does not contain one JSON object per line.
+     */
+
+    public static void main( final String[] args )
+            throws IOException, ParseException {
+
+        int port = args.length > 0 ? Integer.parseInt( args[0] ) : 0;
+        long seed = args.length > 2 ? Long.parseLong( args[2] ) : 42L;
+
+        WikiTreeMiniServerDataset dataset;
+        if ( args.length > 1 && !args[1].matches( "[0-9]+" ) ) {
+
+            dataset = WikiTreeMiniServerDataset.load( Paths.get( args[1] ) );
+
+        } else {
+
+            dataset = WikiTreeMiniServerDataset.createSynthetic( args.length > 1 ? Integer.parseInt( args[1] ) : 100000, seed );
+
+        }
+
+        WikiTreeMiniServer server = new WikiTreeMiniServer( dataset );
+
+        List<Long> watchlist = new ArrayList<>();
+        for ( long personId = 1L; personId <= Math.min( 1000, dataset.size() ); personId += 1L ) {
+
+            watchlist.add( personId );
+
+        }
+
+        if ( dataset.size() > 0 ) {
+
+            server.addAccount( "test@example.com", "password", 1L, watchlist );
+
+        }
+
+        server.start( port );
+
+        System.out.println( "WikiTreeMiniServer:  serving " + dataset.size() + " people at " + server.getUrlString() );
+
+        // The server's threads are daemon threads so this one has to stick around.
+
+        try {
+
+            Thread.currentThread().join();
+
+        } catch ( InterruptedException e ) {
+
+            server.stop();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeMiniServer( dataset=" + _dataset + ", threads=" + _threads + ", requests=" + _requests + " )";
+
+    }
+
+}
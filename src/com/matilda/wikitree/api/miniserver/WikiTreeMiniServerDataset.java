@@ -0,0 +1,645 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.miniserver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import com.matilda.wikitree.api.synthetic.WikiTreeGenealogy;
+import com.matilda.wikitree.api.synthetic.WikiTreeGenealogyGenerator;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ The people that a {@link WikiTreeMiniServer} knows about.
+ <p/>Each person is described by a profile with the same fields that the WikiTree API server sends back for a {@code getPerson} request
+ ({@code "Id"}, {@code "Name"}, {@code "FirstName"}, {@code "Gender"}, {@code "BirthDate"}, {@code "Father"}, {@code "Mother"} and so on)
+ minus the {@code "Parents"}, {@code "Children"}, {@code "Spouses"} and {@code "Siblings"} fields which the server assembles on the fly.
+ Who someone's children are is worked out from everyone's {@code "Father"} and {@code "Mother"} fields.
+ Marriages are added separately via {@link #addMarriage(long, long, String, String)}.
+ <p/>A dataset can also be made up ({@link #createSynthetic(int, long)} and {@link #fromGenealogy(WikiTreeGenealogy)})
+ or read from a file ({@link #load(Path)}).
+ <p/>A dataset is filled in by one thread before it is handed to a server. Once a server is using it, it must not be changed.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unchecked" })
+public class WikiTreeMiniServerDataset {
+
+    /**
+     One side of a marriage.
+     */
+
+    static class Marriage {
+
+        private final long _spouseId;
+
+        private final String _date;
+
+        private final String _location;
+
+        private Marriage( final long spouseId, @Nullable final String date, @Nullable final String location ) {
+
+            super();
+
+            _spouseId = spouseId;
+            _date = date;
+            _location = location;
+
+        }
+
+        long getSpouseId() {
+
+            return _spouseId;
+
+        }
+
+        @Nullable
+        String getDate() {
+
+            return _date;
+
+        }
+
+        @Nullable
+        String getLocation() {
+
+            return _location;
+
+        }
+
+        public String toString() {
+
+            return "Marriage( spouseId=" + _spouseId + ", date=" + _date + ", location=" + _location + " )";
+
+        }
+
+    }
+
+    private final Map<Long, JSONObject> _profiles = new HashMap<>();
+
+    private final Map<String, Long> _idsByName = new HashMap<>();
+
+    private final Map<Long, List<Long>> _children = new HashMap<>();
+
+    private final Map<Long, List<Marriage>> _marriages = new HashMap<>();
+
+    private final Map<Long, String> _bios = new HashMap<>();
+
+    /**
+     Create an empty dataset.
+     */
+
+    public WikiTreeMiniServerDataset() {
+
+        super();
+
+    }
+
+    /**
+     Add someone.
+
+     @param profile the person's profile. It must have a numeric {@code "Id"} and a string {@code "Name"} (their WikiTree ID).
+     Their {@code "Father"} and {@code "Mother"} fields (if any) are the Person.Ids of their parents (0 means unknown).
+     The profile is copied (later changes to it don't affect the dataset).
+     @throws IllegalArgumentException if the profile has no {@code "Id"} or {@code "Name"} or if someone with the same Person.Id or WikiTree ID
+     is already in the dataset.
+     */
+
+    public void addPerson( final @NotNull JSONObject profile ) {
+
+        Object idObj = profile.get( "Id" );
+        Object nameObj = profile.get( "Name" );
+        if ( !( idObj instanceof Number ) || !( nameObj instanceof String ) ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeMiniServerDataset.addPerson:  profile must have a numeric Id and a string Name (got Id=" + idObj + ", Name=" + nameObj + ")"
+            );
+
+        }
+
+        long id = ( (Number)idObj ).longValue();
+        String name = (String)nameObj;
+        if ( _profiles.containsKey( id ) || _idsByName.containsKey( name ) ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServerDataset.addPerson:  duplicate person (got Id=" + id + ", Name=" + name + ")" );
+
+        }
+
+        JSONObject copy = new JSONObject( profile );
+        copy.putIfAbsent( "Father", 0L );
+        copy.putIfAbsent( "Mother", 0L );
+        _profiles.put( id, copy );
+        _idsByName.put( name, id );
+
+        for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+            long parentId = getParentId( copy, parent );
+            if ( parentId != 0L ) {
+
+                _children.computeIfAbsent( parentId, k -> new ArrayList<>() ).add( id );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Marry two people.
+
+     @param personId   one of them.
+     @param spouseId   the other one.
+     @param date       the date of the marriage ({@code null} if unknown).
+     @param location   where they got married ({@code null} if unknown).
+     */
+
+    public void addMarriage( final long personId, final long spouseId, @Nullable final String date, @Nullable final String location ) {
+
+        _marriages.computeIfAbsent( personId, k -> new ArrayList<>() ).add( new Marriage( spouseId, date, location ) );
+        _marriages.computeIfAbsent( spouseId, k -> new ArrayList<>() ).add( new Marriage( personId, date, location ) );
+
+    }
+
+    /**
+     Set someone's biography.
+     <p/>People who don't have one get a short one made up from their profile when a {@code getBio} request asks for it.
+
+     @param personId the person's Person.Id.
+     @param bio      their biography (in WikiTree markup).
+     */
+
+    public void setBio( final long personId, final @NotNull String bio ) {
+
+        _bios.put( personId, bio );
+
+    }
+
+    /**
+     Get the number of people in this dataset.
+     */
+
+    public int size() {
+
+        return _profiles.size();
+
+    }
+
+    /**
+     Figure out who a request's {@code key} parameter refers to.
+
+     @param key a Person.Id or a WikiTree ID.
+     The key is treated as a Person.Id if it can be parsed by {@link Long#parseLong(String)} (just like the real WikiTree API server does).
+     @return the person's Person.Id or {@code null} if there is no such person.
+     */
+
+    @Nullable
+    public Long lookup( final @NotNull String key ) {
+
+        try {
+
+            long id = Long.parseLong( key );
+
+            return _profiles.containsKey( id ) ? id : null;
+
+        } catch ( NumberFormatException e ) {
+
+            return _idsByName.get( key );
+
+        }
+
+    }
+
+    /**
+     Get someone's profile.
+
+     @param personId their Person.Id.
+     @return their profile ({@code null} if there is no such person). The caller must not change it.
+     */
+
+    @Nullable
+    public JSONObject getProfile( final long personId ) {
+
+        return _profiles.get( personId );
+
+    }
+
+    /**
+     Get everyone's Person.Id.
+
+     @return an unmodifiable view of the Person.Ids of everyone in this dataset.
+     */
+
+    @NotNull
+    public Set<Long> getPersonIds() {
+
+        return Collections.unmodifiableSet( _profiles.keySet() );
+
+    }
+
+    /**
+     Get the Person.Ids of someone's known parents.
+
+     @param personId their Person.Id.
+     @return their father's and/or mother's Person.Id (in that order; only the ones in this dataset).
+     */
+
+    @NotNull
+    public List<Long> getParentIds( final long personId ) {
+
+        List<Long> rval = new ArrayList<>( 2 );
+        JSONObject profile = _profiles.get( personId );
+        if ( profile != null ) {
+
+            for ( String parent : new String[]{ "Father", "Mother" } ) {
+
+                long parentId = getParentId( profile, parent );
+                if ( parentId != 0L && _profiles.containsKey( parentId ) ) {
+
+                    rval.add( parentId );
+
+                }
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Get the Person.Ids of someone's children.
+
+     @param personId their Person.Id.
+     @return an unmodifiable list of their children's Person.Ids (in the order that they were added).
+     */
+
+    @NotNull
+    public List<Long> getChildIds( final long personId ) {
+
+        List<Long> children = _children.get( personId );
+
+        return children == null ? Collections.emptyList() : Collections.unmodifiableList( children );
+
+    }
+
+    /**
+     Get the Person.Ids of someone's siblings (including half-siblings).
+
+     @param personId their Person.Id.
+     @return their siblings' Person.Ids.
+     */
+
+    @NotNull
+    public List<Long> getSiblingIds( final long personId ) {
+
+        Set<Long> siblings = new LinkedHashSet<>();
+        for ( long parentId : getParentIds( personId ) ) {
+
+            siblings.addAll( getChildIds( parentId ) );
+
+        }
+
+        siblings.remove( personId );
+
+        return new ArrayList<>( siblings );
+
+    }
+
+    /**
+     Get someone's marriages.
+
+     @param personId their Person.Id.
+     @return an unmodifiable list of their marriages.
+     */
+
+    @NotNull
+    List<Marriage> getMarriages( final long personId ) {
+
+        List<Marriage> marriages = _marriages.get( personId );
+
+        return marriages == null ? Collections.emptyList() : Collections.unmodifiableList( marriages );
+
+    }
+
+    /**
+     Get someone's biography.
+
+     @param personId their Person.Id.
+     @return their biography or {@code null} if they don't have one (see {@link #setBio(long, String)}).
+     */
+
+    @Nullable
+    public String getBio( final long personId ) {
+
+        return _bios.get( personId );
+
+    }
+
+    private static long getParentId( final @NotNull JSONObject profile, final String parent ) {
+
+        Object parentIdObj = profile.get( parent );
+
+        return parentIdObj instanceof Number ? ( (Number)parentIdObj ).longValue() : 0L;
+
+    }
+
+    /**
+     Make up a family tree.
+     <p/>This is shorthand for {@code fromGenealogy( new WikiTreeGenealogyGenerator( people, seed ).generate() )}
+     (see {@link WikiTreeGenealogyGenerator} for what the tree looks like).
+     The same {@code people} and {@code seed} always yield the same tree.
+
+     @param people how many people the tree should have.
+     @param seed   the seed for the random number generator.
+     @return the dataset. Person.Ids start at 1 and are consecutive.
+     */
+
+    @NotNull
+    public static WikiTreeMiniServerDataset createSynthetic( final int people, final long seed ) {
+
+        if ( people < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeMiniServerDataset.createSynthetic:  people must not be negative (got people=" + people + ")" );
+
+        }
+
+        return fromGenealogy( new WikiTreeGenealogyGenerator( people, seed ).generate() );
+
+    }
+
+    /**
+     Create a dataset containing a made up population.
+     <p/>The dataset doesn't copy the population. Profiles are assembled from it when they are asked for
+     which means that a population of a few million people can be served without running out of memory.
+     People can't be added to the dataset and marriages can't be added to it (biographies can be set).
+
+     @param genealogy the population.
+     @return the dataset.
+     */
+
+    @NotNull
+    public static WikiTreeMiniServerDataset fromGenealogy( final @NotNull WikiTreeGenealogy genealogy ) {
+
+        return new GenealogyDataset( genealogy );
+
+    }
+
+    /**
+     Create a dataset from a file written by {@link WikiTreeGenealogy#writeJsonLines(Path, boolean)}
+     (or anything else containing one profile per line).
+     <p/>Each line's {@code "Parents"}, {@code "Children"} and {@code "Siblings"} fields are dropped (they are worked out from everyone's
+     {@code "Father"} and {@code "Mother"} fields). Marriages are taken from the {@code "Spouses"} fields (when there are any).
+     <p/>Every profile is kept as a {@link JSONObject} (a few kilobytes each) so this is fine for a few hundred thousand people.
+     Use {@link #fromGenealogy(WikiTreeGenealogy)} to serve millions.
+
+     @param path the file (gzipped if its name ends with {@code ".gz"}).
+     @return the dataset.
+     @throws IOException              if something goes wrong reading the file.
+     @throws ParseException           if a line is not a JSON object.
+     @throws IllegalArgumentException if a line has no {@code "Id"} or {@code "Name"} or if two lines have the same Person.Id or WikiTree ID.
+     */
+
+    @NotNull
+    public static WikiTreeMiniServerDataset load( final @NotNull Path path )
+            throws IOException, ParseException {
+
+        WikiTreeMiniServerDataset dataset = new WikiTreeMiniServerDataset();
+        WikiTreeGenealogy.readJsonLines(
+                path,
+                record -> {
+
+                    Object spousesObj = record.remove( "Spouses" );
+                    record.remove( "Parents" );
+                    record.remove( "Children" );
+                    record.remove( "Siblings" );
+                    dataset.addPerson( record );
+
+                    // Each marriage appears in both spouses' records so only add it once.
+
+                    long personId = ( (Number)record.get( "Id" ) ).longValue();
+                    if ( spousesObj instanceof JSONObject ) {
+
+                        for ( Object spouseObj : ( (JSONObject)spousesObj ).values() ) {
+
+                            if ( spouseObj instanceof JSONObject ) {
+
+                                JSONObject spouse = (JSONObject)spouseObj;
+                                Object spouseIdObj = spouse.get( "Id" );
+                                if ( spouseIdObj instanceof Number && ( (Number)spouseIdObj ).longValue() > personId ) {
+
+                                    dataset.addMarriage(
+                                            personId,
+                                            ( (Number)spouseIdObj ).longValue(),
+                                            (String)spouse.get( "marriage_date" ),
+                                            (String)spouse.get( "marriage_location" )
+                                    );
+
+                                }
+
+                            }
+
+                        }
+
+                    }
+
+                }
+        );
+
+        return dataset;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeMiniServerDataset( people=" + _profiles.size() + ", married=" + _marriages.size() + ", bios=" + _bios.size() + " )";
+
+    }
+
+    /**
+     A dataset backed by a {@link WikiTreeGenealogy}.
+     */
+
+    private static class GenealogyDataset extends WikiTreeMiniServerDataset {
+
+        private final WikiTreeGenealogy _genealogy;
+
+        private GenealogyDataset( final @NotNull WikiTreeGenealogy genealogy ) {
+
+            super();
+
+            _genealogy = genealogy;
+
+        }
+
+        @Override
+        public void addPerson( final @NotNull JSONObject profile ) {
+
+            throw new UnsupportedOperationException( "WikiTreeMiniServerDataset.addPerson:  can't add people to a made up population" );
+
+        }
+
+        @Override
+        public void addMarriage( final long personId, final long spouseId, @Nullable final String date, @Nullable final String location ) {
+
+            throw new UnsupportedOperationException( "WikiTreeMiniServerDataset.addMarriage:  can't add marriages to a made up population" );
+
+        }
+
+        @Override
+        public int size() {
+
+            return _genealogy.size();
+
+        }
+
+        @Override
+        @Nullable
+        public Long lookup( final @NotNull String key ) {
+
+            int ix;
+            try {
+
+                ix = _genealogy.getIndex( Long.parseLong( key ) );
+
+            } catch ( NumberFormatException e ) {
+
+                ix = _genealogy.getIndex( key );
+
+            }
+
+            return ix < 0 ? null : _genealogy.getPersonId( ix );
+
+        }
+
+        @Override
+        @Nullable
+        public JSONObject getProfile( final long personId ) {
+
+            int ix = _genealogy.getIndex( personId );
+
+            return ix < 0 ? null : _genealogy.toProfile( ix );
+
+        }
+
+        @Override
+        @NotNull
+        public Set<Long> getPersonIds() {
+
+            Set<Long> rval = new LinkedHashSet<>();
+            for ( int ix = 0; ix < _genealogy.size(); ix += 1 ) {
+
+                rval.add( _genealogy.getPersonId( ix ) );
+
+            }
+
+            return Collections.unmodifiableSet( rval );
+
+        }
+
+        @Override
+        @NotNull
+        public List<Long> getParentIds( final long personId ) {
+
+            List<Long> rval = new ArrayList<>( 2 );
+            int ix = _genealogy.getIndex( personId );
+            if ( ix >= 0 ) {
+
+                for ( int parent : new int[]{ _genealogy.getFather( ix ), _genealogy.getMother( ix ) } ) {
+
+                    if ( parent >= 0 ) {
+
+                        rval.add( _genealogy.getPersonId( parent ) );
+
+                    }
+
+                }
+
+            }
+
+            return rval;
+
+        }
+
+        @Override
+        @NotNull
+        public List<Long> getChildIds( final long personId ) {
+
+            int ix = _genealogy.getIndex( personId );
+
+            return ix < 0 ? Collections.emptyList() : toPersonIds( _genealogy.getChildren( ix ) );
+
+        }
+
+        @Override
+        @NotNull
+        public List<Long> getSiblingIds( final long personId ) {
+
+            int ix = _genealogy.getIndex( personId );
+
+            return ix < 0 ? Collections.emptyList() : toPersonIds( _genealogy.getSiblings( ix ) );
+
+        }
+
+        @Override
+        @NotNull
+        List<Marriage> getMarriages( final long personId ) {
+
+            int ix = _genealogy.getIndex( personId );
+            if ( ix < 0 ) {
+
+                return Collections.emptyList();
+
+            }
+
+            List<Marriage> rval = new ArrayList<>();
+            for ( int spouse : _genealogy.getSpouses( ix ) ) {
+
+                rval.add(
+                        new Marriage(
+                                _genealogy.getPersonId( spouse ),
+                                _genealogy.getMarriageDate( ix, spouse ),
+                                _genealogy.getMarriageLocation( ix, spouse )
+                        )
+                );
+
+            }
+
+            return rval;
+
+        }
+
+        @NotNull
+        private List<Long> toPersonIds( final int[] indices ) {
+
+            List<Long> rval = new ArrayList<>( indices.length );
+            for ( int ix : indices ) {
+
+                rval.add( _genealogy.getPersonId( ix ) );
+
+            }
+
+            return rval;
+
+        }
+
+        public String toString() {
+
+            return "WikiTreeMiniServerDataset( genealogy=" + _genealogy + " )";
+
+        }
+
+    }
+
+}
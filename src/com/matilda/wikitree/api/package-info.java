@@ -81,8 +81,9 @@
  <li>the cost of authenticating a session instance or requesting information from the WikiTree API server is not zero as doing so involves a round-trip to said server</li>
  <li>This API does absolutely no caching of results obtained from the WikiTree API server (this ensures that the requested data is always 'fresh')</li>
  <li>Most applications which use this API will only need one {@code WikiTreeApiJsonSession} session instance (don't use more than one session instance
- unless you are <u>certain</u> that you need more than one; also, try to avoid having multiple threads making simultaneous requests to the WikiTree API server
- as that server is most definitely a 'limited resource')</li>
+ unless you are <u>certain</u> that you need more than one; a single session instance can be shared by multiple threads,
+ each of which can have a request in flight at the same time (the default {@link com.matilda.wikitree.api.jsonclient.HttpClientTransport}
+ multiplexes them over HTTP/2), but please don't overdo it as the WikiTree API server is most definitely a 'limited resource')</li>
  </ul>
  */
 
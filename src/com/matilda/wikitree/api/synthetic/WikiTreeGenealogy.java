@@ -0,0 +1,1014 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.synthetic;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ A made up population produced by a {@link WikiTreeGenealogyGenerator}.
+ <p/>The population is kept in parallel primitive arrays indexed by a person's <em>index</em> (0 through {@link #size()}-1)
+ which keeps it down to roughly 100 bytes per person (a few million people fit comfortably in a default sized heap).
+ A person's Person.Id is their index plus {@link #FIRST_PERSON_ID} and their WikiTree ID is their surname at birth followed by a number
+ (for example, {@code "Harrow-1234"}).
+ <p/>Profiles are assembled on demand:
+ <ul>
+ <li>{@link #toProfile(int)} yields someone's profile with the same fields that the WikiTree API server sends back for a {@code getPerson} request.</li>
+ <li>{@link #toRecord(int)} also includes the {@code "Parents"}, {@code "Children"}, {@code "Spouses"} and {@code "Siblings"} fields
+ (each relative is a short profile with their names, gender, dates and {@code "IsLiving"})
+ which makes the record acceptable to {@link com.matilda.wikitree.api.wrappers.WikiTreePersonProfile}'s constructor as a primary person's profile.</li>
+ </ul>
+ <p/>{@link #writeJsonLines(Path, boolean)} streams the whole population to a file with one record per line (gzipped if the file's name ends with {@code ".gz"})
+ and {@link #readJsonLines(Path, Consumer)} streams them back in.
+ <p/>Instances of this class are immutable and thread-safe.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unchecked" })
+public class WikiTreeGenealogy {
+
+    /**
+     The Person.Id of the person at index 0.
+     */
+
+    public static final long FIRST_PERSON_ID = 1L;
+
+    static final String[] MALE_FIRST_NAMES = {
+            "William", "John", "Thomas", "James", "George", "Henry", "Charles", "Robert", "Edward", "Joseph", "Samuel", "Richard", "Alexander", "Frederick",
+            "Arthur", "Walter", "Albert", "Francis", "Daniel", "Peter", "Hugh", "Alfred", "Benjamin", "David", "Isaac", "Matthew", "Michael", "Patrick"
+    };
+
+    static final String[] FEMALE_FIRST_NAMES = {
+            "Mary", "Elizabeth", "Sarah", "Ann", "Jane", "Margaret", "Catherine", "Susannah", "Hannah", "Eleanor", "Martha", "Frances", "Charlotte", "Isabella",
+            "Alice", "Emily", "Agnes", "Bridget", "Ellen", "Florence", "Grace", "Harriet", "Louisa", "Lucy", "Maria", "Rebecca", "Rose", "Ruth"
+    };
+
+    static final String[] SURNAMES = {
+            "Harrow", "Ashby", "Whitcombe", "Pennington", "Lockhart", "Fairweather", "Thornbury", "Kendrick", "Maddox", "Ellery", "Brandon", "Quill",
+            "Selwyn", "Hartigan", "Dunmore", "Radcliffe", "Holloway", "Ingram", "Marchbank", "Tolliver", "Abernethy", "Blackwood", "Carrick", "Dalby",
+            "Eastwick", "Farrant", "Garside", "Hallett", "Ivory", "Jessop", "Kingsley", "Lambourne", "Merriman", "Norbury", "Oakes", "Pargeter",
+            "Quarles", "Rowntree", "Stanbury", "Trelawney", "Underhill", "Vickery", "Wainwright", "Yeardley", "Ashworth", "Bramley", "Colville", "Dunstan",
+            "Everard", "Fenwick", "Gilchrist", "Hebden", "Inchbald", "Jardine", "Kirkby", "Lisle", "Mowbray", "Nettleton", "Ormsby", "Pemberton"
+    };
+
+    static final String[] PLACES = {
+            "Woodstock, Oxfordshire, England",
+            "St Pancras, London, England",
+            "Halifax, Nova Scotia, Canada",
+            "Ballarat, Victoria, Australia",
+            "Kilkenny, County Kilkenny, Ireland",
+            "Lowell, Middlesex, Massachusetts, United States",
+            "Dunedin, Otago, New Zealand",
+            "Perth, Perthshire, Scotland",
+            "Cardiff, Glamorgan, Wales",
+            "Quebec City, Quebec, Canada",
+            "Whitby, Yorkshire, England",
+            "Truro, Cornwall, England",
+            "Galway, County Galway, Ireland",
+            "Inverness, Inverness-shire, Scotland",
+            "Hobart, Tasmania, Australia",
+            "Kingston, Ontario, Canada",
+            "Salem, Essex, Massachusetts, United States",
+            "Charleston, South Carolina, United States",
+            "Nelson, Nelson, New Zealand",
+            "Swansea, Glamorgan, Wales",
+            "Norwich, Norfolk, England",
+            "Derry, County Londonderry, Ireland",
+            "Saint John, New Brunswick, Canada",
+            "Bendigo, Victoria, Australia"
+    };
+
+    static final int MALE = 1;
+
+    private final int _size;
+
+    private final int[] _father;
+
+    private final int[] _mother;
+
+    private final int[] _birthDate;
+
+    private final int[] _deathDate;
+
+    private final byte[] _flags;
+
+    private final short[] _firstName;
+
+    private final short[] _middleName;
+
+    private final short[] _surname;
+
+    private final short[] _currentSurname;
+
+    private final int[] _surnameNumber;
+
+    private final short[] _birthPlace;
+
+    private final short[] _deathPlace;
+
+    private final byte[] _privacy;
+
+    private final int _marriageCount;
+
+    private final int[] _marriageHusband;
+
+    private final int[] _marriageWife;
+
+    private final int[] _marriageDate;
+
+    private final short[] _marriagePlace;
+
+    private final int[] _childOffsets;
+
+    private final int[] _children;
+
+    private final int[] _marriageOffsets;
+
+    private final int[] _marriages;
+
+    private final int[][] _indexBySurnameNumber;
+
+    private final int _cousinMarriages;
+
+    private final int _remarriages;
+
+    /**
+     Wrap up what a generator made.
+     <p/>The arrays are used as is (the generator must not change them afterwards); only the first {@code size} people and
+     {@code marriageCount} marriages are looked at. Dates are {@code yyyymmdd} integers (a death date of 0 means still living).
+     Fathers and mothers are indices (-1 means unknown).
+     */
+
+    WikiTreeGenealogy(
+            final int size,
+            final int[] father,
+            final int[] mother,
+            final int[] birthDate,
+            final int[] deathDate,
+            final byte[] flags,
+            final short[] firstName,
+            final short[] middleName,
+            final short[] surname,
+            final short[] currentSurname,
+            final int[] surnameNumber,
+            final short[] birthPlace,
+            final short[] deathPlace,
+            final byte[] privacy,
+            final int marriageCount,
+            final int[] marriageHusband,
+            final int[] marriageWife,
+            final int[] marriageDate,
+            final short[] marriagePlace,
+            final int cousinMarriages,
+            final int remarriages
+    ) {
+
+        super();
+
+        _size = size;
+        _father = father;
+        _mother = mother;
+        _birthDate = birthDate;
+        _deathDate = deathDate;
+        _flags = flags;
+        _firstName = firstName;
+        _middleName = middleName;
+        _surname = surname;
+        _currentSurname = currentSurname;
+        _surnameNumber = surnameNumber;
+        _birthPlace = birthPlace;
+        _deathPlace = deathPlace;
+        _privacy = privacy;
+        _marriageCount = marriageCount;
+        _marriageHusband = marriageHusband;
+        _marriageWife = marriageWife;
+        _marriageDate = marriageDate;
+        _marriagePlace = marriagePlace;
+        _cousinMarriages = cousinMarriages;
+        _remarriages = remarriages;
+
+        // Everyone's children (in the order that they were born) and marriages, in compressed sparse row form.
+
+        _childOffsets = new int[size + 1];
+        for ( int ix = 0; ix < size; ix += 1 ) {
+
+            if ( father[ix] >= 0 ) {
+
+                _childOffsets[father[ix] + 1] += 1;
+
+            }
+
+            if ( mother[ix] >= 0 ) {
+
+                _childOffsets[mother[ix] + 1] += 1;
+
+            }
+
+        }
+
+        prefixSum( _childOffsets );
+        _children = new int[_childOffsets[size]];
+        int[] next = Arrays.copyOf( _childOffsets, size );
+        for ( int ix = 0; ix < size; ix += 1 ) {
+
+            if ( father[ix] >= 0 ) {
+
+                _children[next[father[ix]]++] = ix;
+
+            }
+
+            if ( mother[ix] >= 0 ) {
+
+                _children[next[mother[ix]]++] = ix;
+
+            }
+
+        }
+
+        _marriageOffsets = new int[size + 1];
+        for ( int mx = 0; mx < marriageCount; mx += 1 ) {
+
+            _marriageOffsets[marriageHusband[mx] + 1] += 1;
+            _marriageOffsets[marriageWife[mx] + 1] += 1;
+
+        }
+
+        prefixSum( _marriageOffsets );
+        _marriages = new int[_marriageOffsets[size]];
+        next = Arrays.copyOf( _marriageOffsets, size );
+        for ( int mx = 0; mx < marriageCount; mx += 1 ) {
+
+            _marriages[next[marriageHusband[mx]]++] = mx;
+            _marriages[next[marriageWife[mx]]++] = mx;
+
+        }
+
+        // WikiTree IDs are numbered consecutively within each surname so a WikiTree ID can be turned back into an index without a hash map.
+
+        int[] maxNumbers = new int[SURNAMES.length];
+        for ( int ix = 0; ix < size; ix += 1 ) {
+
+            maxNumbers[surname[ix]] = Math.max( maxNumbers[surname[ix]], surnameNumber[ix] );
+
+        }
+
+        _indexBySurnameNumber = new int[SURNAMES.length][];
+        for ( int sx = 0; sx < SURNAMES.length; sx += 1 ) {
+
+            _indexBySurnameNumber[sx] = new int[maxNumbers[sx] + 1];
+            Arrays.fill( _indexBySurnameNumber[sx], -1 );
+
+        }
+
+        for ( int ix = 0; ix < size; ix += 1 ) {
+
+            _indexBySurnameNumber[surname[ix]][surnameNumber[ix]] = ix;
+
+        }
+
+    }
+
+    private static void prefixSum( final int[] counts ) {
+
+        for ( int ix = 1; ix < counts.length; ix += 1 ) {
+
+            counts[ix] += counts[ix - 1];
+
+        }
+
+    }
+
+    /**
+     Get the number of people in this population.
+     */
+
+    public int size() {
+
+        return _size;
+
+    }
+
+    /**
+     Get the number of marriages in this population.
+     */
+
+    public int getMarriageCount() {
+
+        return _marriageCount;
+
+    }
+
+    /**
+     Get the number of marriages between people who share a grandparent (first cousins, or half first cousins).
+     <p/>These, and the pedigree collapse that they cause, are what make a real family tree a graph rather than a tree.
+     */
+
+    public int getCousinMarriageCount() {
+
+        return _cousinMarriages;
+
+    }
+
+    /**
+     Get the number of marriages of widows and widowers (which is where half-siblings come from).
+     */
+
+    public int getRemarriageCount() {
+
+        return _remarriages;
+
+    }
+
+    /**
+     Get someone's Person.Id.
+
+     @param ix their index.
+     @return their Person.Id.
+     */
+
+    public long getPersonId( final int ix ) {
+
+        return FIRST_PERSON_ID + checkIndex( ix );
+
+    }
+
+    /**
+     Get someone's index.
+
+     @param personId their Person.Id.
+     @return their index or -1 if there is nobody in this population with that Person.Id.
+     */
+
+    public int getIndex( final long personId ) {
+
+        long ix = personId - FIRST_PERSON_ID;
+
+        return ix >= 0L && ix < _size ? (int)ix : -1;
+
+    }
+
+    /**
+     Get someone's index.
+
+     @param wikiTreeId their WikiTree ID.
+     @return their index or -1 if there is nobody in this population with that WikiTree ID.
+     */
+
+    public int getIndex( final @NotNull String wikiTreeId ) {
+
+        int dash = wikiTreeId.lastIndexOf( '-' );
+        if ( dash <= 0 ) {
+
+            return -1;
+
+        }
+
+        int sx = Arrays.asList( SURNAMES ).indexOf( wikiTreeId.substring( 0, dash ) );
+        if ( sx < 0 ) {
+
+            return -1;
+
+        }
+
+        try {
+
+            int number = Integer.parseInt( wikiTreeId.substring( dash + 1 ) );
+
+            return number > 0 && number < _indexBySurnameNumber[sx].length ? _indexBySurnameNumber[sx][number] : -1;
+
+        } catch ( NumberFormatException e ) {
+
+            return -1;
+
+        }
+
+    }
+
+    /**
+     Get someone's WikiTree ID.
+
+     @param ix their index.
+     @return their WikiTree ID.
+     */
+
+    @NotNull
+    public String getWikiTreeId( final int ix ) {
+
+        return SURNAMES[_surname[checkIndex( ix )]] + "-" + _surnameNumber[ix];
+
+    }
+
+    /**
+     Get someone's father.
+
+     @param ix their index.
+     @return their father's index or -1 if their father is unknown.
+     */
+
+    public int getFather( final int ix ) {
+
+        return _father[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's mother.
+
+     @param ix their index.
+     @return their mother's index or -1 if their mother is unknown.
+     */
+
+    public int getMother( final int ix ) {
+
+        return _mother[checkIndex( ix )];
+
+    }
+
+    /**
+     Get someone's children.
+
+     @param ix their index.
+     @return their children's indices in the order that they were born.
+     */
+
+    @NotNull
+    public int[] getChildren( final int ix ) {
+
+        return Arrays.copyOfRange( _children, _childOffsets[checkIndex( ix )], _childOffsets[ix + 1] );
+
+    }
+
+    /**
+     Get someone's spouses.
+
+     @param ix their index.
+     @return their spouses' indices in the order that they married them.
+     */
+
+    @NotNull
+    public int[] getSpouses( final int ix ) {
+
+        int[] rval = new int[_marriageOffsets[checkIndex( ix ) + 1] - _marriageOffsets[ix]];
+        for ( int jx = 0; jx < rval.length; jx += 1 ) {
+
+            int mx = _marriages[_marriageOffsets[ix] + jx];
+            rval[jx] = _marriageHusband[mx] == ix ? _marriageWife[mx] : _marriageHusband[mx];
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Get someone's siblings.
+
+     @param ix their index.
+     @return the indices of everyone who shares at least one parent with them (half-siblings included) in the order that they were born.
+     */
+
+    @NotNull
+    public int[] getSiblings( final int ix ) {
+
+        int father = _father[checkIndex( ix )];
+        int mother = _mother[ix];
+        int[] fromFather = father < 0 ? new int[0] : getChildren( father );
+        int[] fromMother = mother < 0 ? new int[0] : getChildren( mother );
+
+        // Both lists are sorted (indices are handed out in order of birth) so merge them.
+
+        int[] rval = new int[fromFather.length + fromMother.length];
+        int count = 0;
+        int fx = 0;
+        int mx = 0;
+        while ( fx < fromFather.length || mx < fromMother.length ) {
+
+            int sibling;
+            if ( mx >= fromMother.length || ( fx < fromFather.length && fromFather[fx] <= fromMother[mx] ) ) {
+
+                sibling = fromFather[fx++];
+                if ( mx < fromMother.length && fromMother[mx] == sibling ) {
+
+                    mx += 1;
+
+                }
+
+            } else {
+
+                sibling = fromMother[mx++];
+
+            }
+
+            if ( sibling != ix ) {
+
+                rval[count++] = sibling;
+
+            }
+
+        }
+
+        return Arrays.copyOf( rval, count );
+
+    }
+
+    /**
+     Determine if someone is male.
+
+     @param ix their index.
+     @return {@code true} if they are male; {@code false} if they are female.
+     */
+
+    public boolean isMale( final int ix ) {
+
+        return ( _flags[checkIndex( ix )] & MALE ) != 0;
+
+    }
+
+    /**
+     Determine if someone is still alive.
+
+     @param ix their index.
+     @return {@code true} if they are living; {@code false} otherwise.
+     */
+
+    public boolean isLiving( final int ix ) {
+
+        return _deathDate[checkIndex( ix )] == 0;
+
+    }
+
+    /**
+     Get someone's birth year.
+
+     @param ix their index.
+     @return the year that they were born.
+     */
+
+    public int getBirthYear( final int ix ) {
+
+        return _birthDate[checkIndex( ix )] / 10000;
+
+    }
+
+    /**
+     Get someone's profile.
+
+     @param ix their index.
+     @return a new {@link JSONObject} containing the same fields that the WikiTree API server sends back for a {@code getPerson} request
+     (not including the {@code "Parents"}, {@code "Children"}, {@code "Spouses"} and {@code "Siblings"} fields).
+     */
+
+    @NotNull
+    public JSONObject toProfile( final int ix ) {
+
+        checkIndex( ix );
+
+        boolean male = isMale( ix );
+        String firstName = ( male ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES )[_firstName[ix]];
+        String middleName = _middleName[ix] < 0 ? "" : ( male ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES )[_middleName[ix]];
+        String surname = SURNAMES[_surname[ix]];
+        String currentSurname = SURNAMES[_currentSurname[ix]];
+        String wikiTreeId = getWikiTreeId( ix );
+        boolean living = _deathDate[ix] == 0;
+        int privacy = _privacy[ix];
+
+        JSONObject profile = new JSONObject();
+        profile.put( "Id", getPersonId( ix ) );
+        profile.put( "Name", wikiTreeId );
+        profile.put( "FirstName", firstName );
+        profile.put( "MiddleName", middleName );
+        profile.put( "LastNameAtBirth", surname );
+        profile.put( "LastNameCurrent", currentSurname );
+        profile.put( "Nicknames", "" );
+        profile.put( "LastNameOther", "" );
+        profile.put( "RealName", firstName );
+        profile.put( "Prefix", "" );
+        profile.put( "Suffix", "" );
+        profile.put( "ShortName", surname.equals( currentSurname ) ? firstName + " " + surname : firstName + " (" + surname + ") " + currentSurname );
+        profile.put( "BirthNamePrivate", firstName + " " + surname );
+        profile.put(
+                "LongNamePrivate",
+                firstName + ( middleName.isEmpty() ? "" : " " + middleName ) + ( surname.equals( currentSurname ) ? " " : " (" + surname + ") " ) + currentSurname
+        );
+        profile.put( "BirthLocation", PLACES[_birthPlace[ix]] );
+        profile.put( "DeathLocation", living ? "" : PLACES[_deathPlace[ix]] );
+        profile.put( "Gender", male ? "Male" : "Female" );
+        profile.put( "BirthDate", formatDate( _birthDate[ix] ) );
+        profile.put( "DeathDate", formatDate( _deathDate[ix] ) );
+        profile.put( "BirthDateDecade", ( _birthDate[ix] / 100000 * 10 ) + "s" );
+        profile.put( "DeathDateDecade", living ? "unknown" : ( _deathDate[ix] / 100000 * 10 ) + "s" );
+        profile.put( "Photo", ix % 5 == 0 ? wikiTreeId + ".jpg" : null );
+        profile.put( "IsLiving", living ? 1 : 0 );
+        profile.put( "Privacy", privacy );
+        profile.put( "Privacy_IsPrivate", privacy <= 20 );
+        profile.put( "Privacy_IsPublic", privacy == 50 );
+        profile.put( "Privacy_IsOpen", privacy == 60 );
+        profile.put( "Privacy_IsAtLeastPublic", privacy >= 50 );
+        profile.put( "Privacy_IsSemiPrivate", privacy > 20 && privacy < 50 );
+        profile.put( "Privacy_IsSemiPrivateBio", privacy == 30 || privacy == 35 );
+        profile.put( "Father", _father[ix] < 0 ? 0L : getPersonId( _father[ix] ) );
+        profile.put( "Mother", _mother[ix] < 0 ? 0L : getPersonId( _mother[ix] ) );
+        profile.put( "Manager", getPersonId( (int)( ( ix * 2654435761L ) % _size ) ) );
+        profile.put( "HasChildren", _childOffsets[ix + 1] > _childOffsets[ix] ? 1 : 0 );
+
+        return profile;
+
+    }
+
+    /**
+     Get someone's profile including their relatives.
+
+     @param ix their index.
+     @return a new {@link JSONObject} containing what {@link #toProfile(int)} yields plus {@code "Parents"}, {@code "Children"}, {@code "Spouses"}
+     and {@code "Siblings"} fields shaped like the ones in the response to a {@code getPerson} request for all fields
+     (each is an object mapping Person.Ids to short profiles; spouses' profiles also have {@code "marriage_date"} and {@code "marriage_location"} fields).
+     */
+
+    @NotNull
+    public JSONObject toRecord( final int ix ) {
+
+        JSONObject record = toProfile( ix );
+
+        JSONObject parents = new JSONObject();
+        for ( int parent : new int[]{ _father[ix], _mother[ix] } ) {
+
+            if ( parent >= 0 ) {
+
+                parents.put( Long.toString( getPersonId( parent ) ), toRelative( parent ) );
+
+            }
+
+        }
+
+        JSONObject children = new JSONObject();
+        for ( int cx = _childOffsets[ix]; cx < _childOffsets[ix + 1]; cx += 1 ) {
+
+            children.put( Long.toString( getPersonId( _children[cx] ) ), toRelative( _children[cx] ) );
+
+        }
+
+        JSONObject spouses = new JSONObject();
+        for ( int jx = _marriageOffsets[ix]; jx < _marriageOffsets[ix + 1]; jx += 1 ) {
+
+            int mx = _marriages[jx];
+            int spouse = _marriageHusband[mx] == ix ? _marriageWife[mx] : _marriageHusband[mx];
+            JSONObject relative = toRelative( spouse );
+            relative.put( "marriage_date", formatDate( _marriageDate[mx] ) );
+            relative.put( "marriage_location", PLACES[_marriagePlace[mx]] );
+            spouses.put( Long.toString( getPersonId( spouse ) ), relative );
+
+        }
+
+        JSONObject siblings = new JSONObject();
+        for ( int sibling : getSiblings( ix ) ) {
+
+            siblings.put( Long.toString( getPersonId( sibling ) ), toRelative( sibling ) );
+
+        }
+
+        record.put( "Parents", parents );
+        record.put( "Children", children );
+        record.put( "Spouses", spouses );
+        record.put( "Siblings", siblings );
+
+        return record;
+
+    }
+
+    @NotNull
+    private JSONObject toRelative( final int ix ) {
+
+        JSONObject relative = new JSONObject();
+        relative.put( "Id", getPersonId( ix ) );
+        relative.put( "Name", getWikiTreeId( ix ) );
+        relative.put( "FirstName", ( isMale( ix ) ? MALE_FIRST_NAMES : FEMALE_FIRST_NAMES )[_firstName[ix]] );
+        relative.put( "LastNameAtBirth", SURNAMES[_surname[ix]] );
+        relative.put( "LastNameCurrent", SURNAMES[_currentSurname[ix]] );
+        relative.put( "Gender", isMale( ix ) ? "Male" : "Female" );
+        relative.put( "BirthDate", formatDate( _birthDate[ix] ) );
+        relative.put( "DeathDate", formatDate( _deathDate[ix] ) );
+        relative.put( "IsLiving", _deathDate[ix] == 0 ? 1 : 0 );
+        relative.put( "Father", _father[ix] < 0 ? 0L : getPersonId( _father[ix] ) );
+        relative.put( "Mother", _mother[ix] < 0 ? 0L : getPersonId( _mother[ix] ) );
+
+        return relative;
+
+    }
+
+    /**
+     Get information about someone's marriages.
+     <p/>This is meant for loading a population into something else without going through JSON.
+
+     @param ix their index.
+     @return for each of their marriages (in the order that they happened), the spouse's index, the date (a {@code yyyymmdd} integer)
+     and the index of the place (in that order).
+     */
+
+    @NotNull
+    int[][] getMarriages( final int ix ) {
+
+        int[][] rval = new int[_marriageOffsets[checkIndex( ix ) + 1] - _marriageOffsets[ix]][];
+        for ( int jx = 0; jx < rval.length; jx += 1 ) {
+
+            int mx = _marriages[_marriageOffsets[ix] + jx];
+            rval[jx] = new int[]{ _marriageHusband[mx] == ix ? _marriageWife[mx] : _marriageHusband[mx], _marriageDate[mx], _marriagePlace[mx] };
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Get the date of one of someone's marriages.
+
+     @param ix     their index.
+     @param spouse their spouse's index.
+     @return the date of their marriage in WikiTree's {@code "yyyy-mm-dd"} form or {@code null} if they weren't married to each other.
+     */
+
+    @Nullable
+    public String getMarriageDate( final int ix, final int spouse ) {
+
+        for ( int[] marriage : getMarriages( ix ) ) {
+
+            if ( marriage[0] == spouse ) {
+
+                return formatDate( marriage[1] );
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     Get the place of one of someone's marriages.
+
+     @param ix     their index.
+     @param spouse their spouse's index.
+     @return where they got married or {@code null} if they weren't married to each other.
+     */
+
+    @Nullable
+    public String getMarriageLocation( final int ix, final int spouse ) {
+
+        for ( int[] marriage : getMarriages( ix ) ) {
+
+            if ( marriage[0] == spouse ) {
+
+                return PLACES[marriage[2]];
+
+            }
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     Write everyone's records ({@link #toRecord(int)}) or profiles ({@link #toProfile(int)}) to a file, one per line.
+
+     @param path           the file. If its name ends with {@code ".gz"} then it is gzipped.
+     @param withRelatives  {@code true} to write records (with relatives); {@code false} to write profiles.
+     @throws IOException if something goes wrong writing the file.
+     */
+
+    public void writeJsonLines( final @NotNull Path path, final boolean withRelatives )
+            throws IOException {
+
+        try ( OutputStream out = Files.newOutputStream( path ) ) {
+
+            if ( path.getFileName().toString().endsWith( ".gz" ) ) {
+
+                // These files are written far more often than they are shipped anywhere so favour speed over size
+                // (the fastest level is about a third faster than the default and yields files about 50% bigger).
+
+                try ( GZIPOutputStream gzipOut = new GZIPOutputStream( out, 65536 ) {{ def.setLevel( Deflater.BEST_SPEED ); }} ) {
+
+                    writeJsonLines( gzipOut, withRelatives );
+
+                }
+
+            } else {
+
+                writeJsonLines( out, withRelatives );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Write everyone's records ({@link #toRecord(int)}) or profiles ({@link #toProfile(int)}) to a stream, one per line.
+     <p/>The records are written one at a time so writing a population of any size takes very little memory beyond the population itself.
+     The stream is flushed but not closed.
+
+     @param out           the stream.
+     @param withRelatives {@code true} to write records (with relatives); {@code false} to write profiles.
+     @throws IOException if something goes wrong writing to the stream.
+     */
+
+    public void writeJsonLines( final @NotNull OutputStream out, final boolean withRelatives )
+            throws IOException {
+
+        Writer writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ), 65536 );
+        for ( int ix = 0; ix < _size; ix += 1 ) {
+
+            ( withRelatives ? toRecord( ix ) : toProfile( ix ) ).writeJSONString( writer );
+            writer.write( '\n' );
+
+        }
+
+        writer.flush();
+
+    }
+
+    /**
+     Read a file written by {@link #writeJsonLines(Path, boolean)} (or anything else with one JSON object per line).
+
+     @param path     the file. If its name ends with {@code ".gz"} then it is assumed to be gzipped.
+     @param consumer what to do with each record (called in the order that the records appear in the file).
+     @return the number of records read.
+     @throws IOException    if something goes wrong reading the file.
+     @throws ParseException if a line is not a JSON object.
+     */
+
+    public static long readJsonLines( final @NotNull Path path, final @NotNull Consumer<JSONObject> consumer )
+            throws IOException, ParseException {
+
+        try ( InputStream in = Files.newInputStream( path ) ) {
+
+            if ( path.getFileName().toString().endsWith( ".gz" ) ) {
+
+                try ( GZIPInputStream gzipIn = new GZIPInputStream( in, 65536 ) ) {
+
+                    return readJsonLines( gzipIn, consumer );
+
+                }
+
+            } else {
+
+                return readJsonLines( in, consumer );
+
+            }
+
+        }
+
+    }
+
+    /**
+     Read records from a stream containing one JSON object per line.
+     <p/>Blank lines are skipped. The stream is not closed.
+
+     @param in       the stream.
+     @param consumer what to do with each record (called in the order that the records appear in the stream).
+     @return the number of records read.
+     @throws IOException    if something goes wrong reading the stream.
+     @throws ParseException if a line is not a JSON object.
+     */
+
+    public static long readJsonLines( final @NotNull InputStream in, final @NotNull Consumer<JSONObject> consumer )
+            throws IOException, ParseException {
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ), 65536 );
+        long count = 0L;
+        String line;
+        while ( ( line = reader.readLine() ) != null ) {
+
+            if ( !line.trim().isEmpty() ) {
+
+                Object record = WikiTreeApiUtilities.parseJsonObject( line );
+                if ( !( record instanceof JSONObject ) ) {
+
+                    throw new ParseException( ParseException.ERROR_UNEXPECTED_TOKEN, record );
+
+                }
+
+                consumer.accept( (JSONObject)record );
+                count += 1L;
+
+            }
+
+        }
+
+        return count;
+
+    }
+
+    /**
+     Count someone's distinct ancestors within a number of generations.
+     <p/>Without pedigree collapse, someone whose tree is complete for {@code generations} generations has {@code 2^(generations+1)-2} ancestors in it.
+     Cousin marriages (and marriages within small communities in general) make the actual number smaller.
+
+     @param ix          the person.
+     @param generations how many generations to go back.
+     @return the number of distinct ancestors of the person within that many generations.
+     */
+
+    public int countDistinctAncestors( final int ix, final int generations ) {
+
+        checkIndex( ix );
+
+        Set<Integer> seen = new HashSet<>();
+        int[] generation = { ix };
+        for ( int level = 0; level < generations && generation.length > 0; level += 1 ) {
+
+            int[] parents = new int[generation.length * 2];
+            int count = 0;
+            for ( int child : generation ) {
+
+                for ( int parent : new int[]{ _father[child], _mother[child] } ) {
+
+                    if ( parent >= 0 && seen.add( parent ) ) {
+
+                        parents[count++] = parent;
+
+                    }
+
+                }
+
+            }
+
+            generation = Arrays.copyOf( parents, count );
+
+        }
+
+        return seen.size();
+
+    }
+
+    /**
+     Format a {@code yyyymmdd} integer the way that WikiTree formats dates.
+
+     @param date the date (0 means unknown).
+     @return the date in {@code "yyyy-mm-dd"} form ({@code "0000-00-00"} if the date is unknown).
+     */
+
+    @NotNull
+    static String formatDate( final int date ) {
+
+        char[] chars = { '0', '0', '0', '0', '-', '0', '0', '-', '0', '0' };
+        int year = date / 10000;
+        int month = date / 100 % 100;
+        int day = date % 100;
+        chars[0] = (char)( '0' + year / 1000 % 10 );
+        chars[1] = (char)( '0' + year / 100 % 10 );
+        chars[2] = (char)( '0' + year / 10 % 10 );
+        chars[3] = (char)( '0' + year % 10 );
+        chars[5] = (char)( '0' + month / 10 );
+        chars[6] = (char)( '0' + month % 10 );
+        chars[8] = (char)( '0' + day / 10 );
+        chars[9] = (char)( '0' + day % 10 );
+
+        return new String( chars );
+
+    }
+
+    private int checkIndex( final int ix ) {
+
+        if ( ix < 0 || ix >= _size ) {
+
+            throw new IndexOutOfBoundsException( "WikiTreeGenealogy:  no such person (got ix=" + ix + ", size=" + _size + ")" );
+
+        }
+
+        return ix;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeGenealogy( people=" + _size + ", marriages=" + _marriageCount + ", cousinMarriages=" + _cousinMarriages +
+               ", remarriages=" + _remarriages + " )";
+
+    }
+
+}
@@ -0,0 +1,982 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.synthetic;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ Make up a large, internally consistent population for benchmarks and for the {@link com.matilda.wikitree.api.miniserver.WikiTreeMiniServer}.
+ <p/>The population is grown one generation at a time starting with founders born in {@link #getFirstBirthYear()} or shortly after:
+ <ul>
+ <li>Everyone lives in a community (a few thousand people at most). People usually marry someone from their own generation in their own community,
+ sometimes an outsider (someone with no known parents) and now and then a first cousin. Small communities and cousin marriages mean that
+ people's family trees overlap (pedigree collapse) the way real ones do.</li>
+ <li>Wives take their husband's surname. Children take their father's surname and usually live in their father's community.</li>
+ <li>Children are born while both parents are alive and the mother is between 16 and 44.
+ Widows and widowers sometimes remarry (which is where half-siblings come from).</li>
+ <li>Lifespans depend on when someone was born (including infant mortality). Anyone who would still be alive in {@link #getCurrentYear()} is living.
+ Living people's profiles are private; other people's profiles have a mix of privacy levels (with consistent {@code Privacy_*} flags).</li>
+ <li>If every line dies out (or runs into the present) before the population is big enough, another set of founders is started.</li>
+ </ul>
+ <p/>The same settings and seed always yield the same population.
+ <p/>Instances of this class are not thread-safe (use one per thread).
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeGenealogyGenerator {
+
+    public static final int DEFAULT_FIRST_BIRTH_YEAR = 1650;
+
+    public static final int DEFAULT_CURRENT_YEAR = 2017;
+
+    public static final int DEFAULT_COMMUNITY_SIZE = 2000;
+
+    public static final double DEFAULT_MARRIAGE_PROBABILITY = 0.85;
+
+    public static final double DEFAULT_OUTSIDER_PROBABILITY = 0.1;
+
+    public static final double DEFAULT_COUSIN_MARRIAGE_PROBABILITY = 0.04;
+
+    public static final double DEFAULT_REMARRIAGE_PROBABILITY = 0.5;
+
+    public static final double DEFAULT_MIGRATION_PROBABILITY = 0.05;
+
+    private static final int NOBODY = -1;
+
+    private static final int YEARS_PER_GENERATION = 30;
+
+    private static final double GROWTH = 1.25;
+
+    private final int _people;
+
+    private final long _seed;
+
+    private int _firstBirthYear = DEFAULT_FIRST_BIRTH_YEAR;
+
+    private int _currentYear = DEFAULT_CURRENT_YEAR;
+
+    private int _communitySize = DEFAULT_COMMUNITY_SIZE;
+
+    private double _marriageProbability = DEFAULT_MARRIAGE_PROBABILITY;
+
+    private double _outsiderProbability = DEFAULT_OUTSIDER_PROBABILITY;
+
+    private double _cousinMarriageProbability = DEFAULT_COUSIN_MARRIAGE_PROBABILITY;
+
+    private double _remarriageProbability = DEFAULT_REMARRIAGE_PROBABILITY;
+
+    private double _migrationProbability = DEFAULT_MIGRATION_PROBABILITY;
+
+    // The population being generated (see generate()).
+
+    private Random _random;
+
+    private int _size;
+
+    private int[] _father;
+
+    private int[] _mother;
+
+    private int[] _birthDate;
+
+    private int[] _deathDate;
+
+    private byte[] _flags;
+
+    private short[] _firstName;
+
+    private short[] _middleName;
+
+    private short[] _surname;
+
+    private short[] _currentSurname;
+
+    private int[] _surnameNumber;
+
+    private short[] _birthPlace;
+
+    private short[] _deathPlace;
+
+    private byte[] _privacy;
+
+    private int[] _community;
+
+    private boolean[] _married;
+
+    private int[] _lastChild;
+
+    private int[] _previousChildOfFather;
+
+    private int[] _previousChildOfMother;
+
+    private int[] _surnameCounters;
+
+    private int _marriageCount;
+
+    private int[] _marriageHusband;
+
+    private int[] _marriageWife;
+
+    private int[] _marriageDate;
+
+    private short[] _marriagePlace;
+
+    private int _cousinMarriages;
+
+    private int _remarriages;
+
+    private int[] _nextGeneration;
+
+    private int _nextGenerationSize;
+
+    private double _fertility;
+
+    /**
+     Create a generator.
+
+     @param people how many people to generate.
+     @param seed   the seed for the random number generator.
+     @throws IllegalArgumentException if {@code people} is negative.
+     */
+
+    public WikiTreeGenealogyGenerator( final int people, final long seed ) {
+
+        super();
+
+        if ( people < 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeGenealogyGenerator:  people must not be negative (got people=" + people + ")" );
+
+        }
+
+        _people = people;
+        _seed = seed;
+
+    }
+
+    /**
+     Get how many people this generator generates.
+     */
+
+    public int getPeople() {
+
+        return _people;
+
+    }
+
+    /**
+     Get the seed for the random number generator.
+     */
+
+    public long getSeed() {
+
+        return _seed;
+
+    }
+
+    /**
+     Set the year that the founders are born in (give or take twenty years).
+
+     @param firstBirthYear the year (at least 1000 and at least a century before the current year).
+     @throws IllegalArgumentException if the year is out of range.
+     */
+
+    public void setFirstBirthYear( final int firstBirthYear ) {
+
+        if ( firstBirthYear < 1000 || firstBirthYear > _currentYear - 100 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGenerator.setFirstBirthYear:  year must be between 1000 and " + ( _currentYear - 100 ) +
+                    " (got firstBirthYear=" + firstBirthYear + ")"
+            );
+
+        }
+
+        _firstBirthYear = firstBirthYear;
+
+    }
+
+    public int getFirstBirthYear() {
+
+        return _firstBirthYear;
+
+    }
+
+    /**
+     Set the year that it is now (anyone who would be alive in this year is living).
+
+     @param currentYear the year (at least a century after the first birth year and before 10000).
+     @throws IllegalArgumentException if the year is out of range.
+     */
+
+    public void setCurrentYear( final int currentYear ) {
+
+        if ( currentYear < _firstBirthYear + 100 || currentYear > 9999 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGenerator.setCurrentYear:  year must be between " + ( _firstBirthYear + 100 ) + " and 9999 (got currentYear=" + currentYear + ")"
+            );
+
+        }
+
+        _currentYear = currentYear;
+
+    }
+
+    public int getCurrentYear() {
+
+        return _currentYear;
+
+    }
+
+    /**
+     Set roughly how many people end up living in each community.
+     <p/>Smaller communities mean more pedigree collapse.
+
+     @param communitySize the number of people (at least 10).
+     @throws IllegalArgumentException if the size is less than 10.
+     */
+
+    public void setCommunitySize( final int communitySize ) {
+
+        if ( communitySize < 10 ) {
+
+            throw new IllegalArgumentException( "WikiTreeGenealogyGenerator.setCommunitySize:  size must be at least 10 (got communitySize=" + communitySize + ")" );
+
+        }
+
+        _communitySize = communitySize;
+
+    }
+
+    public int getCommunitySize() {
+
+        return _communitySize;
+
+    }
+
+    /**
+     Set the probability that someone who reaches adulthood marries.
+     */
+
+    public void setMarriageProbability( final double marriageProbability ) {
+
+        _marriageProbability = checkProbability( "setMarriageProbability", marriageProbability );
+
+    }
+
+    public double getMarriageProbability() {
+
+        return _marriageProbability;
+
+    }
+
+    /**
+     Set the probability that someone who marries marries an outsider (someone with no known parents) rather than someone from their own community.
+     */
+
+    public void setOutsiderProbability( final double outsiderProbability ) {
+
+        _outsiderProbability = checkProbability( "setOutsiderProbability", outsiderProbability );
+
+    }
+
+    public double getOutsiderProbability() {
+
+        return _outsiderProbability;
+
+    }
+
+    /**
+     Set the probability that someone who marries looks for a first cousin to marry first.
+     */
+
+    public void setCousinMarriageProbability( final double cousinMarriageProbability ) {
+
+        _cousinMarriageProbability = checkProbability( "setCousinMarriageProbability", cousinMarriageProbability );
+
+    }
+
+    public double getCousinMarriageProbability() {
+
+        return _cousinMarriageProbability;
+
+    }
+
+    /**
+     Set the probability that someone who is widowed young enough to have more children remarries.
+     */
+
+    public void setRemarriageProbability( final double remarriageProbability ) {
+
+        _remarriageProbability = checkProbability( "setRemarriageProbability", remarriageProbability );
+
+    }
+
+    public double getRemarriageProbability() {
+
+        return _remarriageProbability;
+
+    }
+
+    /**
+     Set the probability that a child grows up in a different community than their father's.
+     */
+
+    public void setMigrationProbability( final double migrationProbability ) {
+
+        _migrationProbability = checkProbability( "setMigrationProbability", migrationProbability );
+
+    }
+
+    public double getMigrationProbability() {
+
+        return _migrationProbability;
+
+    }
+
+    private static double checkProbability( final String methodName, final double probability ) {
+
+        if ( !( probability >= 0.0 && probability <= 1.0 ) ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeGenealogyGenerator." + methodName + ":  probability must be between 0 and 1 (got probability=" + probability + ")"
+            );
+
+        }
+
+        return probability;
+
+    }
+
+    /**
+     Generate a population.
+     <p/>Each call starts from scratch (with the same seed) so calling this method twice yields two identical populations.
+
+     @return the population.
+     */
+
+    @NotNull
+    public WikiTreeGenealogy generate() {
+
+        _random = new Random( _seed );
+        _size = 0;
+        _father = new int[_people];
+        _mother = new int[_people];
+        _birthDate = new int[_people];
+        _deathDate = new int[_people];
+        _flags = new byte[_people];
+        _firstName = new short[_people];
+        _middleName = new short[_people];
+        _surname = new short[_people];
+        _currentSurname = new short[_people];
+        _surnameNumber = new int[_people];
+        _birthPlace = new short[_people];
+        _deathPlace = new short[_people];
+        _privacy = new byte[_people];
+        _community = new int[_people];
+        _married = new boolean[_people];
+        _lastChild = new int[_people];
+        _previousChildOfFather = new int[_people];
+        _previousChildOfMother = new int[_people];
+        _surnameCounters = new int[WikiTreeGenealogy.SURNAMES.length];
+        _marriageCount = 0;
+        _marriageHusband = new int[Math.max( 16, _people / 3 )];
+        _marriageWife = new int[_marriageHusband.length];
+        _marriageDate = new int[_marriageHusband.length];
+        _marriagePlace = new short[_marriageHusband.length];
+        _cousinMarriages = 0;
+        _remarriages = 0;
+        _nextGeneration = new int[Math.max( 16, _people / 8 )];
+
+        int communities = Math.max( 1, _people / _communitySize );
+        int[] generation = new int[0];
+        int generationSize = 0;
+        double generationTarget = 0.0;
+
+        // Pick the number of founders so that their descendants (and the outsiders who marry them) reach the present at about the same time as
+        // the population reaches its full size. Each generation is GROWTH times the size of the one before it.
+
+        int generations = Math.max( 1, ( _currentYear - _firstBirthYear ) / YEARS_PER_GENERATION );
+        double descendantsPerFounder = 0.0;
+        for ( int gx = 0; gx <= generations; gx += 1 ) {
+
+            descendantsPerFounder += Math.pow( GROWTH, gx );
+
+        }
+
+        int foundersPerBatch = (int)Math.max( 2L, Math.round( _people / ( descendantsPerFounder * 1.3 ) ) );
+
+        while ( _size < _people ) {
+
+            // Start (another) set of founders if every line has died out or run into the present.
+
+            if ( generationSize == 0 ) {
+
+                int founders = Math.min( _people - _size, foundersPerBatch );
+                generation = new int[founders];
+                for ( int fx = 0; fx < founders; fx += 1 ) {
+
+                    generation[fx] = addPerson( fx % 2 == 0, date( _firstBirthYear + _random.nextInt( 20 ) ), NOBODY, NOBODY, fx % communities );
+
+                }
+
+                generationSize = founders;
+                generationTarget = founders;
+                _fertility = 1.0;
+
+            }
+
+            _nextGenerationSize = 0;
+            marryOff( generation, generationSize, communities );
+
+            // Nudge family sizes so that the next generation is about as big as it should be.
+
+            generationTarget *= GROWTH;
+            _fertility = Math.max( 0.25, Math.min( 2.5, _fertility * generationTarget / Math.max( 1, _nextGenerationSize ) ) );
+
+            generation = _nextGeneration;
+            generationSize = _nextGenerationSize;
+            _nextGeneration = new int[Math.max( 16, generationSize * 2 )];
+
+        }
+
+        WikiTreeGenealogy genealogy = new WikiTreeGenealogy(
+                _size,
+                _father,
+                _mother,
+                _birthDate,
+                _deathDate,
+                _flags,
+                _firstName,
+                _middleName,
+                _surname,
+                _currentSurname,
+                _surnameNumber,
+                _birthPlace,
+                _deathPlace,
+                _privacy,
+                _marriageCount,
+                _marriageHusband,
+                _marriageWife,
+                _marriageDate,
+                _marriagePlace,
+                _cousinMarriages,
+                _remarriages
+        );
+
+        // Let go of the scratch arrays (the genealogy has the ones it needs).
+
+        _community = null;
+        _married = null;
+        _lastChild = null;
+        _previousChildOfFather = null;
+        _previousChildOfMother = null;
+        _nextGeneration = null;
+
+        return genealogy;
+
+    }
+
+    /**
+     Marry off one generation (and have their children, who become the next generation).
+     */
+
+    private void marryOff( final int[] generation, final int generationSize, final int communities ) {
+
+        // Everyone in this generation, grouped by community (in random order within each community).
+
+        shuffle( generation, generationSize );
+        int[] poolOffsets = new int[communities + 1];
+        for ( int gx = 0; gx < generationSize; gx += 1 ) {
+
+            poolOffsets[_community[generation[gx]] + 1] += 1;
+
+        }
+
+        for ( int cx = 1; cx <= communities; cx += 1 ) {
+
+            poolOffsets[cx] += poolOffsets[cx - 1];
+
+        }
+
+        int[] pool = new int[generationSize];
+        int[] next = Arrays.copyOf( poolOffsets, communities );
+        for ( int gx = 0; gx < generationSize; gx += 1 ) {
+
+            pool[next[_community[generation[gx]]]++] = generation[gx];
+
+        }
+
+        for ( int gx = 0; gx < generationSize && _size < _people; gx += 1 ) {
+
+            int ix = generation[gx];
+            if ( _married[ix] || !reachesAdulthood( ix ) || _random.nextDouble() >= _marriageProbability ) {
+
+                continue;
+
+            }
+
+            int spouse = NOBODY;
+            if ( _random.nextDouble() < _cousinMarriageProbability ) {
+
+                spouse = findCousin( ix );
+
+            }
+
+            if ( spouse == NOBODY && _random.nextDouble() >= _outsiderProbability ) {
+
+                int community = _community[ix];
+                spouse = findNeighbour( ix, pool, poolOffsets[community], poolOffsets[community + 1] );
+
+            }
+
+            if ( spouse == NOBODY ) {
+
+                spouse = addOutsider( ix );
+
+            }
+
+            int marriageYear = Math.max( birthYear( ix ), birthYear( spouse ) ) + 18 + _random.nextInt( 12 );
+            marry( ix, spouse, marriageYear );
+
+        }
+
+    }
+
+    /**
+     Marry two people, have their children and, if one of them is widowed young, maybe remarry the survivor.
+     */
+
+    private void marry( final int ix, final int spouse, final int marriageYear ) {
+
+        int survivor = ix;
+        int other = spouse;
+        int year = marriageYear;
+        while ( other != NOBODY && _size < _people ) {
+
+            boolean male = isMale( survivor );
+            int husband = male ? survivor : other;
+            int wife = male ? other : survivor;
+            if ( !isAliveIn( husband, year ) || !isAliveIn( wife, year ) ) {
+
+                return;
+
+            }
+
+            addMarriage( husband, wife, year );
+            if ( other != spouse ) {
+
+                _remarriages += 1;
+
+            }
+
+            haveChildren( husband, wife, year );
+
+            // If one of them dies young enough, the other might marry again (and have more children).
+
+            int firstDeathYear = Math.min( deathYear( husband ), deathYear( wife ) );
+            if ( firstDeathYear > _currentYear || _random.nextDouble() >= _remarriageProbability ) {
+
+                return;
+
+            }
+
+            survivor = deathYear( husband ) == firstDeathYear ? wife : husband;
+            if ( deathYear( survivor ) <= firstDeathYear + 1 || firstDeathYear - birthYear( survivor ) > ( isMale( survivor ) ? 55 : 40 ) ) {
+
+                return;
+
+            }
+
+            year = firstDeathYear + 1 + _random.nextInt( 3 );
+            other = addOutsider( survivor );
+
+        }
+
+    }
+
+    private void addMarriage( final int husband, final int wife, final int year ) {
+
+        if ( _marriageCount == _marriageHusband.length ) {
+
+            int capacity = _marriageCount * 2;
+            _marriageHusband = Arrays.copyOf( _marriageHusband, capacity );
+            _marriageWife = Arrays.copyOf( _marriageWife, capacity );
+            _marriageDate = Arrays.copyOf( _marriageDate, capacity );
+            _marriagePlace = Arrays.copyOf( _marriagePlace, capacity );
+
+        }
+
+        _marriageHusband[_marriageCount] = husband;
+        _marriageWife[_marriageCount] = wife;
+        _marriageDate[_marriageCount] = date( year );
+        _marriagePlace[_marriageCount] = _birthPlace[wife];
+        _marriageCount += 1;
+
+        _married[husband] = true;
+        _married[wife] = true;
+        _currentSurname[wife] = _surname[husband];
+
+        if ( shareGrandparent( husband, wife ) ) {
+
+            _cousinMarriages += 1;
+
+        }
+
+    }
+
+    private void haveChildren( final int husband, final int wife, final int marriageYear ) {
+
+        int motherBirthYear = birthYear( wife );
+        int firstYear = Math.max( marriageYear + 1, motherBirthYear + 16 );
+        int lastYear = Math.min( Math.min( motherBirthYear + 44, _currentYear ), Math.min( deathYear( husband ), deathYear( wife ) ) );
+        if ( lastYear < firstYear ) {
+
+            return;
+
+        }
+
+        // Big families were the norm until the twentieth century.
+
+        int children = (int)Math.min( 16.0, _random.nextInt( marriageYear < 1900 ? 9 : 5 ) * _fertility + _random.nextDouble() );
+        int[] birthYears = new int[children];
+        for ( int cx = 0; cx < children; cx += 1 ) {
+
+            birthYears[cx] = firstYear + _random.nextInt( lastYear - firstYear + 1 );
+
+        }
+
+        Arrays.sort( birthYears );
+        for ( int cx = 0; cx < children && _size < _people; cx += 1 ) {
+
+            int community = _random.nextDouble() < _migrationProbability ? _random.nextInt( communityCount() ) : _community[husband];
+            int child = addPerson( _random.nextBoolean(), date( birthYears[cx] ), husband, wife, community );
+            if ( _nextGenerationSize == _nextGeneration.length ) {
+
+                _nextGeneration = Arrays.copyOf( _nextGeneration, _nextGenerationSize * 2 );
+
+            }
+
+            _nextGeneration[_nextGenerationSize++] = child;
+
+        }
+
+    }
+
+    private int communityCount() {
+
+        return Math.max( 1, _people / _communitySize );
+
+    }
+
+    /**
+     Look for an unmarried first cousin (or half first cousin) of the opposite sex and about the same age.
+     */
+
+    private int findCousin( final int ix ) {
+
+        boolean male = isMale( ix );
+        for ( int parent : new int[]{ _father[ix], _mother[ix] } ) {
+
+            if ( parent == NOBODY ) {
+
+                continue;
+
+            }
+
+            for ( int grandparent : new int[]{ _father[parent], _mother[parent] } ) {
+
+                if ( grandparent == NOBODY ) {
+
+                    continue;
+
+                }
+
+                for ( int auntOrUncle = _lastChild[grandparent]; auntOrUncle != NOBODY; auntOrUncle = previousChild( grandparent, auntOrUncle ) ) {
+
+                    for ( int cousin = _lastChild[auntOrUncle]; cousin != NOBODY; cousin = previousChild( auntOrUncle, cousin ) ) {
+
+                        if ( isMale( cousin ) != male && isEligibleSpouse( ix, cousin ) ) {
+
+                            return cousin;
+
+                        }
+
+                    }
+
+                }
+
+            }
+
+        }
+
+        return NOBODY;
+
+    }
+
+    /**
+     Look for an unmarried person of the opposite sex from the same generation and community who isn't a sibling.
+     Only a few candidates are considered (the community might be big).
+     */
+
+    private int findNeighbour( final int ix, final int[] pool, final int from, final int to ) {
+
+        if ( to <= from ) {
+
+            return NOBODY;
+
+        }
+
+        boolean male = isMale( ix );
+        for ( int tries = 0; tries < 16; tries += 1 ) {
+
+            int candidate = pool[from + _random.nextInt( to - from )];
+            if ( isMale( candidate ) != male && isEligibleSpouse( ix, candidate ) ) {
+
+                return candidate;
+
+            }
+
+        }
+
+        return NOBODY;
+
+    }
+
+    private boolean isEligibleSpouse( final int ix, final int candidate ) {
+
+        return candidate != ix && !_married[candidate] && !shareParent( ix, candidate ) &&
+               Math.abs( birthYear( ix ) - birthYear( candidate ) ) <= 12 && reachesAdulthood( candidate );
+
+    }
+
+    private int addOutsider( final int ix ) {
+
+        int birthYear = Math.min( _currentYear - 18, birthYear( ix ) - 6 + _random.nextInt( 13 ) );
+        int community = _community[ix];
+
+        return addPerson( !isMale( ix ), date( birthYear ), NOBODY, NOBODY, community );
+
+    }
+
+    private int addPerson( final boolean male, final int birthDate, final int father, final int mother, final int community ) {
+
+        int ix = _size++;
+        int birthYear = birthDate / 10000;
+
+        _father[ix] = father;
+        _mother[ix] = mother;
+        _birthDate[ix] = birthDate;
+        _flags[ix] = (byte)( male ? WikiTreeGenealogy.MALE : 0 );
+        _community[ix] = community;
+        _lastChild[ix] = NOBODY;
+        _previousChildOfFather[ix] = NOBODY;
+        _previousChildOfMother[ix] = NOBODY;
+
+        int names = WikiTreeGenealogy.MALE_FIRST_NAMES.length;
+        int parent = male ? father : mother;
+        _firstName[ix] = (short)( parent != NOBODY && _random.nextInt( 5 ) == 0 ? _firstName[parent] : _random.nextInt( names ) );
+        _middleName[ix] = (short)( _random.nextInt( 3 ) == 0 ? _random.nextInt( names ) : -1 );
+
+        short surname = father == NOBODY ? (short)_random.nextInt( WikiTreeGenealogy.SURNAMES.length ) : _surname[father];
+        _surname[ix] = surname;
+        _currentSurname[ix] = surname;
+        _surnameCounters[surname] += 1;
+        _surnameNumber[ix] = _surnameCounters[surname];
+
+        short home = (short)( community % WikiTreeGenealogy.PLACES.length );
+        _birthPlace[ix] = _random.nextInt( 10 ) == 0 ? (short)_random.nextInt( WikiTreeGenealogy.PLACES.length ) : home;
+
+        int deathYear = birthYear + lifespan( birthYear );
+        if ( deathYear > _currentYear ) {
+
+            _deathDate[ix] = 0;
+            _deathPlace[ix] = 0;
+            _privacy[ix] = 20;
+
+        } else {
+
+            int deathDate = date( deathYear );
+            _deathDate[ix] = Math.max( deathDate, birthDate + 1 );
+            _deathPlace[ix] = _random.nextInt( 5 ) == 0 ? (short)_random.nextInt( WikiTreeGenealogy.PLACES.length ) : home;
+            int privacy = _random.nextInt( 20 );
+            _privacy[ix] = (byte)( privacy < 12 ? 60 : privacy < 17 ? 50 : privacy < 19 ? 35 : 30 );
+
+        }
+
+        if ( father != NOBODY ) {
+
+            _previousChildOfFather[ix] = _lastChild[father];
+            _lastChild[father] = ix;
+
+        }
+
+        if ( mother != NOBODY ) {
+
+            _previousChildOfMother[ix] = _lastChild[mother];
+            _lastChild[mother] = ix;
+
+        }
+
+        return ix;
+
+    }
+
+    /**
+     Make up how long someone lives.
+     */
+
+    private int lifespan( final int birthYear ) {
+
+        double infantMortality = birthYear < 1800 ? 0.2 : birthYear < 1900 ? 0.15 : birthYear < 1950 ? 0.05 : 0.01;
+        if ( _random.nextDouble() < infantMortality ) {
+
+            return _random.nextInt( 5 );
+
+        }
+
+        double mean = birthYear < 1850 ? 58.0 : birthYear < 1950 ? 66.0 : 78.0;
+        int lifespan = (int)Math.round( mean + _random.nextGaussian() * 14.0 );
+
+        return Math.max( 5, Math.min( 105, lifespan ) );
+
+    }
+
+    private int previousChild( final int parent, final int child ) {
+
+        return _father[child] == parent ? _previousChildOfFather[child] : _previousChildOfMother[child];
+
+    }
+
+    private boolean shareParent( final int a, final int b ) {
+
+        return ( _father[a] != NOBODY && ( _father[a] == _father[b] || _father[a] == _mother[b] ) ) ||
+               ( _mother[a] != NOBODY && ( _mother[a] == _father[b] || _mother[a] == _mother[b] ) );
+
+    }
+
+    private boolean shareGrandparent( final int a, final int b ) {
+
+        for ( int parentA : new int[]{ _father[a], _mother[a] } ) {
+
+            for ( int parentB : new int[]{ _father[b], _mother[b] } ) {
+
+                if ( parentA != NOBODY && parentB != NOBODY && shareParent( parentA, parentB ) ) {
+
+                    return true;
+
+                }
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    private boolean reachesAdulthood( final int ix ) {
+
+        return deathYear( ix ) - birthYear( ix ) >= 18;
+
+    }
+
+    private boolean isAliveIn( final int ix, final int year ) {
+
+        return deathYear( ix ) > year && year <= _currentYear;
+
+    }
+
+    private boolean isMale( final int ix ) {
+
+        return ( _flags[ix] & WikiTreeGenealogy.MALE ) != 0;
+
+    }
+
+    private int birthYear( final int ix ) {
+
+        return _birthDate[ix] / 10000;
+
+    }
+
+    /**
+     Get the year that someone dies in ({@link Integer#MAX_VALUE} if they are living).
+     */
+
+    private int deathYear( final int ix ) {
+
+        return _deathDate[ix] == 0 ? Integer.MAX_VALUE : _deathDate[ix] / 10000;
+
+    }
+
+    private int date( final int year ) {
+
+        return year * 10000 + ( 1 + _random.nextInt( 12 ) ) * 100 + 1 + _random.nextInt( 28 );
+
+    }
+
+    private void shuffle( final int[] array, final int length ) {
+
+        for ( int ix = length - 1; ix > 0; ix -= 1 ) {
+
+            int jx = _random.nextInt( ix + 1 );
+            int tmp = array[ix];
+            array[ix] = array[jx];
+            array[jx] = tmp;
+
+        }
+
+    }
+
+    /**
+     Generate a population and write it to a file.
+     <p/>Usage: {@code WikiTreeGenealogyGenerator people seed file [profiles]}.
+     The file gets one record per line ({@link WikiTreeGenealogy#toRecord(int)}, or {@link WikiTreeGenealogy#toProfile(int)} if {@code profiles}
+     is specified) and is gzipped if its name ends with {@code ".gz"}.
+     */
+
+    public static void main( final String[] args )
+            throws IOException {
+
+        if ( args.length < 3 ) {
+
+            System.err.println( "usage: WikiTreeGenealogyGenerator people seed file [profiles]" );
+            System.exit( 1 );
+
+        }
+
+        int people = Integer.parseInt( args[0] );
+        long seed = Long.parseLong( args[1] );
+        Path path = Paths.get( args[2] );
+        boolean withRelatives = !( args.length > 3 && "profiles".equals( args[3] ) );
+
+        long start = System.nanoTime();
+        WikiTreeGenealogy genealogy = new WikiTreeGenealogyGenerator( people, seed ).generate();
+        long generated = System.nanoTime();
+        genealogy.writeJsonLines( path, withRelatives );
+        long written = System.nanoTime();
+
+        System.out.println(
+                "WikiTreeGenealogyGenerator:  " + genealogy + " generated in " + ( generated - start ) / 1000000L + "ms, written to " + path +
+                " in " + ( written - generated ) / 1000000L + "ms"
+        );
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeGenealogyGenerator( people=" + _people + ", seed=" + _seed + ", firstBirthYear=" + _firstBirthYear +
+               ", currentYear=" + _currentYear + ", communitySize=" + _communitySize + " )";
+
+    }
+
+}
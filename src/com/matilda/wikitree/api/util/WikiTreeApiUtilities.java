@@ -6,20 +6,28 @@ package com.matilda.wikitree.api.util;
 
 import com.matilda.wikitree.api.WikiTreeApiClient;
 import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.exceptions.WikiTreeHttpStatusException;
 import com.matilda.wikitree.api.exceptions.WikiTreeLoginRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiResponse;
 import com.matilda.wikitree.api.wrappers.WikiTreePersonProfile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -344,99 +352,340 @@ public class WikiTreeApiUtilities {
 
     public static final String JAVA_NEWLINE = String.format( "%n" );
 
+    /**
+     The size of the chunks that {@link #readFromConnection(boolean, StringBuilder, Reader)} reads.
+     */
+
+    public static final int READ_CHUNK_SIZE = 8192;
+
+    /**
+     The largest {@code Content-Length} that {@link #readBody(InputStream, long)} is willing to trust when sizing its buffer.
+     */
+
+    public static final int MAX_PRESIZED_BODY_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     Read and interpret the response to a request made via an {@link HttpURLConnection}.
+     <p/>See {@link #readResponse(WikiTreeApiResponse, boolean)} for more information.
+
+     @param connection         the connection.
+     @param expectSingleResult {@code true} if the response is expected to be an array containing exactly one JSON object.
+     @return the interpreted response.
+     @throws IOException    if something goes wrong reading the response.
+     @throws ParseException if the response is not valid JSON.
+     */
+
     @Nullable
     public static Object readResponse( final HttpURLConnection connection, @SuppressWarnings("SameParameterValue") final boolean expectSingleResult )
             throws IOException, ParseException {
 
-        StringBuilder sb = new StringBuilder();
         int httpResponseCode = connection.getResponseCode();
-        if (
-                httpResponseCode / 100 == 2
-                ||
-                httpResponseCode / 100 == 3
+        InputStream body = httpResponseCode / 100 == 2 || httpResponseCode / 100 == 3 ? connection.getInputStream() : connection.getErrorStream();
 
-                ) {
+        try (
+                WikiTreeApiResponse response = new WikiTreeApiResponse(
+                        connection.getURL(),
+                        httpResponseCode,
+                        connection.getHeaderFields(),
+                        body,
+                        connection.getContentLengthLong()
+                )
+        ) {
 
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader( connection.getInputStream(), "utf-8" )
-            );
+            return readResponse( response, expectSingleResult );
 
-            readFromConnection( false, sb, reader );
+        }
 
-            String responseString = sb.toString();
+    }
 
-            if ( responseString.isEmpty() ) {
+    /**
+     Read and interpret the response to a request sent to a WikiTree API server.
+     <p/>This is equivalent to {@code readResponse( response, expectSingleResult, false )}
+     (see {@link #readResponse(WikiTreeApiResponse, boolean, boolean)} for more information).
+
+     @param response           the response.
+     @param expectSingleResult {@code true} if the response is expected to be an array containing exactly one JSON object.
+     @return the interpreted response.
+     @throws IOException    if something goes wrong reading the response.
+     @throws ParseException if the response is not valid JSON.
+     */
 
-                return null;
+    @Nullable
+    public static Object readResponse( final @NotNull WikiTreeApiResponse response, final boolean expectSingleResult )
+            throws IOException, ParseException {
 
-            } else if ( responseString.startsWith( "[" ) ) {
+        return readResponse( response, expectSingleResult, false );
 
-                JSONArray arrayResponse = parseJsonArray( responseString );
+    }
 
-                if ( expectSingleResult ) {
+    /**
+     Read and interpret the response to a request sent to a WikiTree API server.
+     <p/>The body of the response is always read right to the end and closed (this allows the transport to reuse the underlying connection).
+     <p/>If {@code streaming} is {@code false} then the body is read into a {@link String} which is then parsed.
+     If {@code streaming} is {@code true} then the body is parsed as it is read (see {@link #parseBody(InputStream)}).
+     The result is the same either way but a streamed response never exists as one big string so
+     the memory needed to deal with a large response is more or less just the memory needed for the resulting JSON objects.
+
+     @param response           the response.
+     @param expectSingleResult {@code true} if the response is expected to be an array containing exactly one JSON object.
+     @param streaming          {@code true} if the body should be parsed as it is read; {@code false} if it should be read in its entirety first.
+     @return {@code null} if the response was empty,
+     the single {@link JSONObject} if {@code expectSingleResult} is true,
+     a {@link JSONArray} or a {@link JSONObject} if the response was a JSON array or object,
+     or the response itself as a {@link String} if it was something else.
+     @throws WikiTreeHttpStatusException if the server's status code says that the request failed (the body is read and discarded first).
+     @throws IOException                 if something goes wrong reading the response.
+     @throws ParseException              if the response is not valid JSON.
+     */
 
-                    if ( arrayResponse.size() == 1 ) {
+    @Nullable
+    public static Object readResponse( final @NotNull WikiTreeApiResponse response, final boolean expectSingleResult, final boolean streaming )
+            throws IOException, ParseException {
 
-                        Object singleResult = arrayResponse.get( 0 );
-                        if ( singleResult == null ) {
+        int httpResponseCode = response.getStatusCode();
+        InputStream body = response.getBody();
+        if ( response.isSuccessful() ) {
 
-                            return null;
+            Object parsedResponse;
+            if ( body == null ) {
 
-                        } else if ( singleResult instanceof JSONObject ) {
+                parsedResponse = null;
 
-                            return singleResult;
+            } else if ( streaming ) {
 
-                        } else {
+                parsedResponse = parseBody( body );
 
-                            throw new ReallyBadNewsError( "caller expected a single JSONObject result; got a single " +
-                                                          singleResult.getClass().getCanonicalName() +
-                                                          " instead" );
+            } else {
 
-                        }
+                String responseString = readBody( body, response.getContentLength() );
 
-                    } else {
+                if ( responseString.isEmpty() ) {
 
-                        System.err.println( "caller expected a single JSONObject result; got " +
-                                            arrayResponse.size() +
-                                            " things instead; here they are . . ." );
-                        int ix = 0;
-                        for ( Object obj : arrayResponse ) {
+                    parsedResponse = null;
 
-                            System.out.println( "result[" + ix + "] = " + obj );
-                            ix += 1;
+                } else if ( responseString.startsWith( "[" ) ) {
 
-                        }
+                    parsedResponse = parseJsonArray( responseString );
 
-                        throw new ReallyBadNewsError( "caller expected a single JSONObject result; got " + arrayResponse.size() + " things instead" );
+                } else if ( responseString.startsWith( "{" ) ) {
 
-                    }
+                    parsedResponse = parseJsonObject( responseString );
 
                 } else {
 
-                    return arrayResponse;
+                    parsedResponse = responseString;
 
                 }
 
-            } else if ( responseString.startsWith( "{" ) ) {
+            }
+
+            return unwrapResponse( parsedResponse, expectSingleResult );
+
+        } else {
+
+            // Read and discard whatever the server sent back so that the transport can reuse the underlying connection.
 
-                @SuppressWarnings("UnnecessaryLocalVariable")
-                JSONObject objectResponse = parseJsonObject( responseString );
+            if ( body != null ) {
 
-                return objectResponse;
+                drainBody( body );
+
+            }
+
+            throw new WikiTreeHttpStatusException(
+                    "WikiTreeApiUtilities.readResponse:  request to " + response.getUrl().getHost() + " failed (got statusCode=" + httpResponseCode + ")",
+                    httpResponseCode
+            );
+
+        }
+    }
+
+    /**
+     Dig the single result out of a response if that's what the caller is expecting.
+
+     @param parsedResponse     the parsed response.
+     @param expectSingleResult {@code true} if the response is expected to be an array containing exactly one JSON object.
+     @return the single result if {@code expectSingleResult} is {@code true} and the response is an array; the response itself otherwise.
+     */
+
+    @Nullable
+    public static Object unwrapResponse( @Nullable final Object parsedResponse, final boolean expectSingleResult ) {
+
+        if ( expectSingleResult && parsedResponse instanceof JSONArray ) {
+
+            JSONArray arrayResponse = (JSONArray)parsedResponse;
+
+            if ( arrayResponse.size() == 1 ) {
+
+                Object singleResult = arrayResponse.get( 0 );
+                if ( singleResult == null ) {
+
+                    return null;
+
+                } else if ( singleResult instanceof JSONObject ) {
+
+                    return singleResult;
+
+                } else {
+
+                    throw new ReallyBadNewsError( "caller expected a single JSONObject result; got a single " +
+                                                  singleResult.getClass().getCanonicalName() +
+                                                  " instead" );
+
+                }
 
             } else {
 
-                return responseString;
+                System.err.println( "caller expected a single JSONObject result; got " +
+                                    arrayResponse.size() +
+                                    " things instead; here they are . . ." );
+                int ix = 0;
+                for ( Object obj : arrayResponse ) {
+
+                    System.out.println( "result[" + ix + "] = " + obj );
+                    ix += 1;
+
+                }
+
+                throw new ReallyBadNewsError( "caller expected a single JSONObject result; got " + arrayResponse.size() + " things instead" );
 
             }
 
         } else {
 
-            System.err.println( "request failed:  " + httpResponseCode );
+            return parsedResponse;
 
-            return httpResponseCode;
+        }
+
+    }
+
+    /**
+     Parse the body of a response as it is read and then close it.
+     <p/>The first non-whitespace character decides what happens.
+     If it is an opening square bracket or an opening curly brace then the body is handed directly to a {@link JSONParser} which reads it
+     through its own modest buffer (the body never exists in its entirety as a {@link String}).
+     If it is anything else then the body is returned as a {@code String}.
+
+     @param body the body.
+     @return {@code null} if the body is empty or contains nothing but whitespace,
+     the resulting {@link JSONArray} or {@link JSONObject} if the body is a JSON array or object,
+     or the body itself as a {@code String} if it's something else.
+     @throws IOException    if something goes wrong reading the body.
+     @throws ParseException if the body is not valid JSON.
+     */
+
+    @Nullable
+    public static Object parseBody( final @NotNull InputStream body )
+            throws IOException, ParseException {
+
+        try ( PushbackReader reader = new PushbackReader( new InputStreamReader( body, StandardCharsets.UTF_8 ), 1 ) ) {
+
+            int ch;
+            do {
+
+                ch = reader.read();
+
+            } while ( ch != -1 && Character.isWhitespace( ch ) );
+
+            if ( ch == -1 ) {
+
+                return null;
+
+            }
+
+            reader.unread( ch );
+
+            if ( ch == '[' || ch == '{' ) {
+
+                WikiTreeParserPool pool = WikiTreeParserPool.getDefaultPool();
+                JSONParser parser = pool.acquire();
+                try {
+
+                    return parser.parse( reader );
+
+                } finally {
+
+                    pool.release( parser );
+
+                }
+
+            } else {
+
+                StringBuilder sb = new StringBuilder();
+                readFromConnection( false, sb, reader );
+
+                return sb.toString();
+
+            }
+
+        }
+
+    }
+
+    /**
+     Parse the body of a response as it is read, reporting what is found to a {@link ContentHandler}, and then close it.
+     <p/>This is {@link #parseBody(InputStream)} without the resulting JSON objects.
+     The handler sees the parser's events as the body is lexed so nothing bigger than the values that the handler itself decides to keep is ever built.
+     If the body is something other than a JSON array or object then the handler sees the body as a single {@code String} primitive.
+     <p/>If the handler stops the parse early then the rest of the body is read and discarded so that the transport can reuse the underlying connection.
+
+     @param body    the body.
+     @param handler the handler.
+     @return {@code true} if the handler was given anything; {@code false} if the body is empty or contains nothing but whitespace.
+     @throws IOException    if something goes wrong reading the body (or the handler throws an {@code IOException}).
+     @throws ParseException if the body is not valid JSON (or the handler throws a {@code ParseException}).
+     */
+
+    public static boolean parseBody( final @NotNull InputStream body, final @NotNull ContentHandler handler )
+            throws IOException, ParseException {
+
+        try ( PushbackReader reader = new PushbackReader( new InputStreamReader( body, StandardCharsets.UTF_8 ), 1 ) ) {
+
+            int ch;
+            do {
+
+                ch = reader.read();
+
+            } while ( ch != -1 && Character.isWhitespace( ch ) );
+
+            if ( ch == -1 ) {
+
+                return false;
+
+            }
+
+            reader.unread( ch );
+
+            if ( ch == '[' || ch == '{' ) {
+
+                WikiTreeParserPool pool = WikiTreeParserPool.getDefaultPool();
+                JSONParser parser = pool.acquire();
+                try {
+
+                    parser.parse( reader, handler );
+
+                } finally {
+
+                    pool.release( parser );
+
+                }
+
+            } else {
+
+                StringBuilder sb = new StringBuilder();
+                readFromConnection( false, sb, reader );
+
+                handler.startJSON();
+                handler.primitive( sb.toString() );
+                handler.endJSON();
+
+            }
+
+            drainBody( body );
+
+            return true;
 
         }
+
     }
 
     public static String cleanupStringDate( final Object stringDateObj ) {
@@ -1153,16 +1402,17 @@ public class WikiTreeApiUtilities {
 
         try {
 
+            char[] chunk = new char[READ_CHUNK_SIZE];
             while ( true ) {
 
-                int ch = reader.read();
-                if ( ch == -1 ) {
+                int count = reader.read( chunk );
+                if ( count == -1 ) {
 
                     break;
 
                 }
 
-                sb.append( (char)ch );
+                sb.append( chunk, 0, count );
                 if ( server ) {
 
                     System.out.println( "server so far:  " + sb );
@@ -1179,6 +1429,150 @@ public class WikiTreeApiUtilities {
 
     }
 
+    /**
+     Read the body of a response right to the end, decode it as UTF-8, and close it.
+     <p/>The body is read in large chunks into a buffer borrowed from {@link WikiTreeBufferPool#getDefaultPool()}.
+     If the server told us how long the body is then the buffer is big enough to hold the whole thing from the start.
+     Either way, the only allocation that survives this method is the resulting {@link String}.
+
+     @param body          the body.
+     @param contentLength the length of the body according to the server or {@code -1} if the server didn't say.
+     @return the body as a string.
+     @throws IOException if something goes wrong reading the body.
+     */
+
+    @NotNull
+    public static String readBody( final @NotNull InputStream body, final long contentLength )
+            throws IOException {
+
+        return readBody( body, contentLength, ( buffer, length ) -> new String( buffer, 0, length, StandardCharsets.UTF_8 ) );
+
+    }
+
+    /**
+     Read the body of a response right to the end and close it.
+     <p/>This works just like {@link #readBody(InputStream, long)} except that the body is returned as is (no decoding).
+
+     @param body          the body.
+     @param contentLength the length of the body according to the server or {@code -1} if the server didn't say.
+     @return the body's bytes.
+     @throws IOException if something goes wrong reading the body.
+     */
+
+    @NotNull
+    public static byte[] readBodyBytes( final @NotNull InputStream body, final long contentLength )
+            throws IOException {
+
+        return readBody( body, contentLength, ( buffer, length ) -> Arrays.copyOf( buffer, length ) );
+
+    }
+
+    /**
+     Turns the contents of a partially filled buffer into whatever the caller of {@link #readBody(InputStream, long, BodyConverter)} wants.
+     */
+
+    private interface BodyConverter<T> {
+
+        T convert( byte[] buffer, int length );
+
+    }
+
+    @NotNull
+    private static <T> T readBody( final @NotNull InputStream body, final long contentLength, final @NotNull BodyConverter<T> converter )
+            throws IOException {
+
+        WikiTreeBufferPool pool = WikiTreeBufferPool.getDefaultPool();
+
+        // Don't believe absurd content lengths (we'd rather grow the buffer as the data actually arrives).
+
+        int initialSize = contentLength >= 0 && contentLength <= MAX_PRESIZED_BODY_LENGTH
+                ?
+                (int)contentLength
+                :
+                WikiTreeBufferPool.DEFAULT_BUFFER_SIZE;
+        byte[] buffer = pool.acquire( initialSize );
+
+        try {
+
+            int length = 0;
+            while ( true ) {
+
+                if ( length == buffer.length ) {
+
+                    // The buffer is full. Before we go to the trouble of growing it, see if we're done
+                    // (this is the normal case when the content length was accurate).
+
+                    int nextByte = body.read();
+                    if ( nextByte == -1 ) {
+
+                        break;
+
+                    }
+
+                    byte[] biggerBuffer = pool.acquire( buffer.length * 2 );
+                    System.arraycopy( buffer, 0, biggerBuffer, 0, length );
+                    pool.release( buffer );
+                    buffer = biggerBuffer;
+
+                    buffer[length] = (byte)nextByte;
+                    length += 1;
+
+                }
+
+                int count = body.read( buffer, length, buffer.length - length );
+                if ( count == -1 ) {
+
+                    break;
+
+                }
+
+                length += count;
+
+            }
+
+            return converter.convert( buffer, length );
+
+        } finally {
+
+            pool.release( buffer );
+            body.close();
+
+        }
+
+    }
+
+    /**
+     Read and discard the body of a response and then close it.
+     <p/>This allows the transport to reuse the underlying connection.
+
+     @param body the body.
+     @throws IOException if something goes wrong reading the body.
+     */
+
+    public static void drainBody( final @NotNull InputStream body )
+            throws IOException {
+
+        WikiTreeBufferPool pool = WikiTreeBufferPool.getDefaultPool();
+        byte[] buffer = pool.acquire( WikiTreeBufferPool.DEFAULT_BUFFER_SIZE );
+
+        try {
+
+            //noinspection StatementWithEmptyBody
+            while ( body.read( buffer ) != -1 ) {
+
+                // Keep going.
+
+            }
+
+        } finally {
+
+            pool.release( buffer );
+            body.close();
+
+        }
+
+    }
+
     /**
      Parse a string representing a Json array.
      <p/>The string <b><u>must</u></b> start with an opening square bracket ('['). No leading white space is allowed.
@@ -1191,10 +1585,8 @@ public class WikiTreeApiUtilities {
     public static JSONArray parseJsonArray( final String jsonArrayString )
             throws ParseException {
 
-        JSONParser jp = new JSONParser();
-
-        Object parsedObject = jp.parse( jsonArrayString.trim() );
-        final JSONArray parsedArray = (JSONArray)parsedObject;
+        @SuppressWarnings("UnnecessaryLocalVariable")
+        final JSONArray parsedArray = (JSONArray)parseJsonString( jsonArrayString.trim() );
 
         return parsedArray;
 
@@ -1212,15 +1604,38 @@ public class WikiTreeApiUtilities {
     public static JSONObject parseJsonObject( final String jsonObjectString )
             throws ParseException {
 
-        JSONParser jp = new JSONParser();
-
-        Object parsedObject = jp.parse( jsonObjectString );
-        final JSONObject jsonObject = (JSONObject)parsedObject;
+        @SuppressWarnings("UnnecessaryLocalVariable")
+        final JSONObject jsonObject = (JSONObject)parseJsonString( jsonObjectString );
 
         return jsonObject;
 
     }
 
+    /**
+     Parse a string using a parser borrowed from {@link WikiTreeParserPool#getDefaultPool()}.
+
+     @param jsonString the string.
+     @return the resulting object.
+     @throws ParseException if something goes wrong parsing the string.
+     */
+
+    private static Object parseJsonString( final String jsonString )
+            throws ParseException {
+
+        WikiTreeParserPool pool = WikiTreeParserPool.getDefaultPool();
+        JSONParser jp = pool.acquire();
+        try {
+
+            return jp.parse( jsonString );
+
+        } finally {
+
+            pool.release( jp );
+
+        }
+
+    }
+
     /**
      Try to turn this into an authenticated client instance if the name of a WikiTree user info file was provided to us.
      <p/>A WikiTree user info file must satisfy all of these requirements:
@@ -1559,6 +1974,65 @@ public class WikiTreeApiUtilities {
 
     }
 
+    /**
+     Create an executor which runs each task in its own (new) thread.
+     <p/>If this JVM supports virtual threads (Java 21 or later) then each task gets a virtual thread. This makes it perfectly reasonable
+     to have thousands of tasks sitting around waiting for responses from the WikiTree API server.
+     Otherwise, each task gets a daemon platform thread from a cached pool (callers should limit how many tasks they have running at once).
+     <p/>The virtual thread executor is located via reflection so that this class still compiles and runs on older JVMs.
+
+     @param threadName the name given to the platform threads if virtual threads are not available.
+     @return the executor. The caller is responsible for shutting it down.
+     */
+
+    @NotNull
+    public static ExecutorService newPerTaskExecutor( final @NotNull String threadName ) {
+
+        try {
+
+            Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return (ExecutorService)method.invoke( null );
+
+        } catch ( NoSuchMethodException | IllegalAccessException | InvocationTargetException e ) {
+
+            return Executors.newCachedThreadPool(
+                    runnable -> {
+
+                        Thread thread = new Thread( runnable, threadName );
+                        thread.setDaemon( true );
+
+                        return thread;
+
+                    }
+            );
+
+        }
+
+    }
+
+    /**
+     Determine if this JVM supports virtual threads.
+
+     @return {@code true} if {@link #newPerTaskExecutor(String)} gives each task a virtual thread; {@code false} otherwise.
+     */
+
+    public static boolean hasVirtualThreads() {
+
+        try {
+
+            Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+
+            return true;
+
+        } catch ( NoSuchMethodException e ) {
+
+            return false;
+
+        }
+
+    }
+
     /**
      Intended to be used to provide a place to put a breakpoint.
      */
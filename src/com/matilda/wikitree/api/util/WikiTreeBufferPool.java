@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A pool of byte arrays used to read responses from the WikiTree API server.
+ <p/>Reading a response into a freshly allocated (and repeatedly grown) buffer generates a surprising amount of garbage.
+ Borrowing a buffer from here instead means that, once things have warmed up, reading a response allocates little more than the resulting {@link String}.
+ <p/>The pool is shared by all threads (a {@link ThreadLocal} buffer would be useless when each request runs on its own virtual thread).
+ It holds on to at most {@link #getMaxRetainedBuffers()} buffers and never holds on to a buffer larger than {@link #getMaxRetainedBufferSize()} bytes
+ so that one enormous response does not pin a huge array forever.
+ <p/>The buffers are kept in size classes (powers of two times {@link #DEFAULT_BUFFER_SIZE}) so that a caller who needs a big buffer finds one
+ even if the most recently returned buffer is a small one (and so that a caller who needs a small buffer doesn't walk off with a big one
+ while there are small ones to be had).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeBufferPool {
+
+    /**
+     The size of the buffers handed out when the caller has no idea how big a buffer they need.
+     */
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     The largest buffer that the default pool holds on to.
+     */
+
+    public static final int DEFAULT_MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     The most buffers that the default pool holds on to.
+     */
+
+    public static final int DEFAULT_MAX_RETAINED_BUFFERS = 32;
+
+    private static final WikiTreeBufferPool s_defaultPool = new WikiTreeBufferPool( DEFAULT_MAX_RETAINED_BUFFERS, DEFAULT_MAX_RETAINED_BUFFER_SIZE );
+
+    private final int _maxRetainedBuffers;
+
+    private final int _maxRetainedBufferSize;
+
+    /**
+     The retained buffers. Every buffer in {@code _sizeClasses[ix]} is at least {@code DEFAULT_BUFFER_SIZE << ix} bytes long
+     and shorter than {@code DEFAULT_BUFFER_SIZE << ( ix + 1 )} bytes (except that the last size class also holds anything bigger).
+     */
+
+    private final Deque<byte[]>[] _sizeClasses;
+
+    private final AtomicInteger _retainedBuffers = new AtomicInteger( 0 );
+
+    private final AtomicLong _reusedBuffers = new AtomicLong( 0L );
+
+    private final AtomicLong _allocatedBuffers = new AtomicLong( 0L );
+
+    /**
+     Create a pool.
+
+     @param maxRetainedBuffers    the most buffers that the pool should hold on to.
+     @param maxRetainedBufferSize the largest buffer that the pool should hold on to.
+     @throws IllegalArgumentException if either parameter is negative.
+     */
+
+    public WikiTreeBufferPool( final int maxRetainedBuffers, final int maxRetainedBufferSize ) {
+
+        super();
+
+        if ( maxRetainedBuffers < 0 || maxRetainedBufferSize < 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeBufferPool:  limits must not be negative " +
+                    "(got maxRetainedBuffers=" + maxRetainedBuffers + ", maxRetainedBufferSize=" + maxRetainedBufferSize + ")"
+            );
+
+        }
+
+        _maxRetainedBuffers = maxRetainedBuffers;
+        _maxRetainedBufferSize = maxRetainedBufferSize;
+
+        int sizeClasses = 0;
+        while ( (long)DEFAULT_BUFFER_SIZE << sizeClasses <= maxRetainedBufferSize ) {
+
+            sizeClasses += 1;
+
+        }
+
+        @SuppressWarnings("unchecked")
+        Deque<byte[]>[] deques = new Deque[sizeClasses];
+        for ( int ix = 0; ix < sizeClasses; ix += 1 ) {
+
+            deques[ix] = new ConcurrentLinkedDeque<>();
+
+        }
+
+        _sizeClasses = deques;
+
+    }
+
+    /**
+     Get the pool used by {@link WikiTreeApiUtilities} to read responses.
+
+     @return the default pool.
+     */
+
+    @NotNull
+    public static WikiTreeBufferPool getDefaultPool() {
+
+        return s_defaultPool;
+
+    }
+
+    /**
+     Borrow a buffer.
+     <p/>The buffer's contents are whatever the previous borrower left in it.
+     <p/>A buffer from the smallest size class whose buffers are all big enough is preferred to a buffer from a bigger size class.
+     A new buffer is rounded up to the size of its size class so that it can be handed out to anyone who wants a buffer that big once it comes back.
+
+     @param minSize the smallest acceptable buffer size.
+     @return a buffer at least {@code minSize} bytes long. Please give it back via {@link #release(byte[])} when you're done with it.
+     */
+
+    @NotNull
+    public byte[] acquire( final int minSize ) {
+
+        int sizeClass = getSizeClass( minSize );
+        if ( sizeClass < _sizeClasses.length ) {
+
+            for ( int ix = sizeClass; ix < _sizeClasses.length; ix += 1 ) {
+
+                byte[] buffer = _sizeClasses[ix].pollFirst();
+                if ( buffer != null ) {
+
+                    _retainedBuffers.decrementAndGet();
+                    _reusedBuffers.incrementAndGet();
+
+                    return buffer;
+
+                }
+
+            }
+
+            _allocatedBuffers.incrementAndGet();
+
+            return new byte[DEFAULT_BUFFER_SIZE << sizeClass];
+
+        }
+
+        // Bigger than any size class.
+
+        _allocatedBuffers.incrementAndGet();
+
+        return new byte[minSize];
+
+    }
+
+    /**
+     Get the size class that a buffer of a specified size belongs in when it is handed out.
+
+     @param size the size of the buffer.
+     @return the index of the smallest size class whose buffers are all at least {@code size} bytes long
+     (the number of size classes if no size class is big enough).
+     */
+
+    private int getSizeClass( final int size ) {
+
+        int sizeClass = 0;
+        while ( sizeClass < _sizeClasses.length && DEFAULT_BUFFER_SIZE << sizeClass < size ) {
+
+            sizeClass += 1;
+
+        }
+
+        return sizeClass;
+
+    }
+
+    /**
+     Give a buffer back.
+     <p/>The caller must not use the buffer after giving it back.
+     Buffers smaller than {@link #DEFAULT_BUFFER_SIZE} bytes are not worth holding on to.
+
+     @param buffer the buffer (which need not have come from this pool).
+     */
+
+    public void release( final @NotNull byte[] buffer ) {
+
+        if ( buffer.length > _maxRetainedBufferSize || buffer.length < DEFAULT_BUFFER_SIZE ) {
+
+            return;
+
+        }
+
+        // The biggest size class whose buffers are all no bigger than this one.
+
+        int sizeClass = 0;
+        while ( sizeClass + 1 < _sizeClasses.length && DEFAULT_BUFFER_SIZE << ( sizeClass + 1 ) <= buffer.length ) {
+
+            sizeClass += 1;
+
+        }
+
+        if ( _retainedBuffers.incrementAndGet() <= _maxRetainedBuffers ) {
+
+            _sizeClasses[sizeClass].offerFirst( buffer );
+
+        } else {
+
+            _retainedBuffers.decrementAndGet();
+
+        }
+
+    }
+
+    /**
+     Get the most buffers that this pool holds on to.
+
+     @return the most buffers that this pool holds on to.
+     */
+
+    public int getMaxRetainedBuffers() {
+
+        return _maxRetainedBuffers;
+
+    }
+
+    /**
+     Get the largest buffer that this pool holds on to.
+
+     @return the largest buffer that this pool holds on to.
+     */
+
+    public int getMaxRetainedBufferSize() {
+
+        return _maxRetainedBufferSize;
+
+    }
+
+    /**
+     Get the number of times that {@link #acquire(int)} has handed out a buffer that it was holding on to.
+
+     @return the number of reused buffers.
+     */
+
+    public long getReusedBuffers() {
+
+        return _reusedBuffers.get();
+
+    }
+
+    /**
+     Get the number of times that {@link #acquire(int)} has had to allocate a new buffer.
+
+     @return the number of allocated buffers.
+     */
+
+    public long getAllocatedBuffers() {
+
+        return _allocatedBuffers.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeBufferPool( " +
+               "retained=" + _retainedBuffers.get() + ", " +
+               "reused=" + getReusedBuffers() + ", " +
+               "allocated=" + getAllocatedBuffers() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ A histogram of non-negative values (typically latencies in microseconds) with a fixed relative precision.
+ <p/>Like an HDR histogram, values are counted in buckets whose width grows with the size of the value.
+ Values below {@value #SUB_BUCKETS} get a bucket each. Above that, each power of two is split into {@value #SUB_BUCKETS} equal buckets.
+ This means that a percentile is never off by more than about three percent of its value while the histogram
+ covers every possible {@code long} value in a fixed {@value #BUCKETS} buckets (15KB) without any configuration.
+ <p/>Recording a value is a couple of shifts and an atomic increment (there are no locks). Reading percentiles while values are being
+ recorded is allowed; the answer reflects some (but not necessarily all) of the values being recorded at the time.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     The number of buckets that each power of two is split into.
+     */
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     The total number of buckets.
+     */
+
+    public static final int BUCKETS = ( 64 - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray( BUCKETS );
+
+    private final AtomicLong _count = new AtomicLong( 0L );
+
+    private final AtomicLong _sum = new AtomicLong( 0L );
+
+    private final AtomicLong _max = new AtomicLong( 0L );
+
+    /**
+     Create an empty histogram.
+     */
+
+    public WikiTreeLatencyHistogram() {
+
+        super();
+
+    }
+
+    /**
+     Record a value.
+
+     @param value the value (negative values are recorded as zero).
+     */
+
+    public void record( final long value ) {
+
+        long v = Math.max( 0L, value );
+
+        _counts.incrementAndGet( getBucket( v ) );
+        _count.incrementAndGet();
+        _sum.addAndGet( v );
+        _max.accumulateAndGet( v, Math::max );
+
+    }
+
+    /**
+     Get the number of values recorded.
+
+     @return the number of values recorded.
+     */
+
+    public long getCount() {
+
+        return _count.get();
+
+    }
+
+    /**
+     Get the largest value recorded.
+
+     @return the largest value recorded (exactly) or {@code 0} if no values have been recorded.
+     */
+
+    public long getMax() {
+
+        return _max.get();
+
+    }
+
+    /**
+     Get the mean of the values recorded.
+
+     @return the mean of the values recorded (exactly) or {@code 0} if no values have been recorded.
+     */
+
+    public double getMean() {
+
+        long count = _count.get();
+
+        return count == 0L ? 0.0 : (double)_sum.get() / count;
+
+    }
+
+    /**
+     Get the value at a specified percentile.
+
+     @param percentile the percentile as a fraction (for example, {@code 0.99} for the 99th percentile).
+     @return the largest value which falls in the same bucket as the value at the percentile or {@code 0} if no values have been recorded.
+     @throws IllegalArgumentException if {@code percentile} is not between {@code 0} and {@code 1}.
+     */
+
+    public long getValueAtPercentile( final double percentile ) {
+
+        if ( !( percentile >= 0.0 && percentile <= 1.0 ) ) {
+
+            throw new IllegalArgumentException( "WikiTreeLatencyHistogram.getValueAtPercentile:  invalid percentile (got " + percentile + ")" );
+
+        }
+
+        long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for ( int ix = 0; ix < BUCKETS; ix += 1 ) {
+
+            counts[ix] = _counts.get( ix );
+            total += counts[ix];
+
+        }
+
+        if ( total == 0L ) {
+
+            return 0L;
+
+        }
+
+        long rank = Math.max( 1L, (long)Math.ceil( percentile * total ) );
+        long seen = 0L;
+        for ( int ix = 0; ix < BUCKETS; ix += 1 ) {
+
+            seen += counts[ix];
+            if ( seen >= rank ) {
+
+                return Math.min( getBucketMax( ix ), getMax() );
+
+            }
+
+        }
+
+        return getMax();
+
+    }
+
+    /**
+     Forget every value recorded so far.
+     <p/>Values recorded while this method is running may or may not be forgotten.
+     */
+
+    public void reset() {
+
+        for ( int ix = 0; ix < BUCKETS; ix += 1 ) {
+
+            _counts.set( ix, 0L );
+
+        }
+
+        _count.set( 0L );
+        _sum.set( 0L );
+        _max.set( 0L );
+
+    }
+
+    private static int getBucket( final long value ) {
+
+        if ( value < SUB_BUCKETS ) {
+
+            return (int)value;
+
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+
+        return ( shift + 1 ) * SUB_BUCKETS + (int)( ( value >>> shift ) - SUB_BUCKETS );
+
+    }
+
+    private static long getBucketMax( final int bucket ) {
+
+        if ( bucket < SUB_BUCKETS ) {
+
+            return bucket;
+
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+
+        long bucketMax = ( ( subBucket + 1L ) << shift ) - 1L;
+
+        // The top bucket's upper bound doesn't fit in a long.
+
+        return bucketMax < 0L ? Long.MAX_VALUE : bucketMax;
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeLatencyHistogram( " +
+               "count=" + getCount() + ", " +
+               "mean=" + getMean() + ", " +
+               "max=" + getMax() +
+               " )";
+
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.parser.JSONParser;
+
+import java.io.Reader;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A pool of {@link JSONParser} instances used to parse responses from the WikiTree API server.
+ <p/>Every {@code JSONParser} comes with its own lexer and every lexer comes with a 16K character lookahead buffer (32KB of heap).
+ That's more than most {@code getProfile} responses. Creating a new parser for each response means that parsing a stream of small responses
+ allocates far more for the parser than for the parsed result.
+ Borrowing a parser from here instead means that the lexer and its buffers get reused.
+ <p/>Like {@link WikiTreeBufferPool}, the pool is shared by all threads (a {@link ThreadLocal} parser would be useless when each request runs on its own virtual thread).
+ It holds on to at most {@link #getMaxRetainedParsers()} parsers.
+ A parser is only ever used by one thread at a time - the thread which borrowed it.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeParserPool {
+
+    /**
+     The most parsers that the default pool holds on to.
+     */
+
+    public static final int DEFAULT_MAX_RETAINED_PARSERS = 32;
+
+    private static final WikiTreeParserPool s_defaultPool = new WikiTreeParserPool( DEFAULT_MAX_RETAINED_PARSERS );
+
+    private final int _maxRetainedParsers;
+
+    private final Deque<JSONParser> _parsers = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger _retainedParsers = new AtomicInteger( 0 );
+
+    private final AtomicLong _reusedParsers = new AtomicLong( 0L );
+
+    private final AtomicLong _allocatedParsers = new AtomicLong( 0L );
+
+    /**
+     Create a pool.
+
+     @param maxRetainedParsers the most parsers that the pool should hold on to.
+     @throws IllegalArgumentException if {@code maxRetainedParsers} is negative.
+     */
+
+    public WikiTreeParserPool( final int maxRetainedParsers ) {
+
+        super();
+
+        if ( maxRetainedParsers < 0 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeParserPool:  limit must not be negative (got maxRetainedParsers=" + maxRetainedParsers + ")"
+            );
+
+        }
+
+        _maxRetainedParsers = maxRetainedParsers;
+
+    }
+
+    /**
+     Get the pool used by {@link WikiTreeApiUtilities} to parse responses.
+
+     @return the default pool.
+     */
+
+    @NotNull
+    public static WikiTreeParserPool getDefaultPool() {
+
+        return s_defaultPool;
+
+    }
+
+    /**
+     Borrow a parser.
+     <p/>The parser is ready to go ({@link JSONParser}'s {@code parse} methods all start by resetting the parser anyways).
+
+     @return a parser. Please give it back via {@link #release(JSONParser)} when you're done with it.
+     */
+
+    @NotNull
+    public JSONParser acquire() {
+
+        JSONParser parser = _parsers.pollFirst();
+        if ( parser != null ) {
+
+            _retainedParsers.decrementAndGet();
+            _reusedParsers.incrementAndGet();
+
+            return parser;
+
+        }
+
+        _allocatedParsers.incrementAndGet();
+
+        return new JSONParser();
+
+    }
+
+    /**
+     Give a parser back.
+     <p/>The caller must not use the parser after giving it back.
+     It is fine to give back a parser whose last parse failed.
+
+     @param parser the parser (which need not have come from this pool).
+     */
+
+    public void release( final @NotNull JSONParser parser ) {
+
+        // Let go of whatever the parser was reading (this also discards the lexer's buffer if a huge token made it grow).
+
+        parser.reset( (Reader)null );
+
+        if ( _retainedParsers.incrementAndGet() <= _maxRetainedParsers ) {
+
+            _parsers.offerFirst( parser );
+
+        } else {
+
+            _retainedParsers.decrementAndGet();
+
+        }
+
+    }
+
+    /**
+     Get the most parsers that this pool holds on to.
+
+     @return the most parsers that this pool holds on to.
+     */
+
+    public int getMaxRetainedParsers() {
+
+        return _maxRetainedParsers;
+
+    }
+
+    /**
+     Get the number of times that {@link #acquire()} has handed out a parser that it was holding on to.
+
+     @return the number of reused parsers.
+     */
+
+    public long getReusedParsers() {
+
+        return _reusedParsers.get();
+
+    }
+
+    /**
+     Get the number of times that {@link #acquire()} has had to create a new parser.
+
+     @return the number of allocated parsers.
+     */
+
+    public long getAllocatedParsers() {
+
+        return _allocatedParsers.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeParserPool( " +
+               "retained=" + _retainedParsers.get() + ", " +
+               "reused=" + getReusedParsers() + ", " +
+               "allocated=" + getAllocatedParsers() +
+               " )";
+
+    }
+
+}
@@ -72,6 +72,8 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
 
         super( resultObject );
 
+        WikiTreeWrapperEvent event = new WikiTreeWrapperEvent();
+
         _requestKey = key;
         _requestDepth = depth;
         boolean resultKeyIsId;
@@ -96,7 +98,13 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
         _resultAncestors = new Vector<>();
         for ( Object ancestorObject : resultAncestors ) {
 
-            if ( ancestorObject instanceof JSONObject ) {
+            if ( ancestorObject instanceof WikiTreePersonProfile ) {
+
+                // Bound directly from the parser's events (see WikiTreeProfileBinder).
+
+                _resultAncestors.add( (WikiTreePersonProfile)ancestorObject );
+
+            } else if ( ancestorObject instanceof JSONObject ) {
 
                 WikiTreePersonProfile ancestorProfile = new WikiTreePersonProfile(
                         WikiTreeRequestType.UNKNOWN,
@@ -174,6 +182,8 @@ public class WikiTreeAncestors extends WikiTreeWrapper {
 
         _ancestralTree = buildAncestralTree( _basePersonProfile, lineage );
 
+        event.finish( this, key, _resultAncestors.size() );
+
     }
 
     private void rememberParent(
@@ -0,0 +1,687 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A bounded cache of the {@link WikiTreeAncestors} fetched by one or more {@link WikiTreeApiWrappersSession} instances.
+ <p/>A {@code getAncestors} result is a lot more useful than it looks.
+ A depth 10 result for someone contains everything that a depth 3 through 9 result for the same person would contain.
+ It also contains the depth {@code 10 - k} ancestry of each of the ancestors in generation {@code k}
+ (the base person is in generation 0, their parents are in generation 1 and so on).
+ A session which has been given a cache via {@link WikiTreeApiWrappersSession#setAncestorsCache(WikiTreeAncestorsCache)}
+ answers a {@code getAncestors} request from any cached result which contains everything that the request would get back from the WikiTree API server.
+ The answer is built by slicing the relevant part out of the cached result.
+ <p/>A slice is a new {@code WikiTreeAncestors} instance built from copies of the cached profiles
+ (building an ancestral tree changes the profiles involved so sharing them would make a mess of the cached result's tree).
+ A request which matches a cached result exactly (same person, same depth) gets the cached result itself. Please don't modify it.
+ <p/>Each cached result lives for at most {@link #getTimeToLiveMillis()} milliseconds after it was added.
+ When the cache holds {@link #getMaxEntries()} results, adding another one evicts the least recently used result.
+ <p/>Cached results are tagged with the visibility scope of the session that fetched them just like a {@link WikiTreeProfileCache}'s entries are
+ (see {@link WikiTreeProfileCache} for more information).
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeAncestorsCache {
+
+    /**
+     The most results that a cache created via {@link #WikiTreeAncestorsCache()} holds on to.
+     */
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    /**
+     How long results live in a cache created via {@link #WikiTreeAncestorsCache()}.
+     */
+
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis( 10L );
+
+    /**
+     The depth that the WikiTree API server uses if a {@code getAncestors} request doesn't specify one.
+     */
+
+    public static final int DEFAULT_DEPTH = 5;
+
+    private static class Key {
+
+        private final String _scope;
+
+        private final String _key;
+
+        private Key( final @NotNull String scope, final @NotNull String key ) {
+
+            super();
+
+            _scope = scope;
+            _key = key;
+
+        }
+
+        @Override
+        public boolean equals( final Object rhs ) {
+
+            if ( this == rhs ) {
+
+                return true;
+
+            }
+
+            if ( !( rhs instanceof Key ) ) {
+
+                return false;
+
+            }
+
+            Key key = (Key)rhs;
+
+            return _key.equals( key._key ) && _scope.equals( key._scope );
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return Objects.hash( _scope, _key );
+
+        }
+
+        public String toString() {
+
+            return "Key( scope=" + _scope + ", key=" + _key + " )";
+
+        }
+
+    }
+
+    /**
+     A cached result.
+     */
+
+    private static class CachedAncestors {
+
+        private final WikiTreeAncestors _ancestors;
+
+        private final int _depth;
+
+        private final long _expiresAtNanos;
+
+        // The generation that each person in the result is in (the shortest path if someone appears more than once).
+
+        private final Map<Long, Integer> _generations;
+
+        // The keys that this result is indexed under.
+
+        private final List<Key> _keys = new ArrayList<>();
+
+        private CachedAncestors( final @NotNull WikiTreeAncestors ancestors, final int depth, final long expiresAtNanos ) {
+
+            super();
+
+            _ancestors = ancestors;
+            _depth = depth;
+            _expiresAtNanos = expiresAtNanos;
+            _generations = getGenerations( ancestors, ancestors.getBasePersonProfile(), Integer.MAX_VALUE );
+
+        }
+
+        private boolean isExpired( final long nowNanos ) {
+
+            return nowNanos - _expiresAtNanos >= 0L;
+
+        }
+
+        /**
+         Get the depth of a particular person's ancestry that this result contains.
+         */
+
+        private int getDepthFor( final long personId ) {
+
+            Integer generation = _generations.get( personId );
+
+            return generation == null ? 0 : _depth - generation;
+
+        }
+
+    }
+
+    /**
+     Where to find a particular person's ancestry.
+     */
+
+    private static class Indexed {
+
+        private final CachedAncestors _entry;
+
+        private final long _personId;
+
+        private Indexed( final @NotNull CachedAncestors entry, final long personId ) {
+
+            super();
+
+            _entry = entry;
+            _personId = personId;
+
+        }
+
+        private int getDepth() {
+
+            return _entry.getDepthFor( _personId );
+
+        }
+
+    }
+
+    private final int _maxEntries;
+
+    private final long _timeToLiveMillis;
+
+    // The cached results in least recently used order (the values are always Boolean.TRUE).
+
+    private final Map<CachedAncestors, Boolean> _entries;
+
+    // Every person in every cached result by WikiTree ID and by Person.Id.
+    // Each key's list has one element per cached result containing the person. The first one is the result which has the most of their ancestry.
+
+    private final Map<Key, List<Indexed>> _index = new HashMap<>();
+
+    private final AtomicLong _hits = new AtomicLong( 0L );
+
+    private final AtomicLong _misses = new AtomicLong( 0L );
+
+    private final AtomicLong _evictions = new AtomicLong( 0L );
+
+    private final AtomicLong _expirations = new AtomicLong( 0L );
+
+    /**
+     Create a cache which holds on to at most {@link #DEFAULT_MAX_ENTRIES} results for at most {@link #DEFAULT_TIME_TO_LIVE_MILLIS} milliseconds each.
+     */
+
+    public WikiTreeAncestorsCache() {
+
+        this( DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS );
+
+    }
+
+    /**
+     Create a cache.
+
+     @param maxEntries       the most results that the cache should hold on to.
+     @param timeToLiveMillis how long each result should live.
+     @throws IllegalArgumentException if {@code maxEntries} is less than 1 or {@code timeToLiveMillis} is negative.
+     */
+
+    public WikiTreeAncestorsCache( final int maxEntries, final long timeToLiveMillis ) {
+
+        super();
+
+        if ( maxEntries < 1 || timeToLiveMillis < 0L ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeAncestorsCache:  maxEntries must be positive and timeToLiveMillis must not be negative " +
+                    "(got maxEntries=" + maxEntries + ", timeToLiveMillis=" + timeToLiveMillis + ")"
+            );
+
+        }
+
+        _maxEntries = maxEntries;
+        _timeToLiveMillis = timeToLiveMillis;
+
+        _entries = new LinkedHashMap<CachedAncestors, Boolean>( 16, 0.75f, true ) {
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<CachedAncestors, Boolean> eldest ) {
+
+                if ( size() > _maxEntries ) {
+
+                    _evictions.incrementAndGet();
+                    unindex( eldest.getKey() );
+
+                    return true;
+
+                }
+
+                return false;
+
+            }
+
+        };
+
+    }
+
+    /**
+     Look for a cached result which contains the answer to a {@code getAncestors} request.
+
+     @param scope the visibility scope of the session doing the looking.
+     @param key   the key specified by the request (a WikiTree ID or a Person.Id).
+     @param depth the depth specified by the request ({@code null} means {@link #DEFAULT_DEPTH}).
+     @return the answer or {@code null} if no cached result contains it.
+     @throws WikiTreeRequestFailedException if something goes wrong slicing the answer out of a cached result (it shouldn't).
+     */
+
+    @Nullable
+    WikiTreeAncestors get( final @NotNull String scope, final @NotNull String key, @Nullable final Integer depth )
+            throws WikiTreeRequestFailedException {
+
+        int wantedDepth = depth == null ? DEFAULT_DEPTH : depth.intValue();
+
+        CachedAncestors entry;
+        WikiTreePersonProfile profile;
+
+        synchronized ( _entries ) {
+
+            // If the best result has expired then the next best one might still do.
+
+            Key cacheKey = new Key( scope, key );
+            Indexed indexed = getBest( cacheKey );
+            while ( indexed != null && indexed._entry.isExpired( System.nanoTime() ) ) {
+
+                _entries.remove( indexed._entry );
+                unindex( indexed._entry );
+                _expirations.incrementAndGet();
+                indexed = getBest( cacheKey );
+
+            }
+
+            if ( indexed == null || indexed.getDepth() < wantedDepth ) {
+
+                _misses.incrementAndGet();
+
+                return null;
+
+            }
+
+            entry = indexed._entry;
+            profile = entry._ancestors.getProfilesByPersonId().get( indexed._personId );
+
+            // Make it the most recently used result.
+
+            _entries.get( entry );
+
+        }
+
+        _hits.incrementAndGet();
+
+        if ( profile == entry._ancestors.getBasePersonProfile() && wantedDepth == entry._depth ) {
+
+            return entry._ancestors;
+
+        }
+
+        return slice( entry._ancestors, profile, key, depth, wantedDepth );
+
+    }
+
+    /**
+     Add a {@code getAncestors} result to the cache.
+
+     @param scope     the visibility scope of the session which fetched the result.
+     @param ancestors the result.
+     */
+
+    void put( final @NotNull String scope, final @NotNull WikiTreeAncestors ancestors ) {
+
+        Integer requestDepth = ancestors.getRequestDepth();
+        CachedAncestors entry = new CachedAncestors(
+                ancestors,
+                requestDepth == null ? DEFAULT_DEPTH : requestDepth.intValue(),
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( _timeToLiveMillis )
+        );
+
+        synchronized ( _entries ) {
+
+            _entries.put( entry, Boolean.TRUE );
+
+            for ( WikiTreePersonProfile profile : ancestors.getProfilesByPersonId().values() ) {
+
+                Indexed indexed = new Indexed( entry, profile.getPersonId() );
+                if ( indexed.getDepth() > 0 ) {
+
+                    index( new Key( scope, Long.toString( profile.getPersonId() ) ), indexed );
+                    index( new Key( scope, profile.getWikiTreeId().getValueString() ), indexed );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    @Nullable
+    private Indexed getBest( final @NotNull Key key ) {
+
+        List<Indexed> candidates = _index.get( key );
+
+        return candidates == null ? null : candidates.get( 0 );
+
+    }
+
+    private void index( final @NotNull Key key, final @NotNull Indexed indexed ) {
+
+        List<Indexed> candidates = _index.computeIfAbsent( key, k -> new ArrayList<>( 1 ) );
+        candidates.add( indexed );
+        indexed._entry._keys.add( key );
+
+        // The newest result wins a tie (it will be around for longer).
+
+        if ( indexed.getDepth() >= candidates.get( 0 ).getDepth() ) {
+
+            Collections.swap( candidates, 0, candidates.size() - 1 );
+
+        }
+
+    }
+
+    private void unindex( final @NotNull CachedAncestors entry ) {
+
+        for ( Key key : entry._keys ) {
+
+            List<Indexed> candidates = _index.get( key );
+            boolean wasBest = candidates.get( 0 )._entry == entry;
+            candidates.removeIf( indexed -> indexed._entry == entry );
+
+            if ( candidates.isEmpty() ) {
+
+                _index.remove( key );
+
+            } else if ( wasBest ) {
+
+                // Point the key at whichever of the remaining results has the most of this person's ancestry.
+
+                int best = 0;
+                for ( int ix = 1; ix < candidates.size(); ix += 1 ) {
+
+                    if ( candidates.get( ix ).getDepth() > candidates.get( best ).getDepth() ) {
+
+                        best = ix;
+
+                    }
+
+                }
+
+                Collections.swap( candidates, 0, best );
+
+            }
+
+        }
+
+        entry._keys.clear();
+
+    }
+
+    /**
+     Figure out which generation each of someone's ancestors is in.
+
+     @param ancestors   the ancestors.
+     @param baseProfile the someone (in generation 0).
+     @param maxDepth    how many generations to go (someone's parents are in the second generation).
+     @return the generation that each person is in by Person.Id (the shortest path if someone appears more than once).
+     */
+
+    @NotNull
+    private static Map<Long, Integer> getGenerations(
+            final @NotNull WikiTreeAncestors ancestors,
+            final @NotNull WikiTreePersonProfile baseProfile,
+            final int maxDepth
+    ) {
+
+        Map<Long, Integer> generations = new LinkedHashMap<>();
+        LinkedList<WikiTreePersonProfile> queue = new LinkedList<>();
+
+        generations.put( baseProfile.getPersonId(), 0 );
+        queue.add( baseProfile );
+
+        while ( !queue.isEmpty() ) {
+
+            WikiTreePersonProfile profile = queue.removeFirst();
+            int generation = generations.get( profile.getPersonId() );
+            if ( generation + 1 >= maxDepth ) {
+
+                continue;
+
+            }
+
+            for ( WikiTreePersonProfile parent : new WikiTreePersonProfile[]{
+                    ancestors.getFathersOfMapping().get( profile.getPersonId() ),
+                    ancestors.getMothersOfMapping().get( profile.getPersonId() )
+            } ) {
+
+                if ( parent != null && !generations.containsKey( parent.getPersonId() ) ) {
+
+                    generations.put( parent.getPersonId(), generation + 1 );
+                    queue.add( parent );
+
+                }
+
+            }
+
+        }
+
+        return generations;
+
+    }
+
+    /**
+     Build the answer to a {@code getAncestors} request from part of a cached result.
+     */
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private static WikiTreeAncestors slice(
+            final @NotNull WikiTreeAncestors ancestors,
+            final @NotNull WikiTreePersonProfile baseProfile,
+            final @NotNull String key,
+            @Nullable final Integer depth,
+            final int wantedDepth
+    )
+            throws WikiTreeRequestFailedException {
+
+        JSONArray sliceAncestors = new JSONArray();
+        for ( Long personId : getGenerations( ancestors, baseProfile, wantedDepth ).keySet() ) {
+
+            // Copy the profile into a plain JSONObject so that WikiTreeAncestors makes its own WikiTreePersonProfile for it.
+
+            sliceAncestors.add( new JSONObject( ancestors.getProfilesByPersonId().get( personId ) ) );
+
+        }
+
+        JSONObject resultObject = new JSONObject();
+        if ( key.matches( "\\d+" ) ) {
+
+            resultObject.put( "user_id", key );
+
+        } else {
+
+            resultObject.put( "user_name", key );
+
+        }
+
+        if ( ancestors.containsKey( "status" ) ) {
+
+            resultObject.put( "status", ancestors.get( "status" ) );
+
+        }
+
+        resultObject.put( "ancestors", sliceAncestors );
+
+        return new WikiTreeAncestors( baseProfile.getWikiTreeId(), depth, resultObject );
+
+    }
+
+    /**
+     Discard every result in the cache.
+     <p/>The hit, miss, eviction and expiration counts are not affected.
+     */
+
+    public void clear() {
+
+        synchronized ( _entries ) {
+
+            _entries.clear();
+            _index.clear();
+
+        }
+
+    }
+
+    /**
+     Discard every result which has expired.
+     <p/>Expired results are discarded when they are found anyways so calling this method is never necessary.
+
+     @return the number of results discarded.
+     */
+
+    public int purgeExpiredEntries() {
+
+        List<CachedAncestors> expired = new ArrayList<>();
+        long now = System.nanoTime();
+
+        synchronized ( _entries ) {
+
+            for ( Iterator<CachedAncestors> iter = _entries.keySet().iterator(); iter.hasNext(); ) {
+
+                CachedAncestors entry = iter.next();
+                if ( entry.isExpired( now ) ) {
+
+                    iter.remove();
+                    expired.add( entry );
+
+                }
+
+            }
+
+            for ( CachedAncestors entry : expired ) {
+
+                unindex( entry );
+
+            }
+
+        }
+
+        _expirations.addAndGet( expired.size() );
+
+        return expired.size();
+
+    }
+
+    /**
+     Get the number of results in the cache (including any that have expired but have not yet been discarded).
+
+     @return the number of results in the cache.
+     */
+
+    public int size() {
+
+        synchronized ( _entries ) {
+
+            return _entries.size();
+
+        }
+
+    }
+
+    /**
+     Get the most results that this cache holds on to.
+
+     @return the most results that this cache holds on to.
+     */
+
+    public int getMaxEntries() {
+
+        return _maxEntries;
+
+    }
+
+    /**
+     Get how long each result lives.
+
+     @return how long each result lives in milliseconds.
+     */
+
+    public long getTimeToLiveMillis() {
+
+        return _timeToLiveMillis;
+
+    }
+
+    /**
+     Get the number of lookups which found a cached result containing what they were looking for.
+
+     @return the number of hits.
+     */
+
+    public long getHits() {
+
+        return _hits.get();
+
+    }
+
+    /**
+     Get the number of lookups which didn't find a cached result containing what they were looking for.
+
+     @return the number of misses.
+     */
+
+    public long getMisses() {
+
+        return _misses.get();
+
+    }
+
+    /**
+     Get the number of results which were discarded to make room for newer results.
+
+     @return the number of evictions.
+     */
+
+    public long getEvictions() {
+
+        return _evictions.get();
+
+    }
+
+    /**
+     Get the number of results which were discarded because they had expired.
+
+     @return the number of expirations.
+     */
+
+    public long getExpirations() {
+
+        return _expirations.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeAncestorsCache( " +
+               "size=" + size() + ", " +
+               "hits=" + getHits() + ", " +
+               "misses=" + getMisses() + ", " +
+               "evictions=" + getEvictions() + ", " +
+               "expirations=" + getExpirations() +
+               " )";
+
+    }
+
+}
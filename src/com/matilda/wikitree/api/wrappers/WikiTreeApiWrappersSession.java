@@ -14,8 +14,12 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  An API that operates as a layer on top of the API provided by {@link WikiTreeApiJsonSession}.
@@ -143,6 +147,12 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
     private boolean _authenticated = false;
 
+    private boolean _bindingDirectly = false;
+
+    private volatile WikiTreeProfileCache _profileCache = null;
+
+    private volatile WikiTreeAncestorsCache _ancestorsCache = null;
+
     /**
      Wrap a new {@link WikiTreeApiJsonSession} instance.
      */
@@ -167,6 +177,92 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
     }
 
+    /**
+     Specify whether {@code getPerson}, {@code getAncestors} and {@code getRelatives} responses should be bound directly to their wrappers.
+     <p/>Normally, a response is parsed into a tree of {@link JSONObject} instances and then each profile in the tree is copied into a
+     {@link WikiTreePersonProfile}. When binding directly, each profile's {@code WikiTreePersonProfile} is created as soon as the parser reaches it
+     and the profile's fields go straight into it (see {@link WikiTreeProfileBinder}). That avoids having two copies of every profile in the response
+     for a while. The resulting wrappers are the same either way.
+     <p/>This only affects the synchronous versions of these requests.
+
+     @param bindingDirectly {@code true} if responses should be bound directly to their wrappers; {@code false} otherwise.
+     */
+
+    public void setBindingDirectly( final boolean bindingDirectly ) {
+
+        _bindingDirectly = bindingDirectly;
+
+    }
+
+    /**
+     Determine if {@code getPerson}, {@code getAncestors} and {@code getRelatives} responses are bound directly to their wrappers.
+     <p/>See {@link #setBindingDirectly(boolean)} for more information.
+
+     @return {@code true} if responses are bound directly to their wrappers; {@code false} otherwise.
+     */
+
+    public boolean isBindingDirectly() {
+
+        return _bindingDirectly;
+
+    }
+
+    /**
+     Specify the cache which this session is to use for the results of {@code getPerson} and {@code getProfile} requests.
+     <p/>There is no cache by default. A cache can be shared by any number of sessions
+     (see {@link WikiTreeProfileCache} for why that's safe even if the sessions are logged in as different users).
+
+     @param profileCache the cache or {@code null} if this session should not use a cache.
+     */
+
+    public void setProfileCache( @Nullable final WikiTreeProfileCache profileCache ) {
+
+        _profileCache = profileCache;
+
+    }
+
+    /**
+     Get the cache which this session is using for the results of {@code getPerson} and {@code getProfile} requests.
+     <p/>See {@link #setProfileCache(WikiTreeProfileCache)} for more information.
+
+     @return the cache or {@code null} if this session is not using a cache.
+     */
+
+    @Nullable
+    public WikiTreeProfileCache getProfileCache() {
+
+        return _profileCache;
+
+    }
+
+    /**
+     Specify the cache which this session is to use for the results of {@code getAncestors} requests.
+     <p/>There is no cache by default. A cache can be shared by any number of sessions
+     (see {@link WikiTreeAncestorsCache} for how a cached result can answer requests for other people and other depths).
+
+     @param ancestorsCache the cache or {@code null} if this session should not use a cache.
+     */
+
+    public void setAncestorsCache( @Nullable final WikiTreeAncestorsCache ancestorsCache ) {
+
+        _ancestorsCache = ancestorsCache;
+
+    }
+
+    /**
+     Get the cache which this session is using for the results of {@code getAncestors} requests.
+     <p/>See {@link #setAncestorsCache(WikiTreeAncestorsCache)} for more information.
+
+     @return the cache or {@code null} if this session is not using a cache.
+     */
+
+    @Nullable
+    public WikiTreeAncestorsCache getAncestorsCache() {
+
+        return _ancestorsCache;
+
+    }
+
     /**
      Get the email address of the WikiTree user for whom the wrapped {@link WikiTreeApiJsonSession} is authenticated.
 
@@ -371,6 +467,224 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
     public WikiTreePersonProfile getPerson( final @NotNull String key, final String fields )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
+        WikiTreeProfileCache cache = _profileCache;
+        if ( cache != null ) {
+
+            return getCachedPerson( cache, key, fields );
+
+        }
+
+        return fetchPerson( key, fields );
+
+    }
+
+    /**
+     Get a person's profile by way of a cache.
+     <p/>See {@link WikiTreeProfileCache} for how the cache deals with fields lists.
+     */
+
+    @Nullable
+    private WikiTreePersonProfile getCachedPerson( final @NotNull WikiTreeProfileCache cache, final @NotNull String key, final String fields )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        String scope = WikiTreeProfileCache.getScope( this );
+        SortedSet<String> wantedFields = WikiTreeProfileCache.parseFields( withRequiredPersonFields( fields ) );
+        WikiTreePersonProfile.ProfileType profileType = getPersonProfileType( fields );
+
+        WikiTreeProfileCache.CachedProfile entry = cache.getPerson( scope, key, wantedFields );
+        if ( entry == null ) {
+
+            WikiTreePersonProfile rval = fetchPerson( key, fields );
+            if ( rval != null ) {
+
+                cache.putPerson( scope, key, wantedFields, rval, null );
+
+            }
+
+            return rval;
+
+        }
+
+        if ( entry.covers( wantedFields ) ) {
+
+            return WikiTreeProfileCache.project( entry, wantedFields, profileType );
+
+        }
+
+        // Only ask for what we don't already know.
+
+        SortedSet<String> missingFields = new TreeSet<>( wantedFields );
+        //noinspection ConstantConditions
+        missingFields.removeAll( entry.getFields() );
+        missingFields.add( WikiTreePersonProfile.ID );
+
+        WikiTreePersonProfile fetchedProfile = fetchPerson( key, WikiTreeApiUtilities.constructGetPersonFieldsString( missingFields ) );
+        if ( fetchedProfile == null ) {
+
+            return null;
+
+        }
+
+        SortedSet<String> combinedFields = new TreeSet<>( entry.getFields() );
+        combinedFields.addAll( wantedFields );
+        WikiTreeProfileCache.CachedProfile combinedEntry = cache.putPerson(
+                scope,
+                key,
+                combinedFields,
+                WikiTreeProfileCache.merge( entry, fetchedProfile, WikiTreePersonProfile.ProfileType.OTHER ),
+                entry.getExpiresAtNanos()
+        );
+
+        return WikiTreeProfileCache.project( combinedEntry, wantedFields, profileType );
+
+    }
+
+    @Nullable
+    private WikiTreePersonProfile fetchPerson( final @NotNull String key, final String fields )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        WikiTreePersonProfile rval;
+        if ( _bindingDirectly ) {
+
+            WikiTreeProfileBinder binder = WikiTreeProfileBinder.forPerson( getPersonProfileType( fields ) );
+            _jsonClient.getPerson( key, withRequiredPersonFields( fields ), binder );
+
+            rval = toPersonProfile( binder.getSingleResult(), fields );
+
+        } else {
+
+            Optional<JSONObject> optRval = _jsonClient.getPerson( key, withRequiredPersonFields( fields ) );
+
+            rval = toPersonProfile( optRval, fields );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Request information about a specified person without waiting for the answer.
+     <p/>See {@link #getPerson(String, String)} for more information.
+
+     @param key the specified person's WikiTree ID.
+     @return a future which yields what {@link #getPerson(WikiTreeId)} would have returned.
+     If the request fails then the future completes exceptionally with a {@link CompletionException} whose cause is the
+     {@link IOException}, {@link ParseException} or {@link WikiTreeRequestFailedException} that {@code getPerson} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getPersonAsync( final @NotNull WikiTreeId key ) {
+
+        return getPersonAsync( key.getValueString(), "*" );
+
+    }
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getPersonAsync( final long personId ) {
+
+        return getPersonAsync( "" + personId, "*" );
+
+    }
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getPersonAsync( final @NotNull WikiTreeId key, final String fields ) {
+
+        return getPersonAsync( key.getValueString(), fields );
+
+    }
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getPersonAsync( final @NotNull String key, final String fields ) {
+
+        // A partial cache hit is treated like a miss here (we fetch everything that was asked for and combine it with what's cached).
+
+        WikiTreeProfileCache cache = _profileCache;
+        String scope;
+        SortedSet<String> wantedFields;
+        WikiTreeProfileCache.CachedProfile entry;
+        if ( cache != null ) {
+
+            scope = WikiTreeProfileCache.getScope( this );
+            wantedFields = WikiTreeProfileCache.parseFields( withRequiredPersonFields( fields ) );
+            entry = cache.getPerson( scope, key, wantedFields );
+            if ( entry != null && entry.covers( wantedFields ) ) {
+
+                try {
+
+                    return CompletableFuture.completedFuture( WikiTreeProfileCache.project( entry, wantedFields, getPersonProfileType( fields ) ) );
+
+                } catch ( WikiTreeRequestFailedException e ) {
+
+                    CompletableFuture<WikiTreePersonProfile> rval = new CompletableFuture<>();
+                    rval.completeExceptionally( new CompletionException( e ) );
+
+                    return rval;
+
+                }
+
+            }
+
+        } else {
+
+            scope = null;
+            wantedFields = null;
+            entry = null;
+
+        }
+
+        return _jsonClient.getPersonAsync( key, withRequiredPersonFields( fields ) )
+                          .thenApply(
+                                  optRval -> {
+
+                                      try {
+
+                                          WikiTreePersonProfile rval = toPersonProfile( optRval, fields );
+                                          if ( cache != null && rval != null ) {
+
+                                              if ( entry == null ) {
+
+                                                  cache.putPerson( scope, key, wantedFields, rval, null );
+
+                                              } else {
+
+                                                  SortedSet<String> combinedFields = new TreeSet<>( wantedFields );
+                                                  //noinspection ConstantConditions
+                                                  combinedFields.addAll( entry.getFields() );
+                                                  cache.putPerson(
+                                                          scope,
+                                                          key,
+                                                          combinedFields,
+                                                          WikiTreeProfileCache.merge( entry, rval, WikiTreePersonProfile.ProfileType.OTHER ),
+                                                          entry.getExpiresAtNanos()
+                                                  );
+
+                                              }
+
+                                          }
+
+                                          return rval;
+
+                                      } catch ( WikiTreeRequestFailedException e ) {
+
+                                          throw new CompletionException( e );
+
+                                      }
+
+                                  }
+                          );
+
+    }
+
+    /**
+     Add the fields which {@link WikiTreePersonProfile} cannot live without to a {@code getPerson} fields list.
+
+     @param fields the fields that the caller asked for.
+     @return the fields that we actually ask for.
+     */
+
+    private static String withRequiredPersonFields( final String fields ) {
+
         // We need the request to include the "Name" field.
 
         StringBuilder sb = new StringBuilder( fields );
@@ -391,9 +705,25 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
         }
 
-        Optional<JSONObject> optRval = _jsonClient.getPerson( key, sb.toString() );
+        return sb.toString();
+
+    }
+
+    @Nullable
+    private static WikiTreePersonProfile toPersonProfile( final @NotNull Optional<JSONObject> optRval, final String fields )
+            throws WikiTreeRequestFailedException {
+
         if ( optRval.isPresent() ) {
 
+            Object boundPerson = optRval.get().get( "person" );
+            if ( boundPerson instanceof WikiTreePersonProfile ) {
+
+                // Bound directly from the parser's events (see WikiTreeProfileBinder).
+
+                return (WikiTreePersonProfile)boundPerson;
+
+            }
+
             // Create a WikiTreePersonProfile instance for the result.
             // The instructor invoked here requires that the profile have a "Name" field.
             // This is why we forced it into the list of requested fields above.
@@ -401,7 +731,7 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
             return new WikiTreePersonProfile(
                     null,
                     optRval.get(),
-                    "*".equals( fields ) ? WikiTreePersonProfile.ProfileType.PRIMARY_PERSON : WikiTreePersonProfile.ProfileType.OTHER,
+                    getPersonProfileType( fields ),
                     "person"
             );
 
@@ -413,10 +743,70 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
     }
 
+    @NotNull
+    private static WikiTreePersonProfile.ProfileType getPersonProfileType( final String fields ) {
+
+        return "*".equals( fields ) ? WikiTreePersonProfile.ProfileType.PRIMARY_PERSON : WikiTreePersonProfile.ProfileType.OTHER;
+
+    }
+
+    /**
+     Fetch a bunch of people's profiles, delivering each one as soon as it arrives.
+     <p/>This is equivalent to {@link #getPeople(Collection, String, int)} with a {@code maxConcurrentRequests} of
+     {@link WikiTreePeopleFetch#DEFAULT_MAX_CONCURRENT_REQUESTS}.
+
+     @param keys   the WikiTree IDs of the profiles to fetch.
+     @param fields the fields to fetch (see {@link #getPerson(String, String)}).
+     @return the fetch (which is already underway).
+     */
+
+    @NotNull
+    public WikiTreePeopleFetch getPeople( final @NotNull Collection<WikiTreeId> keys, final String fields ) {
+
+        return getPeople( keys, fields, WikiTreePeopleFetch.DEFAULT_MAX_CONCURRENT_REQUESTS );
+
+    }
+
+    /**
+     Fetch a bunch of people's profiles, delivering each one as soon as it arrives.
+     <p/>Each profile is fetched via {@link #getPerson(WikiTreeId, String)} running in its own virtual thread
+     (or in a platform thread if this JVM doesn't have virtual threads). At most {@code maxConcurrentRequests} of them are in flight at once.
+     Note that the session's transport may impose a lower limit of its own
+     (for example, an {@link com.matilda.wikitree.api.jsonclient.HttpUrlConnectionTransport} is limited by its connection pool).
+     <p/>See {@link WikiTreePeopleFetch} for how to get the results.
+
+     @param keys                  the WikiTree IDs of the profiles to fetch.
+     @param fields                the fields to fetch (see {@link #getPerson(String, String)}).
+     @param maxConcurrentRequests the maximum number of requests in flight at once.
+     @return the fetch (which is already underway).
+     @throws IllegalArgumentException if {@code maxConcurrentRequests} is less than 1.
+     */
+
+    @NotNull
+    public WikiTreePeopleFetch getPeople( final @NotNull Collection<WikiTreeId> keys, final String fields, final int maxConcurrentRequests ) {
+
+        return new WikiTreePeopleFetch( this, keys, fields, maxConcurrentRequests );
+
+    }
+
     @SuppressWarnings("Duplicates")
     public WikiTreeProfile getProfile( final WikiTreeId key )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
+        WikiTreeProfileCache cache = _profileCache;
+        String scope = null;
+        if ( cache != null ) {
+
+            scope = WikiTreeProfileCache.getScope( this );
+            WikiTreeProfile cachedProfile = cache.getProfile( scope, key.getValueString() );
+            if ( cachedProfile != null ) {
+
+                return cachedProfile;
+
+            }
+
+        }
+
         Optional<JSONObject> optResultObject = _jsonClient.getProfile( key );
 
         if ( optResultObject.isPresent() ) {
@@ -425,6 +815,12 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
             rval = WikiTreeProfile.distinguish( optResultObject.get() );
 
+            if ( cache != null && rval != null ) {
+
+                cache.putProfile( scope, key.getValueString(), rval );
+
+            }
+
             return rval;
 
         } else {
@@ -439,6 +835,20 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
     public WikiTreeProfile getProfile( final long id )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
+        WikiTreeProfileCache cache = _profileCache;
+        String scope = null;
+        if ( cache != null ) {
+
+            scope = WikiTreeProfileCache.getScope( this );
+            WikiTreeProfile cachedProfile = cache.getProfile( scope, Long.toString( id ) );
+            if ( cachedProfile != null ) {
+
+                return cachedProfile;
+
+            }
+
+        }
+
         Optional<JSONObject> optResultObject = _jsonClient.getProfile( id );
 
         if ( optResultObject.isPresent() ) {
@@ -447,6 +857,12 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
 
             rval = WikiTreeProfile.distinguish( optResultObject.get() );
 
+            if ( cache != null && rval != null ) {
+
+                cache.putProfile( scope, Long.toString( id ), rval );
+
+            }
+
             return rval;
 
         } else {
@@ -592,6 +1008,64 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
         Optional<JSONObject> optResultObject =
                 _jsonClient.getWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order );
 
+        return toWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, optResultObject );
+
+    }
+
+    /**
+     Request the profiles on the logged-in user's watchlist without waiting for the answer.
+     <p/>See {@link #getWatchlist(Boolean, Boolean, Boolean, Boolean, String, Integer, Integer, String)} for more information.
+
+     @return a future which yields what {@code getWatchlist} would have returned.
+     If the request fails then the future completes exceptionally with a {@link CompletionException} whose cause is the
+     {@link IOException}, {@link ParseException} or {@link WikiTreeRequestFailedException} that {@code getWatchlist} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreeWatchlist> getWatchlistAsync(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order
+    ) {
+
+        return _jsonClient.getWatchlistAsync( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order )
+                          .thenApply(
+                                  optResultObject -> {
+
+                                      try {
+
+                                          return toWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, optResultObject );
+
+                                      } catch ( WikiTreeRequestFailedException e ) {
+
+                                          throw new CompletionException( e );
+
+                                      }
+
+                                  }
+                          );
+
+    }
+
+    @Nullable
+    private static WikiTreeWatchlist toWatchlist(
+            final Boolean getPerson,
+            final Boolean getSpace,
+            final Boolean onlyLiving,
+            final Boolean excludeLiving,
+            final String fields,
+            final Integer limit,
+            final Integer offset,
+            final String order,
+            final @NotNull Optional<JSONObject> optResultObject
+    )
+            throws WikiTreeRequestFailedException {
+
         if ( optResultObject.isPresent() ) {
 
             return new WikiTreeWatchlist( getPerson, getSpace, onlyLiving, excludeLiving, fields, limit, offset, order, optResultObject.get() );
@@ -607,23 +1081,225 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
     public WikiTreeAncestors getAncestors( final WikiTreeId key, final Integer depth )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
-        Optional<JSONObject> optRequestObject = _jsonClient.getAncestors( key, depth );
+        WikiTreeAncestorsCache cache = _ancestorsCache;
+        String scope = null;
+        if ( cache != null ) {
 
-        if ( optRequestObject.isPresent() ) {
+            scope = WikiTreeProfileCache.getScope( this );
+            WikiTreeAncestors cachedAncestors = cache.get( scope, key.getValueString(), depth );
+            if ( cachedAncestors != null ) {
 
-            return new WikiTreeAncestors( key, depth, optRequestObject.get() );
+                return cachedAncestors;
+
+            }
+
+        }
+
+        WikiTreeAncestors rval;
+        if ( _bindingDirectly ) {
+
+            WikiTreeProfileBinder binder = WikiTreeProfileBinder.forAncestors();
+            _jsonClient.getAncestors( key, depth, binder );
+
+            rval = toAncestors( key, depth, binder.getSingleResult() );
 
         } else {
 
-            return null;
+            Optional<JSONObject> optRequestObject = _jsonClient.getAncestors( key, depth );
+
+            rval = toAncestors( key, depth, optRequestObject );
 
         }
+
+        if ( cache != null && rval != null ) {
+
+            cache.put( scope, rval );
+
+        }
+
+        return rval;
+
     }
 
     public WikiTreeAncestors getAncestors( final long key, final Integer depth )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
-        Optional<JSONObject> optRequestObject = _jsonClient.getAncestors( key, depth );
+        WikiTreeAncestorsCache cache = _ancestorsCache;
+        String scope = null;
+        if ( cache != null ) {
+
+            scope = WikiTreeProfileCache.getScope( this );
+            WikiTreeAncestors cachedAncestors = cache.get( scope, Long.toString( key ), depth );
+            if ( cachedAncestors != null ) {
+
+                return cachedAncestors;
+
+            }
+
+        }
+
+        WikiTreeAncestors rval;
+        if ( _bindingDirectly ) {
+
+            WikiTreeProfileBinder binder = WikiTreeProfileBinder.forAncestors();
+            _jsonClient.getAncestors( key, depth, binder );
+
+            rval = toAncestors( depth, binder.getSingleResult() );
+
+        } else {
+
+            Optional<JSONObject> optRequestObject = _jsonClient.getAncestors( key, depth );
+
+            rval = toAncestors( depth, optRequestObject );
+
+        }
+
+        if ( cache != null && rval != null ) {
+
+            cache.put( scope, rval );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Request the ancestors of a specified person without waiting for the answer.
+     <p/>See {@link #getAncestors(WikiTreeId, Integer)} for more information.
+
+     @param key   the specified person's WikiTree ID.
+     @param depth how many generations back to retrieve. if {@code null} then a depth of 5 is used. Valid values are 1-10.
+     @return a future which yields what {@code getAncestors} would have returned.
+     If the request fails then the future completes exceptionally with a {@link CompletionException} whose cause is the
+     {@link IOException}, {@link ParseException} or {@link WikiTreeRequestFailedException} that {@code getAncestors} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreeAncestors> getAncestorsAsync( final WikiTreeId key, final Integer depth ) {
+
+        WikiTreeAncestorsCache cache = _ancestorsCache;
+        String scope = cache == null ? null : WikiTreeProfileCache.getScope( this );
+        if ( cache != null ) {
+
+            try {
+
+                WikiTreeAncestors cachedAncestors = cache.get( scope, key.getValueString(), depth );
+                if ( cachedAncestors != null ) {
+
+                    return CompletableFuture.completedFuture( cachedAncestors );
+
+                }
+
+            } catch ( WikiTreeRequestFailedException e ) {
+
+                CompletableFuture<WikiTreeAncestors> rval = new CompletableFuture<>();
+                rval.completeExceptionally( new CompletionException( e ) );
+
+                return rval;
+
+            }
+
+        }
+
+        return _jsonClient.getAncestorsAsync( key, depth )
+                          .thenApply(
+                                  optRequestObject -> {
+
+                                      try {
+
+                                          WikiTreeAncestors rval = toAncestors( key, depth, optRequestObject );
+                                          if ( cache != null && rval != null ) {
+
+                                              cache.put( scope, rval );
+
+                                          }
+
+                                          return rval;
+
+                                      } catch ( WikiTreeRequestFailedException e ) {
+
+                                          throw new CompletionException( e );
+
+                                      }
+
+                                  }
+                          );
+
+    }
+
+    @NotNull
+    public CompletableFuture<WikiTreeAncestors> getAncestorsAsync( final long key, final Integer depth ) {
+
+        WikiTreeAncestorsCache cache = _ancestorsCache;
+        String scope = cache == null ? null : WikiTreeProfileCache.getScope( this );
+        if ( cache != null ) {
+
+            try {
+
+                WikiTreeAncestors cachedAncestors = cache.get( scope, Long.toString( key ), depth );
+                if ( cachedAncestors != null ) {
+
+                    return CompletableFuture.completedFuture( cachedAncestors );
+
+                }
+
+            } catch ( WikiTreeRequestFailedException e ) {
+
+                CompletableFuture<WikiTreeAncestors> rval = new CompletableFuture<>();
+                rval.completeExceptionally( new CompletionException( e ) );
+
+                return rval;
+
+            }
+
+        }
+
+        return _jsonClient.getAncestorsAsync( key, depth )
+                          .thenApply(
+                                  optRequestObject -> {
+
+                                      try {
+
+                                          WikiTreeAncestors rval = toAncestors( depth, optRequestObject );
+                                          if ( cache != null && rval != null ) {
+
+                                              cache.put( scope, rval );
+
+                                          }
+
+                                          return rval;
+
+                                      } catch ( WikiTreeRequestFailedException e ) {
+
+                                          throw new CompletionException( e );
+
+                                      }
+
+                                  }
+                          );
+
+    }
+
+    @Nullable
+    private static WikiTreeAncestors toAncestors( final WikiTreeId key, final Integer depth, final @NotNull Optional<JSONObject> optRequestObject )
+            throws WikiTreeRequestFailedException {
+
+        if ( optRequestObject.isPresent() ) {
+
+            return new WikiTreeAncestors( key, depth, optRequestObject.get() );
+
+        } else {
+
+            return null;
+
+        }
+
+    }
+
+    @Nullable
+    private static WikiTreeAncestors toAncestors( final Integer depth, final @NotNull Optional<JSONObject> optRequestObject )
+            throws WikiTreeRequestFailedException {
 
         if ( optRequestObject.isPresent() ) {
 
@@ -649,8 +1325,75 @@ public class WikiTreeApiWrappersSession implements WikiTreeApiClient {
     )
             throws IOException, ParseException, WikiTreeRequestFailedException {
 
+        if ( _bindingDirectly ) {
+
+            WikiTreeProfileBinder binder = WikiTreeProfileBinder.forRelatives(
+                    getParents && getChildren && getSpouses && getSiblings
+                            ?
+                            WikiTreePersonProfile.ProfileType.RELATIVES_COMPLETE
+                            :
+                            WikiTreePersonProfile.ProfileType.RELATIVES_INCOMPLETE
+            );
+            _jsonClient.getRelatives( keys, getParents, getChildren, getSpouses, getSiblings, binder );
+
+            return toRelatives( keys, getParents, getChildren, getSpouses, getSiblings, binder.getSingleResult() );
+
+        }
+
         Optional<JSONObject> optRequestObject = _jsonClient.getRelatives( keys, getParents, getChildren, getSpouses, getSiblings );
 
+        return toRelatives( keys, getParents, getChildren, getSpouses, getSiblings, optRequestObject );
+
+    }
+
+    /**
+     Request the immediate relatives of one or more people without waiting for the answer.
+     <p/>See {@link #getRelatives(String, boolean, boolean, boolean, boolean)} for more information.
+
+     @return a future which yields what {@code getRelatives} would have returned.
+     If the request fails then the future completes exceptionally with a {@link CompletionException} whose cause is the
+     {@link IOException}, {@link ParseException} or {@link WikiTreeRequestFailedException} that {@code getRelatives} would have thrown.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreeRelatives> getRelativesAsync(
+            final String keys,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    ) {
+
+        return _jsonClient.getRelativesAsync( keys, getParents, getChildren, getSpouses, getSiblings )
+                          .thenApply(
+                                  optRequestObject -> {
+
+                                      try {
+
+                                          return toRelatives( keys, getParents, getChildren, getSpouses, getSiblings, optRequestObject );
+
+                                      } catch ( WikiTreeRequestFailedException e ) {
+
+                                          throw new CompletionException( e );
+
+                                      }
+
+                                  }
+                          );
+
+    }
+
+    @Nullable
+    private static WikiTreeRelatives toRelatives(
+            final String keys,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings,
+            final @NotNull Optional<JSONObject> optRequestObject
+    )
+            throws WikiTreeRequestFailedException {
+
         if ( optRequestObject.isPresent() ) {
 
             @SuppressWarnings("UnnecessaryLocalVariable")
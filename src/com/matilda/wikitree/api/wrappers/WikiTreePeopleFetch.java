@@ -0,0 +1,529 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ A bulk fetch of people's profiles which delivers each profile as soon as it arrives.
+ <p/>Instances of this class are created by {@link WikiTreeApiWrappersSession#getPeople(Collection, String)}.
+ Each profile is fetched by its own call to {@link WikiTreeApiWrappersSession#getPerson(WikiTreeId, String)} running in its own thread
+ (a virtual thread if this JVM has them; see {@link WikiTreeApiUtilities#newPerTaskExecutor(String)}).
+ A semaphore limits how many of these calls are in flight at once.
+ <p/>The results are delivered in whatever order the requests complete (which is probably not the order in which the keys were specified).
+ Iterate over this instance to get them:
+ <blockquote><pre>
+ try ( WikiTreePeopleFetch fetch = wSession.getPeople( wikiTreeIds, "*" ) ) {
+
+ for ( WikiTreePeopleFetch.Result result : fetch ) {
+
+ // do something with result.getProfile() or result.getFailure()
+
+ }
+
+ }
+ </pre></blockquote>
+ Closing an instance abandons any requests that have not completed yet. Every key still yields exactly one result after an instance has been closed
+ (so iterating over a closed instance doesn't wait forever). The result for a key whose request was never sent has a {@link CancellationException}
+ as its failure. A request that was already in flight when the instance was closed is interrupted and yields whatever that leads to.
+ */
+
+@SuppressWarnings({ "WeakerAccess", "unused" })
+public class WikiTreePeopleFetch implements Iterable<WikiTreePeopleFetch.Result>, Iterator<WikiTreePeopleFetch.Result>, AutoCloseable {
+
+    /**
+     The maximum number of requests in flight at once used if nobody says otherwise.
+     */
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+
+    /**
+     The outcome of fetching one profile.
+     */
+
+    public static class Result {
+
+        private final WikiTreeId _key;
+
+        private final WikiTreePersonProfile _profile;
+
+        private final Exception _failure;
+
+        private Result( final @NotNull WikiTreeId key, @Nullable final WikiTreePersonProfile profile, @Nullable final Exception failure ) {
+
+            super();
+
+            _key = key;
+            _profile = profile;
+            _failure = failure;
+
+        }
+
+        /**
+         Get the key that this is the result for.
+
+         @return the key that this is the result for.
+         */
+
+        @NotNull
+        public WikiTreeId getKey() {
+
+            return _key;
+
+        }
+
+        /**
+         Get the profile.
+
+         @return the profile or {@code null} if there is no such profile or the request failed.
+         */
+
+        @Nullable
+        public WikiTreePersonProfile getProfile() {
+
+            return _profile;
+
+        }
+
+        /**
+         Get whatever went wrong.
+
+         @return the exception that {@link WikiTreeApiWrappersSession#getPerson(WikiTreeId, String)} threw or {@code null} if it didn't throw anything.
+         */
+
+        @Nullable
+        public Exception getFailure() {
+
+            return _failure;
+
+        }
+
+        /**
+         Determine if the request worked.
+
+         @return {@code true} if the request did not throw an exception; {@code false} otherwise.
+         */
+
+        public boolean worked() {
+
+            return _failure == null;
+
+        }
+
+        public String toString() {
+
+            return "Result( key=" + _key + ", " + ( _failure == null ? "profile=" + _profile : "failure=" + _failure ) + " )";
+
+        }
+
+    }
+
+    private final int _expectedResults;
+
+    private final int _maxConcurrentRequests;
+
+    private final BlockingQueue<Result> _results = new LinkedBlockingQueue<>();
+
+    private final Semaphore _permits;
+
+    private final ExecutorService _executor;
+
+    /**
+     The number of results that callers of {@link #take()} or {@link #poll(long, TimeUnit)} have claimed
+     (a caller claims a result before it waits for one to arrive so that it never waits for a result which isn't coming).
+     */
+
+    private final AtomicInteger _claimedResults = new AtomicInteger( 0 );
+
+    // Guarded by this.
+
+    private final Deque<WikiTreeId> _unlaunchedKeys;
+
+    private boolean _closed = false;
+
+    /**
+     Start fetching the specified profiles.
+
+     @param session               the session to do the fetching with.
+     @param keys                  the WikiTree IDs of the profiles to fetch.
+     @param fields                the fields to fetch (see {@link WikiTreeApiWrappersSession#getPerson(String, String)}).
+     @param maxConcurrentRequests the maximum number of requests in flight at once.
+     @throws IllegalArgumentException if {@code maxConcurrentRequests} is less than 1.
+     */
+
+    WikiTreePeopleFetch(
+            final @NotNull WikiTreeApiWrappersSession session,
+            final @NotNull Collection<WikiTreeId> keys,
+            final String fields,
+            final int maxConcurrentRequests
+    ) {
+
+        super();
+
+        if ( maxConcurrentRequests < 1 ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreePeopleFetch:  maxConcurrentRequests must be at least 1 (got " + maxConcurrentRequests + ")"
+            );
+
+        }
+
+        // Take a copy of the keys so that the caller can do whatever they like with their collection once we return.
+
+        _unlaunchedKeys = new ArrayDeque<>( keys );
+
+        _expectedResults = _unlaunchedKeys.size();
+        _maxConcurrentRequests = maxConcurrentRequests;
+        _permits = new Semaphore( maxConcurrentRequests );
+        _executor = WikiTreeApiUtilities.newPerTaskExecutor( "WikiTreePeopleFetch" );
+
+        // Hand out the requests from a thread of our own so that the caller doesn't have to wait for the last one to be launched.
+        // If we get closed along the way then close() takes care of the keys which are still in _unlaunchedKeys.
+
+        _executor.execute(
+                () -> {
+
+                    while ( true ) {
+
+                        try {
+
+                            _permits.acquire();
+
+                        } catch ( InterruptedException e ) {
+
+                            // We've been closed.
+
+                            return;
+
+                        }
+
+                        WikiTreeId key;
+                        synchronized ( this ) {
+
+                            if ( _closed ) {
+
+                                return;
+
+                            }
+
+                            key = _unlaunchedKeys.poll();
+
+                        }
+
+                        if ( key == null ) {
+
+                            break;
+
+                        }
+
+                        try {
+
+                            _executor.execute( new Fetch( session, key, fields ) );
+
+                        } catch ( RejectedExecutionException e ) {
+
+                            // We've been closed (after we took this key so close() doesn't know about it).
+
+                            cancel( key );
+
+                            return;
+
+                        }
+
+                    }
+
+                    // Everything has been launched. Let the executor's threads go away once they're done.
+
+                    _executor.shutdown();
+
+                }
+        );
+
+    }
+
+    /**
+     Fetch one profile.
+     */
+
+    private class Fetch implements Runnable {
+
+        private final WikiTreeApiWrappersSession _session;
+
+        private final WikiTreeId _key;
+
+        private final String _fields;
+
+        private Fetch( final @NotNull WikiTreeApiWrappersSession session, final @NotNull WikiTreeId key, final String fields ) {
+
+            super();
+
+            _session = session;
+            _key = key;
+            _fields = fields;
+
+        }
+
+        @Override
+        public void run() {
+
+            Result result;
+            try {
+
+                result = new Result( _key, _session.getPerson( _key, _fields ), null );
+
+            } catch ( Exception e ) {
+
+                result = new Result( _key, null, e );
+
+            } finally {
+
+                _permits.release();
+
+            }
+
+            _results.add( result );
+
+        }
+
+        public String toString() {
+
+            return "Fetch( key=" + _key + " )";
+
+        }
+
+    }
+
+    private void cancel( final @NotNull WikiTreeId key ) {
+
+        _results.add( new Result( key, null, new CancellationException( "WikiTreePeopleFetch:  closed before the request for " + key + " was sent" ) ) );
+
+    }
+
+    /**
+     Get the number of results that this fetch will deliver.
+
+     @return the number of keys that were specified when this fetch was started.
+     */
+
+    public int getExpectedResults() {
+
+        return _expectedResults;
+
+    }
+
+    /**
+     Get the maximum number of requests that this fetch has in flight at once.
+
+     @return the maximum number of requests that this fetch has in flight at once.
+     */
+
+    public int getMaxConcurrentRequests() {
+
+        return _maxConcurrentRequests;
+
+    }
+
+    /**
+     Wait for the next result.
+
+     @return the next result to arrive.
+     @throws InterruptedException  if this thread is interrupted while waiting.
+     @throws NoSuchElementException if all the results have already been delivered.
+     */
+
+    @NotNull
+    public Result take()
+            throws InterruptedException {
+
+        claim( "take" );
+
+        boolean delivered = false;
+        try {
+
+            Result result = _results.take();
+            delivered = true;
+
+            return result;
+
+        } finally {
+
+            if ( !delivered ) {
+
+                _claimedResults.decrementAndGet();
+
+            }
+
+        }
+
+    }
+
+    /**
+     Wait a limited amount of time for the next result.
+
+     @param timeout how long to wait.
+     @param unit    the units of {@code timeout}.
+     @return the next result to arrive or {@code null} if none arrived in time.
+     @throws InterruptedException  if this thread is interrupted while waiting.
+     @throws NoSuchElementException if all the results have already been delivered.
+     */
+
+    @Nullable
+    public Result poll( final long timeout, final @NotNull TimeUnit unit )
+            throws InterruptedException {
+
+        claim( "poll" );
+
+        Result result = null;
+        try {
+
+            result = _results.poll( timeout, unit );
+
+            return result;
+
+        } finally {
+
+            if ( result == null ) {
+
+                _claimedResults.decrementAndGet();
+
+            }
+
+        }
+
+    }
+
+    private void claim( final @NotNull String who ) {
+
+        if ( _claimedResults.getAndUpdate( claimed -> claimed < _expectedResults ? claimed + 1 : claimed ) >= _expectedResults ) {
+
+            throw new NoSuchElementException( "WikiTreePeopleFetch." + who + ":  all " + _expectedResults + " results have been delivered" );
+
+        }
+
+    }
+
+    /**
+     Determine if there are results which have not been delivered yet.
+     <p/>If more than one thread is taking results from this instance then a {@code true} answer is only a hint
+     (another thread might take the last result first).
+
+     @return {@code true} if there are results which have not been delivered (or claimed by a thread which is waiting for one); {@code false} otherwise.
+     */
+
+    @Override
+    public boolean hasNext() {
+
+        return _claimedResults.get() < _expectedResults;
+
+    }
+
+    /**
+     Wait for the next result.
+     <p/>This is {@link #take()} for those who would rather use this instance as an {@link Iterator}.
+     If this thread is interrupted while waiting then its interrupt status is restored and a {@link NoSuchElementException} is thrown.
+
+     @return the next result to arrive.
+     */
+
+    @Override
+    @NotNull
+    public Result next() {
+
+        try {
+
+            return take();
+
+        } catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt();
+
+            throw new NoSuchElementException( "WikiTreePeopleFetch.next:  interrupted while waiting for a result" );
+
+        }
+
+    }
+
+    /**
+     Get an iterator over the results (this instance, as it happens).
+     <p/>Each result is only delivered once so iterating a second time only yields results that the first iteration didn't get to.
+
+     @return this instance.
+     */
+
+    @Override
+    @NotNull
+    public Iterator<Result> iterator() {
+
+        return this;
+
+    }
+
+    /**
+     Abandon any requests that have not completed yet.
+     <p/>Each key whose request hasn't been sent yet gets a result with a {@link CancellationException} as its failure.
+     This method may safely be called more than once.
+     */
+
+    @Override
+    public void close() {
+
+        synchronized ( this ) {
+
+            if ( _closed ) {
+
+                return;
+
+            }
+
+            _closed = true;
+
+            for ( WikiTreeId key : _unlaunchedKeys ) {
+
+                cancel( key );
+
+            }
+
+            _unlaunchedKeys.clear();
+
+        }
+
+        // Any fetches which were handed to the executor but never started aren't going to start now.
+
+        for ( Runnable runnable : _executor.shutdownNow() ) {
+
+            if ( runnable instanceof Fetch ) {
+
+                _permits.release();
+                cancel( ( (Fetch)runnable )._key );
+
+            }
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreePeopleFetch( expectedResults=" + _expectedResults + ", maxConcurrentRequests=" + _maxConcurrentRequests + " )";
+
+    }
+
+}
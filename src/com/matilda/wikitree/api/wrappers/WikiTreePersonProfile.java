@@ -64,7 +64,7 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
     public static final String SIBLINGS = "Siblings";
     public static final String SPOUSES = "Spouses";
     public static final String SUFFIX = "Suffix";
-    private final boolean _isLiving;
+    private boolean _isLiving;
 
     /**
      Specify what type of request yielded this profile.
@@ -173,6 +173,49 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
 
         super( jsonObject, profileLocation );
 
+        _profileType = profileType;
+
+        finishConstruction( requestType, jsonObject, profileLocation );
+
+    }
+
+    /**
+     Create an empty person profile which is to be filled in as its JSON text is parsed.
+     <p/>Used by {@link WikiTreeProfileBinder}. The profile is not usable until {@link #completeBinding(WikiTreeRequestType)} has been called.
+
+     @param originalJSONObject the JSON object that this profile was found within or {@code null} if this profile was found on its own.
+     @param profileType        what kind of profile this is.
+     */
+
+    WikiTreePersonProfile( @Nullable final JSONObject originalJSONObject, final @NotNull ProfileType profileType ) {
+
+        super( originalJSONObject );
+
+        _profileType = profileType;
+
+    }
+
+    /**
+     Finish creating a person profile whose fields have all been parsed directly into it.
+     <p/>This does exactly what the regular constructor does once it has copied the profile's fields.
+     Any relatives found in this profile's {@code "Parents"}, {@code "Children"}, {@code "Spouses"} or {@code "Siblings"} fields must already have been completed
+     (they are used as is rather than being copied into new {@code WikiTreePersonProfile} instances).
+
+     @param requestType the type of request to the WikiTree API server that got us this profile
+     ({@code null} means figure it out from the original JSON object; see {@link #WikiTreePersonProfile(WikiTreeRequestType, JSONObject, ProfileType, String...)}).
+     @throws ReallyBadNewsError if this isn't actually a person profile.
+     */
+
+    void completeBinding( @Nullable final WikiTreeRequestType requestType )
+            throws WikiTreeRequestFailedException {
+
+        finishConstruction( requestType, getOriginalJSONObject(), new String[0] );
+
+    }
+
+    private void finishConstruction( @Nullable final WikiTreeRequestType requestType, final @NotNull JSONObject jsonObject, final String[] profileLocation )
+            throws WikiTreeRequestFailedException {
+
         if ( requestType == null ) {
 
             if ( jsonObject.containsKey( "user_name" ) || jsonObject.containsKey( "page_name" ) ) {
@@ -195,8 +238,6 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
 
         }
 
-        _profileType = profileType;
-
         if ( get( ID ) == null ) {
 
             throw new ReallyBadNewsError( "WTPP does not have a Person.Id:  " + this );
@@ -224,14 +265,7 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
 
         }
 
-        // Figure out the type of the relative profiles (I'm not sure that this is ever anything but ProfileType.RELATIVE).
-
-        ProfileType relativeProfileType =
-                ( profileType == ProfileType.PRIMARY_PERSON || profileType == ProfileType.RELATIVES_COMPLETE || profileType == ProfileType.RELATIVES_INCOMPLETE )
-                        ?
-                        ProfileType.RELATIVE
-                        :
-                        ProfileType.OTHER;
+        ProfileType relativeProfileType = getRelativeProfileType( _profileType );
         _parents.addAll( getPeople( this, relativeProfileType, PARENTS ) );
         _children.addAll( getPeople( this, relativeProfileType, CHILDREN ) );
         _spouses.addAll( getPeople( this, relativeProfileType, SPOUSES ) );
@@ -488,6 +522,25 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
 
     }
 
+    /**
+     Figure out the type of the relative profiles found within a profile of a specified type
+     (I'm not sure that this is ever anything but {@link ProfileType#RELATIVE}).
+
+     @param profileType the type of the profile which the relatives were found within.
+     @return the type of the relatives' profiles.
+     */
+
+    @NotNull
+    static ProfileType getRelativeProfileType( final @NotNull ProfileType profileType ) {
+
+        return ( profileType == ProfileType.PRIMARY_PERSON || profileType == ProfileType.RELATIVES_COMPLETE || profileType == ProfileType.RELATIVES_INCOMPLETE )
+                ?
+                ProfileType.RELATIVE
+                :
+                ProfileType.OTHER;
+
+    }
+
     /**
      Get the person profiles of all relatives of the primary person within a particular class.
 
@@ -528,7 +581,13 @@ public class WikiTreePersonProfile extends WikiTreeProfile {
 
         for ( Object personProfileObj : values ) {
 
-            if ( personProfileObj instanceof JSONObject ) {
+            if ( personProfileObj instanceof WikiTreePersonProfile ) {
+
+                // Bound directly from the parser's events (see WikiTreeProfileBinder). It's already exactly what we'd build here.
+
+                rval.add( (WikiTreePersonProfile)personProfileObj );
+
+            } else if ( personProfileObj instanceof JSONObject ) {
 
                 JSONObject personProfileJsonObject = (JSONObject)personProfileObj;
                 WikiTreePersonProfile personProfile = new WikiTreePersonProfile( WikiTreeRequestType.UNKNOWN, personProfileJsonObject, profileType );
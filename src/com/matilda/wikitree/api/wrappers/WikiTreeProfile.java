@@ -31,6 +31,22 @@ public abstract class WikiTreeProfile extends WikiTreeWrapper {
 
     }
 
+    /**
+     Create an empty profile which is to be filled in as its JSON text is parsed (see {@link WikiTreeProfileBinder}).
+     <p/>No copy of anything is made. The fields of the profile go straight into this instance as they are parsed.
+
+     @param originalJSONObject the JSON object that this profile was found within or {@code null} if this profile was found on its own
+     (in which case this instance is its own original JSON object).
+     */
+
+    protected WikiTreeProfile( @Nullable final JSONObject originalJSONObject ) {
+
+        super();
+
+        _originalJSONObject = originalJSONObject == null ? this : originalJSONObject;
+
+    }
+
     private static JSONObject findProfile( final @NotNull JSONObject jsonObject, final String[] profileLocation )
             throws WikiTreeRequestFailedException {
 
@@ -0,0 +1,478 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.ReallyBadNewsError;
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ Build {@link WikiTreePersonProfile} instances directly from the parser's events.
+ <p/>The usual way of turning a response into wrappers parses the response into a tree of {@link JSONObject} instances and then copies each profile
+ into a {@link WikiTreePersonProfile} (which is itself a {@code JSONObject}). That's two copies of every profile for a while.
+ An instance of this class knows where the profiles live in a particular kind of response and creates each profile's {@code WikiTreePersonProfile} instance
+ as soon as the parser reaches the profile so that the profile's fields go straight into the wrapper.
+ This includes the relatives found in a profile's {@code "Parents"}, {@code "Children"}, {@code "Spouses"} and {@code "Siblings"} fields.
+ <p/>The rest of the response is built the usual way.
+ The resulting tree is the same as the tree that the usual way would have parsed except that the profiles are already wrapped.
+ {@link WikiTreeAncestors}, {@link WikiTreeRelatives} and {@link WikiTreePersonProfile} all use such profiles as is rather than copying them.
+ <p/>Once the parse is done, {@link #getSingleResult()} completes the construction of the profiles (innermost ones first)
+ and yields the response's result object.
+ <p/>An instance of this class is good for one parse.
+ */
+
+class WikiTreeProfileBinder implements ContentHandler {
+
+    private static final Set<String> RELATIONSHIPS = new TreeSet<>(
+            Arrays.asList(
+                    WikiTreePersonProfile.PARENTS,
+                    WikiTreePersonProfile.CHILDREN,
+                    WikiTreePersonProfile.SPOUSES,
+                    WikiTreePersonProfile.SIBLINGS
+            )
+    );
+
+    /**
+     The kinds of responses that we know how to bind.
+     */
+
+    private enum Shape {
+
+        /**
+         A {@code getPerson} response - {@code [ { "person": { ...profile... }, ... } ]}.
+         */
+
+        PERSON,
+
+        /**
+         A {@code getAncestors} response - {@code [ { "ancestors": [ { ...profile... }, ... ], ... } ]}.
+         */
+
+        ANCESTORS,
+
+        /**
+         A {@code getRelatives} response - {@code [ { "items": [ { "key": "...", "person": { ...profile... } }, ... ] } ]}.
+         */
+
+        RELATIVES
+
+    }
+
+    /**
+     What each JSON container that is currently open is.
+     */
+
+    private enum Kind {
+
+        RESULT_ARRAY,
+        RESULT,
+        PROFILES,
+        ITEM,
+        PROFILE,
+        RELATIVES,
+        PLAIN
+
+    }
+
+    private static class Frame {
+
+        private final Object _container;
+
+        private final Kind _kind;
+
+        private final WikiTreePersonProfile.ProfileType _profileType;
+
+        private final JSONObject _enclosingObject;
+
+        private Frame(
+                final @NotNull Object container,
+                final @NotNull Kind kind,
+                @Nullable final WikiTreePersonProfile.ProfileType profileType,
+                @Nullable final JSONObject enclosingObject
+        ) {
+
+            super();
+
+            _container = container;
+            _kind = kind;
+            _profileType = profileType;
+            _enclosingObject = enclosingObject;
+
+        }
+
+        public String toString() {
+
+            return "Frame( kind=" + _kind + ", profileType=" + _profileType + " )";
+
+        }
+
+    }
+
+    private final Shape _shape;
+
+    private final WikiTreePersonProfile.ProfileType _profileType;
+
+    private final LinkedList<Frame> _frames = new LinkedList<>();
+
+    private final LinkedList<String> _keys = new LinkedList<>();
+
+    // The profiles in the order in which they were closed (innermost first).
+
+    private final List<Frame> _boundProfiles = new ArrayList<>();
+
+    private Object _result;
+
+    private boolean _completed;
+
+    private WikiTreeProfileBinder( final @NotNull Shape shape, final @NotNull WikiTreePersonProfile.ProfileType profileType ) {
+
+        super();
+
+        _shape = shape;
+        _profileType = profileType;
+
+    }
+
+    /**
+     Get a binder for a {@code getPerson} response.
+
+     @param profileType the type of the person's profile.
+     @return the binder.
+     */
+
+    @NotNull
+    static WikiTreeProfileBinder forPerson( final @NotNull WikiTreePersonProfile.ProfileType profileType ) {
+
+        return new WikiTreeProfileBinder( Shape.PERSON, profileType );
+
+    }
+
+    /**
+     Get a binder for a {@code getAncestors} response.
+
+     @return the binder.
+     */
+
+    @NotNull
+    static WikiTreeProfileBinder forAncestors() {
+
+        return new WikiTreeProfileBinder( Shape.ANCESTORS, WikiTreePersonProfile.ProfileType.PROFILE );
+
+    }
+
+    /**
+     Get a binder for a {@code getRelatives} response.
+
+     @param profileType the type of the base people's profiles
+     ({@link WikiTreePersonProfile.ProfileType#RELATIVES_COMPLETE} or {@link WikiTreePersonProfile.ProfileType#RELATIVES_INCOMPLETE}).
+     @return the binder.
+     */
+
+    @NotNull
+    static WikiTreeProfileBinder forRelatives( final @NotNull WikiTreePersonProfile.ProfileType profileType ) {
+
+        return new WikiTreeProfileBinder( Shape.RELATIVES, profileType );
+
+    }
+
+    /**
+     Finish constructing the bound profiles and get the response's result object.
+     <p/>This is what {@link WikiTreeApiJsonSession}'s request methods would have returned for the same response.
+
+     @return the result object or {@link Optional#empty()} if the response was empty.
+     @throws WikiTreeRequestFailedException if something goes wrong completing the profiles.
+     @throws ReallyBadNewsError             if the response is not a single JSON object or one of the bound profiles isn't actually a person profile.
+     */
+
+    @NotNull
+    Optional<JSONObject> getSingleResult()
+            throws WikiTreeRequestFailedException {
+
+        if ( !_completed ) {
+
+            _completed = true;
+
+            for ( Frame frame : _boundProfiles ) {
+
+                ( (WikiTreePersonProfile)frame._container ).completeBinding( getRequestType( frame ) );
+
+            }
+
+        }
+
+        Object rval = WikiTreeApiUtilities.unwrapResponse( _result, true );
+        if ( rval == null || rval instanceof JSONObject ) {
+
+            return Optional.ofNullable( (JSONObject)rval );
+
+        } else {
+
+            throw new ReallyBadNewsError(
+                    "WikiTreeProfileBinder.getSingleResult:  response is a " + rval.getClass().getCanonicalName() + " rather than a single JSONObject"
+            );
+
+        }
+
+    }
+
+    /**
+     Figure out what {@link WikiTreePersonProfile}'s regular constructor would have been told about a bound profile's request type.
+     */
+
+    @Nullable
+    private WikiTreeRequestType getRequestType( final @NotNull Frame frame ) {
+
+        if ( frame._enclosingObject == null ) {
+
+            return WikiTreeRequestType.UNKNOWN;
+
+        } else if ( _shape == Shape.PERSON ) {
+
+            // Let the profile figure it out from the result object (which is its enclosing object).
+
+            return null;
+
+        } else {
+
+            Object key = frame._enclosingObject.get( "key" );
+            if ( key instanceof String ) {
+
+                return WikiTreeApiJsonSession.interpretIdParameter( "WikiTreeProfileBinder", (String)key ) instanceof Number
+                        ?
+                        WikiTreeRequestType.PERSON_ID
+                        :
+                        WikiTreeRequestType.WIKITREE_ID;
+
+            } else {
+
+                return WikiTreeRequestType.UNKNOWN;
+
+            }
+
+        }
+
+    }
+
+    @Override
+    public void startJSON() {
+
+    }
+
+    @Override
+    public void endJSON() {
+
+    }
+
+    @Override
+    public boolean startObject() {
+
+        Frame parent = _frames.peekFirst();
+        String key = _keys.peekFirst();
+
+        Frame frame;
+        if ( parent == null || parent._kind == Kind.RESULT_ARRAY ) {
+
+            frame = new Frame( new JSONObject(), Kind.RESULT, null, null );
+
+        } else if ( parent._kind == Kind.RESULT && _shape == Shape.PERSON && "person".equals( key ) ) {
+
+            frame = newProfileFrame( _profileType, (JSONObject)parent._container );
+
+        } else if ( parent._kind == Kind.PROFILES && _shape == Shape.ANCESTORS ) {
+
+            frame = newProfileFrame( _profileType, null );
+
+        } else if ( parent._kind == Kind.PROFILES && _shape == Shape.RELATIVES ) {
+
+            frame = new Frame( new JSONObject(), Kind.ITEM, null, null );
+
+        } else if ( parent._kind == Kind.ITEM && "person".equals( key ) ) {
+
+            frame = newProfileFrame( _profileType, (JSONObject)parent._container );
+
+        } else if ( parent._kind == Kind.RELATIVES ) {
+
+            frame = newProfileFrame( parent._profileType, null );
+
+        } else if ( parent._kind == Kind.PROFILE && RELATIONSHIPS.contains( key ) ) {
+
+            frame = newRelativesFrame( new JSONObject(), parent );
+
+        } else {
+
+            frame = new Frame( new JSONObject(), Kind.PLAIN, null, null );
+
+        }
+
+        open( frame );
+
+        return true;
+
+    }
+
+    @Override
+    public boolean endObject() {
+
+        close();
+
+        return true;
+
+    }
+
+    @Override
+    public boolean startObjectEntry( final String key ) {
+
+        _keys.addFirst( key );
+
+        return true;
+
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+
+        _keys.removeFirst();
+
+        return true;
+
+    }
+
+    @Override
+    public boolean startArray() {
+
+        Frame parent = _frames.peekFirst();
+        String key = _keys.peekFirst();
+
+        Frame frame;
+        if ( parent == null ) {
+
+            frame = new Frame( new JSONArray(), Kind.RESULT_ARRAY, null, null );
+
+        } else if (
+                parent._kind == Kind.RESULT &&
+                ( ( _shape == Shape.ANCESTORS && "ancestors".equals( key ) ) || ( _shape == Shape.RELATIVES && "items".equals( key ) ) )
+        ) {
+
+            frame = new Frame( new JSONArray(), Kind.PROFILES, null, null );
+
+        } else if ( parent._kind == Kind.PROFILE && RELATIONSHIPS.contains( key ) ) {
+
+            frame = newRelativesFrame( new JSONArray(), parent );
+
+        } else {
+
+            frame = new Frame( new JSONArray(), Kind.PLAIN, null, null );
+
+        }
+
+        open( frame );
+
+        return true;
+
+    }
+
+    @Override
+    public boolean endArray() {
+
+        close();
+
+        return true;
+
+    }
+
+    @Override
+    public boolean primitive( final Object value ) {
+
+        if ( _frames.isEmpty() ) {
+
+            _result = value;
+
+        } else {
+
+            addToContainer( _frames.getFirst(), value );
+
+        }
+
+        return true;
+
+    }
+
+    @NotNull
+    private static Frame newProfileFrame( final @NotNull WikiTreePersonProfile.ProfileType profileType, @Nullable final JSONObject enclosingObject ) {
+
+        return new Frame( new WikiTreePersonProfile( enclosingObject, profileType ), Kind.PROFILE, profileType, enclosingObject );
+
+    }
+
+    @NotNull
+    private static Frame newRelativesFrame( final @NotNull Object container, final @NotNull Frame profileFrame ) {
+
+        return new Frame( container, Kind.RELATIVES, WikiTreePersonProfile.getRelativeProfileType( profileFrame._profileType ), null );
+
+    }
+
+    private void open( final @NotNull Frame frame ) {
+
+        if ( _frames.isEmpty() ) {
+
+            _result = frame._container;
+
+        } else {
+
+            addToContainer( _frames.getFirst(), frame._container );
+
+        }
+
+        _frames.addFirst( frame );
+
+    }
+
+    private void close() {
+
+        Frame frame = _frames.removeFirst();
+        if ( frame._kind == Kind.PROFILE ) {
+
+            _boundProfiles.add( frame );
+
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addToContainer( final @NotNull Frame frame, @Nullable final Object value ) {
+
+        if ( frame._container instanceof JSONArray ) {
+
+            ( (JSONArray)frame._container ).add( value );
+
+        } else {
+
+            ( (JSONObject)frame._container ).put( _keys.peekFirst(), value );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeProfileBinder( shape=" + _shape + ", profileType=" + _profileType + ", boundProfiles=" + _boundProfiles.size() + " )";
+
+    }
+
+}
@@ -0,0 +1,771 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ A bounded cache of the profiles fetched by one or more {@link WikiTreeApiWrappersSession} instances.
+ <p/>Popular profiles (Churchill-4 comes to mind) tend to get requested over and over again.
+ A session which has been given a cache via {@link WikiTreeApiWrappersSession#setProfileCache(WikiTreeProfileCache)} checks the cache
+ before sending {@code getPerson} and {@code getProfile} requests to the WikiTree API server and adds what it gets back to the cache.
+ <p/>Each entry lives for at most {@link #getTimeToLiveMillis()} milliseconds after it was added.
+ When the cache holds {@link #getMaxEntries()} entries, adding another one evicts the least recently used entry.
+ <p/>A person profile fetched via {@code getPerson} is cached under both the person's WikiTree ID and their Person.Id
+ so that asking for it either way finds it.
+ <p/>The cache understands {@code getPerson} fields lists (see {@link WikiTreeApiUtilities#S_ALL_GET_PERSON_FIELDS_SET}).
+ It keeps one entry per person along with the set of fields that the entry has.
+ A request for a subset of those fields (for example, {@code "Id,Name,Gender"} after an earlier {@code "*"} request) is answered from the entry.
+ A request for fields that the entry lacks only asks the WikiTree API server for the missing fields
+ and the result is combined with the entry (the combined entry expires when the original entry would have).
+ <p/>What a session is allowed to see depends on who it is logged in as (if anyone).
+ Every entry is therefore tagged with the visibility scope of the session that fetched it
+ (the WikiTree API server's URL and the WikiTree ID of the authenticated user or nobody for an anonymous session).
+ A session only ever sees entries with its own scope. This means that a profile which only a logged-in user can see never leaks into an anonymous session
+ (or into a session logged in as somebody else) even if the sessions share a cache.
+ <p/>The cached profiles are handed out as is (no copies are made). Please don't modify them.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeProfileCache {
+
+    /**
+     The most entries that a cache created via {@link #WikiTreeProfileCache()} holds on to.
+     */
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     How long entries live in a cache created via {@link #WikiTreeProfileCache()}.
+     */
+
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis( 10L );
+
+    /**
+     The kinds of requests whose results are cached.
+     */
+
+    enum RequestKind {
+
+        PERSON,
+        PROFILE
+
+    }
+
+    private static class Key {
+
+        private final String _scope;
+
+        private final RequestKind _kind;
+
+        private final String _key;
+
+        private Key( final @NotNull String scope, final @NotNull RequestKind kind, final @NotNull String key ) {
+
+            super();
+
+            _scope = scope;
+            _kind = kind;
+            _key = key;
+
+        }
+
+        @Override
+        public boolean equals( final Object rhs ) {
+
+            if ( this == rhs ) {
+
+                return true;
+
+            }
+
+            if ( !( rhs instanceof Key ) ) {
+
+                return false;
+
+            }
+
+            Key key = (Key)rhs;
+
+            return _kind == key._kind && _key.equals( key._key ) && _scope.equals( key._scope );
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return Objects.hash( _scope, _kind, _key );
+
+        }
+
+        public String toString() {
+
+            return "Key( scope=" + _scope + ", kind=" + _kind + ", key=" + _key + " )";
+
+        }
+
+    }
+
+    /**
+     What the cache knows about a particular profile.
+     */
+
+    static class CachedProfile {
+
+        private final WikiTreeProfile _profile;
+
+        private final SortedSet<String> _fields;
+
+        private final long _expiresAtNanos;
+
+        private CachedProfile( final @NotNull WikiTreeProfile profile, @Nullable final SortedSet<String> fields, final long expiresAtNanos ) {
+
+            super();
+
+            _profile = profile;
+            _fields = fields;
+            _expiresAtNanos = expiresAtNanos;
+
+        }
+
+        @NotNull
+        WikiTreeProfile getProfile() {
+
+            return _profile;
+
+        }
+
+        /**
+         Get the {@code getPerson} fields that the profile has.
+
+         @return the fields (see {@link #parseFields(String)}) or {@code null} if this is a {@code getProfile} result.
+         */
+
+        @Nullable
+        SortedSet<String> getFields() {
+
+            return _fields;
+
+        }
+
+        long getExpiresAtNanos() {
+
+            return _expiresAtNanos;
+
+        }
+
+        boolean covers( final @NotNull SortedSet<String> wantedFields ) {
+
+            return _fields != null && _fields.containsAll( wantedFields );
+
+        }
+
+        private boolean isExpired( final long nowNanos ) {
+
+            return nowNanos - _expiresAtNanos >= 0L;
+
+        }
+
+    }
+
+    private final int _maxEntries;
+
+    private final long _timeToLiveMillis;
+
+    private final Map<Key, CachedProfile> _entries;
+
+    private final AtomicLong _hits = new AtomicLong( 0L );
+
+    private final AtomicLong _partialHits = new AtomicLong( 0L );
+
+    private final AtomicLong _misses = new AtomicLong( 0L );
+
+    private final AtomicLong _evictions = new AtomicLong( 0L );
+
+    private final AtomicLong _expirations = new AtomicLong( 0L );
+
+    /**
+     Create a cache which holds on to at most {@link #DEFAULT_MAX_ENTRIES} entries for at most {@link #DEFAULT_TIME_TO_LIVE_MILLIS} milliseconds each.
+     */
+
+    public WikiTreeProfileCache() {
+
+        this( DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS );
+
+    }
+
+    /**
+     Create a cache.
+
+     @param maxEntries       the most entries that the cache should hold on to.
+     Note that a person profile fetched via {@code getPerson} occupies up to three entries (see {@link WikiTreeProfileCache}).
+     @param timeToLiveMillis how long each entry should live.
+     @throws IllegalArgumentException if {@code maxEntries} is less than 1 or {@code timeToLiveMillis} is negative.
+     */
+
+    public WikiTreeProfileCache( final int maxEntries, final long timeToLiveMillis ) {
+
+        super();
+
+        if ( maxEntries < 1 || timeToLiveMillis < 0L ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeProfileCache:  maxEntries must be positive and timeToLiveMillis must not be negative " +
+                    "(got maxEntries=" + maxEntries + ", timeToLiveMillis=" + timeToLiveMillis + ")"
+            );
+
+        }
+
+        _maxEntries = maxEntries;
+        _timeToLiveMillis = timeToLiveMillis;
+
+        _entries = new LinkedHashMap<Key, CachedProfile>( 16, 0.75f, true ) {
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<Key, CachedProfile> eldest ) {
+
+                if ( size() > _maxEntries ) {
+
+                    _evictions.incrementAndGet();
+
+                    return true;
+
+                }
+
+                return false;
+
+            }
+
+        };
+
+    }
+
+    /**
+     Get the visibility scope of a session.
+
+     @param session the session.
+     @return the session's visibility scope.
+     */
+
+    @NotNull
+    static String getScope( final @NotNull WikiTreeApiWrappersSession session ) {
+
+        // Ask the JSON session since somebody could have logged in using it directly.
+        // It hands back the server URL, WikiTree ID and email address of one login even if somebody else is logging in right now.
+
+        return session.getWrappedJsonWikiTreeApiClient().getVisibilityScope();
+
+    }
+
+    /**
+     Turn a {@code getPerson} fields list into the set of fields that it asks for.
+     <p/>A {@code "*"} in the list asks for every field in {@link WikiTreeApiUtilities#S_ALL_GET_PERSON_FIELDS_SET}.
+
+     @param fields the fields list.
+     @return the fields that it asks for.
+     */
+
+    @NotNull
+    static SortedSet<String> parseFields( final @NotNull String fields ) {
+
+        SortedSet<String> rval = new TreeSet<>();
+        for ( String field : fields.split( "," ) ) {
+
+            String trimmedField = field.trim();
+            if ( "*".equals( trimmedField ) ) {
+
+                rval.addAll( WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET );
+
+            } else if ( !trimmedField.isEmpty() ) {
+
+                rval.add( trimmedField );
+
+            }
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Look for a cached {@code getProfile} result.
+
+     @param scope the visibility scope of the session doing the looking.
+     @param key   the key specified by the request.
+     @return the cached profile or {@code null} if there isn't one (or it has expired).
+     */
+
+    @Nullable
+    WikiTreeProfile getProfile( final @NotNull String scope, final @NotNull String key ) {
+
+        CachedProfile entry = getEntry( new Key( scope, RequestKind.PROFILE, key ) );
+        if ( entry == null ) {
+
+            _misses.incrementAndGet();
+
+            return null;
+
+        } else {
+
+            _hits.incrementAndGet();
+
+            return entry._profile;
+
+        }
+
+    }
+
+    /**
+     Add a {@code getProfile} result to the cache.
+     <p/>A person profile is also cached under the person's WikiTree ID and Person.Id (just like {@link #putPerson(String, String, SortedSet, WikiTreePersonProfile, Long)} does)
+     so that asking for it the other way finds it too.
+
+     @param scope   the visibility scope of the session which fetched the profile.
+     @param key     the key specified by the request.
+     @param profile the profile.
+     */
+
+    void putProfile( final @NotNull String scope, final @NotNull String key, final @NotNull WikiTreeProfile profile ) {
+
+        CachedProfile entry = new CachedProfile( profile, null, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( _timeToLiveMillis ) );
+
+        synchronized ( _entries ) {
+
+            _entries.put( new Key( scope, RequestKind.PROFILE, key ), entry );
+
+            if ( profile instanceof WikiTreePersonProfile ) {
+
+                WikiTreePersonProfile personProfile = (WikiTreePersonProfile)profile;
+
+                if ( personProfile.get( WikiTreePersonProfile.NAME ) instanceof String ) {
+
+                    _entries.put( new Key( scope, RequestKind.PROFILE, personProfile.getWikiTreeId().getValueString() ), entry );
+
+                }
+
+                long personId = personProfile.getPersonId();
+                if ( personId > 0L ) {
+
+                    _entries.put( new Key( scope, RequestKind.PROFILE, Long.toString( personId ) ), entry );
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     Look for what we know about a person.
+     <p/>Whatever is found is returned even if it doesn't include all of the wanted fields.
+     It counts as a hit if it does, as a partial hit if it has some of them and as a miss otherwise.
+
+     @param scope        the visibility scope of the session doing the looking.
+     @param key          the key specified by the request.
+     @param wantedFields the fields specified by the request (see {@link #parseFields(String)}).
+     @return the cached entry or {@code null} if there isn't one (or it has expired).
+     */
+
+    @Nullable
+    CachedProfile getPerson( final @NotNull String scope, final @NotNull String key, final @NotNull SortedSet<String> wantedFields ) {
+
+        CachedProfile entry = getEntry( new Key( scope, RequestKind.PERSON, key ) );
+        if ( entry == null ) {
+
+            _misses.incrementAndGet();
+
+        } else if ( entry.covers( wantedFields ) ) {
+
+            _hits.incrementAndGet();
+
+        } else if ( !Collections.disjoint( entry._fields, wantedFields ) ) {
+
+            _partialHits.incrementAndGet();
+
+        } else {
+
+            _misses.incrementAndGet();
+
+        }
+
+        return entry;
+
+    }
+
+    /**
+     Add what we know about a person to the cache.
+     <p/>The entry is also cached under the person's WikiTree ID and Person.Id.
+     Nothing happens if the cache already knows at least as much about the person.
+
+     @param scope          the visibility scope of the session which fetched the profile.
+     @param key            the key specified by the request.
+     @param fields         the fields that the profile has (see {@link #parseFields(String)}).
+     @param profile        the profile.
+     @param expiresAtNanos when the entry expires (in {@link System#nanoTime()} terms)
+     or {@code null} if it expires {@link #getTimeToLiveMillis()} milliseconds from now.
+     @return the entry that the cache now has for the person.
+     */
+
+    @NotNull
+    CachedProfile putPerson(
+            final @NotNull String scope,
+            final @NotNull String key,
+            final @NotNull SortedSet<String> fields,
+            final @NotNull WikiTreePersonProfile profile,
+            @Nullable final Long expiresAtNanos
+    ) {
+
+        CachedProfile entry = new CachedProfile(
+                profile,
+                Collections.unmodifiableSortedSet( new TreeSet<>( fields ) ),
+                expiresAtNanos == null ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( _timeToLiveMillis ) : expiresAtNanos.longValue()
+        );
+
+        Key cacheKey = new Key( scope, RequestKind.PERSON, key );
+        CachedProfile existingEntry = getEntry( cacheKey );
+        if ( existingEntry != null && existingEntry.covers( fields ) ) {
+
+            return existingEntry;
+
+        }
+
+        synchronized ( _entries ) {
+
+            _entries.put( cacheKey, entry );
+
+            if ( profile.get( WikiTreePersonProfile.NAME ) instanceof String ) {
+
+                _entries.put( new Key( scope, RequestKind.PERSON, profile.getWikiTreeId().getValueString() ), entry );
+
+            }
+
+            long personId = profile.getPersonId();
+            if ( personId > 0L ) {
+
+                _entries.put( new Key( scope, RequestKind.PERSON, Long.toString( personId ) ), entry );
+
+            }
+
+        }
+
+        return entry;
+
+    }
+
+    @Nullable
+    private CachedProfile getEntry( final @NotNull Key cacheKey ) {
+
+        synchronized ( _entries ) {
+
+            CachedProfile entry = _entries.get( cacheKey );
+            if ( entry != null && entry.isExpired( System.nanoTime() ) ) {
+
+                _entries.remove( cacheKey );
+                _expirations.incrementAndGet();
+
+                return null;
+
+            }
+
+            return entry;
+
+        }
+
+    }
+
+    /**
+     Create a person profile containing just the wanted fields of a cached person profile.
+     <p/>The {@code Id}, {@code Name} and {@code IsLiving} fields are always included since {@link WikiTreePersonProfile} can't live without them.
+     Profiles in the {@code "Parents"}, {@code "Children"}, {@code "Spouses"} and {@code "Siblings"} fields are shared rather than copied.
+
+     @param entry        the cached entry.
+     @param wantedFields the wanted fields (see {@link #parseFields(String)}).
+     @param profileType  the type of the new profile.
+     @return the cached profile itself if it has exactly the wanted fields and is of the right type; a new profile otherwise.
+     @throws WikiTreeRequestFailedException if something goes wrong creating the new profile (it shouldn't).
+     */
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static WikiTreePersonProfile project(
+            final @NotNull CachedProfile entry,
+            final @NotNull SortedSet<String> wantedFields,
+            final @NotNull WikiTreePersonProfile.ProfileType profileType
+    )
+            throws WikiTreeRequestFailedException {
+
+        WikiTreePersonProfile cachedProfile = (WikiTreePersonProfile)entry._profile;
+        if ( entry._fields.equals( wantedFields ) && cachedProfile.getProfileType() == profileType ) {
+
+            return cachedProfile;
+
+        }
+
+        boolean wantsEverything = wantedFields.containsAll( WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET );
+
+        JSONObject projection = new JSONObject();
+        for ( Object jsonKeyObj : cachedProfile.keySet() ) {
+
+            String jsonKey = (String)jsonKeyObj;
+            String field = getField( jsonKey );
+
+            if (
+                    WikiTreePersonProfile.ID.equals( jsonKey ) ||
+                    WikiTreePersonProfile.NAME.equals( jsonKey ) ||
+                    WikiTreePersonProfile.IS_LIVING.equals( jsonKey ) ||
+                    wantedFields.contains( field ) ||
+                    ( wantsEverything && !entry._fields.contains( field ) )
+            ) {
+
+                //noinspection unchecked
+                projection.put( jsonKey, cachedProfile.get( jsonKey ) );
+
+            }
+
+        }
+
+        return new WikiTreePersonProfile( cachedProfile.getRequestType(), projection, profileType );
+
+    }
+
+    /**
+     Combine what we already knew about a person with what we just fetched.
+
+     @param entry          the cached entry.
+     @param fetchedProfile what we just fetched.
+     @param profileType    the type of the combined profile.
+     @return a profile containing the fields of both.
+     @throws WikiTreeRequestFailedException if something goes wrong creating the combined profile (it shouldn't).
+     */
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static WikiTreePersonProfile merge(
+            final @NotNull CachedProfile entry,
+            final @NotNull WikiTreePersonProfile fetchedProfile,
+            final @NotNull WikiTreePersonProfile.ProfileType profileType
+    )
+            throws WikiTreeRequestFailedException {
+
+        JSONObject combined = new JSONObject();
+        //noinspection unchecked
+        combined.putAll( entry._profile );
+        //noinspection unchecked
+        combined.putAll( fetchedProfile );
+
+        return new WikiTreePersonProfile( entry._profile.getRequestType(), combined, profileType );
+
+    }
+
+    /**
+     Figure out which {@code getPerson} field yields a particular key in a person profile.
+     <p/>For example, the {@code "Derived.ShortName"} field yields a {@code "ShortName"} key and
+     the {@code "Privacy"} field yields {@code "Privacy"}, {@code "Privacy_IsOpen"}, {@code "Privacy_IsPrivate"} (and so on) keys.
+
+     @param jsonKey the key.
+     @return the field.
+     */
+
+    @NotNull
+    private static String getField( final @NotNull String jsonKey ) {
+
+        if ( jsonKey.startsWith( WikiTreePersonProfile.PRIVACY + "_" ) ) {
+
+            return WikiTreePersonProfile.PRIVACY;
+
+        }
+
+        String derivedField = "Derived." + jsonKey;
+        if ( WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET.contains( derivedField ) ) {
+
+            return derivedField;
+
+        }
+
+        return jsonKey;
+
+    }
+
+    /**
+     Discard every entry in the cache.
+     <p/>The hit, miss, eviction and expiration counts are not affected.
+     */
+
+    public void clear() {
+
+        synchronized ( _entries ) {
+
+            _entries.clear();
+
+        }
+
+    }
+
+    /**
+     Discard every entry which has expired.
+     <p/>Expired entries are discarded when they are found anyways so calling this method is never necessary.
+     It just gets rid of expired entries which nobody has asked for lately sooner rather than later.
+
+     @return the number of entries discarded.
+     */
+
+    public int purgeExpiredEntries() {
+
+        int purged = 0;
+        long now = System.nanoTime();
+
+        synchronized ( _entries ) {
+
+            for ( Iterator<CachedProfile> iter = _entries.values().iterator(); iter.hasNext(); ) {
+
+                if ( iter.next().isExpired( now ) ) {
+
+                    iter.remove();
+                    purged += 1;
+
+                }
+
+            }
+
+        }
+
+        _expirations.addAndGet( purged );
+
+        return purged;
+
+    }
+
+    /**
+     Get the number of entries in the cache (including any that have expired but have not yet been discarded).
+
+     @return the number of entries in the cache.
+     */
+
+    public int size() {
+
+        synchronized ( _entries ) {
+
+            return _entries.size();
+
+        }
+
+    }
+
+    /**
+     Get the most entries that this cache holds on to.
+
+     @return the most entries that this cache holds on to.
+     */
+
+    public int getMaxEntries() {
+
+        return _maxEntries;
+
+    }
+
+    /**
+     Get how long each entry lives.
+
+     @return how long each entry lives in milliseconds.
+     */
+
+    public long getTimeToLiveMillis() {
+
+        return _timeToLiveMillis;
+
+    }
+
+    /**
+     Get the number of lookups which found what they were looking for.
+
+     @return the number of hits.
+     */
+
+    public long getHits() {
+
+        return _hits.get();
+
+    }
+
+    /**
+     Get the number of {@code getPerson} lookups which found some but not all of the fields that they were looking for.
+     <p/>The session then only asks the WikiTree API server for the missing fields.
+
+     @return the number of partial hits.
+     */
+
+    public long getPartialHits() {
+
+        return _partialHits.get();
+
+    }
+
+    /**
+     Get the number of lookups which didn't find what they were looking for (including those which found an expired entry).
+
+     @return the number of misses.
+     */
+
+    public long getMisses() {
+
+        return _misses.get();
+
+    }
+
+    /**
+     Get the number of entries which were discarded to make room for newer entries.
+
+     @return the number of evictions.
+     */
+
+    public long getEvictions() {
+
+        return _evictions.get();
+
+    }
+
+    /**
+     Get the number of entries which were discarded because they had expired.
+
+     @return the number of expirations.
+     */
+
+    public long getExpirations() {
+
+        return _expirations.get();
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeProfileCache( " +
+               "size=" + size() + ", " +
+               "hits=" + getHits() + ", " +
+               "partialHits=" + getPartialHits() + ", " +
+               "misses=" + getMisses() + ", " +
+               "evictions=" + getEvictions() + ", " +
+               "expirations=" + getExpirations() +
+               " )";
+
+    }
+
+}
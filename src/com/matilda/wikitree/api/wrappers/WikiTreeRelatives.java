@@ -63,6 +63,8 @@ public class WikiTreeRelatives extends WikiTreeWrapper {
 
         super( requestObject );
 
+        WikiTreeWrapperEvent event = new WikiTreeWrapperEvent();
+
         _requestKeys = requestKeys;
         _requestParents = requestParents;
         _requestChildren = requestChildren;
@@ -89,16 +91,28 @@ public class WikiTreeRelatives extends WikiTreeWrapper {
                     WikiTreeRequestType requestType =
                             keyValue instanceof Number ? WikiTreeRequestType.PERSON_ID : WikiTreeRequestType.WIKITREE_ID;
 
-                    WikiTreePersonProfile basePersonProfile = new WikiTreePersonProfile(
-                            requestType,
-                            jsonBasePerson,
-                            isAllRelativeClassesRequest()
-                                    ?
-                                    WikiTreePersonProfile.ProfileType.RELATIVES_COMPLETE
-                                    :
-                                    WikiTreePersonProfile.ProfileType.RELATIVES_INCOMPLETE,
-                            "person"
-                    );
+                    WikiTreePersonProfile basePersonProfile;
+                    Object boundPerson = jsonBasePerson.get( "person" );
+                    if ( boundPerson instanceof WikiTreePersonProfile ) {
+
+                        // Bound directly from the parser's events (see WikiTreeProfileBinder).
+
+                        basePersonProfile = (WikiTreePersonProfile)boundPerson;
+
+                    } else {
+
+                        basePersonProfile = new WikiTreePersonProfile(
+                                requestType,
+                                jsonBasePerson,
+                                isAllRelativeClassesRequest()
+                                        ?
+                                        WikiTreePersonProfile.ProfileType.RELATIVES_COMPLETE
+                                        :
+                                        WikiTreePersonProfile.ProfileType.RELATIVES_INCOMPLETE,
+                                "person"
+                        );
+
+                    }
 
                     _basePeopleByKey.put( key, basePersonProfile );
                     _basePeopleProfilesByWikiTreeId.put( basePersonProfile.getWikiTreeId(), basePersonProfile );
@@ -118,6 +132,8 @@ public class WikiTreeRelatives extends WikiTreeWrapper {
 
         }
 
+        event.finish( this, requestKeys, _basePeopleByKey.size() );
+
     }
 
     /**
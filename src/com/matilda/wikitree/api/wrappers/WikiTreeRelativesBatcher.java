@@ -0,0 +1,601 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.jsonclient.WikiTreeApiJsonSession;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ Combine lookups of individual people into multi-key {@code getRelatives} requests.
+ <p/>The WikiTree API's {@code getRelatives} action accepts a comma-separated list of keys but code which walks a family tree
+ tends to ask about one person at a time (often from lots of threads at once).
+ A batcher collects these one-person lookups for up to {@link #getMaxDelayMillis()} milliseconds (or until it has {@link #getMaxBatchSize()} keys),
+ sends them to the WikiTree API server as one {@code getRelatives} request, and then hands each caller the part of the response that they asked for.
+ <p/>Only lookups which want the same classes of relatives (parents, children, spouses and siblings) can share a request.
+ A lookup which wants no relatives at all (see {@link #getPersonAsync(String)}) just gets the person's profile.
+ Note that such a profile contains the fields which the {@code getRelatives} action returns
+ (use {@link WikiTreeApiWrappersSession#getPerson(WikiTreeId, String)} if you need to choose the fields).
+ <p/>Each lookup yields the base profile from the combined request's {@link WikiTreeRelatives} (with the requested relatives attached to it)
+ or {@code null} if the WikiTree API server had nothing to say about the key.
+ If the combined request fails then every lookup in it fails the same way.
+ <p/>Closing a batcher sends whatever lookups it is holding on to and stops it from accepting new ones.
+ <p/>Instances of this class are thread-safe.
+ */
+
+@SuppressWarnings("WeakerAccess")
+public class WikiTreeRelativesBatcher implements AutoCloseable {
+
+    /**
+     The most keys in one request used by {@link #WikiTreeRelativesBatcher(WikiTreeApiWrappersSession)}.
+     */
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    /**
+     How long a lookup waits for company when using {@link #WikiTreeRelativesBatcher(WikiTreeApiWrappersSession)}.
+     */
+
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5L;
+
+    /**
+     The lookups waiting to be sent which want a particular set of relatives.
+     */
+
+    private static class Batch {
+
+        private final boolean _getParents;
+
+        private final boolean _getChildren;
+
+        private final boolean _getSpouses;
+
+        private final boolean _getSiblings;
+
+        /**
+         The callers waiting for each key (a key asked for twice is only sent once).
+         */
+
+        private final Map<String, List<CompletableFuture<WikiTreePersonProfile>>> _waiters = new LinkedHashMap<>();
+
+        private ScheduledFuture<?> _timer;
+
+        private Batch( final boolean getParents, final boolean getChildren, final boolean getSpouses, final boolean getSiblings ) {
+
+            super();
+
+            _getParents = getParents;
+            _getChildren = getChildren;
+            _getSpouses = getSpouses;
+            _getSiblings = getSiblings;
+
+        }
+
+        public String toString() {
+
+            return "Batch( keys=" + _waiters.keySet() + " )";
+
+        }
+
+    }
+
+    private final WikiTreeApiWrappersSession _session;
+
+    private final int _maxBatchSize;
+
+    private final long _maxDelayMillis;
+
+    private final ScheduledExecutorService _timer;
+
+    /**
+     The batches which are filling up, indexed by {@link #getRelativeClasses(boolean, boolean, boolean, boolean)}.
+     */
+
+    private final Batch[] _batches = new Batch[16];
+
+    private boolean _closed = false;
+
+    private final AtomicLong _lookups = new AtomicLong( 0L );
+
+    private final AtomicLong _requests = new AtomicLong( 0L );
+
+    /**
+     Create a batcher which sends up to {@link #DEFAULT_MAX_BATCH_SIZE} keys per request and
+     holds on to lookups for at most {@link #DEFAULT_MAX_DELAY_MILLIS} milliseconds.
+
+     @param session the session used to send the combined requests.
+     */
+
+    public WikiTreeRelativesBatcher( final @NotNull WikiTreeApiWrappersSession session ) {
+
+        this( session, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS );
+
+    }
+
+    /**
+     Create a batcher.
+
+     @param session        the session used to send the combined requests.
+     @param maxBatchSize   the most keys to send in one request (a batch is sent as soon as it has this many keys).
+     @param maxDelayMillis the longest (in milliseconds) that a lookup is held on to while waiting for other lookups to share its request.
+     @throws IllegalArgumentException if {@code maxBatchSize} is not positive or {@code maxDelayMillis} is negative.
+     */
+
+    public WikiTreeRelativesBatcher( final @NotNull WikiTreeApiWrappersSession session, final int maxBatchSize, final long maxDelayMillis ) {
+
+        super();
+
+        if ( maxBatchSize <= 0 || maxDelayMillis < 0L ) {
+
+            throw new IllegalArgumentException(
+                    "WikiTreeRelativesBatcher:  batch size must be positive and delay must not be negative " +
+                    "(got maxBatchSize=" + maxBatchSize + ", maxDelayMillis=" + maxDelayMillis + ")"
+            );
+
+        }
+
+        _session = session;
+        _maxBatchSize = maxBatchSize;
+        _maxDelayMillis = maxDelayMillis;
+
+        _timer = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+
+                    Thread thread = new Thread( runnable, "WikiTreeRelativesBatcher" );
+                    thread.setDaemon( true );
+
+                    return thread;
+
+                }
+        );
+
+    }
+
+    /**
+     Look up someone's profile.
+     <p/>This is equivalent to {@code getRelativesAsync( key, false, false, false, false )}.
+
+     @param key the person's WikiTree ID or Person.Id.
+     @return a future which yields the person's profile or {@code null} if there is no such person.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getPersonAsync( final @NotNull String key ) {
+
+        return getRelativesAsync( key, false, false, false, false );
+
+    }
+
+    /**
+     Look up someone's profile and wait for the answer.
+     <p/>See {@link #getPersonAsync(String)} for more information.
+
+     @param key the person's WikiTree ID or Person.Id.
+     @return the person's profile or {@code null} if there is no such person.
+     @throws IOException                    if something goes wrong sending the combined request or reading the response.
+     @throws ParseException                 if the response is not valid JSON.
+     @throws WikiTreeRequestFailedException if the WikiTree API server rejected the combined request.
+     */
+
+    @Nullable
+    public WikiTreePersonProfile getPerson( final @NotNull String key )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return await( getPersonAsync( key ) );
+
+    }
+
+    /**
+     Look up someone's relatives.
+
+     @param key         the person's WikiTree ID or Person.Id.
+     @param getParents  {@code true} if the person's parents are wanted.
+     @param getChildren {@code true} if the person's children are wanted.
+     @param getSpouses  {@code true} if the person's spouses are wanted.
+     @param getSiblings {@code true} if the person's siblings are wanted.
+     @return a future which yields the person's profile with the requested relatives attached or {@code null} if there is no such person.
+     If the combined request fails then the future completes exceptionally with a {@link CompletionException} whose cause is the
+     {@link IOException}, {@link ParseException} or {@link WikiTreeRequestFailedException} that
+     {@link WikiTreeApiWrappersSession#getRelatives(String, boolean, boolean, boolean, boolean)} would have thrown.
+     @throws IllegalArgumentException if {@code key} is empty or contains a comma.
+     @throws IllegalStateException    if this batcher has been closed.
+     */
+
+    @NotNull
+    public CompletableFuture<WikiTreePersonProfile> getRelativesAsync(
+            final @NotNull String key,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    ) {
+
+        String trimmedKey = key.trim();
+        if ( trimmedKey.isEmpty() || trimmedKey.indexOf( ',' ) >= 0 ) {
+
+            throw new IllegalArgumentException( "WikiTreeRelativesBatcher.getRelativesAsync:  expected exactly one key (got \"" + key + "\")" );
+
+        }
+
+        CompletableFuture<WikiTreePersonProfile> rval = new CompletableFuture<>();
+        Batch fullBatch = null;
+
+        synchronized ( this ) {
+
+            if ( _closed ) {
+
+                throw new IllegalStateException( "WikiTreeRelativesBatcher.getRelativesAsync:  batcher has been closed" );
+
+            }
+
+            int relativeClasses = getRelativeClasses( getParents, getChildren, getSpouses, getSiblings );
+            Batch batch = _batches[relativeClasses];
+            if ( batch == null ) {
+
+                batch = new Batch( getParents, getChildren, getSpouses, getSiblings );
+                _batches[relativeClasses] = batch;
+
+                if ( _maxBatchSize > 1 ) {
+
+                    Batch timedBatch = batch;
+                    batch._timer = _timer.schedule( () -> sendIfWaiting( relativeClasses, timedBatch ), _maxDelayMillis, TimeUnit.MILLISECONDS );
+
+                }
+
+            }
+
+            batch._waiters.computeIfAbsent( trimmedKey, k -> new ArrayList<>() ).add( rval );
+            _lookups.incrementAndGet();
+
+            if ( batch._waiters.size() >= _maxBatchSize ) {
+
+                _batches[relativeClasses] = null;
+                fullBatch = batch;
+
+            }
+
+        }
+
+        if ( fullBatch != null ) {
+
+            send( fullBatch );
+
+        }
+
+        return rval;
+
+    }
+
+    /**
+     Look up someone's relatives and wait for the answer.
+     <p/>See {@link #getRelativesAsync(String, boolean, boolean, boolean, boolean)} for more information.
+
+     @return the person's profile with the requested relatives attached or {@code null} if there is no such person.
+     @throws IOException                    if something goes wrong sending the combined request or reading the response.
+     @throws ParseException                 if the response is not valid JSON.
+     @throws WikiTreeRequestFailedException if the WikiTree API server rejected the combined request.
+     */
+
+    @Nullable
+    public WikiTreePersonProfile getRelatives(
+            final @NotNull String key,
+            final boolean getParents,
+            final boolean getChildren,
+            final boolean getSpouses,
+            final boolean getSiblings
+    )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        return await( getRelativesAsync( key, getParents, getChildren, getSpouses, getSiblings ) );
+
+    }
+
+    /**
+     Send all the lookups which are waiting right now (without waiting for more lookups to join them).
+     */
+
+    public void flush() {
+
+        List<Batch> batches = new ArrayList<>();
+        synchronized ( this ) {
+
+            for ( int ix = 0; ix < _batches.length; ix += 1 ) {
+
+                if ( _batches[ix] != null ) {
+
+                    batches.add( _batches[ix] );
+                    _batches[ix] = null;
+
+                }
+
+            }
+
+        }
+
+        for ( Batch batch : batches ) {
+
+            send( batch );
+
+        }
+
+    }
+
+    /**
+     Send all the lookups which are waiting and stop accepting new ones.
+     <p/>Lookups which have already been sent complete normally. Closing a closed batcher does nothing.
+     */
+
+    @Override
+    public void close() {
+
+        synchronized ( this ) {
+
+            if ( _closed ) {
+
+                return;
+
+            }
+
+            _closed = true;
+
+        }
+
+        flush();
+        _timer.shutdown();
+
+    }
+
+    /**
+     Get the most keys that this batcher sends in one request.
+
+     @return the most keys that this batcher sends in one request.
+     */
+
+    public int getMaxBatchSize() {
+
+        return _maxBatchSize;
+
+    }
+
+    /**
+     Get the longest that a lookup is held on to while waiting for other lookups to share its request.
+
+     @return the longest (in milliseconds) that a lookup is held on to.
+     */
+
+    public long getMaxDelayMillis() {
+
+        return _maxDelayMillis;
+
+    }
+
+    /**
+     Get the number of lookups which this batcher has accepted.
+
+     @return the number of lookups.
+     */
+
+    public long getLookups() {
+
+        return _lookups.get();
+
+    }
+
+    /**
+     Get the number of {@code getRelatives} requests which this batcher has sent.
+
+     @return the number of requests.
+     */
+
+    public long getRequests() {
+
+        return _requests.get();
+
+    }
+
+    private static int getRelativeClasses( final boolean getParents, final boolean getChildren, final boolean getSpouses, final boolean getSiblings ) {
+
+        return ( getParents ? 1 : 0 ) | ( getChildren ? 2 : 0 ) | ( getSpouses ? 4 : 0 ) | ( getSiblings ? 8 : 0 );
+
+    }
+
+    /**
+     Send a batch if its time is up and nobody has sent it already.
+     */
+
+    private void sendIfWaiting( final int relativeClasses, final @NotNull Batch batch ) {
+
+        synchronized ( this ) {
+
+            if ( _batches[relativeClasses] != batch ) {
+
+                return;
+
+            }
+
+            _batches[relativeClasses] = null;
+
+        }
+
+        send( batch );
+
+    }
+
+    /**
+     Send a batch which has already been removed from {@link #_batches}.
+     */
+
+    private void send( final @NotNull Batch batch ) {
+
+        if ( batch._timer != null ) {
+
+            batch._timer.cancel( false );
+
+        }
+
+        String keys = String.join( ",", batch._waiters.keySet() );
+
+        _requests.incrementAndGet();
+
+        CompletableFuture<WikiTreeRelatives> request;
+        try {
+
+            request = _session.getRelativesAsync( keys, batch._getParents, batch._getChildren, batch._getSpouses, batch._getSiblings );
+
+        } catch ( RuntimeException e ) {
+
+            request = CompletableFuture.failedFuture( e );
+
+        }
+
+        request.whenComplete(
+                ( relatives, e ) -> {
+
+                    for ( Map.Entry<String, List<CompletableFuture<WikiTreePersonProfile>>> entry : batch._waiters.entrySet() ) {
+
+                        for ( CompletableFuture<WikiTreePersonProfile> waiter : entry.getValue() ) {
+
+                            if ( e != null ) {
+
+                                waiter.completeExceptionally( e );
+
+                            } else {
+
+                                try {
+
+                                    waiter.complete( relatives == null ? null : findBasePerson( relatives, entry.getKey() ) );
+
+                                } catch ( RuntimeException e2 ) {
+
+                                    waiter.completeExceptionally( e2 );
+
+                                }
+
+                            }
+
+                        }
+
+                    }
+
+                }
+        );
+
+    }
+
+    /**
+     Find the part of a combined response which answers a particular key.
+     <p/>The server normally echoes each key exactly as it was sent. If it doesn't then the key is looked up as a Person.Id or a WikiTree ID.
+     */
+
+    @Nullable
+    private static WikiTreePersonProfile findBasePerson( final @NotNull WikiTreeRelatives relatives, final @NotNull String key ) {
+
+        WikiTreePersonProfile profile = relatives.getBasePeopleByKey().get( key );
+        if ( profile != null ) {
+
+            return profile;
+
+        }
+
+        Object keyValue = WikiTreeApiJsonSession.interpretIdParameter( "WikiTreeRelativesBatcher", key );
+        if ( keyValue instanceof Number ) {
+
+            return relatives.getBasePeopleByPersonId().get( ( (Number)keyValue ).longValue() );
+
+        }
+
+        if ( WikiTreeId.isValidWikiTreeIdString( key ) ) {
+
+            return relatives.getBasePeopleByWikiTreeID().get( new WikiTreeId( key ) );
+
+        }
+
+        return null;
+
+    }
+
+    @Nullable
+    private static WikiTreePersonProfile await( final @NotNull CompletableFuture<WikiTreePersonProfile> future )
+            throws IOException, ParseException, WikiTreeRequestFailedException {
+
+        try {
+
+            return future.get();
+
+        } catch ( InterruptedException e ) {
+
+            Thread.currentThread().interrupt();
+
+            InterruptedIOException ioe = new InterruptedIOException( "WikiTreeRelativesBatcher:  interrupted waiting for a batched request" );
+            ioe.initCause( e );
+
+            throw ioe;
+
+        } catch ( ExecutionException e ) {
+
+            Throwable cause = e.getCause();
+            while ( cause instanceof CompletionException && cause.getCause() != null ) {
+
+                cause = cause.getCause();
+
+            }
+
+            if ( cause instanceof IOException ) {
+
+                throw (IOException)cause;
+
+            } else if ( cause instanceof ParseException ) {
+
+                throw (ParseException)cause;
+
+            } else if ( cause instanceof WikiTreeRequestFailedException ) {
+
+                throw (WikiTreeRequestFailedException)cause;
+
+            } else if ( cause instanceof RuntimeException ) {
+
+                throw (RuntimeException)cause;
+
+            } else if ( cause instanceof Error ) {
+
+                throw (Error)cause;
+
+            }
+
+            throw new IOException( "WikiTreeRelativesBatcher:  batched request failed", cause );
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeRelativesBatcher( " +
+               "maxBatchSize=" + _maxBatchSize + ", " +
+               "maxDelayMillis=" + _maxDelayMillis + ", " +
+               "lookups=" + getLookups() + ", " +
+               "requests=" + getRequests() +
+               " )";
+
+    }
+
+}
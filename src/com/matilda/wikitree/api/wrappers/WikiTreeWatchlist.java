@@ -56,6 +56,8 @@ public class WikiTreeWatchlist extends WikiTreeWrapper {
 
         super( resultObject );
 
+        WikiTreeWrapperEvent event = new WikiTreeWrapperEvent();
+
         _getPersonParam = getPersonParam;
         _getSpaceParam = getSpaceParam;
         _onlyLivingParam = onlyLivingParam;
@@ -106,6 +108,8 @@ public class WikiTreeWatchlist extends WikiTreeWrapper {
 
         }
 
+        event.finish( this, null, _thisBatch.size() );
+
     }
 
     public Boolean getGetSpaceParam() {
@@ -22,6 +22,16 @@ public class WikiTreeWrapper extends JSONObject {
 
     }
 
+    /**
+     Create an empty wrapper which is to be filled in as its JSON text is parsed (see {@link WikiTreeProfileBinder}).
+     */
+
+    protected WikiTreeWrapper() {
+
+        super();
+
+    }
+
     protected void setRequestType( final @NotNull WikiTreeRequestType requestType ) {
 
         if ( requestType == WikiTreeRequestType.UNSPECIFIED ) {
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ A Java Flight Recorder event describing the construction of a wrapper ({@link WikiTreeAncestors}, {@link WikiTreeRelatives} or {@link WikiTreeWatchlist})
+ from the result of a request.
+ <p/>The event covers the wrapper's own constructor (turning the result into profiles, building maps and trees)
+ but not the copying of the result into the wrapper done by {@link WikiTreeWrapper}'s constructor.
+ Creating and beginning an event which isn't enabled costs next to nothing.
+ */
+
+@Name( "com.matilda.wikitree.WrapperBuild" )
+@Label( "WikiTree Wrapper Build" )
+@Category( { "WikiTree", "Wrappers" } )
+@Description( "Building a wrapper object from the result of a WikiTree API request" )
+class WikiTreeWrapperEvent extends Event {
+
+    @Label( "Wrapper" )
+    String wrapper;
+
+    @Label( "Key" )
+    @Description( "The WikiTree ID or Person.Id (or comma-separated list of them) that the wrapped request was about" )
+    String key;
+
+    @Label( "Profile Count" )
+    int profileCount;
+
+    /**
+     Create and begin an event.
+     */
+
+    WikiTreeWrapperEvent() {
+
+        super();
+
+        begin();
+
+    }
+
+    /**
+     Note that the wrapper is built and commit the event (if it passes the recording's threshold).
+
+     @param wrapper      the wrapper.
+     @param key          what the wrapped request was about ({@code null} if it wasn't about anyone in particular).
+     @param profileCount the number of profiles in the wrapper.
+     */
+
+    void finish( final @NotNull WikiTreeWrapper wrapper, @Nullable final Object key, final int profileCount ) {
+
+        end();
+
+        if ( shouldCommit() ) {
+
+            this.wrapper = wrapper.getClass().getSimpleName();
+            this.key = key == null ? null : key.toString();
+            this.profileCount = profileCount;
+
+            commit();
+
+        }
+
+    }
+
+    public String toString() {
+
+        return "WikiTreeWrapperEvent( wrapper=" + wrapper + ", key=" + key + ", profileCount=" + profileCount + " )";
+
+    }
+
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeCircuitOpenException;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class WikiTreeCircuitBreakerTest extends TestCase {
+
+    private static void assertRejected( final WikiTreeCircuitBreaker breaker ) {
+
+        try {
+
+            breaker.acquire();
+            fail( "breaker let a request through (" + breaker + ")" );
+
+        } catch ( WikiTreeCircuitOpenException e ) {
+
+            // Expected.
+
+        }
+
+    }
+
+    private static void failRequests( final WikiTreeCircuitBreaker breaker, final int times )
+            throws WikiTreeCircuitOpenException {
+
+        for ( int ix = 0; ix < times; ix += 1 ) {
+
+            breaker.acquire();
+            breaker.release( false );
+
+        }
+
+    }
+
+    private static WikiTreeApiResponse makeResponse( final int statusCode, final String body, final long contentLength )
+            throws IOException {
+
+        return new WikiTreeApiResponse(
+                new URL( "http://localhost/api.php" ),
+                statusCode,
+                Collections.emptyMap(),
+                new ByteArrayInputStream( body.getBytes( StandardCharsets.UTF_8 ) ),
+                contentLength
+        );
+
+    }
+
+    private static void drain( final InputStream in )
+            throws IOException {
+
+        byte[] buffer = new byte[16];
+        //noinspection StatementWithEmptyBody
+        while ( in.read( buffer ) >= 0 ) {
+        }
+
+    }
+
+    public void testInvalidSettings() {
+
+        try {
+
+            new WikiTreeCircuitBreaker( 0, 1000L );
+            fail( "accepted a failure threshold of 0" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+        try {
+
+            new WikiTreeCircuitBreaker( 1, -1L );
+            fail( "accepted a negative open time" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+    }
+
+    public void testOpensAfterConsecutiveFailures()
+            throws WikiTreeCircuitOpenException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 3, 60000L );
+
+        failRequests( breaker, 2 );
+        assertEquals( WikiTreeCircuitBreaker.State.CLOSED, breaker.getState() );
+
+        // A success resets the count.
+
+        breaker.acquire();
+        breaker.release( true );
+        failRequests( breaker, 2 );
+        assertEquals( WikiTreeCircuitBreaker.State.CLOSED, breaker.getState() );
+
+        failRequests( breaker, 1 );
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+        assertEquals( 1L, breaker.getTrips() );
+
+        assertRejected( breaker );
+        assertRejected( breaker );
+        assertEquals( 2L, breaker.getRejectedRequests() );
+
+    }
+
+    public void testOpenBreakerSaysWhenToComeBack()
+            throws WikiTreeCircuitOpenException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 1, 60000L );
+        failRequests( breaker, 1 );
+
+        try {
+
+            breaker.acquire();
+            fail( "open breaker let a request through" );
+
+        } catch ( WikiTreeCircuitOpenException e ) {
+
+            assertTrue( e.getRetryAfterMillis() > 0L && e.getRetryAfterMillis() <= 60000L );
+
+        }
+
+    }
+
+    public void testSuccessfulProbeCloses()
+            throws WikiTreeCircuitOpenException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 1, 20L );
+        failRequests( breaker, 1 );
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+
+        Thread.sleep( 40L );
+
+        // Still reported as open until somebody asks.
+
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+
+        breaker.acquire();
+        assertEquals( WikiTreeCircuitBreaker.State.HALF_OPEN, breaker.getState() );
+
+        // Only one probe at a time.
+
+        assertRejected( breaker );
+
+        breaker.release( true );
+        assertEquals( WikiTreeCircuitBreaker.State.CLOSED, breaker.getState() );
+
+        breaker.acquire();
+        breaker.release( true );
+        assertEquals( 1L, breaker.getTrips() );
+
+    }
+
+    public void testFailedProbeReopens()
+            throws WikiTreeCircuitOpenException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 3, 20L );
+        failRequests( breaker, 3 );
+        Thread.sleep( 40L );
+
+        // A single failure is enough when half-open.
+
+        breaker.acquire();
+        breaker.release( false );
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+        assertEquals( 2L, breaker.getTrips() );
+        assertRejected( breaker );
+
+    }
+
+    public void testAbandonedProbeLetsAnotherThrough()
+            throws WikiTreeCircuitOpenException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 1, 20L );
+        failRequests( breaker, 1 );
+        Thread.sleep( 40L );
+
+        breaker.acquire();
+        assertRejected( breaker );
+
+        breaker.abandon();
+        assertEquals( WikiTreeCircuitBreaker.State.HALF_OPEN, breaker.getState() );
+
+        breaker.acquire();
+        breaker.release( true );
+        assertEquals( WikiTreeCircuitBreaker.State.CLOSED, breaker.getState() );
+
+    }
+
+    public void testServerErrorsAreReportedRightAway()
+            throws IOException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 1, 60000L );
+
+        breaker.acquire();
+        WikiTreeApiResponse response = breaker.releaseWhenRead( makeResponse( 503, "down", 4L ) );
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+        response.close();
+
+    }
+
+    /**
+     Get a breaker which is half-open with its probe in flight (so we can see when the probe gets reported).
+     */
+
+    private static WikiTreeCircuitBreaker makeProbingBreaker()
+            throws WikiTreeCircuitOpenException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = new WikiTreeCircuitBreaker( 1, 20L );
+        failRequests( breaker, 1 );
+        Thread.sleep( 40L );
+        breaker.acquire();
+
+        return breaker;
+
+    }
+
+    public void testBodyIsReportedWhenClosed()
+            throws IOException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = makeProbingBreaker();
+
+        WikiTreeApiResponse response = breaker.releaseWhenRead( makeResponse( 200, "{}", 2L ) );
+        drain( response.getBody() );
+        assertEquals( WikiTreeCircuitBreaker.State.HALF_OPEN, breaker.getState() );
+
+        response.close();
+        assertEquals( WikiTreeCircuitBreaker.State.CLOSED, breaker.getState() );
+
+        // Closing it again doesn't report another success.
+
+        failRequests( breaker, 1 );
+        response.close();
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+
+    }
+
+    public void testShortBodyIsAFailure()
+            throws IOException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = makeProbingBreaker();
+
+        WikiTreeApiResponse response = breaker.releaseWhenRead( makeResponse( 200, "{\"a\":", 100L ) );
+        drain( response.getBody() );
+        assertEquals( WikiTreeCircuitBreaker.State.HALF_OPEN, breaker.getState() );
+
+        response.close();
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+
+    }
+
+    public void testBodyWhichFailsToReadIsAFailure()
+            throws IOException, InterruptedException {
+
+        WikiTreeCircuitBreaker breaker = makeProbingBreaker();
+
+        WikiTreeApiResponse response = breaker.releaseWhenRead(
+                new WikiTreeApiResponse(
+                        new URL( "http://localhost/api.php" ),
+                        200,
+                        Collections.emptyMap(),
+                        new InputStream() {
+
+                            @Override
+                            public int read()
+                                    throws IOException {
+
+                                throw new IOException( "connection reset" );
+
+                            }
+
+                        },
+                        -1L
+                )
+        );
+
+        try {
+
+            response.getBody().read();
+            fail( "read should have failed" );
+
+        } catch ( IOException e ) {
+
+            // Expected.
+
+        }
+
+        response.close();
+        assertEquals( WikiTreeCircuitBreaker.State.OPEN, breaker.getState() );
+
+    }
+
+}
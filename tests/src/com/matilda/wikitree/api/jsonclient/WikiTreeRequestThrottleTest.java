@@ -0,0 +1,98 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class WikiTreeRequestThrottleTest extends TestCase {
+
+    /**
+     A throttle whose rate limit never gets in the way and which allows one request in flight at a time.
+     */
+
+    private static WikiTreeRequestThrottle makeSingleFileThrottle() {
+
+        return new WikiTreeRequestThrottle( 1e6, 1000, 1, 1, 1, 3.0 );
+
+    }
+
+    public void testAsyncWaitersGetSlotsInOrder()
+            throws Exception {
+
+        WikiTreeRequestThrottle throttle = makeSingleFileThrottle();
+
+        long first = throttle.acquireAsync().get( 1L, TimeUnit.SECONDS );
+        CompletableFuture<Long> second = throttle.acquireAsync();
+        CompletableFuture<Long> third = throttle.acquireAsync();
+
+        assertFalse( second.isDone() );
+        assertFalse( third.isDone() );
+        assertEquals( 2, throttle.getWaiting() );
+
+        throttle.release( first, 200 );
+
+        assertTrue( second.isDone() );
+        assertFalse( third.isDone() );
+        assertEquals( 1, throttle.getInFlight() );
+
+        throttle.abandon();
+
+        assertTrue( third.isDone() );
+        assertEquals( 1, throttle.getInFlight() );
+        assertEquals( 0, throttle.getWaiting() );
+
+    }
+
+    public void testCancelledWaiterDoesNotKeepItsSlot()
+            throws Exception {
+
+        WikiTreeRequestThrottle throttle = makeSingleFileThrottle();
+
+        long first = throttle.acquireAsync().get( 1L, TimeUnit.SECONDS );
+        CompletableFuture<Long> cancelled = throttle.acquireAsync();
+        CompletableFuture<Long> next = throttle.acquireAsync();
+
+        assertTrue( cancelled.cancel( true ) );
+
+        throttle.release( first, 200 );
+
+        // The slot skips the cancelled waiter and goes to the next one.
+
+        assertTrue( next.isDone() );
+        assertEquals( 1, throttle.getInFlight() );
+
+        throttle.release( next.get(), 200 );
+
+        assertEquals( 0, throttle.getInFlight() );
+
+    }
+
+    public void testTokenWaitDoesNotBlockTheCaller()
+            throws Exception {
+
+        // One token and then one more every 200 milliseconds.
+
+        WikiTreeRequestThrottle throttle = new WikiTreeRequestThrottle( 5.0, 1, 1, 4, 4, 3.0 );
+
+        throttle.acquireAsync().get( 1L, TimeUnit.SECONDS );
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<Long> waiter = throttle.acquireAsync();
+        long returnedAfterNanos = System.nanoTime() - startNanos;
+
+        assertTrue( "acquireAsync took " + returnedAfterNanos + "ns to return", returnedAfterNanos < TimeUnit.MILLISECONDS.toNanos( 100L ) );
+        assertFalse( waiter.isDone() );
+        assertEquals( 1L, throttle.getThrottledRequests() );
+
+        waiter.get( 5L, TimeUnit.SECONDS );
+
+        assertEquals( 2, throttle.getInFlight() );
+
+    }
+
+}
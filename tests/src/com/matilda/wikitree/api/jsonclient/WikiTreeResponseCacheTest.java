@@ -0,0 +1,471 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class WikiTreeResponseCacheTest extends TestCase {
+
+    private Path _directory;
+
+    @Override
+    protected void setUp()
+            throws IOException {
+
+        _directory = Files.createTempDirectory( "WikiTreeResponseCacheTest" );
+
+    }
+
+    @Override
+    protected void tearDown()
+            throws IOException {
+
+        try ( Stream<Path> paths = Files.walk( _directory ) ) {
+
+            for ( Path path : (Iterable<Path>)paths.sorted( Comparator.reverseOrder() )::iterator ) {
+
+                Files.delete( path );
+
+            }
+
+        }
+
+    }
+
+    private static byte[] bytes( final String s ) {
+
+        return s.getBytes( StandardCharsets.UTF_8 );
+
+    }
+
+    private static String string( final byte[] b ) {
+
+        return b == null ? null : new String( b, StandardCharsets.UTF_8 );
+
+    }
+
+    public void testPutAndGet()
+            throws IOException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertNull( cache.get( "a" ) );
+
+            cache.put( "a", bytes( "alpha" ) );
+            cache.put( "b", bytes( "" ) );
+
+            assertEquals( "alpha", string( cache.get( "a" ) ) );
+            assertEquals( "", string( cache.get( "b" ) ) );
+            assertNull( cache.get( "c" ) );
+            assertEquals( 2, cache.size() );
+            assertEquals( 2L, cache.getHits() );
+            assertEquals( 2L, cache.getMisses() );
+
+            cache.put( "a", bytes( "aleph" ) );
+            assertEquals( "aleph", string( cache.get( "a" ) ) );
+            assertEquals( 2, cache.size() );
+
+        }
+
+    }
+
+    public void testStaleRecordsAreMisses()
+            throws IOException, InterruptedException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory, 1L ) ) {
+
+            cache.put( "a", bytes( "alpha" ) );
+            Thread.sleep( 10L );
+
+            assertNull( cache.get( "a" ) );
+            assertEquals( 1L, cache.getExpirations() );
+
+            // Stale records still count (and still get found by a cache with a longer time to live).
+
+            assertEquals( 1, cache.size() );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( "alpha", string( cache.get( "a" ) ) );
+
+        }
+
+    }
+
+    public void testReopen()
+            throws IOException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int ix = 0; ix < 100; ix += 1 ) {
+
+                cache.put( "key" + ix, bytes( "body" + ix ) );
+
+            }
+
+            cache.put( "key7", bytes( "replaced" ) );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( 100, cache.size() );
+            for ( int ix = 0; ix < 100; ix += 1 ) {
+
+                assertEquals( ix == 7 ? "replaced" : "body" + ix, string( cache.get( "key" + ix ) ) );
+
+            }
+
+        }
+
+    }
+
+    public void testReopenDropsRecordsTheIndexNeverSaw()
+            throws IOException {
+
+        long committedLength;
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            cache.put( "a", bytes( "alpha" ) );
+            committedLength = cache.getSegmentLength();
+
+        }
+
+        // Pretend that the JVM died after appending a record but before updating the index.
+
+        try ( FileChannel segment = FileChannel.open( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME ), StandardOpenOption.WRITE ) ) {
+
+            segment.write( ByteBuffer.wrap( bytes( "half a record" ) ), committedLength );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( committedLength, cache.getSegmentLength() );
+            assertEquals( committedLength, Files.size( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME ) ) );
+            assertEquals( "alpha", string( cache.get( "a" ) ) );
+
+            cache.put( "b", bytes( "beta" ) );
+            assertEquals( "beta", string( cache.get( "b" ) ) );
+
+        }
+
+    }
+
+    public void testReopenRebuildsAMissingIndex()
+            throws IOException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            cache.put( "a", bytes( "alpha" ) );
+            cache.put( "b", bytes( "beta" ) );
+            cache.put( "a", bytes( "aleph" ) );
+
+        }
+
+        Files.delete( _directory.resolve( WikiTreeResponseCache.INDEX_FILE_NAME ) );
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( 2, cache.size() );
+            assertEquals( "aleph", string( cache.get( "a" ) ) );
+            assertEquals( "beta", string( cache.get( "b" ) ) );
+
+        }
+
+    }
+
+    public void testReopenRebuildsAnIndexWhichGotAheadOfTheSegment()
+            throws IOException {
+
+        long committedLength;
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            cache.put( "a", bytes( "alpha" ) );
+            committedLength = cache.getSegmentLength();
+            cache.put( "b", bytes( "beta" ) );
+
+        }
+
+        // Pretend that the index made it to disk but the end of the segment file didn't.
+
+        try ( FileChannel segment = FileChannel.open( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME ), StandardOpenOption.WRITE ) ) {
+
+            segment.truncate( committedLength + 5L );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( committedLength, cache.getSegmentLength() );
+            assertEquals( 1, cache.size() );
+            assertEquals( "alpha", string( cache.get( "a" ) ) );
+            assertNull( cache.get( "b" ) );
+
+            cache.put( "b", bytes( "beta" ) );
+            assertEquals( "beta", string( cache.get( "b" ) ) );
+
+        }
+
+    }
+
+    public void testReopenAfterDyingPartWayThroughCompact()
+            throws IOException {
+
+        Path indexPath = _directory.resolve( WikiTreeResponseCache.INDEX_FILE_NAME );
+        byte[] oldIndex;
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int round = 0; round < 3; round += 1 ) {
+
+                for ( int ix = 0; ix < 20; ix += 1 ) {
+
+                    cache.put( "key" + ix, bytes( "round" + round + "-body" + ix ) );
+
+                }
+
+            }
+
+            cache.flush();
+            oldIndex = Files.readAllBytes( indexPath );
+            cache.compact();
+
+        }
+
+        // Put the old index back as if we died after the new segment file was renamed into place but before the new index was.
+
+        Files.write( indexPath, oldIndex );
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( 20, cache.size() );
+            for ( int ix = 0; ix < 20; ix += 1 ) {
+
+                assertEquals( "round2-body" + ix, string( cache.get( "key" + ix ) ) );
+
+            }
+
+        }
+
+        assertFalse( Files.exists( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME + ".compacting" ) ) );
+        assertFalse( Files.exists( _directory.resolve( WikiTreeResponseCache.INDEX_FILE_NAME + ".compacting" ) ) );
+
+    }
+
+    public void testReopenRejectsOtherFiles()
+            throws IOException {
+
+        Files.write( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME ), bytes( "this is not a segment file" ) );
+        Files.write( _directory.resolve( WikiTreeResponseCache.INDEX_FILE_NAME ), bytes( "nor is this an index file" ) );
+
+        try {
+
+            new WikiTreeResponseCache( _directory ).close();
+            fail( "opened a cache made of junk" );
+
+        } catch ( IOException e ) {
+
+            assertTrue( e.getMessage(), e.getMessage().contains( "is not a response cache" ) );
+
+        }
+
+    }
+
+    public void testCompact()
+            throws IOException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int round = 0; round < 5; round += 1 ) {
+
+                for ( int ix = 0; ix < 50; ix += 1 ) {
+
+                    cache.put( "key" + ix, bytes( "round" + round + "-body" + ix ) );
+
+                }
+
+            }
+
+            long before = cache.getSegmentLength();
+            cache.compact();
+            long after = cache.getSegmentLength();
+
+            assertTrue( "before=" + before + ", after=" + after, after < before / 4 );
+            assertEquals( after, Files.size( _directory.resolve( WikiTreeResponseCache.SEGMENT_FILE_NAME ) ) );
+            assertEquals( 50, cache.size() );
+            for ( int ix = 0; ix < 50; ix += 1 ) {
+
+                assertEquals( "round4-body" + ix, string( cache.get( "key" + ix ) ) );
+
+            }
+
+            // The compacted cache keeps working.
+
+            cache.put( "key0", bytes( "after" ) );
+            cache.put( "new", bytes( "new" ) );
+            assertEquals( "after", string( cache.get( "key0" ) ) );
+            assertEquals( "new", string( cache.get( "new" ) ) );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            assertEquals( 51, cache.size() );
+            assertEquals( "after", string( cache.get( "key0" ) ) );
+            assertEquals( "round4-body49", string( cache.get( "key49" ) ) );
+            assertEquals( "new", string( cache.get( "new" ) ) );
+
+        }
+
+    }
+
+    public void testSlotCollisions()
+            throws IOException {
+
+        // Find keys which all start looking in the same slot of a brand new index.
+
+        int mask = WikiTreeResponseCache.INITIAL_INDEX_CAPACITY - 1;
+        List<String> keys = new ArrayList<>();
+        int wantedSlot = -1;
+        for ( int ix = 0; keys.size() < 8; ix += 1 ) {
+
+            String key = "collider" + ix;
+            long hash = WikiTreeResponseCache.hash( bytes( key ) );
+            int slot = (int)( hash ^ ( hash >>> 32 ) ) & mask;
+            if ( wantedSlot < 0 ) {
+
+                wantedSlot = slot;
+
+            }
+
+            if ( slot == wantedSlot ) {
+
+                keys.add( key );
+
+            }
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( String key : keys ) {
+
+                cache.put( key, bytes( "body of " + key ) );
+
+            }
+
+            for ( String key : keys ) {
+
+                assertEquals( "body of " + key, string( cache.get( key ) ) );
+
+            }
+
+            // Replacing one in the middle of the probe sequence mustn't disturb the others.
+
+            cache.put( keys.get( 3 ), bytes( "replaced" ) );
+            assertEquals( keys.size(), cache.size() );
+            for ( int ix = 0; ix < keys.size(); ix += 1 ) {
+
+                assertEquals( ix == 3 ? "replaced" : "body of " + keys.get( ix ), string( cache.get( keys.get( ix ) ) ) );
+
+            }
+
+            assertNull( cache.get( "collider-missing" ) );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int ix = 0; ix < keys.size(); ix += 1 ) {
+
+                assertEquals( ix == 3 ? "replaced" : "body of " + keys.get( ix ), string( cache.get( keys.get( ix ) ) ) );
+
+            }
+
+        }
+
+    }
+
+    public void testGrow()
+            throws IOException {
+
+        int count = WikiTreeResponseCache.INITIAL_INDEX_CAPACITY * 3;
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int ix = 0; ix < count; ix += 1 ) {
+
+                cache.put( "key" + ix, bytes( "body" + ix ) );
+
+            }
+
+            assertEquals( count, cache.size() );
+
+        }
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            for ( int ix = 0; ix < count; ix += 1 ) {
+
+                assertEquals( "body" + ix, string( cache.get( "key" + ix ) ) );
+
+            }
+
+        }
+
+    }
+
+    public void testClear()
+            throws IOException {
+
+        try ( WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory ) ) {
+
+            cache.put( "a", bytes( "alpha" ) );
+            cache.clear();
+
+            assertEquals( 0, cache.size() );
+            assertNull( cache.get( "a" ) );
+
+            cache.put( "b", bytes( "beta" ) );
+            assertEquals( "beta", string( cache.get( "b" ) ) );
+
+        }
+
+    }
+
+    public void testClosedCacheRefusesWork()
+            throws IOException {
+
+        WikiTreeResponseCache cache = new WikiTreeResponseCache( _directory );
+        cache.close();
+        cache.close();
+
+        try {
+
+            cache.get( "a" );
+            fail( "a closed cache answered a get" );
+
+        } catch ( IOException e ) {
+
+            // Expected.
+
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.jsonclient;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeCircuitOpenException;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+public class WikiTreeRetryPolicyTest extends TestCase {
+
+    public void testRetryableStatusCodes() {
+
+        for ( int statusCode : new int[]{ 429, 500, 502, 503, 504 } ) {
+
+            assertTrue( "" + statusCode, WikiTreeRetryPolicy.isRetryable( statusCode ) );
+
+        }
+
+        for ( int statusCode : new int[]{ 200, 301, 400, 401, 403, 404, 501 } ) {
+
+            assertFalse( "" + statusCode, WikiTreeRetryPolicy.isRetryable( statusCode ) );
+
+        }
+
+    }
+
+    public void testMaxAttempts() {
+
+        WikiTreeRetryPolicy policy = new WikiTreeRetryPolicy( 3, 0L, 0L, 0.0, 100 );
+
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertTrue( policy.shouldRetry( 2, 503 ) );
+        assertFalse( policy.shouldRetry( 3, 503 ) );
+
+        assertFalse( policy.shouldRetry( 1, 404 ) );
+
+        assertEquals( 2L, policy.getRetries() );
+
+    }
+
+    public void testWhichExceptionsAreRetried() {
+
+        WikiTreeRetryPolicy policy = new WikiTreeRetryPolicy( 2, 0L, 0L, 0.0, 100 );
+
+        assertTrue( policy.shouldRetry( 1, new IOException( "connection refused" ) ) );
+        assertTrue( policy.shouldRetry( 1, new SocketTimeoutException( "read timed out" ) ) );
+        assertFalse( policy.shouldRetry( 1, new InterruptedIOException( "interrupted" ) ) );
+        assertFalse( policy.shouldRetry( 1, new WikiTreeCircuitOpenException( "open", 1000L ) ) );
+        assertFalse( policy.shouldRetry( 2, new IOException( "connection refused" ) ) );
+
+    }
+
+    public void testBudget() {
+
+        // Starts with two retries in reserve and earns half a retry per request.
+
+        WikiTreeRetryPolicy policy = new WikiTreeRetryPolicy( 10, 0L, 0L, 0.5, 2 );
+
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertFalse( policy.shouldRetry( 1, 503 ) );
+        assertEquals( 1L, policy.getBudgetExhaustions() );
+
+        policy.recordRequest();
+        assertFalse( policy.shouldRetry( 1, 503 ) );
+        policy.recordRequest();
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertFalse( policy.shouldRetry( 1, 503 ) );
+
+        // The budget never holds more than the reserve.
+
+        for ( int ix = 0; ix < 100; ix += 1 ) {
+
+            policy.recordRequest();
+
+        }
+
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertTrue( policy.shouldRetry( 1, 503 ) );
+        assertFalse( policy.shouldRetry( 1, 503 ) );
+
+        assertEquals( 5L, policy.getRetries() );
+        assertEquals( 4L, policy.getBudgetExhaustions() );
+
+    }
+
+    public void testBackoffGrowsUpToTheCeiling() {
+
+        WikiTreeRetryPolicy policy = new WikiTreeRetryPolicy( 10, 100L, 1000L, 1.0, 10 );
+
+        for ( int ix = 0; ix < 1000; ix += 1 ) {
+
+            assertTrue( policy.getBackoffMillis( 1, null ) <= 100L );
+            assertTrue( policy.getBackoffMillis( 2, null ) <= 200L );
+            assertTrue( policy.getBackoffMillis( 3, null ) <= 400L );
+            assertTrue( policy.getBackoffMillis( 9, null ) <= 1000L );
+
+        }
+
+        assertEquals( 0L, new WikiTreeRetryPolicy( 10, 0L, 0L, 1.0, 10 ).getBackoffMillis( 5, null ) );
+
+    }
+
+    public void testRetryAfter() {
+
+        WikiTreeRetryPolicy policy = new WikiTreeRetryPolicy( 10, 0L, 5000L, 1.0, 10 );
+
+        assertEquals( 2000L, policy.getBackoffMillis( 1, "2" ) );
+        assertEquals( 2000L, policy.getBackoffMillis( 1, " 2 " ) );
+
+        // Never longer than the ceiling.
+
+        assertEquals( 5000L, policy.getBackoffMillis( 1, "3600" ) );
+
+        // Dates are ignored.
+
+        assertEquals( 0L, policy.getBackoffMillis( 1, "Wed, 21 Oct 2015 07:28:00 GMT" ) );
+
+    }
+
+    public void testInvalidSettings() {
+
+        int[][] badInts = { { 0, 10 }, { 1, -1 } };
+        for ( int[] bad : badInts ) {
+
+            try {
+
+                new WikiTreeRetryPolicy( bad[0], 0L, 0L, 0.1, bad[1] );
+                fail( "accepted maxAttempts=" + bad[0] + ", budgetReserve=" + bad[1] );
+
+            } catch ( IllegalArgumentException e ) {
+
+                // Expected.
+
+            }
+
+        }
+
+        try {
+
+            new WikiTreeRetryPolicy( 3, 200L, 100L, 0.1, 10 );
+            fail( "accepted a ceiling below the initial backoff" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+        try {
+
+            new WikiTreeRetryPolicy( 3, 100L, 200L, Double.NaN, 10 );
+            fail( "accepted a budget ratio which isn't a number" );
+
+        } catch ( IllegalArgumentException e ) {
+
+            // Expected.
+
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.util;
+
+import junit.framework.TestCase;
+
+public class WikiTreeBufferPoolTest extends TestCase {
+
+    public void testFindsABigBufferBehindASmallOne() {
+
+        WikiTreeBufferPool pool = new WikiTreeBufferPool( 4, 1024 * 1024 );
+        byte[] big = pool.acquire( 200 * 1024 );
+        byte[] small = pool.acquire( 1 );
+        pool.release( big );
+        pool.release( small );
+
+        assertSame( big, pool.acquire( 100 * 1024 ) );
+        assertSame( small, pool.acquire( 1 ) );
+        assertEquals( 2L, pool.getReusedBuffers() );
+        assertEquals( 2L, pool.getAllocatedBuffers() );
+
+    }
+
+    public void testPrefersTheSmallestBufferWhichIsBigEnough() {
+
+        WikiTreeBufferPool pool = new WikiTreeBufferPool( 4, 1024 * 1024 );
+        byte[] small = pool.acquire( WikiTreeBufferPool.DEFAULT_BUFFER_SIZE );
+        byte[] big = pool.acquire( 200 * 1024 );
+        pool.release( small );
+        pool.release( big );
+
+        assertSame( small, pool.acquire( 1 ) );
+        assertSame( big, pool.acquire( 1 ) );
+
+    }
+
+    public void testNewBuffersAreRoundedUpToTheirSizeClass() {
+
+        WikiTreeBufferPool pool = new WikiTreeBufferPool( 4, 1024 * 1024 );
+        byte[] buffer = pool.acquire( WikiTreeBufferPool.DEFAULT_BUFFER_SIZE + 1 );
+        assertEquals( 2 * WikiTreeBufferPool.DEFAULT_BUFFER_SIZE, buffer.length );
+
+        // Too big to ever come back.
+
+        assertEquals( 2 * 1024 * 1024, pool.acquire( 2 * 1024 * 1024 ).length );
+
+    }
+
+    public void testLimits() {
+
+        WikiTreeBufferPool pool = new WikiTreeBufferPool( 1, 64 * 1024 );
+        byte[] first = pool.acquire( 1 );
+        byte[] second = pool.acquire( 1 );
+        pool.release( first );
+        pool.release( second );
+        pool.release( new byte[128 * 1024] );
+        pool.release( new byte[100] );
+
+        assertSame( first, pool.acquire( 1 ) );
+        assertNotSame( second, pool.acquire( 1 ) );
+
+    }
+
+}
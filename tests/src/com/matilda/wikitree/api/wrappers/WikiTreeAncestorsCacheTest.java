@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import junit.framework.TestCase;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class WikiTreeAncestorsCacheTest extends TestCase {
+
+    private static final String SCOPE = "https://api.wikitree.com/api.php";
+
+    /**
+     Make up a {@code getAncestors} result for someone.
+     <p/>Everyone's Person.Id is their number in a binary heap (person {@code k}'s father is {@code 2k} and their mother is {@code 2k+1})
+     and their WikiTree ID is {@code "Heap-k"}.
+
+     @param personId the someone.
+     @param depth    the depth of the request (the someone plus {@code depth - 1} generations of ancestors).
+     @return the result.
+     */
+
+    @SuppressWarnings("unchecked")
+    static WikiTreeAncestors makeAncestors( final long personId, final int depth )
+            throws WikiTreeRequestFailedException {
+
+        JSONArray ancestors = new JSONArray();
+        addAncestors( ancestors, personId, depth );
+
+        JSONObject resultObject = new JSONObject();
+        resultObject.put( "user_id", Long.toString( personId ) );
+        resultObject.put( "status", 0L );
+        resultObject.put( "ancestors", ancestors );
+
+        return new WikiTreeAncestors( new WikiTreeId( "Heap-" + personId ), depth, resultObject );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addAncestors( final JSONArray ancestors, final long personId, final int depth ) {
+
+        JSONObject profile = new JSONObject();
+        profile.put( WikiTreePersonProfile.ID, personId );
+        profile.put( WikiTreePersonProfile.NAME, "Heap-" + personId );
+        profile.put( WikiTreePersonProfile.IS_LIVING, 0L );
+        profile.put( WikiTreePersonProfile.FATHER, depth > 1 ? 2 * personId : 0L );
+        profile.put( WikiTreePersonProfile.MOTHER, depth > 1 ? 2 * personId + 1 : 0L );
+        ancestors.add( profile );
+
+        if ( depth > 1 ) {
+
+            addAncestors( ancestors, 2 * personId, depth - 1 );
+            addAncestors( ancestors, 2 * personId + 1, depth - 1 );
+
+        }
+
+    }
+
+    private static Set<Long> ids( final long... ids ) {
+
+        Set<Long> rval = new HashSet<>();
+        for ( long id : ids ) {
+
+            rval.add( id );
+
+        }
+
+        return rval;
+
+    }
+
+    public void testExactMatchIsTheCachedResult()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        WikiTreeAncestors ancestors = makeAncestors( 1L, 4 );
+        cache.put( SCOPE, ancestors );
+
+        assertSame( ancestors, cache.get( SCOPE, "1", 4 ) );
+        assertSame( ancestors, cache.get( SCOPE, "Heap-1", 4 ) );
+        assertEquals( 2L, cache.getHits() );
+
+    }
+
+    public void testShallowerRequestForTheSamePerson()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        WikiTreeAncestors ancestors = makeAncestors( 1L, 4 );
+        cache.put( SCOPE, ancestors );
+
+        WikiTreeAncestors slice = cache.get( SCOPE, "1", 3 );
+        assertNotNull( slice );
+        assertNotSame( ancestors, slice );
+        assertEquals( Integer.valueOf( 3 ), slice.getRequestDepth() );
+        assertEquals( 1L, slice.getBasePersonProfile().getPersonId() );
+        assertEquals( ids( 1, 2, 3, 4, 5, 6, 7 ), slice.getProfilesByPersonId().keySet() );
+
+        // The slice has its own profiles.
+
+        assertNotSame( ancestors.getProfilesByPersonId().get( 2L ), slice.getProfilesByPersonId().get( 2L ) );
+
+        WikiTreeAncestors byName = cache.get( SCOPE, "Heap-1", 1 );
+        assertNotNull( byName );
+        assertEquals( ids( 1 ), byName.getProfilesByPersonId().keySet() );
+
+    }
+
+    public void testSomeoneElsesAncestry()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        cache.put( SCOPE, makeAncestors( 1L, 4 ) );
+
+        // Person 2 is in the second generation so the cached result has three generations of their ancestry.
+
+        WikiTreeAncestors slice = cache.get( SCOPE, "Heap-2", 3 );
+        assertNotNull( slice );
+        assertEquals( 2L, slice.getBasePersonProfile().getPersonId() );
+        assertEquals( ids( 2, 4, 5, 8, 9, 10, 11 ), slice.getProfilesByPersonId().keySet() );
+        assertEquals( 4L, slice.getFathersOfMapping().get( 2L ).getPersonId() );
+        assertEquals( 11L, slice.getMothersOfMapping().get( 5L ).getPersonId() );
+        assertNull( slice.getFathersOfMapping().get( 8L ) );
+
+        assertNull( cache.get( SCOPE, "2", 4 ) );
+
+        // Great grandparents only have themselves.
+
+        WikiTreeAncestors greatGrandparent = cache.get( SCOPE, "15", 1 );
+        assertNotNull( greatGrandparent );
+        assertEquals( ids( 15 ), greatGrandparent.getProfilesByPersonId().keySet() );
+        assertNull( cache.get( SCOPE, "15", 2 ) );
+
+        // Nobody outside the result is known.
+
+        assertNull( cache.get( SCOPE, "16", 1 ) );
+
+    }
+
+    public void testDeeperRequestMisses()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        cache.put( SCOPE, makeAncestors( 1L, 4 ) );
+
+        assertNull( cache.get( SCOPE, "1", 5 ) );
+
+        // No depth means the default depth.
+
+        assertNull( cache.get( SCOPE, "1", null ) );
+        cache.put( SCOPE, makeAncestors( 1L, WikiTreeAncestorsCache.DEFAULT_DEPTH ) );
+        assertNotNull( cache.get( SCOPE, "1", null ) );
+
+    }
+
+    public void testDeepestResultWins()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        cache.put( SCOPE, makeAncestors( 1L, 4 ) );
+
+        // Adding a shallower result for person 2 mustn't hide the deeper ancestry that we already have.
+
+        WikiTreeAncestors shallow = makeAncestors( 2L, 2 );
+        cache.put( SCOPE, shallow );
+
+        WikiTreeAncestors slice = cache.get( SCOPE, "2", 3 );
+        assertNotNull( slice );
+        assertEquals( 7, slice.getProfilesByPersonId().size() );
+
+        // A deeper result takes over.
+
+        WikiTreeAncestors deep = makeAncestors( 2L, 6 );
+        cache.put( SCOPE, deep );
+        assertSame( deep, cache.get( SCOPE, "2", 6 ) );
+
+    }
+
+    public void testScopesAreSeparate()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache();
+        cache.put( SCOPE, makeAncestors( 1L, 3 ) );
+
+        assertNull( cache.get( SCOPE + "\nSomebody-1\nsomebody@example.com", "1", 3 ) );
+
+    }
+
+    public void testLeastRecentlyUsedIsEvicted()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache( 2, WikiTreeAncestorsCache.DEFAULT_TIME_TO_LIVE_MILLIS );
+        cache.put( SCOPE, makeAncestors( 3L, 3 ) );
+        cache.put( SCOPE, makeAncestors( 5L, 3 ) );
+
+        // Use person 3's result so that person 5's is the one to go.
+
+        assertNotNull( cache.get( SCOPE, "3", 3 ) );
+        cache.put( SCOPE, makeAncestors( 9L, 3 ) );
+
+        assertEquals( 2, cache.size() );
+        assertEquals( 1L, cache.getEvictions() );
+        assertNotNull( cache.get( SCOPE, "3", 3 ) );
+        assertNotNull( cache.get( SCOPE, "9", 3 ) );
+
+        // Everyone in the evicted result is forgotten.
+
+        for ( String key : Arrays.asList( "5", "Heap-5", "10", "21" ) ) {
+
+            assertNull( key, cache.get( SCOPE, key, 1 ) );
+
+        }
+
+    }
+
+    public void testEvictingTheBestResultFallsBackToTheNextBest()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache( 2, WikiTreeAncestorsCache.DEFAULT_TIME_TO_LIVE_MILLIS );
+        cache.put( SCOPE, makeAncestors( 2L, 4 ) );
+        cache.put( SCOPE, makeAncestors( 1L, 3 ) );
+
+        // Person 2's own result is the best one for person 2 until it is evicted. Then person 1's result (which has two generations of it) takes over.
+
+        assertEquals( 15, cache.get( SCOPE, "2", 4 ).getProfilesByPersonId().size() );
+        assertNotNull( cache.get( SCOPE, "1", 3 ) );
+        cache.put( SCOPE, makeAncestors( 100L, 2 ) );
+        assertEquals( 1L, cache.getEvictions() );
+
+        assertNull( cache.get( SCOPE, "2", 3 ) );
+        assertEquals( 3, cache.get( SCOPE, "Heap-2", 2 ).getProfilesByPersonId().size() );
+        assertNull( cache.get( SCOPE, "8", 1 ) );
+
+    }
+
+    public void testExpiredResultsAreDropped()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeAncestorsCache cache = new WikiTreeAncestorsCache( 10, 0L );
+        cache.put( SCOPE, makeAncestors( 1L, 3 ) );
+
+        assertNull( cache.get( SCOPE, "1", 3 ) );
+        assertEquals( 1L, cache.getExpirations() );
+        assertEquals( 0, cache.size() );
+
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2017 Daniel Boulet
+ */
+
+package com.matilda.wikitree.api.wrappers;
+
+import com.matilda.wikitree.api.exceptions.WikiTreeRequestFailedException;
+import com.matilda.wikitree.api.util.WikiTreeApiUtilities;
+import junit.framework.TestCase;
+import org.json.simple.JSONObject;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class WikiTreeProfileCacheTest extends TestCase {
+
+    private static final String SCOPE = "https://api.wikitree.com/api.php";
+
+    private static SortedSet<String> fields( final String... fields ) {
+
+        return new TreeSet<>( Arrays.asList( fields ) );
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WikiTreePersonProfile makeProfile( final long personId, final String... keysAndValues )
+            throws WikiTreeRequestFailedException {
+
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put( WikiTreePersonProfile.ID, personId );
+        jsonObject.put( WikiTreePersonProfile.NAME, "Test-" + personId );
+        jsonObject.put( WikiTreePersonProfile.IS_LIVING, 0L );
+        for ( int ix = 0; ix < keysAndValues.length; ix += 2 ) {
+
+            jsonObject.put( keysAndValues[ix], keysAndValues[ix + 1] );
+
+        }
+
+        return new WikiTreePersonProfile( WikiTreeRequestType.UNKNOWN, jsonObject, WikiTreePersonProfile.ProfileType.PROFILE );
+
+    }
+
+    public void testParseFields() {
+
+        assertEquals( fields( "BirthDate", "Id", "Name" ), WikiTreeProfileCache.parseFields( "Id, Name,,BirthDate" ) );
+        assertEquals( WikiTreeApiUtilities.S_ALL_GET_PERSON_FIELDS_SET, WikiTreeProfileCache.parseFields( "*" ) );
+        assertTrue( WikiTreeProfileCache.parseFields( "" ).isEmpty() );
+
+    }
+
+    public void testHitsPartialHitsAndMisses()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreePersonProfile profile = makeProfile( 7L, WikiTreePersonProfile.BIRTH_DATE, "1900-01-01" );
+        cache.putPerson( SCOPE, "Test-7", fields( "Id", "Name", "IsLiving", "BirthDate" ), profile, null );
+
+        WikiTreeProfileCache.CachedProfile entry = cache.getPerson( SCOPE, "Test-7", fields( "Id", "BirthDate" ) );
+        assertNotNull( entry );
+        assertSame( profile, entry.getProfile() );
+        assertEquals( 1L, cache.getHits() );
+
+        entry = cache.getPerson( SCOPE, "Test-7", fields( "BirthDate", "DeathDate" ) );
+        assertNotNull( entry );
+        assertFalse( entry.covers( fields( "BirthDate", "DeathDate" ) ) );
+        assertEquals( 1L, cache.getPartialHits() );
+
+        // Knowing something about someone isn't a hit if it's none of what we want.
+
+        entry = cache.getPerson( SCOPE, "Test-7", fields( "DeathDate" ) );
+        assertNotNull( entry );
+        assertEquals( 1L, cache.getMisses() );
+
+        assertNull( cache.getPerson( SCOPE, "Test-8", fields( "Id" ) ) );
+        assertEquals( 2L, cache.getMisses() );
+
+    }
+
+    public void testPersonIsIndexedByWikiTreeIdAndPersonId()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreePersonProfile profile = makeProfile( 7L );
+        cache.putPerson( SCOPE, "7", fields( "Id", "Name" ), profile, null );
+
+        assertSame( profile, cache.getPerson( SCOPE, "Test-7", fields( "Id" ) ).getProfile() );
+        assertSame( profile, cache.getPerson( SCOPE, "7", fields( "Id" ) ).getProfile() );
+        assertNull( cache.getPerson( SCOPE + "\nSomebody-1\nsomebody@example.com", "7", fields( "Id" ) ) );
+
+    }
+
+    public void testProfileIsIndexedByWikiTreeIdAndPersonId()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreePersonProfile profile = makeProfile( 7L );
+        cache.putProfile( SCOPE, "7", profile );
+
+        assertSame( profile, cache.getProfile( SCOPE, "7" ) );
+        assertSame( profile, cache.getProfile( SCOPE, "Test-7" ) );
+
+        // getProfile and getPerson results are kept apart (a getProfile result doesn't say which fields it has).
+
+        assertNull( cache.getPerson( SCOPE, "7", fields( "Id" ) ) );
+
+    }
+
+    public void testNeverForgetsWhatItKnows()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreePersonProfile everything = makeProfile( 7L, WikiTreePersonProfile.BIRTH_DATE, "1900-01-01" );
+        cache.putPerson( SCOPE, "7", fields( "Id", "Name", "BirthDate" ), everything, null );
+
+        // Something which knows less doesn't replace what the cache has.
+
+        WikiTreeProfileCache.CachedProfile entry = cache.putPerson( SCOPE, "7", fields( "Id", "Name" ), makeProfile( 7L ), null );
+        assertSame( everything, entry.getProfile() );
+        assertSame( everything, cache.getPerson( SCOPE, "7", fields( "BirthDate" ) ).getProfile() );
+
+    }
+
+    public void testProject()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreePersonProfile profile = makeProfile(
+                7L,
+                WikiTreePersonProfile.BIRTH_DATE, "1900-01-01",
+                WikiTreePersonProfile.DEATH_DATE, "1980-12-31",
+                WikiTreePersonProfile.PRIVACY, "60",
+                WikiTreePersonProfile.PRIVACY_IS_OPEN, "1"
+        );
+        SortedSet<String> cachedFields = fields( "Id", "Name", "IsLiving", "BirthDate", "DeathDate", "Privacy" );
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreeProfileCache.CachedProfile entry = cache.putPerson( SCOPE, "7", cachedFields, profile, null );
+
+        // Exactly what we have comes back as is.
+
+        assertSame( profile, WikiTreeProfileCache.project( entry, cachedFields, WikiTreePersonProfile.ProfileType.PROFILE ) );
+
+        WikiTreePersonProfile projection = WikiTreeProfileCache.project( entry, fields( "BirthDate" ), WikiTreePersonProfile.ProfileType.PROFILE );
+        assertNotSame( profile, projection );
+        assertEquals( "1900-01-01", projection.get( WikiTreePersonProfile.BIRTH_DATE ) );
+        assertFalse( projection.containsKey( WikiTreePersonProfile.DEATH_DATE ) );
+        assertFalse( projection.containsKey( WikiTreePersonProfile.PRIVACY ) );
+
+        // The profile can't live without these.
+
+        assertEquals( 7L, projection.getPersonId() );
+        assertEquals( "Test-7", projection.getWikiTreeId().getValueString() );
+        assertTrue( projection.containsKey( WikiTreePersonProfile.IS_LIVING ) );
+
+        // One field can yield several keys.
+
+        projection = WikiTreeProfileCache.project( entry, fields( "Privacy" ), WikiTreePersonProfile.ProfileType.PROFILE );
+        assertEquals( "60", projection.get( WikiTreePersonProfile.PRIVACY ) );
+        assertEquals( "1", projection.get( WikiTreePersonProfile.PRIVACY_IS_OPEN ) );
+        assertFalse( projection.containsKey( WikiTreePersonProfile.BIRTH_DATE ) );
+
+    }
+
+    public void testMerge()
+            throws WikiTreeRequestFailedException {
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache();
+        WikiTreeProfileCache.CachedProfile entry = cache.putPerson(
+                SCOPE,
+                "7",
+                fields( "Id", "Name", "BirthDate" ),
+                makeProfile( 7L, WikiTreePersonProfile.BIRTH_DATE, "1900-01-01" ),
+                null
+        );
+
+        WikiTreePersonProfile merged = WikiTreeProfileCache.merge(
+                entry,
+                makeProfile( 7L, WikiTreePersonProfile.DEATH_DATE, "1980-12-31" ),
+                WikiTreePersonProfile.ProfileType.PROFILE
+        );
+        assertEquals( "1900-01-01", merged.get( WikiTreePersonProfile.BIRTH_DATE ) );
+        assertEquals( "1980-12-31", merged.get( WikiTreePersonProfile.DEATH_DATE ) );
+
+        // The combined profile replaces the less knowledgeable one.
+
+        cache.putPerson( SCOPE, "7", fields( "Id", "Name", "BirthDate", "DeathDate" ), merged, entry.getExpiresAtNanos() );
+        WikiTreeProfileCache.CachedProfile combinedEntry = cache.getPerson( SCOPE, "Test-7", fields( "BirthDate", "DeathDate" ) );
+        assertSame( merged, combinedEntry.getProfile() );
+        assertEquals( entry.getExpiresAtNanos(), combinedEntry.getExpiresAtNanos() );
+
+    }
+
+    public void testEvictionAndExpiration()
+            throws WikiTreeRequestFailedException {
+
+        // Each person profile takes up two entries here (the request's key is the Person.Id).
+
+        WikiTreeProfileCache cache = new WikiTreeProfileCache( 3, WikiTreeProfileCache.DEFAULT_TIME_TO_LIVE_MILLIS );
+        cache.putProfile( SCOPE, "1", makeProfile( 1L ) );
+        assertEquals( 2, cache.size() );
+
+        cache.putProfile( SCOPE, "2", makeProfile( 2L ) );
+        assertEquals( 3, cache.size() );
+        assertEquals( 1L, cache.getEvictions() );
+        assertNotNull( cache.getProfile( SCOPE, "2" ) );
+        assertNotNull( cache.getProfile( SCOPE, "Test-2" ) );
+
+        cache = new WikiTreeProfileCache( 10, 0L );
+        cache.putPerson( SCOPE, "7", fields( "Id" ), makeProfile( 7L ), null );
+        assertNull( cache.getPerson( SCOPE, "7", fields( "Id" ) ) );
+        assertEquals( 1L, cache.getExpirations() );
+
+    }
+
+}